@@ -33,6 +33,16 @@ android {
     buildFeatures {
         viewBinding = true
     }
+    testOptions {
+        unitTests.isReturnDefaultValues = true
+        unitTests.all {
+            // Pass -Dloadtest.* options on to MultiplayerLoadTest and
+            // -Dbenchmarks=true on to the benchmark_* tests
+            System.getProperties().stringPropertyNames()
+                .filter { it.startsWith("loadtest.") || it == "benchmarks" }
+                .forEach { systemProperty(it, System.getProperty(it)) }
+        }
+    }
 }
 
 dependencies {
@@ -9,11 +9,15 @@ package com.example.ludotime;
 import static androidx.core.content.ContextCompat.startActivity;
 
 import android.content.Intent;
-import android.media.MediaPlayer;
+import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.os.Handler;
+import android.util.AtomicFile;
+import android.util.Log;
+import android.view.Choreographer;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.animation.AlphaAnimation;
 import android.view.animation.Animation;
@@ -26,6 +30,10 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.Random;
 
@@ -34,20 +42,34 @@ import java.util.Random;
  * Manages the game board, player turns, dice rolling, and win conditions.
  */
 public class ActivityGameLocal extends AppCompatActivity {
+    private static final String TAG = "ActivityGameLocal";
+
+    // ===== Save / Resume =====
+    private static final String SAVE_FILE_NAME = "local_game.sav";
+    private static final String STATE_GAME_KEY = "gameState";
+    private static final String STATE_GAME_ENDED_KEY = "gameEnded";
+
     // ===== Game Elements =====
-    BoardCanvas board;
+    GameBoardView board;
     GameLogic gameLogic;
+    private SoundEffects soundEffects;
+    private MoveLog moveLog; // turns of this game, for replays
+    private int pendingDiceValue = 0; // dice of a turn waiting for pawn selection
     private ImageView[] turnIndicators = new ImageView[4];
     private TextView[] diceValues = new TextView[4];
     private Button[] rollButtons = new Button[4];
 
     // ===== Game State =====
     private int currentPlayerTurn = 0;
+    private long lastTouchAt = 0; // event time of the last touch down, for turn latency
+    private long selectionTouchAt = 0; // event time of the touch that completed a pawn selection
     private Random random = new Random();
     private boolean isRolling = false;
+    private boolean turboMode = false; // skip animations and fixed delays
 
     // ===== Scoreboard elements =====
     private boolean gameEnded = false;
+    private boolean gameInProgress = false; // true once a dice was rolled or a game was resumed
 
     // Player color names for the toast message
     private final String[] playerColors = {"Red", "Green", "Yellow", "Blue"};
@@ -68,20 +90,46 @@ public class ActivityGameLocal extends AppCompatActivity {
         // Set to true for quick testing, false for normal gameplay
         boolean testMode = false; // TOGGLE THIS FOR TESTING
 
-        // Initialize game board with test mode
-        board = new BoardCanvas(this, testMode);
-        gameLogic = board.getLogic();
+        // Restore the game after rotation or process death, otherwise start a new one
+        byte[] savedState = savedInstanceState != null ? savedInstanceState.getByteArray(STATE_GAME_KEY) : null;
+        gameLogic = savedState != null ? decodeSavedGame(savedState) : null;
+        boolean restored = gameLogic != null;
+        if (!restored) {
+            gameLogic = new GameLogic(testMode);
+        } else {
+            gameEnded = savedInstanceState.getBoolean(STATE_GAME_ENDED_KEY, false);
+        }
+
+        // Initialize game board with test mode, drawn on a render thread if enabled in settings
+        SharedPreferences prefs = getSharedPreferences(ActivitySettings.PREFS_NAME, MODE_PRIVATE);
+        turboMode = prefs.getBoolean(ActivitySettings.TURBO_MODE_KEY, false);
+        if (prefs.getBoolean(ActivitySettings.RENDER_THREAD_BOARD_KEY, false)) {
+            board = new BoardSurfaceView(this, gameLogic);
+        } else {
+            board = new BoardCanvas(this, gameLogic);
+        }
         FrameLayout frameLayout = findViewById(R.id.board_frame);
-        frameLayout.addView(board);
+        frameLayout.addView((View) board);
+
+        // Preload sound effects, game events play capture, finish and turn sounds
+        soundEffects = new SoundEffects(this);
+        attachGameLogic();
 
         // Initialize player UI elements
         initializePlayerViews();
 
-        // Set first player as active
-        setActivePlayer(0);
+        if (restored) {
+            showRestoredTurn();
+        } else {
+            // Set first player as active
+            setActivePlayer(0);
 
-        // Initialize dice appearance
-        updateDiceAppearance();
+            // Initialize dice appearance
+            updateDiceAppearance();
+
+            // Offer to continue a game that was left unfinished
+            offerToResumeSavedGame();
+        }
 
         // Show a toast to indicate test mode is active (optional)
         if (testMode) {
@@ -89,6 +137,226 @@ public class ActivityGameLocal extends AppCompatActivity {
         }
     }
 
+    /**
+     * Register this activity's listeners on the current game logic
+     */
+    private void attachGameLogic() {
+        // Continue the turn as soon as a selected pawn has moved
+        gameLogic.setOnMoveCompleteListener(this::onPawnMoveComplete);
+        gameLogic.addGameEventListener(soundEffects);
+    }
+
+    /**
+     * Update the player UI to match a restored game
+     */
+    private void showRestoredTurn() {
+        currentPlayerTurn = gameLogic.getCurrentPlayerTurn();
+
+        // A finished game stays finished, nobody gets to roll again
+        if (gameEnded || gameLogic.isGameOver()) {
+            gameEnded = true;
+            setActivePlayer(currentPlayerTurn);
+            for (Button button : rollButtons) {
+                button.setEnabled(false);
+            }
+            return;
+        }
+        gameInProgress = true;
+
+        // The logic passes the turn to the next seat, skip players who already finished like nextPlayerTurn()
+        for (int checked = 0; checked < 4 && gameLogic.hasPlayerWon(currentPlayerTurn)
+                && !gameLogic.isWaitingForPawnSelection(); checked++) {
+            currentPlayerTurn = (currentPlayerTurn + 1) % 4;
+        }
+        gameLogic.setCurrentPlayerTurn(currentPlayerTurn);
+        setActivePlayer(currentPlayerTurn);
+
+        // A restored game may be waiting for the current player to pick a pawn
+        if (gameLogic.isWaitingForPawnSelection()) {
+            diceValues[currentPlayerTurn].setText(String.valueOf(gameLogic.getLastDiceRoll()));
+            rollButtons[currentPlayerTurn].setEnabled(false);
+        }
+    }
+
+    /**
+     * Ask the user whether to continue the game saved in the save file, if any
+     */
+    private void offerToResumeSavedGame() {
+        byte[] saved = readSavedGame();
+        if (saved == null) return;
+
+        GameLogic savedGame = decodeSavedGame(saved);
+        if (savedGame == null || savedGame.isGameOver()) {
+            deleteSavedGame();
+            return;
+        }
+
+        androidx.appcompat.app.AlertDialog.Builder builder = new androidx.appcompat.app.AlertDialog.Builder(this);
+        builder.setTitle("Resume Game");
+        builder.setMessage("Continue your unfinished local game?");
+        builder.setPositiveButton("Resume", (dialog, which) -> {
+            // Swap the new game for the saved one
+            gameLogic.setOnMoveCompleteListener(null);
+            gameLogic.removeGameEventListener(soundEffects);
+            gameLogic = savedGame;
+            board.setLogic(savedGame);
+            attachGameLogic();
+            showRestoredTurn();
+        });
+        builder.setNegativeButton("New Game", (dialog, which) -> deleteSavedGame());
+        builder.setCancelable(false);
+        builder.show();
+    }
+
+    /**
+     * Decode a saved game, logging how long it took
+     *
+     * @param savedState Bytes from GameStateCodec.encode()
+     * @return The restored game, or null if the bytes are not a valid saved game
+     */
+    private GameLogic decodeSavedGame(byte[] savedState) {
+        long start = System.nanoTime();
+        try {
+            GameLogic restored = GameStateCodec.decode(savedState);
+            Log.d(TAG, "Restored game in " + (System.nanoTime() - start) / 1000 + " us");
+            return restored;
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Ignoring invalid saved game", e);
+            return null;
+        }
+    }
+
+    /**
+     * Get the crash-safe save file for the local game
+     *
+     * @return The save file
+     */
+    private AtomicFile getSaveFile() {
+        return new AtomicFile(new File(getFilesDir(), SAVE_FILE_NAME));
+    }
+
+    /**
+     * Read the saved game from the save file
+     *
+     * @return The saved bytes, or null if there is no saved game
+     */
+    private byte[] readSavedGame() {
+        try {
+            return getSaveFile().readFully();
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read saved game", e);
+            return null;
+        }
+    }
+
+    /**
+     * Write the current game to the save file
+     * AtomicFile keeps the previous save intact if the app dies mid-write
+     */
+    private void writeSavedGame() {
+        AtomicFile file = getSaveFile();
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            out.write(GameStateCodec.encode(gameLogic));
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save game", e);
+            if (out != null) {
+                file.failWrite(out);
+            }
+        }
+    }
+
+    /**
+     * Delete the save file
+     */
+    private void deleteSavedGame() {
+        getSaveFile().delete();
+    }
+
+    /**
+     * Keep the game across rotation and process death
+     *
+     * @param outState Bundle in which to place the saved state
+     */
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+
+        // Saved as the logic has it, during the next-turn delay the activity still shows the previous player
+        outState.putByteArray(STATE_GAME_KEY, GameStateCodec.encode(gameLogic));
+        outState.putBoolean(STATE_GAME_ENDED_KEY, gameEnded);
+    }
+
+    /**
+     * Save an unfinished game to the save file, or remove the file once the game is over
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+
+        if (gameEnded || gameLogic.isGameOver()) {
+            deleteSavedGame();
+        } else if (gameInProgress) {
+            writeSavedGame();
+        }
+    }
+
+    /**
+     * Pick up sound effect volume changes made in the settings
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        soundEffects.reloadVolume(this);
+    }
+
+    /**
+     * Start logging the turns of this game, beginning from its current state
+     */
+    private void startMoveLog() {
+        try {
+            moveLog = MoveLog.start(this, gameLogic);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to start move log", e);
+        }
+    }
+
+    /**
+     * Append a finished turn to the move log
+     *
+     * @param seat Player who rolled (0-3)
+     * @param dice Dice value (1-6)
+     * @param pawn Chosen pawn (0-3), or MoveLog.NO_PAWN
+     */
+    private void recordTurn(int seat, int dice, int pawn) {
+        if (moveLog == null) return;
+        try {
+            moveLog.append(seat, dice, pawn);
+        } catch (IOException e) {
+            // Stop logging rather than write an incomplete game
+            Log.w(TAG, "Failed to write move log", e);
+            moveLog.close();
+            moveLog = null;
+        }
+    }
+
+    /**
+     * Release the preloaded sound effects and close the move log
+     */
+    @Override
+    protected void onDestroy() {
+        gameLogic.removeGameEventListener(soundEffects);
+        soundEffects.release();
+        if (moveLog != null) {
+            moveLog.close();
+        }
+        super.onDestroy();
+    }
+
     /**
      * Initialize player UI components and set up event listeners.
      * Sets up turn indicators, dice displays, and roll buttons for all players.
@@ -134,6 +402,12 @@ public class ActivityGameLocal extends AppCompatActivity {
 
         // Set rolling state to true
         isRolling = true;
+        gameInProgress = true;
+
+        // Log turns from the first roll, so a resumed game logs from its resumed state
+        if (moveLog == null) {
+            startMoveLog();
+        }
 
         // Disable roll button during animation
         rollButtons[playerIndex].setEnabled(false);
@@ -154,12 +428,11 @@ public class ActivityGameLocal extends AppCompatActivity {
         blinkAnimation.setRepeatCount(3);
 
         // Play dice roll sound
-        MediaPlayer mediaPlayer = MediaPlayer.create(this, R.raw.diceroll);
-        mediaPlayer.start();
+        soundEffects.play(SoundEffects.SOUND_DICE_ROLL);
 
         // Animation runnable
         Runnable animation = new Runnable() {
-            int framesLeft = animationDuration / intervalBetweenFrames;
+            int framesLeft = turboMode ? 0 : animationDuration / intervalBetweenFrames;
             int lastValue = 0; // To avoid showing the same number twice
 
             @Override
@@ -192,9 +465,11 @@ public class ActivityGameLocal extends AppCompatActivity {
                     diceValues[playerIndex].clearAnimation();
 
                     // Add a highlight effect for the final value
-                    AlphaAnimation finalAnimation = new AlphaAnimation(0.2f, 1.0f);
-                    finalAnimation.setDuration(50);
-                    diceValues[playerIndex].startAnimation(finalAnimation);
+                    if (!turboMode) {
+                        AlphaAnimation finalAnimation = new AlphaAnimation(0.2f, 1.0f);
+                        finalAnimation.setDuration(50);
+                        diceValues[playerIndex].startAnimation(finalAnimation);
+                    }
 
                     // Make sure the game logic knows whose turn it is
                     gameLogic.setCurrentPlayerTurn(currentPlayerTurn);
@@ -204,9 +479,14 @@ public class ActivityGameLocal extends AppCompatActivity {
 
                     // Call playRound, which returns false if waiting for selection
                     boolean roundComplete = gameLogic.playRound();
+                    if (roundComplete) {
+                        recordTurn(currentPlayerTurn, finalDiceValue, MoveLog.NO_PAWN);
+                    } else {
+                        pendingDiceValue = finalDiceValue; // logged once a pawn is chosen
+                    }
 
                     // Update the board display
-                    board.invalidate();
+                    board.refreshBoard();
 
                     // Check if any player has won the game
                     int winnerIndex = gameLogic.getWinner();
@@ -241,61 +521,81 @@ public class ActivityGameLocal extends AppCompatActivity {
 
                     // Only proceed to next turn if round is complete (no selection needed)
                     if (roundComplete) {
-                        // Move to next player after short delay
-                        handler.postDelayed(() -> {
+                        if (turboMode) {
+                            // No valid moves, skip to the next player right away
                             nextPlayerTurn();
-                            isRolling = false; // Reset rolling state
-                        }, 500);
+                            isRolling = false;
+                        } else {
+                            // Move to next player after short delay
+                            handler.postDelayed(() -> {
+                                nextPlayerTurn();
+                                isRolling = false; // Reset rolling state
+                            }, 500);
+                        }
                     } else {
                         // Let user select a pawn
                         isRolling = false; // Reset rolling state to allow board interaction
+                        // onPawnMoveComplete() continues the turn once a pawn is chosen
 
-                        // Set up a listener to wait for pawn selection to complete
-                        final Handler selectionHandler = new Handler();
-                        Runnable selectionCheck = new Runnable() {
-                            @Override
-                            public void run() {
-                                if (!gameLogic.isWaitingForPawnSelection()) {
-                                    // Selection is complete, check if this move resulted in a win
-                                    int winnerIndex = gameLogic.getWinner();
-                                    if (winnerIndex != -1) {
-                                        // A player has won, show toast message
-                                        String winnerMessage = playerColors[winnerIndex] + " player finished in position " +
-                                                gameLogic.getPlayerPosition(winnerIndex) + "!";
-                                        Toast.makeText(ActivityGameLocal.this, winnerMessage, Toast.LENGTH_LONG).show();
-
-                                        // Check if this is the 3rd winner (game over)
-                                        if (gameLogic.isGameOver()) {
-                                            // Game is over, show scoreboard
-                                            gameEnded = true;
-                                            showScoreboard();
-
-                                            // Disable all roll buttons as game is over
-                                            for (Button button : rollButtons) {
-                                                button.setEnabled(false);
-                                            }
-                                        } else {
-                                            // Continue to next player
-                                            nextPlayerTurn();
-                                        }
-                                    } else {
-                                        // No winner, move to next player
-                                        nextPlayerTurn();
-                                    }
-                                } else {
-                                    // Still waiting, check again in 500ms
-                                    selectionHandler.postDelayed(this, 500);
-                                }
+                        // In turbo mode there is nothing to choose when only one move is legal
+                        if (turboMode) {
+                            int onlyMove = gameLogic.findSingleLegalMove();
+                            if (onlyMove != -1) {
+                                gameLogic.setPawnSelection(onlyMove);
                             }
-                        };
-                        selectionHandler.postDelayed(selectionCheck, 500);
+                        }
                     }
                 }
             }
         };
 
-        // Start animation
-        handler.post(animation);
+        // Start animation, turbo mode resolves the roll immediately
+        if (turboMode) {
+            animation.run();
+        } else {
+            handler.post(animation);
+        }
+    }
+
+    /**
+     * Continue the game after the player selected a pawn and it moved.
+     * Checks if the move resulted in a win, then passes the turn on.
+     *
+     * @param player    Player index who moved (0-3)
+     * @param pawnIndex Pawn index that moved (0-3)
+     */
+    private void onPawnMoveComplete(int player, int pawnIndex) {
+        selectionTouchAt = lastTouchAt;
+
+        if (pendingDiceValue != 0) {
+            recordTurn(player, pendingDiceValue, pawnIndex);
+            pendingDiceValue = 0;
+        }
+
+        // Check if this move resulted in a win
+        int winnerIndex = gameLogic.getWinner();
+        if (winnerIndex != -1) {
+            // A player has won, show toast message
+            String winnerMessage = playerColors[winnerIndex] + " player finished in position " +
+                    gameLogic.getPlayerPosition(winnerIndex) + "!";
+            Toast.makeText(ActivityGameLocal.this, winnerMessage, Toast.LENGTH_LONG).show();
+
+            // Check if this is the 3rd winner (game over)
+            if (gameLogic.isGameOver()) {
+                // Game is over, show scoreboard
+                gameEnded = true;
+                showScoreboard();
+
+                // Disable all roll buttons as game is over
+                for (Button button : rollButtons) {
+                    button.setEnabled(false);
+                }
+                return;
+            }
+        }
+
+        // Move to next player
+        nextPlayerTurn();
     }
 
     /**
@@ -331,6 +631,29 @@ public class ActivityGameLocal extends AppCompatActivity {
 
         // Enable new current player's roll button
         rollButtons[currentPlayerTurn].setEnabled(true);
+
+        // Log how long it took from the selecting touch until the frame that shows the next player
+        if (selectionTouchAt != 0) {
+            final long touchAt = selectionTouchAt;
+            selectionTouchAt = 0;
+            Choreographer.getInstance().postFrameCallback(frameTimeNanos ->
+                    Log.d(TAG, "Turn latency after pawn selection: "
+                            + (frameTimeNanos / 1_000_000 - touchAt) + " ms"));
+        }
+    }
+
+    /**
+     * Remember when the player last touched the screen, the start of the turn latency
+     *
+     * @param event The touch event
+     * @return True if the event was consumed
+     */
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            lastTouchAt = event.getEventTime();
+        }
+        return super.dispatchTouchEvent(event);
     }
 
     /**
@@ -385,6 +708,7 @@ public class ActivityGameLocal extends AppCompatActivity {
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.return_to_main_page_menu, menu);
+        getMenuInflater().inflate(R.menu.render_stats_menu, menu);
         return true;
     }
 
@@ -401,10 +725,42 @@ public class ActivityGameLocal extends AppCompatActivity {
         if (item.getItemId() == R.id.menuReturn) {
             Intent intent = new Intent(ActivityGameLocal.this, MainActivity.class);
             startActivity(intent);
+        } else if (item.getItemId() == R.id.menuRenderStats) {
+            // Toggle the render statistics overlay on the board
+            boolean enabled = !board.isRenderStatsEnabled();
+            board.setRenderStatsEnabled(enabled);
+            item.setChecked(enabled);
+        } else if (item.getItemId() == R.id.menuExportRenderStats) {
+            exportRenderStats();
         }
         return true;
     }
 
+    /**
+     * Export the board render statistics to a local file.
+     * The file is written to the app's external files directory so it can be
+     * pulled from the device and attached to bug reports.
+     */
+    private void exportRenderStats() {
+        BoardRenderStats stats = board.getRenderStats();
+        if (stats == null) {
+            Toast.makeText(this, "Enable the render stats overlay first", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            directory = getFilesDir();
+        }
+
+        try {
+            File file = stats.exportToFile(directory);
+            Toast.makeText(this, "Render stats saved to " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Toast.makeText(this, "Failed to export render stats: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    }
+
 
     /**
      * Display the final scoreboard showing player rankings.
@@ -449,6 +805,17 @@ public class ActivityGameLocal extends AppCompatActivity {
             startActivity(intent);
         });
 
+        // Offer to watch the game again from its move log
+        if (moveLog != null) {
+            moveLog.close();
+            String logPath = moveLog.getFile().getAbsolutePath();
+            builder.setNeutralButton("Watch Replay", (dialog, which) -> {
+                Intent intent = new Intent(ActivityGameLocal.this, ActivityReplay.class);
+                intent.putExtra(ActivityReplay.EXTRA_LOG_FILE, logPath);
+                startActivity(intent);
+            });
+        }
+
         builder.setCancelable(false); // Prevent dismissing the dialog
         builder.show();
     }
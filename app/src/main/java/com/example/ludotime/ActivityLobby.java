@@ -5,6 +5,8 @@ import android.content.ClipboardManager;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -22,6 +24,8 @@ import com.google.firebase.auth.FirebaseUser;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
 
@@ -31,13 +35,21 @@ import java.util.ArrayList;
  * Handles creating and joining online Ludo game lobbies.
  * Manages player color selection and lobby code generation/sharing.
  * Uses Firebase user's display name instead of asking for a name.
+ * Lists open public lobbies, a page at a time, to join without a code.
+ * Quick match queues the player by score, while queued this client also
+ * takes its turn as the matcher that seats queued players in games.
  */
-public class ActivityLobby extends AppCompatActivity implements FirebaseGameManager.GameUpdateListener {
+public class ActivityLobby extends AppCompatActivity implements FirebaseGameManager.GameUpdateListener,
+        LobbyBrowser.BrowserListener {
 
     //Firebase
     private FirebaseAuth mAuth;
     private FirebaseUser currentUser;
     private FirebaseGameManager gameManager;
+    private GameBackend backend;
+    private LobbyBrowser lobbyBrowser;
+    private MatchMaker matchMaker;
+    private final Handler matchHandler = new Handler(Looper.getMainLooper());
 
     // UI Components
     private CardView menuCard;
@@ -45,8 +57,11 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
     private CardView createGameDialog;
     private CardView joinGameDialog;
     private LinearLayout playersContainer;
+    private RecyclerView openGamesList;
+    private LobbyAdapter lobbyAdapter;
 
     private Button createGameButton;
+    private Button quickMatchButton;
     private Button joinGameButton;
     private Button startGameButton;
     private Button shareCodeButton;
@@ -55,10 +70,12 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
     private Button cancelJoinButton;
     private Button confirmJoinButton;
     private Button readyButton;
+    private Button loadMoreGamesButton;
 
     private EditText lobbyCodeInput;
     private TextView lobbyCodeDisplay;
     private TextView waitingMessage;
+    private TextView openGamesEmpty;
 
     private ImageView colorRed;
     private ImageView colorGreen;
@@ -72,7 +89,18 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
     private boolean isHost = false;
     private boolean isReady = false;
     private boolean allPlayersReady = false;
+    private boolean quickMatching = false;
     private MultiplayerGameLogic currentGame;
+    private final View[] playerRows = new View[4]; // Player list row per seat, null if empty
+
+    /** Runs a matcher round while queued, if no other client holds the matcher lease */
+    private final Runnable matchTick = new Runnable() {
+        @Override
+        public void run() {
+            matchMaker.runIfLeader(System.currentTimeMillis(), null);
+            matchHandler.postDelayed(this, MatchMaker.ROUND_INTERVAL_MILLIS);
+        }
+    };
 
     /**
      * Initializes the activity, sets up the UI components and event listeners
@@ -108,6 +136,14 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
         // Initialize UI components
         initializeViews();
 
+        // Public lobby list and quick match
+        backend = new FirebaseGameBackend();
+        lobbyBrowser = new LobbyBrowser(backend, this);
+        matchMaker = new MatchMaker(backend, currentUser.getUid());
+        lobbyAdapter = new LobbyAdapter(lobbyBrowser.getLobbies(), this::onLobbyClicked);
+        openGamesList.setLayoutManager(new LinearLayoutManager(this));
+        openGamesList.setAdapter(lobbyAdapter);
+
         // Set up click listeners
         setupClickListeners();
     }
@@ -122,9 +158,11 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
         createGameDialog = findViewById(R.id.create_game_dialog);
         joinGameDialog = findViewById(R.id.join_game_dialog);
         playersContainer = findViewById(R.id.players_container);
+        openGamesList = findViewById(R.id.recyclerview_open_games);
 
         // Buttons
         createGameButton = findViewById(R.id.create_game_button);
+        quickMatchButton = findViewById(R.id.quick_match_button);
         joinGameButton = findViewById(R.id.join_game_button);
         startGameButton = findViewById(R.id.start_game_button);
         shareCodeButton = findViewById(R.id.share_code_button);
@@ -133,6 +171,7 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
         cancelJoinButton = findViewById(R.id.cancel_join_button);
         confirmJoinButton = findViewById(R.id.confirm_join_button);
         readyButton = findViewById(R.id.ready_button);
+        loadMoreGamesButton = findViewById(R.id.load_more_games_button);
 
         // Edit texts
         lobbyCodeInput = findViewById(R.id.lobby_code_input);
@@ -140,6 +179,7 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
         // Text views
         lobbyCodeDisplay = findViewById(R.id.lobby_code_display);
         waitingMessage = findViewById(R.id.waiting_message);
+        openGamesEmpty = findViewById(R.id.open_games_empty);
 
         // Color selection images
         colorRed = findViewById(R.id.color_red);
@@ -157,7 +197,9 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
     private void setupClickListeners() {
         // Main menu buttons
         createGameButton.setOnClickListener(v -> showCreateGameDialog());
+        quickMatchButton.setOnClickListener(v -> startQuickMatch());
         joinGameButton.setOnClickListener(v -> processJoinGame());
+        loadMoreGamesButton.setOnClickListener(v -> lobbyBrowser.loadMore());
 
         // Color selection
         colorRed.setOnClickListener(v -> selectColor(R.id.color_red, 0));
@@ -186,6 +228,9 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
         menuCard.setVisibility(View.GONE);
         createGameDialog.setVisibility(View.VISIBLE);
 
+        // Reserve a game code while the player picks a color
+        gameManager.prefetchGameIds();
+
         // Default to red selected
         selectColor(R.id.color_red, 0);
     }
@@ -233,6 +278,26 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
         showJoinGameDialog();
     }
 
+    /**
+     * Fills in the code of a listed lobby and asks to join it
+     *
+     * @param lobby The tapped lobby
+     */
+    private void onLobbyClicked(LobbySummary lobby) {
+        lobbyCodeInput.setText(lobby.getGameId());
+        showJoinGameDialog();
+    }
+
+    /**
+     * Shows the lobby list or the empty message, and the load more button if there may be more
+     */
+    private void updateOpenGamesVisibility() {
+        boolean empty = lobbyBrowser.getLobbies().isEmpty();
+        openGamesList.setVisibility(empty ? View.GONE : View.VISIBLE);
+        openGamesEmpty.setVisibility(empty ? View.VISIBLE : View.GONE);
+        loadMoreGamesButton.setVisibility(lobbyBrowser.hasMore() ? View.VISIBLE : View.GONE);
+    }
+
     /**
      * Handles color selection by updating UI and storing selected color
      *
@@ -289,6 +354,58 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
         readyButton.setVisibility(View.VISIBLE); // Non-host players need ready button
     }
 
+    /**
+     * Queues the player for a quick match with their score and shows the lobby card while searching
+     */
+    private void startQuickMatch() {
+        isHost = false;
+        quickMatching = true;
+
+        menuCard.setVisibility(View.GONE);
+        lobbyCard.setVisibility(View.VISIBLE);
+        startGameButton.setVisibility(View.GONE);
+        readyButton.setVisibility(View.GONE);
+        lobbyCodeDisplay.setText("");
+        waitingMessage.setText("Searching for players...");
+
+        // Players are matched by the score shown on the leaderboard
+        backend.get("Users/" + currentUser.getUid() + "/score", new GameBackend.ReadListener() {
+            @Override
+            public void onRead(Object value) {
+                enqueue(value instanceof Number ? ((Number) value).intValue() : 0);
+            }
+
+            @Override
+            public void onError(String message) {
+                enqueue(0);
+            }
+
+            /**
+             * Joins the queue unless the player cancelled meanwhile
+             *
+             * @param score Score to be matched by
+             */
+            private void enqueue(int score) {
+                if (!quickMatching) return;
+
+                gameManager.enqueueQuickMatch(playerName, score);
+                matchHandler.post(matchTick);
+            }
+        });
+    }
+
+    /**
+     * Stops matching other players and gives up the matcher lease
+     */
+    private void stopQuickMatch() {
+        if (!quickMatching) return;
+
+        quickMatching = false;
+        matchHandler.removeCallbacks(matchTick);
+        matchMaker.releaseLease();
+        waitingMessage.setText("Players");
+    }
+
     /**
      * Toggle ready status for non-host players
      */
@@ -361,38 +478,44 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
     }
 
     /**
-     * Updates the player list UI based on current game state
+     * Rebuilds the whole player list from the current game state
+     * Used for the first snapshot, later changes update single rows
      */
     private void updatePlayerList() {
         if (currentGame == null) return;
 
         // Clear existing player views
         playersContainer.removeAllViews();
-
-        // Check if all players are ready
-        allPlayersReady = true;
+        for (int i = 0; i < playerRows.length; i++) {
+            playerRows[i] = null;
+        }
 
         // Add player entries
         ArrayList<String> playerIDs = currentGame.getPlayerID();
-        ArrayList<String> playerNames = currentGame.getPlayerName();
-        ArrayList<Boolean> isReady = currentGame.getIsReady();
+        for (int i = 0; i < playerIDs.size() && i < playerRows.length; i++) {
+            if (playerIDs.get(i) != null) {
+                bindPlayerRow(i);
+            }
+        }
 
-        for (int i = 0; i < playerIDs.size(); i++) {
-            if (playerIDs.get(i) == null) continue;
+        updateStartButton();
+    }
 
+    /**
+     * Creates or updates the row of one seat
+     *
+     * @param seat Seat index (0-3)
+     */
+    private void bindPlayerRow(int seat) {
+        View playerView = playerRows[seat];
+        if (playerView == null) {
             // Create player entry view
-            View playerView = getLayoutInflater().inflate(R.layout.player_list_item, playersContainer, false);
-
-            // Set player info
-            TextView nameText = playerView.findViewById(R.id.player_name);
-            ImageView statusIcon = playerView.findViewById(R.id.player_status);
-            ImageView colorIcon = playerView.findViewById(R.id.player_color);
-
-            nameText.setText(playerNames.get(i));
+            playerView = getLayoutInflater().inflate(R.layout.player_list_item, playersContainer, false);
 
             // Set color indicator based on player color (which is their index)
+            ImageView colorIcon = playerView.findViewById(R.id.player_color);
             int colorRes;
-            switch (i) {
+            switch (seat) {
                 case 0: // Red
                     colorRes = R.drawable.red_pawn;
                     break;
@@ -410,17 +533,60 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
             }
             colorIcon.setImageResource(colorRes);
 
-            // Set ready status icon
-            statusIcon.setImageResource(isReady.get(i) ?
-                    R.drawable.ic_check_circle : R.drawable.ic_pending);
+            // Keep the rows in seat order
+            int index = 0;
+            for (int i = 0; i < seat; i++) {
+                if (playerRows[i] != null) index++;
+            }
+            playersContainer.addView(playerView, index);
+            playerRows[seat] = playerView;
+        }
+
+        // Set player info
+        TextView nameText = playerView.findViewById(R.id.player_name);
+        nameText.setText(currentGame.getPlayerName().get(seat));
+        bindReadyIcon(seat);
+    }
+
+    /**
+     * Updates the ready icon of one seat
+     *
+     * @param seat Seat index (0-3)
+     */
+    private void bindReadyIcon(int seat) {
+        if (playerRows[seat] == null) return;
+
+        ImageView statusIcon = playerRows[seat].findViewById(R.id.player_status);
+        statusIcon.setImageResource(currentGame.getIsReady().get(seat) ?
+                R.drawable.ic_check_circle : R.drawable.ic_pending);
+    }
+
+    /**
+     * Removes the row of a seat that was freed
+     *
+     * @param seat Seat index (0-3)
+     */
+    private void removePlayerRow(int seat) {
+        if (playerRows[seat] == null) return;
 
-            // Track if all non-host players are ready
-            if (!playerIDs.get(i).equals(currentGame.getHostUserId()) && !isReady.get(i)) {
+        playersContainer.removeView(playerRows[seat]);
+        playerRows[seat] = null;
+    }
+
+    /**
+     * Recomputes whether all players are ready and updates the start button
+     */
+    private void updateStartButton() {
+        ArrayList<String> playerIDs = currentGame.getPlayerID();
+        ArrayList<Boolean> isReady = currentGame.getIsReady();
+
+        // Track if all non-host players are ready
+        allPlayersReady = true;
+        for (int i = 0; i < playerIDs.size(); i++) {
+            if (playerIDs.get(i) != null && !playerIDs.get(i).equals(currentGame.getHostUserId())
+                    && !isReady.get(i)) {
                 allPlayersReady = false;
             }
-
-            // Add to container
-            playersContainer.addView(playerView);
         }
 
         // Update start button status if host
@@ -450,7 +616,9 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
     @Override
     public boolean onOptionsItemSelected(@NonNull MenuItem item) {
         if (item.getItemId() == R.id.menuReturn) {
-            // Leave game if in a lobby
+            // Leave the queue or the game if in a lobby
+            gameManager.leaveQuickMatch();
+            stopQuickMatch();
             if (currentGame != null) {
                 gameManager.leaveGame();
             }
@@ -473,10 +641,13 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
         } else if (joinGameDialog.getVisibility() == View.VISIBLE) {
             hideJoinGameDialog();
         } else if (lobbyCard.getVisibility() == View.VISIBLE) {
-            // Leave game if in a lobby
+            // Leave the queue or the game if in a lobby
+            gameManager.leaveQuickMatch();
+            stopQuickMatch();
             if (currentGame != null) {
                 gameManager.leaveGame();
             }
+            currentGame = null;
 
             lobbyCard.setVisibility(View.GONE);
             menuCard.setVisibility(View.VISIBLE);
@@ -485,12 +656,35 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
         }
     }
 
+    /**
+     * Follow the open lobbies while the activity is visible
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (lobbyBrowser != null) {
+            lobbyBrowser.start();
+        }
+    }
+
+    /**
+     * Stop following the open lobbies when the activity is hidden
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (lobbyBrowser != null) {
+            lobbyBrowser.stop();
+        }
+    }
+
     /**
      * Clean up resources when activity is destroyed
      */
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        matchHandler.removeCallbacks(matchTick);
         if (gameManager != null) {
             gameManager.cleanup();
         }
@@ -524,7 +718,17 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
      */
     @Override
     public void onGameJoined(MultiplayerGameLogic game) {
-        currentGame = game;
+        if (quickMatching) {
+            // Seated by the matcher, already marked ready
+            stopQuickMatch();
+            isHost = currentUser.getUid().equals(game.getHostUserId());
+            isReady = true;
+            readyButton.setText("Not Ready");
+            startGameButton.setVisibility(isHost ? View.VISIBLE : View.GONE);
+            readyButton.setVisibility(isHost ? View.GONE : View.VISIBLE);
+        }
+
+        currentGame = new MultiplayerGameLogic(game); // Own copy, see onGameUpdated
         generatedLobbyCode = game.getGameId();
         lobbyCodeDisplay.setText(game.getGameId());
         Toast.makeText(this, "Joined game successfully!", Toast.LENGTH_SHORT).show();
@@ -533,15 +737,23 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
 
 
     /**
-     * Called when game state is updated (players join/leave, ready status changes)
-     * Refreshes player list and launches game if started
+     * Called with the first game snapshot and when the player count, host or
+     * started flag change. Builds the player list the first time, later only
+     * the start button depends on these fields
+     * Launches game if started
      *
      * @param game The updated multiplayer game logic instance
      */
     @Override
     public void onGameUpdated(MultiplayerGameLogic game) {
-        currentGame = game;
-        updatePlayerList();
+        boolean firstSnapshot = currentGame == null;
+        // The seat callbacks edit currentGame, the manager's snapshot must stay as it was
+        currentGame = new MultiplayerGameLogic(game);
+        if (firstSnapshot) {
+            updatePlayerList();
+        } else {
+            updateStartButton();
+        }
 
         // If game started, launch game activity
         if (game.isGameStarted()) {
@@ -549,6 +761,44 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
         }
     }
 
+    /**
+     * Called when a seat is taken or freed
+     * Updates only that seat's row
+     *
+     * @param seat The seat index (0-3)
+     * @param playerId The player now in the seat, or null if it is free
+     * @param playerName The display name of that player
+     */
+    @Override
+    public void onSeatChanged(int seat, String playerId, String playerName) {
+        if (currentGame == null) return;
+
+        currentGame.getPlayerID().set(seat, playerId);
+        currentGame.getPlayerName().set(seat, playerName);
+        if (playerId != null) {
+            bindPlayerRow(seat);
+        } else {
+            removePlayerRow(seat);
+        }
+        updateStartButton();
+    }
+
+    /**
+     * Called when a player toggles ready
+     * Updates only that seat's status icon and the start button
+     *
+     * @param seat The seat index (0-3)
+     * @param ready The new ready flag
+     */
+    @Override
+    public void onPlayerReadyChanged(int seat, boolean ready) {
+        if (currentGame == null) return;
+
+        currentGame.getIsReady().set(seat, ready);
+        bindReadyIcon(seat);
+        updateStartButton();
+    }
+
     /**
      * Called when a new player joins the game
      * Shows a toast notification with the player's name
@@ -591,6 +841,13 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
     @Override
     public void onGameError(String message) {
         Toast.makeText(this, "Error: " + message, Toast.LENGTH_SHORT).show();
+
+        // The queue entry timed out or could not be written
+        if (quickMatching && !gameManager.isQueued() && currentGame == null) {
+            stopQuickMatch();
+            lobbyCard.setVisibility(View.GONE);
+            menuCard.setVisibility(View.VISIBLE);
+        }
     }
 
     @Override
@@ -612,4 +869,57 @@ public class ActivityLobby extends AppCompatActivity implements FirebaseGameMana
     public void onGameEnded(int[] winnerOrder) {
         // Not used in lobby
     }
-}
\ No newline at end of file
+
+    // LobbyBrowser.BrowserListener Implementation
+
+    /**
+     * Called when the lobby list was dropped before loading more
+     */
+    @Override
+    public void onLobbiesReset() {
+        lobbyAdapter.notifyDataSetChanged();
+        updateOpenGamesVisibility();
+    }
+
+    /**
+     * Called when an open lobby was added to the list
+     *
+     * @param position Position of the new lobby
+     */
+    @Override
+    public void onLobbyAdded(int position) {
+        lobbyAdapter.notifyItemInserted(position);
+        updateOpenGamesVisibility();
+    }
+
+    /**
+     * Called when a listed lobby changed, for example a seat was taken
+     *
+     * @param position Position of the lobby
+     */
+    @Override
+    public void onLobbyChanged(int position) {
+        lobbyAdapter.notifyItemChanged(position);
+    }
+
+    /**
+     * Called when a lobby filled up, started or was closed
+     *
+     * @param position Position the lobby had
+     */
+    @Override
+    public void onLobbyRemoved(int position) {
+        lobbyAdapter.notifyItemRemoved(position);
+        updateOpenGamesVisibility();
+    }
+
+    /**
+     * Called if the open lobbies could not be read
+     *
+     * @param message Description of the error
+     */
+    @Override
+    public void onBrowserError(String message) {
+        Toast.makeText(this, "Could not load open games: " + message, Toast.LENGTH_SHORT).show();
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * ActivityReplay.java
+ *
+ * Replays a recorded local game from its move log on the game board,
+ * at normal speed, ten times faster, or instantly.
+ */
+package com.example.ludotime;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.Button;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Activity that shows the replay of a recorded local game.
+ * Expects the path of the move log in EXTRA_LOG_FILE.
+ */
+public class ActivityReplay extends AppCompatActivity implements GameReplayer.ReplayListener {
+    private static final String TAG = "ActivityReplay";
+
+    // ===== Intent Extras =====
+    public static final String EXTRA_LOG_FILE = "logFile";
+
+    // ===== Replay Elements =====
+    private GameReplayer replayer;
+    private TextView tvProgress;
+
+    /**
+     * Load the move log and start replaying it at normal speed.
+     *
+     * @param savedInstanceState If the activity is being re-initialized after previously
+     *                          being shut down then this Bundle contains the data it most
+     *                          recently supplied in onSaveInstanceState(Bundle).
+     */
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_replay);
+
+        tvProgress = findViewById(R.id.tvReplayProgress);
+
+        // Read the recorded game
+        String path = getIntent().getStringExtra(EXTRA_LOG_FILE);
+        try {
+            replayer = new GameReplayer(MoveLog.read(new File(path)));
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Failed to load move log " + path, e);
+            Toast.makeText(this, "Could not load the replay", Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+        replayer.setReplayListener(this);
+
+        // The board redraws itself from the replayed game's events
+        BoardCanvas board = new BoardCanvas(this, replayer.getLogic());
+        FrameLayout frameLayout = findViewById(R.id.board_frame);
+        frameLayout.addView(board);
+
+        // Speed controls
+        Button bNormal = findViewById(R.id.bReplayNormal);
+        Button bFast = findViewById(R.id.bReplayFast);
+        Button bInstant = findViewById(R.id.bReplayInstant);
+        bNormal.setOnClickListener(v -> replayer.setSpeed(GameReplayer.SPEED_NORMAL));
+        bFast.setOnClickListener(v -> replayer.setSpeed(GameReplayer.SPEED_FAST));
+        bInstant.setOnClickListener(v -> replayer.setSpeed(GameReplayer.SPEED_INSTANT));
+
+        replayer.start();
+    }
+
+    /**
+     * Stop replaying when the activity goes away
+     */
+    @Override
+    protected void onDestroy() {
+        if (replayer != null) {
+            replayer.pause();
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * Show how many turns were replayed
+     *
+     * @param turnsPlayed Number of turns replayed so far
+     * @param totalTurns  Number of turns in the recording
+     */
+    @Override
+    public void onReplayProgress(int turnsPlayed, int totalTurns) {
+        tvProgress.setText("Turn " + turnsPlayed + " / " + totalTurns);
+    }
+
+    /**
+     * Tell the user the replay is over
+     */
+    @Override
+    public void onReplayFinished() {
+        Toast.makeText(this, "Replay finished", Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * Initialize the contents of the Activity's standard options menu.
+     * Inflates the return to main page menu.
+     *
+     * @param menu The options menu in which you place your items.
+     * @return true for the menu to be displayed; false it will not be shown.
+     */
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.return_to_main_page_menu, menu);
+        return true;
+    }
+
+    /**
+     * Called whenever an item in the options menu is selected.
+     * Handles the return to main page menu item selection.
+     *
+     * @param item The menu item that was selected.
+     * @return true to consume the selection here.
+     */
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        if (item.getItemId() == R.id.menuReturn) {
+            Intent intent = new Intent(ActivityReplay.this, MainActivity.class);
+            startActivity(intent);
+        }
+        return true;
+    }
+}
@@ -8,7 +8,9 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
+import android.widget.CompoundButton;
 import android.widget.SeekBar;
+import android.widget.Switch;
 import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
@@ -27,8 +29,11 @@ import androidx.core.view.WindowInsetsCompat;
  */
 public class ActivitySettings extends AppCompatActivity {
     private SeekBar musicVolumeSeekBar;
-    private static final String PREFS_NAME = "LudoTimePrefs";
+    private SeekBar sfxVolumeSeekBar;
+    public static final String PREFS_NAME = "LudoTimePrefs";
     private static final String MUSIC_VOLUME_KEY = "musicVolume";
+    public static final String RENDER_THREAD_BOARD_KEY = "renderThreadBoard";
+    public static final String TURBO_MODE_KEY = "turboMode";
 
     /**
      * Initializes the activity and sets up UI components and event listeners
@@ -58,6 +63,37 @@ public class ActivitySettings extends AppCompatActivity {
 
         // Set up music volume control
         setupMusicVolumeControl();
+
+        // Set up sound effects volume control
+        setupSfxVolumeControl();
+
+        // Board drawn on its own render thread
+        setupPreferenceSwitch(R.id.switchRenderThread, RENDER_THREAD_BOARD_KEY);
+
+        // Turbo mode skips dice animations and turn delays
+        setupPreferenceSwitch(R.id.switchTurbo, TURBO_MODE_KEY);
+    }
+
+    /**
+     * Sets up a switch that stores its state in a boolean preference
+     *
+     * @param viewId ID of the switch
+     * @param key    Preference key, false if not set yet
+     */
+    private void setupPreferenceSwitch(int viewId, final String key) {
+        Switch preferenceSwitch = findViewById(viewId);
+
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        preferenceSwitch.setChecked(prefs.getBoolean(key, false));
+
+        preferenceSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                SharedPreferences.Editor editor = getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit();
+                editor.putBoolean(key, isChecked);
+                editor.apply();
+            }
+        });
     }
 
     /**
@@ -96,6 +132,40 @@ public class ActivitySettings extends AppCompatActivity {
         });
     }
 
+    /**
+     * Sets up the sound effects volume seekbar with saved preferences
+     * Sound effects read the value when a game starts or resumes
+     */
+    private void setupSfxVolumeControl() {
+        sfxVolumeSeekBar = findViewById(R.id.volumeSF);
+
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        float savedVolume = prefs.getFloat(BGMusicService.SFX_VOLUME_KEY, 1.0f);
+        sfxVolumeSeekBar.setProgress((int)(savedVolume * 100));
+
+        sfxVolumeSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (fromUser) {
+                    // Save the volume setting (0-100 to 0.0-1.0)
+                    SharedPreferences.Editor editor = getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit();
+                    editor.putFloat(BGMusicService.SFX_VOLUME_KEY, (float) progress / 100f);
+                    editor.apply();
+                }
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+                // Not needed
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                // Not needed
+            }
+        });
+    }
+
     /**
      * Updates the music volume by sending a command to the background music service
      * and saves the volume setting to shared preferences
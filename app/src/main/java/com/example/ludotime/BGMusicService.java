@@ -20,6 +20,7 @@ public class BGMusicService extends Service {
     // ===== Constants =====
     public static final String PREFS_NAME = "LudoTimePrefs";
     public static final String MUSIC_VOLUME_KEY = "musicVolume";
+    public static final String SFX_VOLUME_KEY = "sfxVolume";
     public static final String ACTION_UPDATE_VOLUME = "com.example.ludotime.ACTION_UPDATE_VOLUME";
     public static final String ACTION_STOP_MUSIC = "com.example.ludotime.ACTION_STOP_MUSIC";
 
@@ -0,0 +1,296 @@
+/**
+ * BoardRenderStats.java
+ *
+ * Collects rendering statistics for the game board:
+ * - onDraw duration percentiles
+ * - Frames over the frame budget
+ * - Bytes allocated during each frame
+ * - Invalidation counts
+ *
+ * The statistics can be drawn as a debug overlay on top of the board
+ * and exported to a local text file to attach to bug reports.
+ *
+ * Frames are recorded on the render thread while invalidations, the
+ * overlay toggle and the export come from the main thread, so every
+ * method that touches the counters is synchronized.
+ */
+package com.example.ludotime;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Debug;
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+public class BoardRenderStats {
+    // ===== Constants =====
+    // Number of recent frames kept for percentile calculation
+    private static final int SAMPLE_CAPACITY = 240;
+
+    // Frame budget for a 60Hz display
+    public static final long FRAME_BUDGET_NANOS = 16_666_667L;
+
+    // ===== Frame Samples (ring buffers) =====
+    private final long[] drawDurations = new long[SAMPLE_CAPACITY];
+    private final long[] drawAllocations = new long[SAMPLE_CAPACITY];
+    private final long[] sortBuffer = new long[SAMPLE_CAPACITY];
+    private int sampleCount;
+    private int nextSample;
+
+    // ===== Totals =====
+    private long totalFrames;
+    private long framesOverBudget;
+    private long invalidations;
+    private long maxDrawDuration;
+    private long totalAllocatedBytes;
+    private long statsStartTime;
+
+    // ===== Current Frame =====
+    private long frameStartNanos;
+    private long frameStartAllocated;
+    private boolean frameInProgress;
+
+    // ===== Overlay =====
+    private final Paint overlayBackgroundPaint;
+    private final Paint overlayTextPaint;
+
+    /**
+     * Constructor prepares the overlay paints
+     */
+    public BoardRenderStats() {
+        statsStartTime = SystemClock.elapsedRealtime();
+
+        overlayBackgroundPaint = new Paint();
+        overlayBackgroundPaint.setColor(Color.argb(170, 0, 0, 0));
+        overlayBackgroundPaint.setStyle(Paint.Style.FILL);
+
+        overlayTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        overlayTextPaint.setColor(Color.GREEN);
+        overlayTextPaint.setTextSize(24);
+    }
+
+    /**
+     * Gets the number of bytes the runtime has allocated since the process started,
+     * freed memory included. The runtime stat replaces the deprecated allocation counters. It counts
+     * every thread, so a frame's delta also includes what other threads
+     * allocated while it was drawn
+     *
+     * @return Allocated bytes, 0 if the runtime does not report it
+     */
+    private static long getAllocatedBytes() {
+        String bytes = Debug.getRuntimeStat("art.gc.bytes-allocated");
+        if (bytes == null) return 0;
+        try {
+            return Long.parseLong(bytes);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Mark the beginning of an onDraw pass
+     */
+    public synchronized void beginFrame() {
+        frameStartAllocated = getAllocatedBytes();
+        frameStartNanos = System.nanoTime();
+        frameInProgress = true;
+    }
+
+    /**
+     * Mark the end of an onDraw pass and record its cost
+     */
+    public synchronized void endFrame() {
+        if (!frameInProgress) return;
+        frameInProgress = false;
+
+        long duration = System.nanoTime() - frameStartNanos;
+        long allocated = getAllocatedBytes() - frameStartAllocated;
+
+        drawDurations[nextSample] = duration;
+        drawAllocations[nextSample] = allocated;
+        nextSample = (nextSample + 1) % SAMPLE_CAPACITY;
+        if (sampleCount < SAMPLE_CAPACITY) {
+            sampleCount++;
+        }
+
+        totalFrames++;
+        totalAllocatedBytes += allocated;
+        if (duration > FRAME_BUDGET_NANOS) {
+            framesOverBudget++;
+        }
+        if (duration > maxDrawDuration) {
+            maxDrawDuration = duration;
+        }
+    }
+
+    /**
+     * Count a call to invalidate() on the board
+     */
+    public synchronized void onInvalidate() {
+        invalidations++;
+    }
+
+    /**
+     * Clear all collected statistics
+     */
+    public synchronized void reset() {
+        sampleCount = 0;
+        nextSample = 0;
+        totalFrames = 0;
+        framesOverBudget = 0;
+        invalidations = 0;
+        maxDrawDuration = 0;
+        totalAllocatedBytes = 0;
+        statsStartTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Get a percentile of the recent onDraw durations
+     *
+     * @param percentile Percentile to compute (0-100)
+     * @return Duration in milliseconds, or 0 if no frames were recorded
+     */
+    public synchronized float getDrawPercentileMillis(int percentile) {
+        if (sampleCount == 0) return 0;
+
+        // Sort a copy of the recent samples, the ring buffer itself stays untouched
+        System.arraycopy(drawDurations, 0, sortBuffer, 0, sampleCount);
+        Arrays.sort(sortBuffer, 0, sampleCount);
+
+        int index = (int) Math.ceil(percentile / 100.0 * sampleCount) - 1;
+        index = Math.max(0, Math.min(sampleCount - 1, index));
+        return sortBuffer[index] / 1_000_000f;
+    }
+
+    /**
+     * Get the average number of bytes allocated per frame since the stats were started or reset
+     *
+     * @return Bytes per frame, 0 if no frames were recorded
+     */
+    public synchronized long getAllocatedBytesPerFrame() {
+        return totalFrames == 0 ? 0 : totalAllocatedBytes / totalFrames;
+    }
+
+    /**
+     * Get the largest allocation of the recent frames
+     *
+     * @return Bytes allocated by the worst recent frame
+     */
+    public synchronized long getMaxRecentAllocatedBytes() {
+        long max = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            max = Math.max(max, drawAllocations[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Gets the number of frames drawn since the stats were started or reset
+     *
+     * @return Total frame count
+     */
+    public synchronized long getTotalFrames() {
+        return totalFrames;
+    }
+
+    /**
+     * Gets the number of frames whose onDraw exceeded the frame budget
+     *
+     * @return Frames over budget
+     */
+    public synchronized long getFramesOverBudget() {
+        return framesOverBudget;
+    }
+
+    /**
+     * Gets the number of invalidate() calls on the board
+     *
+     * @return Invalidation count
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Draw the statistics overlay in the top-left corner of the canvas
+     *
+     * @param canvas The canvas to draw on
+     */
+    public synchronized void drawOverlay(Canvas canvas) {
+        String[] lines = {
+                String.format(Locale.US, "onDraw p50 %.2f  p95 %.2f  p99 %.2f ms",
+                        getDrawPercentileMillis(50), getDrawPercentileMillis(95), getDrawPercentileMillis(99)),
+                String.format(Locale.US, "max %.2f ms  over budget %d/%d",
+                        maxDrawDuration / 1_000_000f, framesOverBudget, totalFrames),
+                String.format(Locale.US, "alloc/frame avg %d B  max %d B",
+                        getAllocatedBytesPerFrame(), getMaxRecentAllocatedBytes()),
+                "invalidations " + invalidations
+        };
+
+        float lineHeight = overlayTextPaint.getTextSize() * 1.2f;
+        float padding = lineHeight / 3;
+        float width = 0;
+        for (String line : lines) {
+            width = Math.max(width, overlayTextPaint.measureText(line));
+        }
+
+        canvas.drawRect(0, 0, width + 2 * padding, lines.length * lineHeight + 2 * padding, overlayBackgroundPaint);
+        for (int i = 0; i < lines.length; i++) {
+            canvas.drawText(lines[i], padding, padding + (i + 1) * lineHeight - lineHeight / 4, overlayTextPaint);
+        }
+    }
+
+    /**
+     * Build a plain text report of the collected statistics
+     *
+     * @return Report text
+     */
+    public synchronized String buildReport() {
+        StringBuilder report = new StringBuilder();
+        report.append("LudoTime board render stats\n");
+        report.append("Collected for: ").append((SystemClock.elapsedRealtime() - statsStartTime) / 1000).append(" s\n");
+        report.append("Frames drawn: ").append(totalFrames).append("\n");
+        report.append("Frames over budget (")
+                .append(String.format(Locale.US, "%.1f", FRAME_BUDGET_NANOS / 1_000_000f))
+                .append(" ms): ").append(framesOverBudget).append("\n");
+        report.append("Invalidations: ").append(invalidations).append("\n");
+        report.append(String.format(Locale.US, "onDraw p50: %.3f ms\n", getDrawPercentileMillis(50)));
+        report.append(String.format(Locale.US, "onDraw p90: %.3f ms\n", getDrawPercentileMillis(90)));
+        report.append(String.format(Locale.US, "onDraw p95: %.3f ms\n", getDrawPercentileMillis(95)));
+        report.append(String.format(Locale.US, "onDraw p99: %.3f ms\n", getDrawPercentileMillis(99)));
+        report.append(String.format(Locale.US, "onDraw max: %.3f ms\n", maxDrawDuration / 1_000_000f));
+        report.append("Allocated per frame: ").append(getAllocatedBytesPerFrame()).append(" bytes avg, ")
+                .append(getMaxRecentAllocatedBytes()).append(" bytes max of recent frames\n");
+
+        // Raw samples, oldest first
+        report.append("\nRecent frames (duration us, allocated bytes):\n");
+        int oldest = (nextSample - sampleCount + SAMPLE_CAPACITY) % SAMPLE_CAPACITY;
+        for (int i = 0; i < sampleCount; i++) {
+            int index = (oldest + i) % SAMPLE_CAPACITY;
+            report.append(drawDurations[index] / 1000).append(", ").append(drawAllocations[index]).append("\n");
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * Export the report to a new file in the given directory
+     *
+     * @param directory Directory to write the report into
+     * @return The written file
+     * @throws IOException If the file could not be written
+     */
+    public File exportToFile(File directory) throws IOException {
+        File file = new File(directory, "render_stats_" + System.currentTimeMillis() + ".txt");
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(buildReport());
+        }
+        return file;
+    }
+}
@@ -0,0 +1,314 @@
+/**
+ * BoardRenderer.java
+ *
+ * Draws pawns and selection highlights for a BoardSnapshot onto a Canvas.
+ * Shared by BoardCanvas (drawn on the main thread) and BoardSurfaceView
+ * (drawn on its own render thread), so it only reads the immutable snapshot
+ * and never touches GameLogic.
+ *
+ * All pixel geometry (cell centers, stack offsets, scaled pawn bitmaps and
+ * highlight sizes) is computed once per board size in onSizeChanged, so
+ * drawing a frame is only table lookups.
+ */
+package com.example.ludotime;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import java.util.Arrays;
+
+public class BoardRenderer {
+    //===== Pawn Constants =====
+    public static final int RED_PLAYER = 0;
+    public static final int GREEN_PLAYER = 1;
+    public static final int YELLOW_PLAYER = 2;
+    public static final int BLUE_PLAYER = 3;
+
+    // ===== Board Constants =====
+    private static final int GRID_SIZE = 16;
+    private static final int MAX_PAWNS = 16;       // 4 players x 4 pawns
+    private static final float STACKED_SCALE = 0.7f; // Pawn size when sharing a square
+
+    // ===== Stack Offsets (in cells, indexed by [pawns on square][position in stack]) =====
+    private static final float[][] STACK_OFFSET_X = new float[5][MAX_PAWNS];
+    private static final float[][] STACK_OFFSET_Y = new float[5][MAX_PAWNS];
+
+    static {
+        // Two pawns: diagonal arrangement
+        STACK_OFFSET_X[2][0] = -0.2f; STACK_OFFSET_Y[2][0] = -0.2f;
+        STACK_OFFSET_X[2][1] = 0.2f;  STACK_OFFSET_Y[2][1] = 0.2f;
+
+        // Three pawns: triangular arrangement
+        STACK_OFFSET_X[3][0] = -0.25f;
+        STACK_OFFSET_X[3][1] = 0.25f;
+        STACK_OFFSET_Y[3][2] = 0.25f;
+
+        // Four or more pawns: grid-like arrangement, shifted down for every extra row
+        for (int idx = 0; idx < MAX_PAWNS; idx++) {
+            STACK_OFFSET_X[4][idx] = (idx % 2 == 0) ? -0.25f : 0.25f;
+            STACK_OFFSET_Y[4][idx] = ((idx % 4) < 2 ? -0.25f : 0.25f) + 0.1f * (idx / 4);
+        }
+    }
+
+    // ===== Pawn Bitmaps =====
+    private final Bitmap[] pawnBitmaps; //one per player
+
+    // ===== Precomputed Geometry =====
+    private volatile Geometry geometry; // replaced as a whole when the size changes
+
+    // ===== Reusable Drawing State =====
+    private final Paint highlightPaint;
+    private final RectF highlightRect = new RectF();
+    private final int[] pawnCountOnSquare = new int[GRID_SIZE * GRID_SIZE];
+    private final int[] pawnColorOnSquare = new int[GRID_SIZE * GRID_SIZE * MAX_PAWNS];
+
+    /**
+     * Constructor loads the pawn bitmaps
+     *
+     * @param resources Resources to decode the pawn images from
+     */
+    public BoardRenderer(Resources resources) {
+        pawnBitmaps = new Bitmap[4];
+        pawnBitmaps[RED_PLAYER] = BitmapFactory.decodeResource(resources, R.drawable.red_pawn);
+        pawnBitmaps[GREEN_PLAYER] = BitmapFactory.decodeResource(resources, R.drawable.green_pawn);
+        pawnBitmaps[YELLOW_PLAYER] = BitmapFactory.decodeResource(resources, R.drawable.yellow_pawn);
+        pawnBitmaps[BLUE_PLAYER] = BitmapFactory.decodeResource(resources, R.drawable.blue_pawn);
+
+        highlightPaint = new Paint();
+        highlightPaint.setStyle(Paint.Style.STROKE);
+        highlightPaint.setColor(Color.WHITE);
+        highlightPaint.setStrokeWidth(5);
+    }
+
+    /**
+     * Precompute all pixel geometry for a new board size
+     * Can be called from any thread, the new tables are published in one step
+     *
+     * @param width The board width in pixels
+     * @param height The board height in pixels
+     */
+    public void onSizeChanged(int width, int height) {
+        if (width <= 0 || height <= 0) return;
+
+        Geometry old = geometry;
+        if (old != null && old.width == width && old.height == height) return;
+
+        geometry = new Geometry(width, height, pawnBitmaps);
+    }
+
+    /**
+     * Find which of the current player's pawns was touched
+     * @param snapshot The snapshot currently on screen
+     * @param touchX The X coordinate of the touch in pixels
+     * @param touchY The Y coordinate of the touch in pixels
+     * @param width The width of the board view in pixels
+     * @param height The height of the board view in pixels
+     * @return The touched pawn index (0-3), or -1 if no pawn was touched
+     */
+    public static int findTouchedPawn(BoardSnapshot snapshot, float touchX, float touchY, int width, int height) {
+        // Convert pixel coordinates to board grid position
+        int boardX = (int)(touchX * 16f / width - 0.5);
+        int boardY = (int)(touchY * 16f / height - 0.5);
+
+        // Only allow selection of current player's pawns
+        int currentPlayer = snapshot.getCurrentPlayer();
+        for (int i = 0; i < 4; i++) {
+            int dx = boardX - snapshot.getCellX(currentPlayer, i);
+            int dy = boardY - snapshot.getCellY(currentPlayer, i);
+
+            // Touch must be within 0.5 grid units of the pawn
+            if (Math.sqrt(dx * dx + dy * dy) <= 0.5) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Draw all pawns and highlights of a snapshot
+     * Handles multiple pawns on the same square, visual highlighting of selectable
+     * pawns, and pawns moving between two snapshots
+     *
+     * @param canvas The canvas to draw on
+     * @param snapshot The board state to draw
+     * @param previous The board state being animated from, or null when not animating
+     * @param progress Animation progress from previous to snapshot (0-1)
+     */
+    public void draw(Canvas canvas, BoardSnapshot snapshot, BoardSnapshot previous, float progress) {
+        // Fall back to computing the tables here if no size change was reported yet
+        onSizeChanged(canvas.getWidth(), canvas.getHeight());
+        Geometry g = geometry;
+        if (g == null) return;
+
+        boolean animating = previous != null && progress < 1f;
+
+        // First, count pawns per square and store their colors
+        int[] counts = pawnCountOnSquare;
+        int[] colors = pawnColorOnSquare;
+        Arrays.fill(counts, 0);
+
+        for (int color = 0; color < 4; color++) {
+            for (int i = 0; i < 4; i++) {
+                // Moving pawns are drawn separately below
+                if (animating && snapshot.hasPawnMoved(previous, color, i)) continue;
+
+                int x = snapshot.getCellX(color, i);
+                int y = snapshot.getCellY(color, i);
+                if (x >= 0 && x < GRID_SIZE && y >= 0 && y < GRID_SIZE) {
+                    int square = x * GRID_SIZE + y;
+                    colors[square * MAX_PAWNS + counts[square]] = color;
+                    counts[square]++;
+                }
+            }
+        }
+
+        // Draw pawns with offsets when multiple pawns are on the same square
+        for (int x = 0; x < GRID_SIZE; x++) {
+            for (int y = 0; y < GRID_SIZE; y++) {
+                int square = x * GRID_SIZE + y;
+                int count = counts[square];
+                if (count == 0) continue;
+
+                int row = Math.min(count, 4);
+                Bitmap[] bitmaps = count > 1 ? g.stackedBitmaps : g.singleBitmaps;
+                float left = count > 1 ? g.stackedLeft[x] : g.singleLeft[x];
+                float top = count > 1 ? g.stackedTop[y] : g.singleTop[y];
+
+                for (int idx = 0; idx < count; idx++) {
+                    int pawnColor = colors[square * MAX_PAWNS + idx];
+                    canvas.drawBitmap(bitmaps[pawnColor],
+                            left + g.stackOffsetX[row][idx],
+                            top + g.stackOffsetY[row][idx],
+                            null);
+                }
+            }
+        }
+
+        // Draw pawns that are moving between the two snapshots
+        if (animating) {
+            for (int color = 0; color < 4; color++) {
+                for (int i = 0; i < 4; i++) {
+                    if (!snapshot.hasPawnMoved(previous, color, i)) continue;
+
+                    float fromX = g.singleLeft[previous.getCellX(color, i)];
+                    float fromY = g.singleTop[previous.getCellY(color, i)];
+                    float toX = g.singleLeft[snapshot.getCellX(color, i)];
+                    float toY = g.singleTop[snapshot.getCellY(color, i)];
+
+                    canvas.drawBitmap(g.singleBitmaps[color],
+                            fromX + (toX - fromX) * progress,
+                            fromY + (toY - fromY) * progress,
+                            null);
+                }
+            }
+        }
+
+        // Draw highlight around movable pawns if game is waiting for selection
+        if (snapshot.isWaitingForSelection()) {
+            int currentPlayer = snapshot.getCurrentPlayer();
+
+            // Highlight movable pawns
+            for (int i = 0; i < 4; i++) {
+                if (!snapshot.isHighlighted(currentPlayer, i)) continue;
+
+                int cellX = snapshot.getCellX(currentPlayer, i);
+                int cellY = snapshot.getCellY(currentPlayer, i);
+                float x = g.highlightX[cellX];
+                float y = g.highlightY[cellY];
+
+                if (counts[cellX * GRID_SIZE + cellY] > 1) {
+                    // Draw a square highlight for multiple pawns
+                    highlightRect.set(x - g.highlightHalfSquare, y - g.highlightHalfSquare,
+                            x + g.highlightHalfSquare, y + g.highlightHalfSquare);
+                    canvas.drawRect(highlightRect, highlightPaint);
+                } else {
+                    // Draw a circle highlight for a single pawn
+                    canvas.drawCircle(x, y, g.highlightRadius, highlightPaint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Pixel geometry for one board size. Immutable once built, so the render
+     * thread can keep using an old instance while a new one is published.
+     */
+    private static final class Geometry {
+        final int width;
+        final int height;
+
+        // Top-left draw position of a pawn bitmap in each column/row
+        final float[] singleLeft = new float[GRID_SIZE];
+        final float[] singleTop = new float[GRID_SIZE];
+        final float[] stackedLeft = new float[GRID_SIZE];
+        final float[] stackedTop = new float[GRID_SIZE];
+
+        // Stack offsets in pixels, indexed by [pawns on square][position in stack]
+        final float[][] stackOffsetX = new float[5][MAX_PAWNS];
+        final float[][] stackOffsetY = new float[5][MAX_PAWNS];
+
+        // Pawn bitmaps scaled to cell size, one per player
+        final Bitmap[] singleBitmaps = new Bitmap[4];
+        final Bitmap[] stackedBitmaps = new Bitmap[4];
+
+        // Highlight centers and sizes
+        final float[] highlightX = new float[GRID_SIZE];
+        final float[] highlightY = new float[GRID_SIZE];
+        final float highlightRadius;
+        final float highlightHalfSquare;
+
+        /**
+         * Build all tables for a board size
+         *
+         * @param width The board width in pixels
+         * @param height The board height in pixels
+         * @param pawnBitmaps The unscaled pawn bitmaps, one per player
+         */
+        Geometry(int width, int height, Bitmap[] pawnBitmaps) {
+            this.width = width;
+            this.height = height;
+
+            int incx = width / GRID_SIZE;
+            float aspectRatio = (float) pawnBitmaps[BLUE_PLAYER].getHeight() / pawnBitmaps[BLUE_PLAYER].getWidth();
+            int singleWidth = incx;
+            int singleHeight = (int) (singleWidth * aspectRatio);
+            int stackedWidth = (int) (singleWidth * STACKED_SCALE);
+            int stackedHeight = (int) (singleHeight * STACKED_SCALE);
+
+            for (int i = 0; i < 4; i++) {
+                singleBitmaps[i] = Bitmap.createScaledBitmap(pawnBitmaps[i], singleWidth, singleHeight, true);
+                stackedBitmaps[i] = Bitmap.createScaledBitmap(pawnBitmaps[i], stackedWidth, stackedHeight, true);
+            }
+
+            for (int cell = 0; cell < GRID_SIZE; cell++) {
+                // Cell center, shifted by half a cell, minus half the bitmap for proper centering
+                int centerX = (int) (width * ((float) (cell + 0.5) / GRID_SIZE));
+                int centerY = (int) (height * ((float) (cell + 0.5) / GRID_SIZE));
+                singleLeft[cell] = centerX - singleWidth / 2f + 0.5f * incx;
+                singleTop[cell] = centerY - singleHeight / 2f + 0.5f * incx;
+                stackedLeft[cell] = centerX - stackedWidth / 2f + 0.5f * incx;
+                stackedTop[cell] = centerY - stackedHeight / 2f + 0.5f * incx;
+
+                // Highlights are centered on the top-left corner of the next cell
+                highlightX[cell] = (int) (width * ((float) (cell + 1) / GRID_SIZE));
+                highlightY[cell] = (int) (height * ((float) (cell + 1) / GRID_SIZE));
+            }
+
+            for (int count = 0; count < 5; count++) {
+                for (int idx = 0; idx < MAX_PAWNS; idx++) {
+                    stackOffsetX[count][idx] = STACK_OFFSET_X[count][idx] * incx;
+                    stackOffsetY[count][idx] = STACK_OFFSET_Y[count][idx] * incx;
+                }
+            }
+
+            float cellSize = width / (float) GRID_SIZE;
+            highlightRadius = cellSize / 2;
+            highlightHalfSquare = cellSize / 2 + cellSize * 0.1f; // Add some padding around the square
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * BoardSnapshot.java
+ *
+ * Immutable copy of everything needed to draw the board at one moment:
+ * the grid cell of every pawn, whose turn it is and which pawns are
+ * highlighted for selection.
+ *
+ * Snapshots are built on the main thread from GameLogic and can then be
+ * handed to a render thread without sharing any mutable game state.
+ */
+package com.example.ludotime;
+
+import android.graphics.Point;
+
+public final class BoardSnapshot {
+    // ===== Constants =====
+    public static final int PLAYERS = 4;
+    public static final int PAWNS_PER_PLAYER = 4;
+
+    // ===== Pawn Cells (indexed by player * 4 + pawn) =====
+    private final int[] cellX;
+    private final int[] cellY;
+
+    // ===== Selection State =====
+    private final boolean[] highlighted;
+    private final boolean waitingForSelection;
+    private final int currentPlayer;
+    private final int lastDiceRoll;
+
+    /**
+     * Private constructor, use from() to build a snapshot
+     */
+    private BoardSnapshot(int[] cellX, int[] cellY, boolean[] highlighted,
+                          boolean waitingForSelection, int currentPlayer, int lastDiceRoll) {
+        this.cellX = cellX;
+        this.cellY = cellY;
+        this.highlighted = highlighted;
+        this.waitingForSelection = waitingForSelection;
+        this.currentPlayer = currentPlayer;
+        this.lastDiceRoll = lastDiceRoll;
+    }
+
+    /**
+     * Capture the current board state of a game
+     *
+     * @param gameLogic The game to capture
+     * @return A new immutable snapshot
+     */
+    public static BoardSnapshot from(GameLogic gameLogic) {
+        int[] cellX = new int[PLAYERS * PAWNS_PER_PLAYER];
+        int[] cellY = new int[PLAYERS * PAWNS_PER_PLAYER];
+        boolean[] highlighted = new boolean[PLAYERS * PAWNS_PER_PLAYER];
+
+        for (int color = 0; color < PLAYERS; color++) {
+            for (int i = 0; i < PAWNS_PER_PLAYER; i++) {
+                Point position = gameLogic.getPawnBoardPosition(color, i);
+                cellX[color * PAWNS_PER_PLAYER + i] = position.x;
+                cellY[color * PAWNS_PER_PLAYER + i] = position.y;
+            }
+        }
+
+        int currentPlayer = gameLogic.getCurrentPlayerTurn();
+        boolean waiting = gameLogic.isWaitingForPawnSelection();
+        if (waiting) {
+            // Highlight movable pawns of the current player
+            for (int i = 0; i < PAWNS_PER_PLAYER; i++) {
+                boolean canMove = false;
+                if (gameLogic.isPawnInHome(currentPlayer, i) && gameLogic.getLastDiceRoll() == 6) {
+                    canMove = true;
+                } else if (!gameLogic.isPawnInHome(currentPlayer, i) && !gameLogic.isPawnFinished(currentPlayer, i)) {
+                    canMove = true;
+                }
+                highlighted[currentPlayer * PAWNS_PER_PLAYER + i] = canMove;
+            }
+        }
+
+        return new BoardSnapshot(cellX, cellY, highlighted, waiting, currentPlayer, gameLogic.getLastDiceRoll());
+    }
+
+    /**
+     * Get the grid X cell of a pawn
+     *
+     * @param color Player index (0-3)
+     * @param pawn  Pawn index (0-3)
+     * @return Grid X coordinate (0-15)
+     */
+    public int getCellX(int color, int pawn) {
+        return cellX[color * PAWNS_PER_PLAYER + pawn];
+    }
+
+    /**
+     * Get the grid Y cell of a pawn
+     *
+     * @param color Player index (0-3)
+     * @param pawn  Pawn index (0-3)
+     * @return Grid Y coordinate (0-15)
+     */
+    public int getCellY(int color, int pawn) {
+        return cellY[color * PAWNS_PER_PLAYER + pawn];
+    }
+
+    /**
+     * Check if a pawn should be highlighted as selectable
+     *
+     * @param color Player index (0-3)
+     * @param pawn  Pawn index (0-3)
+     * @return True if the pawn can be selected
+     */
+    public boolean isHighlighted(int color, int pawn) {
+        return highlighted[color * PAWNS_PER_PLAYER + pawn];
+    }
+
+    /**
+     * Check if the game was waiting for a pawn selection
+     *
+     * @return True if waiting for selection
+     */
+    public boolean isWaitingForSelection() {
+        return waitingForSelection;
+    }
+
+    /**
+     * Gets the player whose turn it was
+     *
+     * @return Player index (0-3)
+     */
+    public int getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    /**
+     * Gets the last dice roll at capture time
+     *
+     * @return Dice value (1-6) or 0 if not rolled
+     */
+    public int getLastDiceRoll() {
+        return lastDiceRoll;
+    }
+
+    /**
+     * Check if a pawn is on a different cell than in another snapshot
+     *
+     * @param other The snapshot to compare with
+     * @param color Player index (0-3)
+     * @param pawn  Pawn index (0-3)
+     * @return True if the pawn moved between the snapshots
+     */
+    public boolean hasPawnMoved(BoardSnapshot other, int color, int pawn) {
+        int index = color * PAWNS_PER_PLAYER + pawn;
+        return cellX[index] != other.cellX[index] || cellY[index] != other.cellY[index];
+    }
+}
@@ -0,0 +1,363 @@
+/**
+ * BoardSurfaceView.java
+ *
+ * Alternative board view that draws on its own render thread using a SurfaceView.
+ * The main thread only hands over immutable BoardSnapshots, so dialogs, Firebase
+ * callbacks and dice animations on the main thread cannot stall pawn animations.
+ * Pawns that change cells between two snapshots are animated on the render thread.
+ */
+package com.example.ludotime;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+public class BoardSurfaceView extends SurfaceView implements SurfaceHolder.Callback, GameBoardView {
+    // ===== Constants =====
+    private static final String TAG = "BoardSurfaceView";
+
+    // Duration of a pawn moving from one cell to another
+    private static final long PAWN_ANIMATION_MILLIS = 180;
+
+    // Pause before trying again when the surface has no canvas to lend
+    private static final long CANVAS_RETRY_MILLIS = 16;
+
+    //===== Reference to Logic Class =====
+    private GameLogic gameLogic;
+
+    // ===== Rendering =====
+    private final BoardRenderer renderer;
+    private RenderThread renderThread;
+
+    // ===== Snapshot Handover =====
+    private final Object snapshotLock = new Object();
+    private BoardSnapshot pendingSnapshot; // guarded by snapshotLock
+    private boolean redrawRequested;       // guarded by snapshotLock
+    private volatile BoardSnapshot latestSnapshot;
+
+    // One snapshot for all events of a move, taken after GameLogic finished changing
+    private boolean refreshPosted;
+    private final Runnable refreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            refreshPosted = false;
+            refreshBoard();
+        }
+    };
+
+    // Schedule a snapshot only when an event changed what is on the board
+    private final GameEvent.Listener gameEventListener = new GameEvent.Listener() {
+        @Override
+        public void onGameEvent(GameEvent event) {
+            if (event.getType() == GameEvent.Type.DICE_ROLLED
+                    || event.getType() == GameEvent.Type.PLAYER_FINISHED) {
+                return;
+            }
+            if (!refreshPosted) {
+                refreshPosted = true;
+                post(refreshRunnable);
+            }
+        }
+    };
+
+    // ===== Render Statistics (debug overlay) =====
+    private volatile BoardRenderStats renderStats; // null when the overlay is disabled
+
+    /**
+     * Constructor initializes the surface board for an existing game
+     *
+     * @param context Application context
+     * @param gameLogic The game to display
+     */
+    public BoardSurfaceView(Context context, GameLogic gameLogic) {
+        super(context);
+        this.gameLogic = gameLogic;
+        gameLogic.addGameEventListener(gameEventListener);
+        renderer = new BoardRenderer(getResources());
+
+        // Draw above the board image with a transparent background
+        setZOrderOnTop(true);
+        getHolder().setFormat(PixelFormat.TRANSPARENT);
+        getHolder().addCallback(this);
+
+        // Enable touch events
+        setClickable(true);
+
+        refreshBoard();
+    }
+
+    /**
+     * Get a reference to the logic class
+     * @return the logic class
+     */
+    @Override
+    public GameLogic getLogic() {
+        return gameLogic;
+    }
+
+    /**
+     * Set the game logic instance for this board
+     * @param gameLogic The GameLogic instance to use for game state management
+     */
+    @Override
+    public void setLogic(GameLogic gameLogic) {
+        this.gameLogic.removeGameEventListener(gameEventListener);
+        this.gameLogic = gameLogic;
+        gameLogic.addGameEventListener(gameEventListener);
+        refreshBoard();
+    }
+
+    /**
+     * Capture the current game state and hand it over to the render thread.
+     * Must be called on the main thread, the only thread that touches GameLogic.
+     */
+    @Override
+    public void refreshBoard() {
+        BoardSnapshot snapshot = BoardSnapshot.from(gameLogic);
+        latestSnapshot = snapshot;
+
+        BoardRenderStats stats = renderStats;
+        if (stats != null) {
+            stats.onInvalidate();
+        }
+
+        synchronized (snapshotLock) {
+            pendingSnapshot = snapshot;
+            snapshotLock.notifyAll();
+        }
+    }
+
+    /**
+     * Handle touch events on the game board
+     * Handles pawn selection when game logic is waiting for it
+     * @param event The motion event containing touch information
+     * @return true if the event was handled, false otherwise
+     */
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (event.getAction() != MotionEvent.ACTION_DOWN) {
+            return super.onTouchEvent(event);
+        }
+
+        if (gameLogic.isWaitingForPawnSelection()) {
+            int pawn = BoardRenderer.findTouchedPawn(latestSnapshot,
+                    event.getX(), event.getY(), getWidth(), getHeight());
+
+            if (pawn != -1) {
+                // The move's events schedule the next snapshot
+                gameLogic.setPawnSelection(pawn);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Start the render thread once the surface exists
+     * A new thread starts with nothing on screen, so it is handed the last
+     * snapshot to draw as soon as the size is known
+     * @param holder The surface holder
+     */
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        synchronized (snapshotLock) {
+            if (pendingSnapshot == null) {
+                pendingSnapshot = latestSnapshot;
+            }
+        }
+        renderThread = new RenderThread(holder);
+        renderThread.start();
+    }
+
+    /**
+     * Precompute the pixel geometry and redraw when the surface size changes
+     * @param holder The surface holder
+     * @param format The new pixel format
+     * @param width The new width in pixels
+     * @param height The new height in pixels
+     */
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        renderer.onSizeChanged(width, height);
+        requestRedraw();
+    }
+
+    /**
+     * Stop the render thread before the surface goes away
+     * @param holder The surface holder
+     */
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        if (renderThread == null) return;
+
+        renderThread.quit();
+        synchronized (snapshotLock) {
+            snapshotLock.notifyAll();
+        }
+
+        try {
+            renderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        renderThread = null;
+    }
+
+    /**
+     * Ask the render thread to draw again without a new snapshot
+     */
+    private void requestRedraw() {
+        synchronized (snapshotLock) {
+            redrawRequested = true;
+            snapshotLock.notifyAll();
+        }
+    }
+
+    /**
+     * Enable or disable the render statistics overlay
+     * @param enabled true to collect statistics and draw the overlay
+     */
+    @Override
+    public void setRenderStatsEnabled(boolean enabled) {
+        if (enabled && renderStats == null) {
+            renderStats = new BoardRenderStats();
+        } else if (!enabled) {
+            renderStats = null;
+        }
+        requestRedraw();
+    }
+
+    /**
+     * Check if the render statistics overlay is enabled
+     * @return true if statistics are being collected
+     */
+    @Override
+    public boolean isRenderStatsEnabled() {
+        return renderStats != null;
+    }
+
+    /**
+     * Get the render statistics collector
+     * @return The statistics, or null if the overlay is disabled
+     */
+    @Override
+    public BoardRenderStats getRenderStats() {
+        return renderStats;
+    }
+
+    /**
+     * Thread that owns the surface and draws snapshots as they arrive.
+     * Sleeps while there is nothing new to draw and no animation is running.
+     */
+    private class RenderThread extends Thread {
+        private final SurfaceHolder holder;
+        private volatile boolean running = true;
+
+        // Render thread state, never touched by other threads
+        private BoardSnapshot current;
+        private BoardSnapshot previous;
+        private long animationStart;
+
+        /**
+         * @param holder The surface to draw on
+         */
+        RenderThread(SurfaceHolder holder) {
+            super("BoardRenderThread");
+            this.holder = holder;
+        }
+
+        /**
+         * Ask the thread to finish after the current frame
+         */
+        void quit() {
+            running = false;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                BoardSnapshot next;
+                synchronized (snapshotLock) {
+                    // Wait for a new snapshot unless a pawn animation is still running
+                    while (running && pendingSnapshot == null && !redrawRequested && previous == null) {
+                        try {
+                            snapshotLock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    next = pendingSnapshot;
+                    pendingSnapshot = null;
+                    redrawRequested = false;
+                }
+                if (!running) break;
+
+                // Start animating from what is currently on screen
+                if (next != null) {
+                    previous = current;
+                    current = next;
+                    animationStart = SystemClock.uptimeMillis();
+                }
+                if (current == null) continue;
+
+                float progress = 1f;
+                if (previous != null) {
+                    progress = Math.min(1f, (SystemClock.uptimeMillis() - animationStart) / (float) PAWN_ANIMATION_MILLIS);
+                }
+
+                if (!drawFrame(progress)) {
+                    // No canvas yet, wait a frame instead of spinning, then draw the frame again
+                    synchronized (snapshotLock) {
+                        try {
+                            snapshotLock.wait(CANVAS_RETRY_MILLIS);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        redrawRequested = true;
+                    }
+                    continue;
+                }
+
+                if (progress >= 1f) {
+                    previous = null;
+                }
+            }
+        }
+
+        /**
+         * Draw one frame, lockCanvas blocks until a buffer is free which paces the animation
+         * @param progress Animation progress from previous to current snapshot (0-1)
+         * @return false if the surface had no canvas and nothing was drawn
+         */
+        private boolean drawFrame(float progress) {
+            Canvas canvas = holder.lockCanvas();
+            if (canvas == null) return false;
+
+            BoardRenderStats stats = renderStats;
+            try {
+                if (stats != null) {
+                    stats.beginFrame();
+                }
+
+                canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                renderer.draw(canvas, current, previous, progress);
+
+                if (stats != null) {
+                    stats.endFrame();
+                    stats.drawOverlay(canvas);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to draw board frame", e);
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
+            }
+            return true;
+        }
+    }
+}
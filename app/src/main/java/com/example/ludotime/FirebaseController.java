@@ -45,11 +45,16 @@ public class FirebaseController {
 
     /**
      * Get the Firebase Database instance using singleton pattern
+     * Disk persistence is enabled on first use, so a multiplayer game survives
+     * a dropped connection without downloading it again
      * @return FirebaseDatabase instance for database operations
      */
     public static FirebaseDatabase getDatabase(){
-        if (database == null)
+        if (database == null) {
             database = FirebaseDatabase.getInstance();
+            // Only allowed before the first read or write of the database
+            database.setPersistenceEnabled(true);
+        }
         return database;
     }
 
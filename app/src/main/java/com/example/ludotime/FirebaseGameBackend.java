@@ -0,0 +1,350 @@
+/**
+ * FirebaseGameBackend.java
+ *
+ * GameBackend on top of the Firebase Realtime Database.
+ */
+package com.example.ludotime;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.MutableData;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.Transaction;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class FirebaseGameBackend implements GameBackend {
+    private final FirebaseDatabase database;
+
+    /**
+     * Constructor uses the app's database with disk persistence enabled
+     */
+    public FirebaseGameBackend() {
+        this(FirebaseController.getDatabase());
+    }
+
+    /**
+     * Constructor for a specific Firebase database
+     *
+     * @param database The database
+     */
+    public FirebaseGameBackend(FirebaseDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Gets the reference of a path
+     *
+     * @param path Slash separated path
+     * @return The database reference
+     */
+    private DatabaseReference ref(String path) {
+        return path.isEmpty() ? database.getReference() : database.getReference(path);
+    }
+
+    /**
+     * Read the value at a path once
+     *
+     * @param path     The path
+     * @param listener Receives the value
+     */
+    @Override
+    public void get(String path, ReadListener listener) {
+        ref(path).get().addOnCompleteListener(task -> {
+            if (task.isSuccessful()) {
+                listener.onRead(task.getResult().getValue());
+            } else {
+                listener.onError(task.getException() != null ? task.getException().getMessage() : "Read failed");
+            }
+        });
+    }
+
+    /**
+     * Replace the value at a path
+     *
+     * @param path     The path
+     * @param value    The new value, null deletes the path
+     * @param listener Receives the result, or null
+     */
+    @Override
+    public void set(String path, Object value, CompletionListener listener) {
+        ref(path).setValue(value, (error, reference) -> {
+            if (listener != null) {
+                listener.onComplete(error != null ? error.getMessage() : null);
+            }
+        });
+    }
+
+    /**
+     * Write several children of a path in one atomic update
+     *
+     * @param path     The parent path
+     * @param values   Values by relative child path, null deletes
+     * @param listener Receives the result, or null
+     */
+    @Override
+    public void update(String path, Map<String, Object> values, CompletionListener listener) {
+        ref(path).updateChildren(values, (error, reference) -> {
+            if (listener != null) {
+                listener.onComplete(error != null ? error.getMessage() : null);
+            }
+        });
+    }
+
+    /**
+     * Change the value at a path based on its current value
+     * Firebase retries the handler itself when the value changed
+     *
+     * @param path    The path
+     * @param handler Computes the new value and receives the result
+     */
+    @Override
+    public void transaction(String path, TransactionHandler handler) {
+        ref(path).runTransaction(new Transaction.Handler() {
+            @NonNull
+            @Override
+            public Transaction.Result doTransaction(@NonNull MutableData mutableData) {
+                Object value = handler.apply(mutableData.getValue());
+                if (value == ABORT) {
+                    return Transaction.abort();
+                }
+                mutableData.setValue(value);
+                return Transaction.success(mutableData);
+            }
+
+            @Override
+            public void onComplete(DatabaseError databaseError, boolean committed, DataSnapshot dataSnapshot) {
+                handler.onComplete(databaseError != null ? databaseError.getMessage() : null, committed,
+                        dataSnapshot != null ? dataSnapshot.getValue() : null);
+            }
+        });
+    }
+
+    /**
+     * Read the children of a path selected by a query once
+     * Needs an ".indexOn" rule for the ordering child, see database.rules.json
+     *
+     * @param path     The parent path
+     * @param query    Order, bounds and limit
+     * @param listener Receives a Map of the selected children in query order
+     */
+    @Override
+    public void query(String path, ChildQuery query, ReadListener listener) {
+        toFirebaseQuery(path, query).get().addOnCompleteListener(task -> {
+            if (!task.isSuccessful()) {
+                listener.onError(task.getException() != null ? task.getException().getMessage() : "Query failed");
+                return;
+            }
+
+            // getValue() would lose the order, the children iterate in query order
+            Map<String, Object> children = new LinkedHashMap<>();
+            for (DataSnapshot child : task.getResult().getChildren()) {
+                children.put(child.getKey(), child.getValue());
+            }
+            listener.onRead(children);
+        });
+    }
+
+    /**
+     * Build the Firebase query for a ChildQuery
+     *
+     * @param path  The parent path
+     * @param query Order, bounds and limit
+     * @return The Firebase query
+     */
+    private Query toFirebaseQuery(String path, ChildQuery query) {
+        Query firebaseQuery = ref(path).orderByChild(query.getOrderByChild());
+        if (query.hasStart()) {
+            firebaseQuery = startAfter(firebaseQuery, query.getStartAfterValue(), query.getStartAfterKey());
+        }
+        if (query.hasEnd()) {
+            firebaseQuery = endAt(firebaseQuery, query.getEndAtValue());
+        }
+        if (query.getLimitToFirst() > 0) {
+            firebaseQuery = firebaseQuery.limitToFirst(query.getLimitToFirst());
+        }
+        return firebaseQuery;
+    }
+
+    /**
+     * Apply a start position with the Firebase method for the value's type
+     *
+     * @param query The query so far
+     * @param value Boolean, Number or String
+     * @param key   Key of the position, or null
+     * @return The bounded query
+     */
+    private static Query startAfter(Query query, Object value, String key) {
+        if (value instanceof Boolean) return query.startAfter((Boolean) value, key);
+        if (value instanceof Number) return query.startAfter(((Number) value).doubleValue(), key);
+        return query.startAfter((String) value, key);
+    }
+
+    /**
+     * Apply an upper bound with the Firebase method for the value's type
+     *
+     * @param query The query so far
+     * @param value Boolean, Number or String
+     * @return The bounded query
+     */
+    private static Query endAt(Query query, Object value) {
+        if (value instanceof Boolean) return query.endAt((Boolean) value);
+        if (value instanceof Number) return query.endAt(((Number) value).doubleValue());
+        return query.endAt((String) value);
+    }
+
+    /**
+     * Follow the value at a path
+     *
+     * @param path     The path
+     * @param listener Receives the value now and after every change
+     * @return Handle to detach the listener
+     */
+    @Override
+    public Registration addValueListener(String path, ValueListener listener) {
+        final DatabaseReference reference = ref(path);
+        final ValueEventListener eventListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
+                listener.onValue(dataSnapshot.getValue());
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError databaseError) {
+                listener.onError(databaseError.getMessage());
+            }
+        };
+        reference.addValueEventListener(eventListener);
+        return () -> reference.removeEventListener(eventListener);
+    }
+
+    /**
+     * Follow the children of a path, ordered by key
+     *
+     * @param path     The parent path
+     * @param startAt  First key to report, or null for all children
+     * @param listener Receives existing and new children
+     * @return Handle to detach the listener
+     */
+    @Override
+    public Registration addChildListener(String path, String startAt, ChildListener listener) {
+        Query query = ref(path).orderByKey();
+        if (startAt != null) {
+            query = query.startAt(startAt);
+        }
+
+        final Query attached = query;
+        final ChildEventListener eventListener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot dataSnapshot, String previousChildName) {
+                listener.onChildAdded(dataSnapshot.getKey(), dataSnapshot.getValue());
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot dataSnapshot, String previousChildName) {
+                // Only additions are reported
+            }
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot dataSnapshot) {
+                // Only additions are reported
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot dataSnapshot, String previousChildName) {
+                // Only additions are reported
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError databaseError) {
+                listener.onError(databaseError.getMessage());
+            }
+        };
+        attached.addChildEventListener(eventListener);
+        return () -> attached.removeEventListener(eventListener);
+    }
+
+    /**
+     * Follow the children of a path selected by a query
+     * Needs an ".indexOn" rule for the ordering child, see database.rules.json
+     *
+     * @param path     The parent path
+     * @param query    Order, bounds and limit
+     * @param listener Receives the selected children and later changes of the selection
+     * @return Handle to detach the listener
+     */
+    @Override
+    public Registration addQueryListener(String path, ChildQuery query, QueryListener listener) {
+        final Query attached = toFirebaseQuery(path, query);
+        final ChildEventListener eventListener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot dataSnapshot, String previousChildName) {
+                listener.onChildAdded(dataSnapshot.getKey(), dataSnapshot.getValue());
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot dataSnapshot, String previousChildName) {
+                listener.onChildChanged(dataSnapshot.getKey(), dataSnapshot.getValue());
+            }
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot dataSnapshot) {
+                listener.onChildRemoved(dataSnapshot.getKey());
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot dataSnapshot, String previousChildName) {
+                // Reported through onChildChanged, listeners order the children themselves
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError databaseError) {
+                listener.onError(databaseError.getMessage());
+            }
+        };
+        attached.addChildEventListener(eventListener);
+        return () -> attached.removeEventListener(eventListener);
+    }
+
+    /**
+     * Keep a path cached and up to date even without listeners
+     *
+     * @param path       The path
+     * @param keepSynced True to keep it synced, false to stop
+     */
+    @Override
+    public void keepSynced(String path, boolean keepSynced) {
+        ref(path).keepSynced(keepSynced);
+    }
+
+    /**
+     * Follow the connection through the special .info/connected path
+     *
+     * @param listener Receives the state now and after every change
+     * @return Handle to detach the listener
+     */
+    @Override
+    public Registration addConnectionListener(ConnectionListener listener) {
+        final DatabaseReference reference = ref(".info/connected");
+        final ValueEventListener eventListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
+                listener.onConnectionChanged(Boolean.TRUE.equals(dataSnapshot.getValue(Boolean.class)));
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError databaseError) {
+                // .info paths are local and never cancelled
+            }
+        };
+        reference.addValueEventListener(eventListener);
+        return () -> reference.removeEventListener(eventListener);
+    }
+}
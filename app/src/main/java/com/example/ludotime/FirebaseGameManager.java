@@ -2,19 +2,13 @@ package com.example.ludotime;
 
 import android.util.Log;
 
-import androidx.annotation.NonNull;
-
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.MutableData;
-import com.google.firebase.database.Transaction;
-import com.google.firebase.database.ValueEventListener;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Random;
 
 /**
@@ -24,25 +18,50 @@ import java.util.Random;
  * functionality including turn management, dice rolling, and pawn movement coordination.
  *
  * <p>The manager uses Firebase transactions to ensure data consistency and prevent race conditions
- * when multiple players perform actions simultaneously. It also provides real-time updates
+ * when multiple players perform actions simultaneously. Turn operations only run transactions on
+ * the small board state node (see GameStateNodes) and lobby changes use multi-path updates, so
+ * the whole game node is never rewritten during play. It also provides real-time updates
  * through Firebase listeners to keep all players synchronized with the current game state.</p>
-
+ *
+ * <p>Turn results reach the listener only after Firebase confirmed them, nothing is predicted
+ * locally. The app has no screen that plays an online game yet (the lobby opens
+ * ActivityGameLocal), so a predicted board would have nowhere to be drawn.</p>
  */
 public class FirebaseGameManager {
     /** Tag used for logging debug information */
     private static final String TAG = "FirebaseGameManager";
 
     /** Firebase database reference path for games collection */
-    private static final String GAMES_REF = "games";
+    static final String GAMES_REF = "games";
+
+    /** Firebase database reference path for the move logs, one list per game */
+    static final String MOVES_REF = "moves";
 
-    /** Firebase Authentication instance for user management */
-    private static FirebaseAuth mAuth;
+    /** Child paths of a game node */
+    static final String STATE_PATH = GameSnapshotCodec.STATE;
+    private static final String READY_PATH = "isReady";
+    private static final String PLAYER_ID_PATH = "playerID";
+    private static final String PLAYER_NAME_PATH = "playerName";
+    private static final String PLAYER_COUNT_PATH = "currentPlayersNumber";
+    static final String STARTED_PATH = "gameStarted";
+    static final String TIMESTAMP_PATH = "lastUpdateTimestamp";
 
-    /** Firebase Database instance for data operations */
-    private static FirebaseDatabase database;
+    /** Number of reserved codes createGame() tries before giving up */
+    private static final int MAX_CREATE_ATTEMPTS = 3;
 
-    /** Database reference specifically for games collection */
-    private DatabaseReference gamesRef;
+    /** Positions onPawnMoved reports off the shared track (track cells are 0-51) */
+    public static final int POSITION_HOME = -1;
+    public static final int POSITION_FINAL_PATH = 52;
+    public static final int POSITION_FINISHED = 57;
+
+    /** Database the games are stored in, Firebase unless a stand-in is given */
+    private final GameBackend backend;
+
+    /** Counters of every transaction and write this manager performs */
+    private final TransactionMetrics metrics = new TransactionMetrics();
+
+    /** Reserves game codes, a few ahead of time once prefetchGameIds() was called */
+    private final GameIdAllocator idAllocator;
 
     /** Current user's unique identifier */
     private String currentUserId;
@@ -50,8 +69,62 @@ public class FirebaseGameManager {
     /** ID of the currently active game session */
     private String currentGameId;
 
+    /** Latest state of the current game received from Firebase */
+    private MultiplayerGameLogic currentGame;
+
+    /** Reused by the join transaction to decode the game without allocating */
+    private final MultiplayerGameLogic joinScratch = new MultiplayerGameLogic();
+
+    /** Seat (color) of the current user in the current game, -1 if none */
+    private int localSeat = -1;
+
     /** Listener for real-time game state updates */
-    private ValueEventListener gameListener;
+    private GameBackend.Registration gameListener;
+
+    /** Listener for the turn node while the game is played */
+    private GameBackend.Registration turnListener;
+
+    /** Listener for new move log entries while the game is played */
+    private GameBackend.Registration movesListener;
+
+    /** Listener for the connection state while the game is played */
+    private GameBackend.Registration connectionListener;
+
+    /** Listener for the player count while the game is played */
+    private GameBackend.Registration seatsListener;
+
+    /** Game whose state and move log are kept synced on disk */
+    private String syncedGameId;
+
+    /** True while the moves listener is detached because the connection dropped */
+    private boolean movesPaused = false;
+
+    /** Board kept up to date by applying the move log, null before the game starts */
+    private GameLogic syncedLogic;
+
+    /** Last game passed through the game listener, changes are dispatched against it */
+    private MultiplayerGameLogic dispatchedGame;
+
+    /** Creation time of the game this user hosts, listed in its lobby summary */
+    private long lobbyCreatedAt;
+
+    /** Listener for this user's quick match while queued, null if not queued */
+    private GameBackend.Registration matchListener;
+
+    /** True if the games this user creates are refereed */
+    private boolean createRefereed = false;
+
+    /** True if the current game's turns are sent as intents to a GameReferee instead of run as transactions */
+    private boolean refereed = false;
+
+    /** Listener for the referee's answer to this player's intents */
+    private GameBackend.Registration intentListener;
+
+    /** Sequence number of the next move log entry to apply */
+    private int nextMoveSeq;
+
+    /** True while the state node is read to see whether the move log fell behind */
+    private boolean moveLogCheckPending;
 
     /** Callback interface for notifying UI about game events */
     private GameUpdateListener updateListener;
@@ -74,11 +147,28 @@ public class FirebaseGameManager {
         void onGameJoined(MultiplayerGameLogic game);
 
         /**
-         * Called when any aspect of the game state is updated
+         * Called with the first snapshot of a game and when a game-level field changes
+         * (started flag, player count, host). Seats, ready flags, dice, pawns and turns
+         * have their own callbacks and do not trigger this one
          * @param game The updated game state
          */
         void onGameUpdated(MultiplayerGameLogic game);
 
+        /**
+         * Called when a seat is taken, freed or its player renamed
+         * @param seat The seat index (0-3)
+         * @param playerId The player now in the seat, or null if it is free
+         * @param playerName The display name of that player
+         */
+        void onSeatChanged(int seat, String playerId, String playerName);
+
+        /**
+         * Called when the ready flag of a seat changes
+         * @param seat The seat index (0-3)
+         * @param ready The new ready flag
+         */
+        void onPlayerReadyChanged(int seat, boolean ready);
+
         /**
          * Called when a new player joins the game
          * @param playerId The unique identifier of the joining player
@@ -115,7 +205,9 @@ public class FirebaseGameManager {
          * Called when a pawn is moved on the board
          * @param playerIndex The index of the player who moved the pawn
          * @param pawnIndex The index of the pawn that was moved (0-3)
-         * @param position The new position of the pawn on the board
+         * @param position The new position of the pawn: POSITION_HOME, the track cell 0-51,
+         *                 POSITION_FINAL_PATH plus the cell on its final path (0-4),
+         *                 or POSITION_FINISHED
          */
         void onPawnMoved(int playerIndex, int pawnIndex, int position);
 
@@ -133,11 +225,43 @@ public class FirebaseGameManager {
      * @param listener Callback interface for game events
      */
     public FirebaseGameManager(String userId, GameUpdateListener listener) {
+        this(userId, listener, new FirebaseGameBackend());
+    }
+
+    /**
+     * Constructor for a game manager on a given backend,
+     * for example an InMemoryGameBackend to run games without a network
+     *
+     * @param userId User identifier for the current player
+     * @param listener Callback interface for game events
+     * @param backend Database the games are stored in
+     */
+    public FirebaseGameManager(String userId, GameUpdateListener listener, GameBackend backend) {
         this.currentUserId = userId;
         this.updateListener = listener;
-        this.database = FirebaseDatabase.getInstance();
-        this.gamesRef = database.getReference(GAMES_REF);
-        this.mAuth = FirebaseAuth.getInstance();
+        this.backend = backend;
+        this.idAllocator = new GameIdAllocator(backend, userId, metrics);
+    }
+
+    /**
+     * Gets the transaction counters of this manager
+     * Call startPeriodicLog() on them to log a summary while testing
+     *
+     * @return The metrics
+     */
+    public TransactionMetrics getTransactionMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Creates refereed games, their turns go to a GameReferee instead of
+     * running as transactions. Applies to the games this user creates, a
+     * joined game keeps the mode stored with it
+     *
+     * @param refereed True to create refereed games
+     */
+    public void setRefereed(boolean refereed) {
+        this.createRefereed = refereed;
     }
 
     /**
@@ -146,21 +270,106 @@ public class FirebaseGameManager {
      *
      */
     public void createGame() {
-        MultiplayerGameLogic newGame = new MultiplayerGameLogic(currentUserId, mAuth.getCurrentUser().getDisplayName(), 4, 0);
-        currentGameId = newGame.getGameId();
+        createGame(FirebaseAuth.getInstance().getCurrentUser().getDisplayName());
+    }
+
+    /**
+     * Reserves game codes ahead of time so createGame() does not wait for one
+     * Call when the player is about to host a game
+     */
+    public void prefetchGameIds() {
+        idAllocator.prefetch();
+    }
+
+    /**
+     * Creates a new multiplayer game with the given host name
+     *
+     * @param hostName Display name of the current user
+     */
+    public void createGame(String hostName) {
+        createGame(hostName, 0);
+    }
+
+    /**
+     * Takes a reserved code and creates the game under it
+     *
+     * @param hostName Display name of the current user
+     * @param attempts Codes that turned out to be taken
+     */
+    private void createGame(final String hostName, final int attempts) {
+        idAllocator.take(new GameIdAllocator.IdListener() {
+            @Override
+            public void onIdReserved(String gameId) {
+                writeNewGame(hostName, gameId, attempts);
+            }
 
-        gamesRef.child(currentGameId).setValue(newGame)
-                .addOnSuccessListener(aVoid -> {
+            @Override
+            public void onError(String message) {
+                if (updateListener != null) {
+                    updateListener.onGameError("Failed to create game: " + message);
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes a new game under a reserved code
+     * The write is a transaction that aborts if a game already has the code,
+     * which can only be a game created before codes were reserved
+     *
+     * @param hostName Display name of the current user
+     * @param gameId   The reserved code
+     * @param attempts Codes that turned out to be taken
+     */
+    private void writeNewGame(final String hostName, final String gameId, final int attempts) {
+        MultiplayerGameLogic newGame = new MultiplayerGameLogic(currentUserId, hostName, 4, 0);
+        newGame.setGameId(gameId);
+        newGame.setRefereed(createRefereed);
+        currentGameId = gameId;
+        currentGame = newGame;
+        refereed = createRefereed;
+        dispatchedGame = null;
+        localSeat = 0;
+        lobbyCreatedAt = newGame.getLastUpdateTimestamp();
+
+        final Map<String, Object> value = newGame.toMap();
+        final TransactionMetrics.Operation operation = metrics.begin("createGame");
+        backend.transaction(gamePath(gameId), new GameBackend.TransactionHandler() {
+            @Override
+            public Object apply(Object current) {
+                if (current != null) {
+                    return operation.abort(TransactionMetrics.ID_TAKEN);
+                }
+                return operation.commit(value);
+            }
+
+            @Override
+            public void onComplete(String error, boolean committed, Object result) {
+                operation.complete(error, committed);
+                if (error != null) {
                     if (updateListener != null) {
-                        updateListener.onGameCreated(currentGameId);
+                        updateListener.onGameError("Failed to create game: " + error);
                     }
-                    attachGameListener(currentGameId);
-                })
-                .addOnFailureListener(e -> {
-                    if (updateListener != null) {
-                        updateListener.onGameError("Failed to create game: " + e.getMessage());
+                    return;
+                }
+
+                // Either way the code now belongs to a game
+                idAllocator.markUsed(gameId);
+                if (!committed) {
+                    if (attempts + 1 < MAX_CREATE_ATTEMPTS) {
+                        createGame(hostName, attempts + 1);
+                    } else if (updateListener != null) {
+                        updateListener.onGameError("Failed to create game: no free game code");
                     }
-                });
+                    return;
+                }
+
+                if (updateListener != null) {
+                    updateListener.onGameCreated(gameId);
+                }
+                attachGameListener(gameId);
+            }
+        });
     }
 
     /**
@@ -177,13 +386,11 @@ public class FirebaseGameManager {
         Log.d(TAG, "Current User ID: " + currentUserId);
 
         // First, let's check if the game exists
-        gamesRef.child(gameId).get().addOnCompleteListener(task -> {
-            if (task.isSuccessful()) {
-                DataSnapshot snapshot = task.getResult();
-                Log.d(TAG, "Game exists check - snapshot exists: " + snapshot.exists());
-                if (snapshot.exists()) {
-                    Log.d(TAG, "Game data: " + snapshot.getValue());
-
+        backend.get(gamePath(gameId), new GameBackend.ReadListener() {
+            @Override
+            public void onRead(Object value) {
+                Log.d(TAG, "Game exists check - snapshot exists: " + (value != null));
+                if (value != null) {
                     // Now try the transaction
                     performJoinTransaction(gameId, displayName);
                 } else {
@@ -192,8 +399,11 @@ public class FirebaseGameManager {
                         updateListener.onGameError("Game code not found. Please check the code and try again.");
                     }
                 }
-            } else {
-                Log.e(TAG, "Failed to check game existence: " + task.getException());
+            }
+
+            @Override
+            public void onError(String message) {
+                Log.e(TAG, "Failed to check game existence: " + message);
                 if (updateListener != null) {
                     updateListener.onGameError("Failed to connect to database.");
                 }
@@ -210,55 +420,37 @@ public class FirebaseGameManager {
      * @param displayName The display name of the current user joining the game
      */
     private void performJoinTransaction(String gameId, String displayName) {
-        gamesRef.child(gameId).runTransaction(new Transaction.Handler() {
+        final TransactionMetrics.Operation operation = metrics.begin("joinGame");
+        backend.transaction(gamePath(gameId), new GameBackend.TransactionHandler() {
             @Override
-            public Transaction.Result doTransaction(MutableData mutableData) {
-                Log.d(TAG, "=== TRANSACTION STARTED ===");
-
-                Object rawValue = mutableData.getValue();
-                Log.d(TAG, "Raw mutable data: " + rawValue);
-                Log.d(TAG, "Raw data type: " + (rawValue != null ? rawValue.getClass().getName() : "null"));
-
-                MultiplayerGameLogic game = mutableData.getValue(MultiplayerGameLogic.class);
-                Log.d(TAG, "Parsed game object: " + (game != null ? "not null" : "null"));
+            public Object apply(Object current) {
+                // Transactions can run many times, decode into the same instance
+                MultiplayerGameLogic game = GameSnapshotCodec.decode(current, joinScratch);
 
+                // Nothing cached locally yet, Firebase retries with the server value
                 if (game == null) {
-                    Log.e(TAG, "Game object is null after parsing");
-                    return Transaction.success(mutableData);
+                    return operation.commit(current);
                 }
 
-                // Log game state
-                Log.d(TAG, "Game started: " + game.isGameStarted());
-                Log.d(TAG, "Current players: " + game.getCurrentPlayersNumber());
-                Log.d(TAG, "Max players: " + game.getMaxPlayers());
-                Log.d(TAG, "Host user ID: " + game.getHostUserId());
-
                 // Check if game is joinable
                 if (game.isGameStarted()) {
-                    Log.e(TAG, "ABORT: Game already started");
-                    return Transaction.abort();
+                    return operation.abort(TransactionMetrics.GAME_STARTED);
                 }
 
                 if (game.getCurrentPlayersNumber() >= game.getMaxPlayers()) {
-                    Log.e(TAG, "ABORT: Game is full (" + game.getCurrentPlayersNumber() + "/" + game.getMaxPlayers() + ")");
-                    return Transaction.abort();
+                    return operation.abort(TransactionMetrics.GAME_FULL);
                 }
 
                 // Check player arrays
                 ArrayList<String> playerIDs = game.getPlayerID();
                 ArrayList<String> playerNames = game.getPlayerName();
 
-                Log.d(TAG, "Player IDs array: " + (playerIDs != null ? playerIDs.toString() : "null"));
-                Log.d(TAG, "Player Names array: " + (playerNames != null ? playerNames.toString() : "null"));
-
                 // Initialize arrays if null
                 if (playerIDs == null) {
-                    Log.d(TAG, "Initializing null playerIDs array");
                     playerIDs = new ArrayList<>();
                     game.setPlayerID(playerIDs);
                 }
                 if (playerNames == null) {
-                    Log.d(TAG, "Initializing null playerNames array");
                     playerNames = new ArrayList<>();
                     game.setPlayerName(playerNames);
                 }
@@ -266,8 +458,7 @@ public class FirebaseGameManager {
                 // Check if player is already in the game
                 for (int i = 0; i < playerIDs.size(); i++) {
                     if (currentUserId.equals(playerIDs.get(i))) {
-                        Log.e(TAG, "ABORT: Player already in game at position " + i);
-                        return Transaction.abort();
+                        return operation.abort(TransactionMetrics.ALREADY_JOINED);
                     }
                 }
 
@@ -276,83 +467,67 @@ public class FirebaseGameManager {
                 for (int i = 0; i < 4; i++) {
                     if (i >= playerIDs.size() || playerIDs.get(i) == null || playerIDs.get(i).isEmpty()) {
                         playerColor = i;
-                        Log.d(TAG, "Found available slot at position: " + playerColor);
                         break;
                     }
                 }
 
                 if (playerColor == -1) {
-                    Log.e(TAG, "ABORT: No available color slots");
-                    return Transaction.abort();
+                    return operation.abort(TransactionMetrics.GAME_FULL);
                 }
 
                 // Add player to game
                 while (playerIDs.size() <= playerColor) {
-                    Log.d(TAG, "Expanding playerIDs array to size: " + (playerColor + 1));
                     playerIDs.add(null);
                 }
                 playerIDs.set(playerColor, currentUserId);
-                Log.d(TAG, "Set player ID at position " + playerColor + ": " + currentUserId);
 
                 while (playerNames.size() <= playerColor) {
-                    Log.d(TAG, "Expanding playerNames array to size: " + (playerColor + 1));
                     playerNames.add("Unknown");
                 }
                 playerNames.set(playerColor, displayName);
-                Log.d(TAG, "Set player name at position " + playerColor + ": " + displayName);
 
                 // Initialize isReady array if needed
                 ArrayList<Boolean> isReady = game.getIsReady();
                 if (isReady == null) {
-                    Log.d(TAG, "Initializing null isReady array");
                     isReady = new ArrayList<>();
                     game.setIsReady(isReady);
                 }
                 while (isReady.size() <= playerColor) {
-                    Log.d(TAG, "Expanding isReady array to size: " + (playerColor + 1));
                     isReady.add(false);
                 }
 
                 // Update player count
-                int newPlayerCount = game.getCurrentPlayersNumber() + 1;
-                game.setCurrentPlayersNumber(newPlayerCount);
+                game.setCurrentPlayersNumber(game.getCurrentPlayersNumber() + 1);
                 game.setLastUpdateTimestamp(System.currentTimeMillis());
 
-                Log.d(TAG, "Updated player count to: " + newPlayerCount);
-                Log.d(TAG, "Final playerIDs: " + playerIDs.toString());
-                Log.d(TAG, "Final playerNames: " + playerNames.toString());
-                Log.d(TAG, "=== TRANSACTION SUCCESS ===");
-
-                mutableData.setValue(game);
-                return Transaction.success(mutableData);
+                return operation.commit(game.toMap());
             }
 
             @Override
-            public void onComplete(DatabaseError databaseError, boolean committed, DataSnapshot dataSnapshot) {
-                Log.d(TAG, "=== TRANSACTION COMPLETE ===");
-                Log.d(TAG, "Database error: " + (databaseError != null ? databaseError.getMessage() : "none"));
-                Log.d(TAG, "Committed: " + committed);
-
-                if (databaseError != null) {
-                    Log.e(TAG, "Database error details: " + databaseError.getDetails());
-                    Log.e(TAG, "Database error code: " + databaseError.getCode());
+            public void onComplete(String error, boolean committed, Object value) {
+                operation.complete(error, committed);
+
+                if (error != null) {
                     if (updateListener != null) {
-                        updateListener.onGameError("Database error: " + databaseError.getMessage());
+                        updateListener.onGameError("Database error: " + error);
                     }
                     return;
                 }
 
                 if (committed) {
-                    Log.d(TAG, "Join successful!");
                     currentGameId = gameId;
+                    dispatchedGame = null;
+                    MultiplayerGameLogic finalGame = readGame(gameId, value);
+                    if (finalGame != null) {
+                        currentGame = finalGame;
+                        localSeat = findSeat(finalGame);
+                        refereed = finalGame.isRefereed();
+                    }
                     attachGameListener(gameId);
                     if (updateListener != null) {
-                        MultiplayerGameLogic finalGame = dataSnapshot.getValue(MultiplayerGameLogic.class);
-                        Log.d(TAG, "Final game state: " + (finalGame != null ? "valid" : "null"));
                         updateListener.onGameJoined(finalGame);
                     }
                 } else {
-                    Log.e(TAG, "Transaction was not committed - this means it was aborted");
                     if (updateListener != null) {
                         updateListener.onGameError("Failed to join game. It may be full, already started, or you may already be in it.");
                     }
@@ -361,55 +536,161 @@ public class FirebaseGameManager {
         });
     }
 
+    // ===== Quick Match =====
+
     /**
-     * Updates the ready status of the current player
-     * Used to indicate when a player is ready to start the game
+     * Puts the current user in the quick match queue
+     * A MatchMaker seats queued players in new games, the game is then
+     * reported through onGameJoined() like a game joined by code
      *
-     * @param ready Boolean indicating if player is ready
+     * @param displayName The display name of the current user
+     * @param score       The current user's User.score, players with close scores are matched
      */
-    public void setPlayerReady(boolean ready) {
-        if (currentGameId == null) return;
+    public void enqueueQuickMatch(String displayName, int score) {
+        detachMatchListener();
+
+        // Drop a match left over from an earlier queue in the same write
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(MatchMaker.queuePath(currentUserId),
+                MatchMaker.queueEntry(displayName, score, System.currentTimeMillis()));
+        updates.put(MatchMaker.matchPath(currentUserId), null);
+        final TransactionMetrics.Operation operation = metrics.begin("enqueueQuickMatch");
+        operation.commit(updates);
+        backend.update("", updates, error -> {
+            operation.complete(error, error == null);
+            if (error != null) {
+                detachMatchListener();
+                if (updateListener != null) {
+                    updateListener.onGameError("Failed to join quick match.");
+                }
+            }
+        });
 
-        gamesRef.child(currentGameId).runTransaction(new Transaction.Handler() {
+        matchListener = backend.addValueListener(MatchMaker.matchPath(currentUserId), new GameBackend.ValueListener() {
             @Override
-            public Transaction.Result doTransaction(MutableData mutableData) {
-                MultiplayerGameLogic game = mutableData.getValue(MultiplayerGameLogic.class);
+            public void onValue(Object value) {
+                if (!(value instanceof String)) return;
 
-                if (game == null) {
-                    return Transaction.abort();
+                detachMatchListener();
+                backend.set(MatchMaker.matchPath(currentUserId), null, null);
+                if (MatchMaker.TIMED_OUT.equals(value)) {
+                    if (updateListener != null) {
+                        updateListener.onGameError("No players found for a quick match, please try again.");
+                    }
+                } else {
+                    acceptMatch((String) value);
                 }
+            }
 
-                // Find player index
-                ArrayList<String> playerIDs = game.getPlayerID();
-                int playerIndex = -1;
+            @Override
+            public void onError(String message) {
+                if (updateListener != null) {
+                    updateListener.onGameError("Database error: " + message);
+                }
+            }
+        });
+    }
 
-                for (int i = 0; i < playerIDs.size(); i++) {
-                    if (currentUserId.equals(playerIDs.get(i))) {
-                        playerIndex = i;
-                        break;
+    /**
+     * Checks if the current user waits in the quick match queue
+     *
+     * @return True between enqueueQuickMatch() and the match or leaveQuickMatch()
+     */
+    public boolean isQueued() {
+        return matchListener != null;
+    }
+
+    /**
+     * Takes the current user out of the quick match queue
+     */
+    public void leaveQuickMatch() {
+        if (matchListener == null) return;
+
+        detachMatchListener();
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(MatchMaker.queuePath(currentUserId), null);
+        updates.put(MatchMaker.matchPath(currentUserId), null);
+        backend.update("", updates, null);
+    }
+
+    /**
+     * Stops listening for a quick match
+     */
+    private void detachMatchListener() {
+        if (matchListener != null) {
+            matchListener.remove();
+            matchListener = null;
+        }
+    }
+
+    /**
+     * Follows the game a MatchMaker seated the current user in
+     *
+     * @param gameId ID of the game
+     */
+    private void acceptMatch(final String gameId) {
+        backend.get(gamePath(gameId), new GameBackend.ReadListener() {
+            @Override
+            public void onRead(Object value) {
+                MultiplayerGameLogic game = readGame(gameId, value);
+                if (game == null) {
+                    if (updateListener != null) {
+                        updateListener.onGameError("Matched game no longer exists.");
                     }
+                    return;
                 }
 
-                if (playerIndex == -1) {
-                    return Transaction.abort(); // Player not found
+                currentGameId = gameId;
+                currentGame = game;
+                dispatchedGame = null;
+                localSeat = findSeat(game);
+                refereed = game.isRefereed();
+                // The matcher listed open seats with the creation time as the game's timestamp
+                lobbyCreatedAt = game.getLastUpdateTimestamp();
+                attachGameListener(gameId);
+                if (updateListener != null) {
+                    updateListener.onGameJoined(game);
                 }
+            }
 
-                ArrayList<Boolean> isReady = game.getIsReady();
-                while (isReady.size() <= playerIndex) {
-                    isReady.add(false);
+            @Override
+            public void onError(String message) {
+                if (updateListener != null) {
+                    updateListener.onGameError("Failed to connect to database.");
                 }
-                isReady.set(playerIndex, ready);
-                game.setLastUpdateTimestamp(System.currentTimeMillis());
+            }
+        });
+    }
+
+    /**
+     * Updates the ready status of the current player
+     * Used to indicate when a player is ready to start the game
+     * Only this player's ready flag is written, no other player data is touched
+     *
+     * @param ready Boolean indicating if player is ready
+     */
+    public void setPlayerReady(boolean ready) {
+        if (currentGameId == null) return;
 
-                mutableData.setValue(game);
-                return Transaction.success(mutableData);
+        final TransactionMetrics.Operation operation = metrics.begin("setPlayerReady");
+        if (localSeat == -1) {
+            operation.abort(TransactionMetrics.NO_SEAT);
+            operation.complete(null, false);
+            if (updateListener != null) {
+                updateListener.onGameError("Failed to update ready status.");
             }
+            return;
+        }
 
-            @Override
-            public void onComplete(DatabaseError databaseError, boolean committed, DataSnapshot dataSnapshot) {
-                if (!committed && updateListener != null) {
-                    updateListener.onGameError("Failed to update ready status.");
-                }
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(READY_PATH + "/" + localSeat, ready);
+        updates.put(TIMESTAMP_PATH, System.currentTimeMillis());
+        operation.commit(updates);
+
+        backend.update(gamePath(currentGameId), updates, error -> {
+            operation.complete(error, error == null);
+            if (error != null && updateListener != null) {
+                updateListener.onGameError("Failed to update ready status.");
             }
         });
     }
@@ -417,64 +698,52 @@ public class FirebaseGameManager {
     /**
      * Starts the game if all conditions are met
      * Only the host can start the game and exactly 4 players must be ready
+     * The conditions are checked in a transaction on the game node, so a second
+     * tap or a stale lobby can never reset the board of a running game.
+     * A refereed game is handed to the referee instead, which starts it
      */
     public void startGame() {
         if (currentGameId == null) return;
 
-        gamesRef.child(currentGameId).runTransaction(new Transaction.Handler() {
+        final String gameId = currentGameId;
+        final TransactionMetrics.Operation operation = metrics.begin("startGame");
+        if (refereed) {
+            requestRefereedStart(gameId, operation);
+            return;
+        }
+        backend.transaction(gamePath(gameId), new GameBackend.TransactionHandler() {
             @Override
-            public Transaction.Result doTransaction(MutableData mutableData) {
-                MultiplayerGameLogic game = mutableData.getValue(MultiplayerGameLogic.class);
+            @SuppressWarnings("unchecked")
+            public Object apply(Object current) {
+                MultiplayerGameLogic game = GameSnapshotCodec.decode(current, null);
 
-                if (game == null || !game.getHostUserId().equals(currentUserId)) {
-                    return Transaction.abort();
-                }
-
-                ArrayList<Boolean> isReady = game.getIsReady();
-                ArrayList<String> playerIDs = game.getPlayerID();
-
-                // Count active players (non-null player IDs)
-                int activePlayerCount = 0;
-                int readyPlayerCount = 0;
-
-                for (int i = 0; i < playerIDs.size(); i++) {
-                    String playerId = playerIDs.get(i);
-                    if (playerId != null && !playerId.isEmpty()) {
-                        activePlayerCount++;
-                        // Check if this active player is ready
-                        if (i < isReady.size() && isReady.get(i)) {
-                            readyPlayerCount++;
-                        }
-                    }
+                // Nothing cached locally yet, Firebase retries with the server value
+                if (game == null) {
+                    return operation.commit(current);
                 }
 
-                // Game requires exactly 4 players and all must be ready
-                if (activePlayerCount != 4) {
-                    Log.d(TAG, "Cannot start game: Need exactly 4 players, but have " + activePlayerCount);
-                    return Transaction.abort();
+                if (!currentUserId.equals(game.getHostUserId())) {
+                    return operation.abort(TransactionMetrics.NOT_HOST);
                 }
-
-                if (readyPlayerCount != 4) {
-                    Log.d(TAG, "Cannot start game: Need all 4 players ready, but only " + readyPlayerCount + " are ready");
-                    return Transaction.abort();
+                if (game.isGameStarted()) {
+                    return operation.abort(TransactionMetrics.GAME_STARTED);
                 }
-
-                // Initialize game logic if not already set
-                if (game.getGameLogic() == null) {
-                    game.setGameLogic(new GameLogic());
+                if (!canStart(game)) {
+                    return operation.abort(TransactionMetrics.NOT_READY);
                 }
 
-                // Initialize game state
-                game.setGameStarted(true);
-                game.setLastUpdateTimestamp(System.currentTimeMillis());
-
-                mutableData.setValue(game);
-                return Transaction.success(mutableData);
+                // Only the start flag, the board and the timestamp change
+                Map<String, Object> node = (Map<String, Object>) current;
+                node.put(STARTED_PATH, true);
+                node.put(STATE_PATH, initialState());
+                node.put(TIMESTAMP_PATH, System.currentTimeMillis());
+                return operation.commit(node);
             }
 
             @Override
-            public void onComplete(DatabaseError databaseError, boolean committed, DataSnapshot dataSnapshot) {
-                if (!committed && updateListener != null) {
+            public void onComplete(String error, boolean committed, Object value) {
+                operation.complete(error, committed);
+                if ((error != null || !committed || value == null) && updateListener != null) {
                     updateListener.onGameError("Failed to start game. Make sure exactly 4 players have joined and all are ready.");
                 }
             }
@@ -482,60 +751,156 @@ public class FirebaseGameManager {
     }
 
     /**
-     * Rolls the dice for the current player's turn
-     * Uses Firebase transaction to ensure data consistency
+     * Writes the referee request of a refereed game, the referee then starts
+     * the game in its own transaction, see GameReferee
+     * database.rules.json keeps players from ever writing the board of a
+     * refereed game, so there is no moment the board is open to them. The
+     * same checks as the start transaction run here first, on the latest
+     * snapshot, for a quick answer
+     *
+     * @param gameId    ID of the game
+     * @param operation Metrics of the start
      */
-    public void rollDice() {
-        if (currentGameId == null) return;
+    private void requestRefereedStart(String gameId, final TransactionMetrics.Operation operation) {
+        MultiplayerGameLogic game = currentGame;
+        String problem = null;
+        if (game == null) {
+            problem = TransactionMetrics.GAME_MISSING;
+        } else if (!currentUserId.equals(game.getHostUserId())) {
+            problem = TransactionMetrics.NOT_HOST;
+        } else if (game.isGameStarted()) {
+            problem = TransactionMetrics.GAME_STARTED;
+        } else if (!canStart(game)) {
+            problem = TransactionMetrics.NOT_READY;
+        }
+        if (problem != null) {
+            operation.abort(problem);
+            operation.complete(null, false);
+            if (updateListener != null) {
+                updateListener.onGameError("Failed to start game. Make sure exactly 4 players have joined and all are ready.");
+            }
+            return;
+        }
 
-        gamesRef.child(currentGameId).runTransaction(new Transaction.Handler() {
-            @Override
-            public Transaction.Result doTransaction(MutableData mutableData) {
-                MultiplayerGameLogic game = mutableData.getValue(MultiplayerGameLogic.class);
+        Object request = operation.commit(GameReferee.request(System.currentTimeMillis()));
+        backend.set(GameReferee.requestPath(gameId), request, error -> {
+            operation.complete(error, error == null);
+            if (error != null && updateListener != null) {
+                updateListener.onGameError("Failed to start game. Make sure exactly 4 players have joined and all are ready.");
+            }
+        });
+    }
 
-                if (game == null || !game.isGameStarted() || game.getGameLogic() == null) {
-                    return Transaction.abort();
-                }
+    /**
+     * Builds the state node of a game that was just started
+     * Also written by MatchMaker for the full games it creates and by
+     * GameReferee for the refereed games it starts
+     *
+     * @return State map of a new board with no moves logged
+     */
+    static Map<String, Object> initialState() {
+        Map<String, Object> state = GameStateNodes.toMap(new GameLogic());
+        GameStateNodes.putMove(state, 0, -1);
+        return state;
+    }
 
-                GameLogic gameLogic = game.getGameLogic();
+    /**
+     * Checks that exactly 4 players have joined and all of them are ready
+     * Also checked by GameReferee before it starts a refereed game
+     *
+     * @param game The game to check
+     * @return True if the game can start
+     */
+    static boolean canStart(MultiplayerGameLogic game) {
+        ArrayList<Boolean> isReady = game.getIsReady();
+        ArrayList<String> playerIDs = game.getPlayerID();
 
-                // Check if it's this player's turn
-                int playerIndex = -1;
-                ArrayList<String> playerIDs = game.getPlayerID();
+        // Count active players (non-null player IDs)
+        int activePlayerCount = 0;
+        int readyPlayerCount = 0;
 
-                for (int i = 0; i < playerIDs.size(); i++) {
-                    if (currentUserId.equals(playerIDs.get(i))) {
-                        playerIndex = i;
-                        break;
-                    }
+        for (int i = 0; i < playerIDs.size(); i++) {
+            String playerId = playerIDs.get(i);
+            if (playerId != null && !playerId.isEmpty()) {
+                activePlayerCount++;
+                // Check if this active player is ready
+                if (i < isReady.size() && isReady.get(i)) {
+                    readyPlayerCount++;
                 }
+            }
+        }
+
+        // Game requires exactly 4 players and all must be ready
+        if (activePlayerCount != 4) {
+            Log.d(TAG, "Cannot start game: Need exactly 4 players, but have " + activePlayerCount);
+            return false;
+        }
+
+        if (readyPlayerCount != 4) {
+            Log.d(TAG, "Cannot start game: Need all 4 players ready, but only " + readyPlayerCount + " are ready");
+            return false;
+        }
 
-                if (playerIndex == -1 || gameLogic.getCurrentPlayerTurn() != playerIndex) {
-                    return Transaction.abort(); // Not this player's turn
+        return true;
+    }
+
+    /**
+     * Rolls the dice for the current player's turn
+     * Uses a transaction on the small turn node only
+     */
+    public void rollDice() {
+        if (currentGameId == null) return;
+        if (refereed) {
+            sendIntent("rollDice", GameReferee.ROLL, -1);
+            return;
+        }
+
+        final int seat = localSeat;
+        final int diceValue = new Random().nextInt(6) + 1;
+
+        final TransactionMetrics.Operation operation = metrics.begin("rollDice");
+        backend.transaction(turnPath(currentGameId), new GameBackend.TransactionHandler() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object apply(Object current) {
+                // Nothing cached locally yet, Firebase retries with the server value
+                // If the server has no turn node either, the game has not started
+                if (!(current instanceof Map)) {
+                    return operation.skip(current, TransactionMetrics.NOT_STARTED);
                 }
+                Map<String, Object> turn = (Map<String, Object>) current;
 
-                if (gameLogic.isDiceRolled()) {
-                    return Transaction.abort(); // Already rolled dice this turn
+                // GameReferee.checkTurn() for ROLL, done on the turn node alone so the
+                // transaction does not need the board
+                if (seat == -1 || GameStateNodes.getInt(turn, GameStateNodes.TURN_PLAYER, -1) != seat) {
+                    return operation.abort(TransactionMetrics.NOT_YOUR_TURN);
                 }
 
-                // Roll the dice
-                Random random = new Random();
-                int diceValue = random.nextInt(6) + 1;
-                gameLogic.setDiceRoll(diceValue);
-                game.setLastUpdateTimestamp(System.currentTimeMillis());
+                if (GameStateNodes.getBoolean(turn, GameStateNodes.TURN_ROLLED)) {
+                    return operation.abort(TransactionMetrics.ALREADY_ROLLED);
+                }
 
-                mutableData.setValue(game);
-                return Transaction.success(mutableData);
+                // Roll the dice, same changes as GameLogic.setDiceRoll()
+                turn.put(GameStateNodes.TURN_DICE, diceValue);
+                turn.put(GameStateNodes.TURN_ROLLED, true);
+                turn.put(GameStateNodes.TURN_MOVE_MADE, false);
+                return operation.commit(turn);
             }
 
             @Override
-            public void onComplete(DatabaseError databaseError, boolean committed, DataSnapshot dataSnapshot) {
+            public void onComplete(String error, boolean committed, Object value) {
+                operation.complete(error, committed);
+
+                // Only a skipped handler writes back something other than a turn node
+                committed = committed && value instanceof Map;
                 if (!committed && updateListener != null) {
                     updateListener.onGameError("Failed to roll dice. It may not be your turn.");
-                } else if (committed && updateListener != null) {
-                    MultiplayerGameLogic game = dataSnapshot.getValue(MultiplayerGameLogic.class);
-                    updateListener.onDiceRolled(game.getGameLogic().getCurrentPlayerTurn(),
-                            game.getGameLogic().getLastDiceRoll());
+                } else if (committed) {
+                    if (updateListener != null) {
+                        Object turn = value;
+                        updateListener.onDiceRolled(GameStateNodes.getInt(turn, GameStateNodes.TURN_PLAYER, seat),
+                                GameStateNodes.getInt(turn, GameStateNodes.TURN_DICE, diceValue));
+                    }
                 }
             }
         });
@@ -543,59 +908,62 @@ public class FirebaseGameManager {
 
     /**
      * Selects a pawn to move after dice roll
+     * Uses a transaction on the board state node only
+     *
      * @param pawnIndex Index of the pawn to move (0-3)
      */
     public void selectPawn(int pawnIndex) {
         if (currentGameId == null) return;
+        if (refereed) {
+            sendIntent("selectPawn", GameReferee.SELECT, pawnIndex);
+            return;
+        }
 
-        gamesRef.child(currentGameId).runTransaction(new Transaction.Handler() {
-            @Override
-            public Transaction.Result doTransaction(MutableData mutableData) {
-                MultiplayerGameLogic game = mutableData.getValue(MultiplayerGameLogic.class);
-
-                if (game == null || !game.isGameStarted() || game.getGameLogic() == null) {
-                    return Transaction.abort();
-                }
-
-                GameLogic gameLogic = game.getGameLogic();
-
-                // Check if it's this player's turn
-                int playerIndex = -1;
-                ArrayList<String> playerIDs = game.getPlayerID();
+        final int seat = localSeat;
 
-                for (int i = 0; i < playerIDs.size(); i++) {
-                    if (currentUserId.equals(playerIDs.get(i))) {
-                        playerIndex = i;
-                        break;
-                    }
+        final TransactionMetrics.Operation operation = metrics.begin("selectPawn");
+        backend.transaction(statePath(currentGameId), new GameBackend.TransactionHandler() {
+            @Override
+            public Object apply(Object current) {
+                // Nothing or only part of the state cached locally yet, Firebase retries
+                // with the server value. If the server has no board either, the game has
+                // not started
+                if (!GameStateNodes.isComplete(current)) {
+                    return operation.skip(current, TransactionMetrics.NOT_STARTED);
                 }
-
-                if (playerIndex == -1 || gameLogic.getCurrentPlayerTurn() != playerIndex) {
-                    return Transaction.abort(); // Not this player's turn
+                GameLogic gameLogic = readState(current);
+                if (gameLogic == null) {
+                    return operation.abort(TransactionMetrics.NOT_STARTED);
                 }
 
-                if (!gameLogic.isDiceRolled() || gameLogic.isMoveMade()) {
-                    return Transaction.abort(); // Dice not rolled or move already made
+                // Same checks as the referee: the turn, the phase and a movable pawn
+                String problem = GameReferee.checkTurn(gameLogic, seat, GameReferee.SELECT, pawnIndex);
+                if (problem != null) {
+                    return operation.abort(problem);
                 }
 
-                if (gameLogic.isWaitingForPawnSelection()) {
-                    gameLogic.setPawnSelection(pawnIndex);
-                    game.setLastUpdateTimestamp(System.currentTimeMillis());
-
-                    mutableData.setValue(game);
-                    return Transaction.success(mutableData);
-                }
+                int dice = gameLogic.getLastDiceRoll();
+                gameLogic.setPawnSelection(pawnIndex);
+                gameLogic.getWinner();
 
-                return Transaction.abort(); // Not waiting for pawn selection
+                // The turn is complete, give it the next place in the move log
+                Map<String, Object> state = GameStateNodes.toMap(gameLogic);
+                GameStateNodes.putMove(state, GameStateNodes.getSeq(current) + 1,
+                        MoveLog.pack(seat, dice, pawnIndex) & 0xFF);
+                return operation.commit(state);
             }
 
             @Override
-            public void onComplete(DatabaseError databaseError, boolean committed, DataSnapshot dataSnapshot) {
+            public void onComplete(String error, boolean committed, Object value) {
+                operation.complete(error, committed);
+
+                // Only a skipped handler writes back something other than a board
+                committed = committed && GameStateNodes.isComplete(value);
                 if (!committed && updateListener != null) {
                     updateListener.onGameError("Failed to select pawn.");
-                } else if (committed && updateListener != null) {
-                    MultiplayerGameLogic game = dataSnapshot.getValue(MultiplayerGameLogic.class);
-                    updateListener.onGameUpdated(game);
+                } else if (committed) {
+                    // Every client, this one included, applies the move from the log
+                    appendMove(value);
                 }
             }
         });
@@ -604,127 +972,288 @@ public class FirebaseGameManager {
     /**
      * Plays a round of the game
      * First step of moving a pawn (before selection)
+     * Uses a transaction on the board state node only
      */
     public void playRound() {
         if (currentGameId == null) return;
+        if (refereed) {
+            sendIntent("playRound", GameReferee.PLAY, -1);
+            return;
+        }
 
-        gamesRef.child(currentGameId).runTransaction(new Transaction.Handler() {
-            @Override
-            public Transaction.Result doTransaction(MutableData mutableData) {
-                MultiplayerGameLogic game = mutableData.getValue(MultiplayerGameLogic.class);
-
-                if (game == null || !game.isGameStarted() || game.getGameLogic() == null) {
-                    return Transaction.abort();
-                }
-
-                GameLogic gameLogic = game.getGameLogic();
-
-                // Check if it's this player's turn
-                int playerIndex = -1;
-                ArrayList<String> playerIDs = game.getPlayerID();
+        final int seat = localSeat;
 
-                for (int i = 0; i < playerIDs.size(); i++) {
-                    if (currentUserId.equals(playerIDs.get(i))) {
-                        playerIndex = i;
-                        break;
-                    }
+        final TransactionMetrics.Operation operation = metrics.begin("playRound");
+        backend.transaction(statePath(currentGameId), new GameBackend.TransactionHandler() {
+            @Override
+            public Object apply(Object current) {
+                // Nothing or only part of the state cached locally yet, Firebase retries
+                // with the server value. If the server has no board either, the game has
+                // not started
+                if (!GameStateNodes.isComplete(current)) {
+                    return operation.skip(current, TransactionMetrics.NOT_STARTED);
                 }
-
-                if (playerIndex == -1 || gameLogic.getCurrentPlayerTurn() != playerIndex) {
-                    return Transaction.abort(); // Not this player's turn
+                GameLogic gameLogic = readState(current);
+                if (gameLogic == null) {
+                    return operation.abort(TransactionMetrics.NOT_STARTED);
                 }
 
-                if (!gameLogic.isDiceRolled() || gameLogic.isMoveMade()) {
-                    return Transaction.abort(); // Dice not rolled or move already made
+                // Same checks as the referee: the turn and the phase
+                String problem = GameReferee.checkTurn(gameLogic, seat, GameReferee.PLAY, -1);
+                if (problem != null) {
+                    return operation.abort(problem);
                 }
 
+                int dice = gameLogic.getLastDiceRoll();
                 boolean roundCompleted = gameLogic.playRound();
-                game.setLastUpdateTimestamp(System.currentTimeMillis());
 
-                mutableData.setValue(game);
-                return Transaction.success(mutableData);
+                // A round without any legal move completes the turn
+                Object previous = current;
+                Map<String, Object> state = GameStateNodes.toMap(gameLogic);
+                if (roundCompleted) {
+                    GameStateNodes.putMove(state, GameStateNodes.getSeq(previous) + 1,
+                            MoveLog.pack(seat, dice, MoveLog.NO_PAWN) & 0xFF);
+                } else {
+                    GameStateNodes.putMove(state, GameStateNodes.getSeq(previous), GameStateNodes.getLastMove(previous));
+                }
+                return operation.commit(state);
             }
 
             @Override
-            public void onComplete(DatabaseError databaseError, boolean committed, DataSnapshot dataSnapshot) {
+            public void onComplete(String error, boolean committed, Object value) {
+                operation.complete(error, committed);
+
+                // Only a skipped handler writes back something other than a board
+                committed = committed && GameStateNodes.isComplete(value);
                 if (!committed && updateListener != null) {
                     updateListener.onGameError("Failed to play round.");
-                } else if (committed && updateListener != null) {
-                    MultiplayerGameLogic game = dataSnapshot.getValue(MultiplayerGameLogic.class);
-                    GameLogic gameLogic = game.getGameLogic();
-
-                    // Check if waiting for pawn selection
-                    if (gameLogic.isWaitingForPawnSelection()) {
-                        // UI needs to handle pawn selection
-                    } else {
-                        // Turn changed
-                        updateListener.onTurnChange(gameLogic.getCurrentPlayerTurn());
+                } else if (committed) {
+                    // Waiting for pawn selection leaves the turn open, otherwise log it
+                    if (!GameStateNodes.getBoolean(GameStateNodes.child(value, GameStateNodes.TURN),
+                            GameStateNodes.TURN_WAITING)) {
+                        appendMove(value);
                     }
+                }
+            }
+        });
+    }
 
-                    // Check for winner
-                    int winner = gameLogic.getWinner();
-                    if (winner != -1) {
-                        if (gameLogic.isGameOver()) {
-                            updateListener.onGameEnded(gameLogic.getWinnerOrder().stream().mapToInt(Integer::intValue).toArray());
-                        }
+    /**
+     * Sends a turn action of the local player to the referee
+     * The board changes arrive through the turn node and the move log like
+     * any other player's turn, a rejection through the player's intent slot
+     *
+     * @param operationName Name of the turn method, for the metrics
+     * @param action        GameReferee.ROLL, PLAY or SELECT
+     * @param pawnIndex     Pawn index (0-3) for SELECT
+     */
+    private void sendIntent(String operationName, String action, int pawnIndex) {
+        final TransactionMetrics.Operation operation = metrics.begin(operationName);
+        if (localSeat == -1) {
+            operation.abort(TransactionMetrics.NO_SEAT);
+            operation.complete(null, false);
+            if (updateListener != null) {
+                updateListener.onGameError("Failed to send your turn.");
+            }
+            return;
+        }
+
+        final String path = GameReferee.intentPath(currentGameId, localSeat);
+        if (intentListener == null) {
+            intentListener = backend.addValueListener(path, new GameBackend.ValueListener() {
+                @Override
+                public void onValue(Object value) {
+                    Object error = GameStateNodes.child(value, GameReferee.ERROR);
+                    if (error == null) return;
+
+                    backend.set(path, null, null);
+                    if (updateListener != null) {
+                        updateListener.onGameError("Turn rejected: " + error);
                     }
                 }
+
+                @Override
+                public void onError(String message) {
+                    if (updateListener != null) {
+                        updateListener.onGameError("Database error: " + message);
+                    }
+                }
+            });
+        }
+
+        Object intent = operation.commit(GameReferee.intent(action, pawnIndex, System.currentTimeMillis()));
+        backend.set(path, intent, error -> {
+            operation.complete(error, error == null);
+            if (error != null && updateListener != null) {
+                updateListener.onGameError("Failed to send your turn.");
             }
         });
     }
 
     /**
      * Removes player from the current game
-     * Deletes the game if the host leaves, otherwise just removes the player
+     * Deletes the game if the host leaves, otherwise frees this player's seat
+     * and lowers the player count in one transaction
      */
     public void leaveGame() {
         if (currentGameId == null) return;
 
-        gamesRef.child(currentGameId).runTransaction(new Transaction.Handler() {
-            @Override
-            public Transaction.Result doTransaction(MutableData mutableData) {
-                MultiplayerGameLogic game = mutableData.getValue(MultiplayerGameLogic.class);
+        final String gameId = currentGameId;
+        MultiplayerGameLogic game = currentGame;
+
+        if (game != null && currentUserId.equals(game.getHostUserId())) {
+            // If host is leaving, delete the game, its move log, its lobby summary and its referee request
+            Map<String, Object> updates = new HashMap<>();
+            updates.put(gamePath(gameId), null);
+            updates.put(movesPath(gameId), null);
+            updates.put(lobbyPath(gameId), null);
+            GameReferee.putRemoval(updates, gameId);
+            final TransactionMetrics.Operation operation = metrics.begin("deleteGame");
+            operation.commit(updates);
+            backend.update("", updates, error -> operation.complete(error, error == null));
+        } else if (localSeat != -1) {
+            final int seat = localSeat;
+            final TransactionMetrics.Operation operation = metrics.begin("leaveGame");
+            backend.transaction(gamePath(gameId), new GameBackend.TransactionHandler() {
+                @Override
+                public Object apply(Object current) {
+                    MultiplayerGameLogic left = GameSnapshotCodec.decode(current, null);
+
+                    // Nothing cached locally yet, Firebase retries with the server value
+                    if (left == null) {
+                        return operation.commit(current);
+                    }
+                    if (!currentUserId.equals(left.getPlayerID().get(seat))) {
+                        return operation.abort(TransactionMetrics.NO_SEAT);
+                    }
 
-                if (game == null) {
-                    return Transaction.success(mutableData);
+                    left.getPlayerID().set(seat, null);
+                    left.getPlayerName().set(seat, "Unknown");
+                    left.getIsReady().set(seat, false);
+                    left.setCurrentPlayersNumber(Math.max(0, left.getCurrentPlayersNumber() - 1));
+                    left.setLastUpdateTimestamp(System.currentTimeMillis());
+
+                    // The board of a running game stays as it is
+                    Map<String, Object> node = left.toMap();
+                    Object state = GameStateNodes.child(current, STATE_PATH);
+                    if (state != null) {
+                        node.put(STATE_PATH, state);
+                    }
+                    return operation.commit(node);
                 }
 
-                // If host is leaving, delete the game
-                if (game.getHostUserId().equals(currentUserId)) {
-                    mutableData.setValue(null);
-                    return Transaction.success(mutableData);
+                @Override
+                public void onComplete(String error, boolean committed, Object value) {
+                    // Nothing else to report, the player already left
+                    operation.complete(error, committed);
                 }
+            });
+        }
 
-                // Otherwise, remove the player
-                ArrayList<String> playerIDs = game.getPlayerID();
-                ArrayList<String> playerNames = game.getPlayerName();
-                ArrayList<Boolean> isReady = game.getIsReady();
+        detachGameListener();
+        detachMoveSync();
+        currentGameId = null;
+        currentGame = null;
+        localSeat = -1;
+        syncedLogic = null;
+        dispatchedGame = null;
+    }
 
-                for (int i = 0; i < playerIDs.size(); i++) {
-                    if (currentUserId.equals(playerIDs.get(i))) {
-                        playerIDs.set(i, null);
-                        if (i < playerNames.size()) {
-                            playerNames.set(i, "Unknown");
-                        }
-                        if (i < isReady.size()) {
-                            isReady.set(i, false);
-                        }
-                        game.setCurrentPlayersNumber(game.getCurrentPlayersNumber() - 1);
-                        break;
-                    }
-                }
+    /**
+     * Rebuilds the board state from a raw state node
+     *
+     * @param state Raw value of the state node
+     * @return The game, or null if the node is empty or invalid
+     */
+    private GameLogic readState(Object state) {
+        try {
+            return GameStateNodes.read(state);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Invalid game state: " + e.getMessage());
+            return null;
+        }
+    }
 
-                game.setLastUpdateTimestamp(System.currentTimeMillis());
-                mutableData.setValue(game);
-                return Transaction.success(mutableData);
-            }
+    /**
+     * Reads a whole game node including its board state
+     *
+     * @param gameId ID of the game
+     * @param value  Raw value of games/{id}
+     * @return The game, or null if it does not exist
+     */
+    private MultiplayerGameLogic readGame(String gameId, Object value) {
+        MultiplayerGameLogic game = GameSnapshotCodec.decode(value, null);
+        if (game != null && game.getSchemaVersion() != MultiplayerGameLogic.SCHEMA_VERSION) {
+            Log.w(TAG, "Game " + gameId + " uses schema version " + game.getSchemaVersion()
+                    + ", expected " + MultiplayerGameLogic.SCHEMA_VERSION);
+        }
+        return game;
+    }
 
-            @Override
-            public void onComplete(DatabaseError databaseError, boolean committed, DataSnapshot dataSnapshot) {
-                detachGameListener();
-                currentGameId = null;
+    /**
+     * Finds the seat of the current user in a game
+     *
+     * @param game The game
+     * @return Seat index (0-3), or -1 if the user is not in the game
+     */
+    private int findSeat(MultiplayerGameLogic game) {
+        ArrayList<String> playerIDs = game.getPlayerID();
+        for (int i = 0; i < playerIDs.size(); i++) {
+            if (currentUserId.equals(playerIDs.get(i))) {
+                return i;
             }
-        });
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the path of a game node
+     *
+     * @param gameId ID of the game
+     * @return Path of games/{id}
+     */
+    private static String gamePath(String gameId) {
+        return GAMES_REF + "/" + gameId;
+    }
+
+    /**
+     * Gets the path of the board state of a game
+     *
+     * @param gameId ID of the game
+     * @return Path of games/{id}/state
+     */
+    private static String statePath(String gameId) {
+        return gamePath(gameId) + "/" + STATE_PATH;
+    }
+
+    /**
+     * Gets the path of the turn node of a game
+     *
+     * @param gameId ID of the game
+     * @return Path of games/{id}/state/turn
+     */
+    private static String turnPath(String gameId) {
+        return statePath(gameId) + "/" + GameStateNodes.TURN;
+    }
+
+    /**
+     * Gets the path of the lobby summary of a game
+     *
+     * @param gameId ID of the game
+     * @return Path of lobbies/{id}
+     */
+    private static String lobbyPath(String gameId) {
+        return LobbySummary.LOBBIES_REF + "/" + gameId;
+    }
+
+    /**
+     * Gets the path of the move log of a game
+     *
+     * @param gameId ID of the game
+     * @return Path of moves/{id}
+     */
+    private static String movesPath(String gameId) {
+        return MOVES_REF + "/" + gameId;
     }
 
     /**
@@ -736,84 +1265,576 @@ public class FirebaseGameManager {
     private void attachGameListener(String gameId) {
         detachGameListener();
 
-        gameListener = new ValueEventListener() {
+        gameListener = backend.addValueListener(gamePath(gameId), new GameBackend.ValueListener() {
             @Override
-            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                MultiplayerGameLogic game = dataSnapshot.getValue(MultiplayerGameLogic.class);
+            public void onValue(Object value) {
+                MultiplayerGameLogic game = readGame(gameId, value);
 
                 if (game == null) {
-                    // Game was deleted
-                    if (updateListener != null) {
-                        updateListener.onGameError("Game no longer exists.");
-                    }
-                    detachGameListener();
-                    currentGameId = null;
+                    onGameDeleted();
                     return;
                 }
 
-                // Check for player joined
-                checkForPlayerChanges(game);
+                MultiplayerGameLogic previous = dispatchedGame;
+                dispatchedGame = game;
+                currentGame = game;
+                localSeat = findSeat(game);
+                refereed = game.isRefereed();
 
-                if (updateListener != null) {
-                    updateListener.onGameUpdated(game);
+                dispatchLobbyChanges(previous, game);
+                publishLobbySummary(previous, game);
 
-                    // If game is in progress, update turn information
-                    if (game.isGameStarted() && game.getGameLogic() != null) {
-                        GameLogic gameLogic = game.getGameLogic();
-                        updateListener.onTurnChange(gameLogic.getCurrentPlayerTurn());
-                    }
+                // Once the game runs, follow the move log instead of this node
+                if (game.isGameStarted() && game.getGameLogic() != null) {
+                    startMoveSync(game.getGameLogic(),
+                            GameStateNodes.getSeq(GameStateNodes.child(value, STATE_PATH)));
                 }
             }
 
             @Override
-            public void onCancelled(@NonNull DatabaseError databaseError) {
+            public void onError(String message) {
                 if (updateListener != null) {
-                    updateListener.onGameError("Database error: " + databaseError.getMessage());
+                    updateListener.onGameError("Database error: " + message);
                 }
             }
-        };
+        });
+    }
+
+    /**
+     * Keeps the public lobby summary of a hosted game in line with the game:
+     * listed while seats are free, removed once it is full or started
+     * Only the host writes the summary, so joins never race on it
+     *
+     * @param previous The game before the change, null for the first snapshot
+     * @param game     The game after the change
+     */
+    private void publishLobbySummary(MultiplayerGameLogic previous, MultiplayerGameLogic game) {
+        if (!currentUserId.equals(game.getHostUserId())) return;
+
+        boolean open = !game.isGameStarted() && game.getCurrentPlayersNumber() < game.getMaxPlayers();
+        if (previous != null) {
+            boolean wasOpen = !previous.isGameStarted()
+                    && previous.getCurrentPlayersNumber() < previous.getMaxPlayers();
+            if (open == wasOpen && (!open || previous.getCurrentPlayersNumber() == game.getCurrentPlayersNumber())) {
+                return;
+            }
+        }
+
+        Object summary = null;
+        if (open) {
+            int hostSeat = Math.max(0, game.getPlayerID().indexOf(currentUserId));
+            summary = new LobbySummary(game.getGameId(), game.getPlayerName().get(hostSeat),
+                    game.getCurrentPlayersNumber(), game.getMaxPlayers(), lobbyCreatedAt).toMap();
+        }
 
-        gamesRef.child(gameId).addValueEventListener(gameListener);
+        final TransactionMetrics.Operation operation = metrics.begin("publishLobby");
+        backend.set(lobbyPath(game.getGameId()), operation.commit(summary),
+                error -> operation.complete(error, error == null));
+    }
+
+    /**
+     * Forgets the current game after it was deleted and tells the UI
+     */
+    private void onGameDeleted() {
+        if (updateListener != null) {
+            updateListener.onGameError("Game no longer exists.");
+        }
+        detachGameListener();
+        detachMoveSync();
+        currentGameId = null;
+        currentGame = null;
+        localSeat = -1;
+        syncedLogic = null;
+        dispatchedGame = null;
     }
 
-    /** List to keep track of known players for detecting joins and leaves */
-    private ArrayList<String> knownPlayers = new ArrayList<>();
+    // ===== Move Log Sync =====
 
     /**
-     * Check for player joins and leaves by comparing current state to previous
-     * @param game Current game state
+     * Stops listening to the whole game node and follows the game through the
+     * turn node, the move log and the player count, so each turn downloads a few bytes
+     *
+     * @param board The board read from the state node
+     * @param seq   Sequence number of the last turn included in the board
      */
-    private void checkForPlayerChanges(MultiplayerGameLogic game) {
-        ArrayList<String> playerIDs = game.getPlayerID();
-        ArrayList<String> playerNames = game.getPlayerName();
+    private void startMoveSync(GameLogic board, int seq) {
+        if (currentGameId == null) return;
 
-        // Ensure knownPlayers has same size
-        while (knownPlayers.size() < playerIDs.size()) {
-            knownPlayers.add(null);
+        detachGameListener();
+        detachMoveSync();
+
+        // After a resync the reloaded board may be several turns ahead
+        GameLogic previousBoard = syncedLogic;
+        syncedLogic = board;
+        nextMoveSeq = seq + 1;
+        if (currentGame != null) {
+            currentGame.setGameLogic(syncedLogic);
         }
 
-        // Check for new players
-        for (int i = 0; i < playerIDs.size(); i++) {
-            String playerId = (i < playerIDs.size()) ? playerIDs.get(i) : null;
-            String knownPlayerId = (i < knownPlayers.size()) ? knownPlayers.get(i) : null;
+        turnListener = backend.addValueListener(turnPath(currentGameId), new GameBackend.ValueListener() {
+            @Override
+            public void onValue(Object turn) {
+                if (turn == null) {
+                    // The state is removed together with the game
+                    onGameDeleted();
+                    return;
+                }
+                applyTurnNode(turn);
+            }
 
-            if (playerId != null && !playerId.equals(knownPlayerId)) {
+            @Override
+            public void onError(String message) {
                 if (updateListener != null) {
-                    String playerName = (i < playerNames.size()) ? playerNames.get(i) : "Unknown";
-                    updateListener.onPlayerJoined(playerId, playerName);
+                    updateListener.onGameError("Database error: " + message);
                 }
-            } else if (playerId == null && knownPlayerId != null) {
-                if (updateListener != null) {
-                    updateListener.onPlayerLeft(knownPlayerId);
+            }
+        });
+
+        // Keep only the active game cached so a dropped connection can heal from disk,
+        // the move log listener then catches up from nextMoveSeq
+        syncedGameId = currentGameId;
+        backend.keepSynced(statePath(syncedGameId), true);
+        backend.keepSynced(movesPath(syncedGameId), true);
+
+        attachMovesListener();
+        attachSeatsListener();
+        connectionListener = backend.addConnectionListener(this::onConnectionChanged);
+
+        if (previousBoard != null) {
+            dispatchBoardChanges(GameStateCodec.encode(previousBoard), board);
+        } else if (updateListener != null) {
+            updateListener.onTurnChange(board.getCurrentPlayerTurn());
+        }
+    }
+
+    /**
+     * Listens for move log entries from the next expected sequence number on
+     */
+    private void attachMovesListener() {
+        movesListener = backend.addChildListener(movesPath(currentGameId), String.valueOf(nextMoveSeq),
+                new GameBackend.ChildListener() {
+                    @Override
+                    public void onChildAdded(String key, Object value) {
+                        onMoveAdded(key, value);
+                    }
+
+                    @Override
+                    public void onError(String message) {
+                        if (updateListener != null) {
+                            updateListener.onGameError("Database error: " + message);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Follows the players while the game is played, the game node listener is
+     * gone by then. Every leave lowers the player count, so the game node is
+     * only read again when the count changes
+     */
+    private void attachSeatsListener() {
+        final String gameId = currentGameId;
+        seatsListener = backend.addValueListener(gamePath(gameId) + "/" + PLAYER_COUNT_PATH,
+                new GameBackend.ValueListener() {
+                    @Override
+                    public void onValue(Object count) {
+                        // The turn listener reports a deleted game
+                        if (!(count instanceof Number) || dispatchedGame == null
+                                || ((Number) count).intValue() == dispatchedGame.getCurrentPlayersNumber()) {
+                            return;
+                        }
+                        reloadSeats(gameId);
+                    }
+
+                    @Override
+                    public void onError(String message) {
+                        if (updateListener != null) {
+                            updateListener.onGameError("Database error: " + message);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Reads the game node once and dispatches its seat changes
+     * The board stays the one built from the move log
+     *
+     * @param gameId ID of the game
+     */
+    private void reloadSeats(final String gameId) {
+        backend.get(gamePath(gameId), new GameBackend.ReadListener() {
+            @Override
+            public void onRead(Object value) {
+                if (!gameId.equals(currentGameId) || syncedLogic == null) return;
+
+                MultiplayerGameLogic game = readGame(gameId, value);
+                if (game == null) return;
+                game.setGameLogic(syncedLogic);
+
+                MultiplayerGameLogic previous = dispatchedGame;
+                dispatchedGame = game;
+                currentGame = game;
+                localSeat = findSeat(game);
+                dispatchLobbyChanges(previous, game);
+            }
+
+            @Override
+            public void onError(String message) {
+                Log.w(TAG, "Failed to reload players: " + message);
+            }
+        });
+    }
+
+    /**
+     * Pauses the move log while offline and resumes it from the last applied
+     * entry after reconnecting. A listener kept across the drop would be
+     * re-sent every entry since it was attached, a new one only gets the
+     * entries that were missed
+     *
+     * @param connected True if the client is connected
+     */
+    private void onConnectionChanged(boolean connected) {
+        if (syncedLogic == null || currentGameId == null) return;
+
+        if (!connected && movesListener != null) {
+            movesListener.remove();
+            movesListener = null;
+            movesPaused = true;
+        } else if (connected && movesPaused) {
+            Log.d(TAG, "Reconnected, catching up from move " + nextMoveSeq);
+            movesPaused = false;
+            attachMovesListener();
+        }
+    }
+
+    /**
+     * Applies the parts of a turn that are not in the move log yet:
+     * another player's roll and the start of their round
+     *
+     * @param turn Raw value of the turn node
+     */
+    private void applyTurnNode(Object turn) {
+        if (syncedLogic == null) return;
+
+        int player = GameStateNodes.getInt(turn, GameStateNodes.TURN_PLAYER, -1);
+        int dice = GameStateNodes.getInt(turn, GameStateNodes.TURN_DICE, 0);
+
+        // The previous turn is not in the log yet, its entry normally follows right behind.
+        // This client logs its own turns itself, any other writer may be gone
+        if (player != syncedLogic.getCurrentPlayerTurn()) {
+            if (syncedLogic.getCurrentPlayerTurn() != localSeat || refereed) {
+                checkMoveLog();
+            }
+            return;
+        }
+
+        if (GameStateNodes.getBoolean(turn, GameStateNodes.TURN_ROLLED) && !syncedLogic.isDiceRolled()
+                && dice >= 1 && dice <= 6) {
+            syncedLogic.setDiceRoll(dice);
+
+            // The local player already heard about its own roll from rollDice(), unless the referee rolled
+            if ((player != localSeat || refereed) && updateListener != null) {
+                updateListener.onDiceRolled(player, dice);
+            }
+        }
+
+        if (GameStateNodes.getBoolean(turn, GameStateNodes.TURN_WAITING) && syncedLogic.isDiceRolled()
+                && !syncedLogic.isWaitingForPawnSelection()) {
+            syncedLogic.playRound();
+        }
+    }
+
+    /**
+     * Applies a new move log entry to the synced board
+     *
+     * @param key   Sequence number of the entry
+     * @param value Packed MoveLog entry
+     */
+    private void onMoveAdded(String key, Object value) {
+        if (syncedLogic == null) return;
+
+        int seq;
+        try {
+            seq = Integer.parseInt(key);
+        } catch (NumberFormatException e) {
+            return;
+        }
+
+        if (seq < nextMoveSeq) return; // Already applied
+        if (seq > nextMoveSeq || !(value instanceof Number)) {
+            // An entry is missing, start over from the state node
+            resyncFromState();
+            return;
+        }
+
+        byte[] before = GameStateCodec.encode(syncedLogic);
+        GameReplayer.applyTurn(syncedLogic, (byte) ((Number) value).intValue());
+        nextMoveSeq++;
+
+        dispatchBoardChanges(before, syncedLogic);
+    }
+
+    /**
+     * Checks the state node after the turn passed on without a move log entry
+     * The writer logs its turn only after the state committed, and it may go
+     * offline or die in between. Instead of waiting for a later entry to show
+     * the gap, the turn is taken from the state's last move right away, and
+     * the player whose turn it is now restores the entry. A duplicate of the
+     * writer's own entry is harmless, it has the same value
+     */
+    private void checkMoveLog() {
+        final String gameId = currentGameId;
+        if (gameId == null || moveLogCheckPending || movesPaused) return;
+
+        // Only the two small fields are read. The last move goes first, the sequence
+        // number read after it tells whether another turn completed in between
+        moveLogCheckPending = true;
+        final String statePath = statePath(gameId);
+        backend.get(statePath + "/" + GameStateNodes.LAST_MOVE, new GameBackend.ReadListener() {
+            @Override
+            public void onRead(final Object lastMove) {
+                backend.get(statePath + "/" + GameStateNodes.SEQ, new GameBackend.ReadListener() {
+                    @Override
+                    public void onRead(Object seq) {
+                        moveLogCheckPending = false;
+                        if (gameId.equals(currentGameId) && syncedLogic != null) {
+                            catchUpFromState(gameId, seq, lastMove);
+                        }
+                    }
+
+                    @Override
+                    public void onError(String message) {
+                        moveLogCheckPending = false;
+                        Log.w(TAG, "Failed to check the move log: " + message);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String message) {
+                moveLogCheckPending = false;
+                Log.w(TAG, "Failed to check the move log: " + message);
+            }
+        });
+    }
+
+    /**
+     * Applies the last turn of the state node if it is the one the move log is missing
+     *
+     * @param gameId   ID of the game
+     * @param seq      Raw value of the state's sequence number
+     * @param lastMove Raw value of the state's last move
+     */
+    private void catchUpFromState(String gameId, Object seq, Object lastMove) {
+        int stateSeq = seq instanceof Number ? ((Number) seq).intValue() : 0;
+
+        // The entry arrived while reading, nothing is missing
+        if (stateSeq < nextMoveSeq) return;
+
+        if (stateSeq > nextMoveSeq || !(lastMove instanceof Number)) {
+            resyncFromState();
+            return;
+        }
+
+        // Exactly the missing turn, apply it as if its entry had arrived
+        Log.d(TAG, "Move log behind the state at " + stateSeq + ", applying the state's last move");
+        onMoveAdded(String.valueOf(stateSeq), lastMove);
+        if (syncedLogic.getCurrentPlayerTurn() == localSeat) {
+            backend.set(movesPath(gameId) + "/" + stateSeq, lastMove, null);
+        }
+    }
+
+    /**
+     * Reloads the board from the state node after a gap in the move log,
+     * then follows the log again from there
+     */
+    private void resyncFromState() {
+        final String gameId = currentGameId;
+        if (gameId == null) return;
+
+        Log.d(TAG, "Move log gap at " + nextMoveSeq + ", reloading state");
+        backend.get(statePath(gameId), new GameBackend.ReadListener() {
+            @Override
+            public void onRead(Object state) {
+                if (!gameId.equals(currentGameId)) return;
+
+                GameLogic board = readState(state);
+                if (board == null) return;
+
+                // Restore the entry of the last turn in case its writer never logged it
+                int seq = GameStateNodes.getSeq(state);
+                int lastMove = GameStateNodes.getLastMove(state);
+                if (seq > 0 && lastMove >= 0) {
+                    backend.set(movesPath(gameId) + "/" + seq, lastMove, null);
+                }
+
+                startMoveSync(board, seq);
+            }
+
+            @Override
+            public void onError(String message) {
+                Log.w(TAG, "Failed to reload state: " + message);
+            }
+        });
+    }
+
+    /**
+     * Appends the turn completed by a committed transaction to the move log
+     * The game's update timestamp goes out in the same write, a roll alone
+     * does not touch it since the move that completes the turn follows
+     *
+     * @param state Raw value of the committed state node
+     */
+    private void appendMove(Object state) {
+        int seq = GameStateNodes.getSeq(state);
+        int lastMove = GameStateNodes.getLastMove(state);
+        if (currentGameId == null || seq <= 0 || lastMove < 0) return;
+
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(movesPath(currentGameId) + "/" + seq, lastMove);
+        updates.put(gamePath(currentGameId) + "/" + TIMESTAMP_PATH, System.currentTimeMillis());
+        backend.update("", updates, null);
+    }
+
+    /**
+     * Removes the turn, move log and player listeners
+     */
+    private void detachMoveSync() {
+        if (turnListener != null) {
+            turnListener.remove();
+        }
+        if (movesListener != null) {
+            movesListener.remove();
+        }
+        if (connectionListener != null) {
+            connectionListener.remove();
+        }
+        if (seatsListener != null) {
+            seatsListener.remove();
+        }
+        if (intentListener != null) {
+            intentListener.remove();
+        }
+        if (syncedGameId != null) {
+            backend.keepSynced(statePath(syncedGameId), false);
+            backend.keepSynced(movesPath(syncedGameId), false);
+        }
+        turnListener = null;
+        movesListener = null;
+        connectionListener = null;
+        seatsListener = null;
+        intentListener = null;
+        syncedGameId = null;
+        movesPaused = false;
+    }
+
+    // ===== Change Dispatch =====
+
+    /**
+     * Compares a game snapshot with the previous one and calls only the
+     * listener methods for the fields that changed
+     *
+     * @param previous The previously dispatched game, or null for the first snapshot
+     * @param game     The new game
+     */
+    private void dispatchLobbyChanges(MultiplayerGameLogic previous, MultiplayerGameLogic game) {
+        if (updateListener == null) return;
+
+        // The first snapshot is delivered whole
+        if (previous == null) {
+            updateListener.onGameUpdated(game);
+            return;
+        }
+
+        for (int seat = 0; seat < 4; seat++) {
+            String previousId = seatValue(previous.getPlayerID(), seat);
+            String playerId = seatValue(game.getPlayerID(), seat);
+            String previousName = seatValue(previous.getPlayerName(), seat);
+            String playerName = seatValue(game.getPlayerName(), seat);
+
+            if (!Objects.equals(previousId, playerId) || !Objects.equals(previousName, playerName)) {
+                // Leaves go first so listeners can still look up the leaving player's seat
+                if (previousId != null && !previousId.equals(playerId)) {
+                    updateListener.onPlayerLeft(previousId);
+                }
+                updateListener.onSeatChanged(seat, playerId, playerName);
+                if (playerId != null && !playerId.equals(previousId)) {
+                    updateListener.onPlayerJoined(playerId, playerName);
                 }
             }
 
-            if (i < knownPlayers.size()) {
-                knownPlayers.set(i, playerId);
-            } else {
-                knownPlayers.add(playerId);
+            boolean wasReady = Boolean.TRUE.equals(seatValue(previous.getIsReady(), seat));
+            boolean ready = Boolean.TRUE.equals(seatValue(game.getIsReady(), seat));
+            if (wasReady != ready) {
+                updateListener.onPlayerReadyChanged(seat, ready);
+            }
+        }
+
+        if (previous.isGameStarted() != game.isGameStarted()
+                || previous.getCurrentPlayersNumber() != game.getCurrentPlayersNumber()
+                || !Objects.equals(previous.getHostUserId(), game.getHostUserId())) {
+            updateListener.onGameUpdated(game);
+        }
+    }
+
+    /**
+     * Gives the position onPawnMoved reports for a pawn. getPawnPositions()
+     * alone keeps the last track cell of pawns on the final path or finished
+     *
+     * @param logic  The board
+     * @param player The pawn's player (0-3)
+     * @param pawn   The pawn (0-3)
+     * @return The position, see GameUpdateListener.onPawnMoved()
+     */
+    static int boardPosition(GameLogic logic, int player, int pawn) {
+        if (logic.getPawnInHome().get(player).get(pawn)) return POSITION_HOME;
+        if (logic.getPawnFinished().get(player).get(pawn)) return POSITION_FINISHED;
+        if (logic.getPawnOnFinishLine().get(player).get(pawn)) {
+            return POSITION_FINAL_PATH + logic.getFinalPathPositions().get(player).get(pawn);
+        }
+        return logic.getPawnPositions().get(player).get(pawn);
+    }
+
+    /**
+     * Compares the board before a change with the board after it and calls
+     * onPawnMoved for every pawn that changed, including captured ones,
+     * then onTurnChange and onGameEnded if they changed
+     *
+     * @param before Encoded board before the change (GameStateCodec.encode())
+     * @param after  The board after the change
+     */
+    private void dispatchBoardChanges(byte[] before, GameLogic after) {
+        if (updateListener == null) return;
+
+        byte[] now = GameStateCodec.encode(after);
+        for (int player = 0; player < 4; player++) {
+            for (int pawn = 0; pawn < 4; pawn++) {
+                int offset = GameStateCodec.pawnOffset(player, pawn);
+                if (before[offset] != now[offset]) {
+                    updateListener.onPawnMoved(player, pawn, boardPosition(after, player, pawn));
+                }
             }
         }
+
+        GameLogic previous = GameStateCodec.decode(before);
+        if (previous.getCurrentPlayerTurn() != after.getCurrentPlayerTurn()) {
+            updateListener.onTurnChange(after.getCurrentPlayerTurn());
+        }
+        if (after.isGameOver() && !previous.isGameOver()) {
+            updateListener.onGameEnded(after.getWinnerOrder().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /**
+     * Gets the value of a seat from one of the per-seat lists
+     *
+     * @param values The list
+     * @param seat   Seat index
+     * @param <T>    Value type
+     * @return The value, or null if the list is shorter
+     */
+    private static <T> T seatValue(ArrayList<T> values, int seat) {
+        return values != null && seat < values.size() ? values.get(seat) : null;
     }
 
     /**
@@ -821,8 +1842,8 @@ public class FirebaseGameManager {
      * Should be called when no longer monitoring the game
      */
     private void detachGameListener() {
-        if (gameListener != null && currentGameId != null) {
-            gamesRef.child(currentGameId).removeEventListener(gameListener);
+        if (gameListener != null) {
+            gameListener.remove();
             gameListener = null;
         }
     }
@@ -832,6 +1853,10 @@ public class FirebaseGameManager {
      * Should be called in onDestroy() of the hosting activity/fragment
      */
     public void cleanup() {
+        leaveQuickMatch();
         detachGameListener();
+        detachMoveSync();
+        idAllocator.releasePool();
+        metrics.stopPeriodicLog();
     }
 }
\ No newline at end of file
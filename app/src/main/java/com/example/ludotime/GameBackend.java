@@ -0,0 +1,399 @@
+/**
+ * GameBackend.java
+ *
+ * The database operations multiplayer games need, independent of Firebase.
+ * Paths are slash separated ("games/ABC123/state") and values are raw
+ * database values: Map, List, Long, Double, Boolean, String or null,
+ * the same trees DataSnapshot.getValue() returns.
+ *
+ * FirebaseGameBackend talks to the Realtime Database, InMemoryGameBackend
+ * keeps everything in the JVM so games can be simulated without a network.
+ */
+package com.example.ludotime;
+
+import java.util.Map;
+
+public interface GameBackend {
+    /** Returned by a TransactionHandler to abort the transaction */
+    Object ABORT = new Object();
+
+    /**
+     * Interface for the result of a single read
+     */
+    interface ReadListener {
+        /**
+         * Called with the value at the path
+         *
+         * @param value The value, or null if nothing is stored there
+         */
+        void onRead(Object value);
+
+        /**
+         * Called if the read failed
+         *
+         * @param message Description of the error
+         */
+        void onError(String message);
+    }
+
+    /**
+     * Interface for the result of a write
+     */
+    interface CompletionListener {
+        /**
+         * Called when the write completed
+         *
+         * @param error Description of the error, or null if the write succeeded
+         */
+        void onComplete(String error);
+    }
+
+    /**
+     * Interface for the steps of a transaction
+     */
+    interface TransactionHandler {
+        /**
+         * Compute the new value from the current one
+         * May be called several times if another client wrote the path in between
+         *
+         * @param current The current value (a copy that may be changed and returned)
+         * @return The new value, or ABORT to leave the path unchanged
+         */
+        Object apply(Object current);
+
+        /**
+         * Called once the transaction finished
+         *
+         * @param error     Description of the error, or null
+         * @param committed True if the new value was written
+         * @param value     The value at the path after the transaction
+         */
+        void onComplete(String error, boolean committed, Object value);
+    }
+
+    /**
+     * Interface for following the value at a path
+     */
+    interface ValueListener {
+        /**
+         * Called once with the current value and again whenever it changes
+         *
+         * @param value The value, or null if nothing is stored there
+         */
+        void onValue(Object value);
+
+        /**
+         * Called if the listener was cancelled
+         *
+         * @param message Description of the error
+         */
+        void onError(String message);
+    }
+
+    /**
+     * Interface for following new children of a path
+     */
+    interface ChildListener {
+        /**
+         * Called for each existing child and for each child added later, in key order
+         *
+         * @param key   Key of the child
+         * @param value Value of the child
+         */
+        void onChildAdded(String key, Object value);
+
+        /**
+         * Called if the listener was cancelled
+         *
+         * @param message Description of the error
+         */
+        void onError(String message);
+    }
+
+    /**
+     * Interface for following the children a query selects
+     */
+    interface QueryListener {
+        /**
+         * Called for each selected child and for each child that enters the selection later
+         *
+         * @param key   Key of the child
+         * @param value Value of the child
+         */
+        void onChildAdded(String key, Object value);
+
+        /**
+         * Called when a selected child changed and is still selected
+         *
+         * @param key   Key of the child
+         * @param value New value of the child
+         */
+        void onChildChanged(String key, Object value);
+
+        /**
+         * Called when a child was deleted or left the selection,
+         * for example pushed out of a limit by an earlier child
+         *
+         * @param key Key of the child
+         */
+        void onChildRemoved(String key);
+
+        /**
+         * Called if the listener was cancelled
+         *
+         * @param message Description of the error
+         */
+        void onError(String message);
+    }
+
+    /**
+     * Interface for following the connection to the database
+     */
+    interface ConnectionListener {
+        /**
+         * Called once with the current state and again whenever it changes
+         *
+         * @param connected True if the client is connected
+         */
+        void onConnectionChanged(boolean connected);
+    }
+
+    /**
+     * Selection of the children of a path ordered by one of their own values,
+     * like a Realtime Database query on a child with an ".indexOn" rule.
+     * Children without the value come first, then false, true, numbers and
+     * strings; children with the same value are ordered by key.
+     * Bound values must be a Boolean, a Number or a String.
+     */
+    final class ChildQuery {
+        private final String orderByChild;
+        private Object startAfterValue;
+        private String startAfterKey;
+        private boolean hasStart = false;
+        private Object endAtValue;
+        private boolean hasEnd = false;
+        private int limitToFirst = 0;
+
+        /**
+         * Constructor for a query over all children
+         *
+         * @param orderByChild Child path of each child to order by ("lastUpdateTimestamp")
+         */
+        private ChildQuery(String orderByChild) {
+            this.orderByChild = orderByChild;
+        }
+
+        /**
+         * Create a query ordered by a child value
+         *
+         * @param child Child path of each child to order by
+         * @return The query
+         */
+        public static ChildQuery orderByChild(String child) {
+            return new ChildQuery(child);
+        }
+
+        /**
+         * Only select children after a position, to read the next page
+         *
+         * @param value Ordering value of the last child already read
+         * @param key   Key of the last child already read, or null to skip all children with the value
+         * @return This query
+         */
+        public ChildQuery startAfter(Object value, String key) {
+            this.startAfterValue = value;
+            this.startAfterKey = key;
+            this.hasStart = true;
+            return this;
+        }
+
+        /**
+         * Only select children whose value is at most a bound
+         * Children without the value are always below the bound
+         *
+         * @param value The bound, inclusive
+         * @return This query
+         */
+        public ChildQuery endAt(Object value) {
+            this.endAtValue = value;
+            this.hasEnd = true;
+            return this;
+        }
+
+        /**
+         * Only select the first children
+         *
+         * @param limit Maximum number of children, 0 for no limit
+         * @return This query
+         */
+        public ChildQuery limitToFirst(int limit) {
+            this.limitToFirst = limit;
+            return this;
+        }
+
+        /**
+         * Gets the child path the query orders by
+         *
+         * @return The child path
+         */
+        public String getOrderByChild() {
+            return orderByChild;
+        }
+
+        /**
+         * Checks if the query starts after a position
+         *
+         * @return True if startAfter() was called
+         */
+        public boolean hasStart() {
+            return hasStart;
+        }
+
+        /**
+         * Gets the value of the start position
+         *
+         * @return The value passed to startAfter()
+         */
+        public Object getStartAfterValue() {
+            return startAfterValue;
+        }
+
+        /**
+         * Gets the key of the start position
+         *
+         * @return The key passed to startAfter(), or null
+         */
+        public String getStartAfterKey() {
+            return startAfterKey;
+        }
+
+        /**
+         * Checks if the query has an upper bound
+         *
+         * @return True if endAt() was called
+         */
+        public boolean hasEnd() {
+            return hasEnd;
+        }
+
+        /**
+         * Gets the upper bound
+         *
+         * @return The value passed to endAt()
+         */
+        public Object getEndAtValue() {
+            return endAtValue;
+        }
+
+        /**
+         * Gets the maximum number of children
+         *
+         * @return The limit, 0 for no limit
+         */
+        public int getLimitToFirst() {
+            return limitToFirst;
+        }
+    }
+
+    /**
+     * Handle of an attached listener
+     */
+    interface Registration {
+        /**
+         * Detach the listener
+         */
+        void remove();
+    }
+
+    /**
+     * Read the value at a path once
+     *
+     * @param path     The path
+     * @param listener Receives the value
+     */
+    void get(String path, ReadListener listener);
+
+    /**
+     * Replace the value at a path
+     *
+     * @param path     The path
+     * @param value    The new value, null deletes the path
+     * @param listener Receives the result, or null
+     */
+    void set(String path, Object value, CompletionListener listener);
+
+    /**
+     * Write several children of a path in one atomic update
+     *
+     * @param path     The parent path
+     * @param values   Values by relative child path ("isReady/2"), null deletes
+     * @param listener Receives the result, or null
+     */
+    void update(String path, Map<String, Object> values, CompletionListener listener);
+
+    /**
+     * Change the value at a path based on its current value
+     * The handler is retried until it runs on an up to date value
+     *
+     * @param path    The path
+     * @param handler Computes the new value and receives the result
+     */
+    void transaction(String path, TransactionHandler handler);
+
+    /**
+     * Read the children of a path selected by a query once
+     *
+     * @param path     The parent path
+     * @param query    Order, bounds and limit
+     * @param listener Receives a Map of the selected children in query order,
+     *                 empty if none match
+     */
+    void query(String path, ChildQuery query, ReadListener listener);
+
+    /**
+     * Follow the value at a path
+     *
+     * @param path     The path
+     * @param listener Receives the value now and after every change
+     * @return Handle to detach the listener
+     */
+    Registration addValueListener(String path, ValueListener listener);
+
+    /**
+     * Follow the children of a path, ordered by key
+     * Keys that are numbers are ordered numerically
+     *
+     * @param path     The parent path
+     * @param startAt  First key to report, or null for all children
+     * @param listener Receives existing and new children
+     * @return Handle to detach the listener
+     */
+    Registration addChildListener(String path, String startAt, ChildListener listener);
+
+    /**
+     * Follow the children of a path selected by a query
+     *
+     * @param path     The parent path
+     * @param query    Order, bounds and limit
+     * @param listener Receives the selected children and later changes of the selection
+     * @return Handle to detach the listener
+     */
+    Registration addQueryListener(String path, ChildQuery query, QueryListener listener);
+
+    /**
+     * Keep a path cached and up to date even without listeners,
+     * so it can be read while offline and catches up quickly after
+     *
+     * @param path       The path
+     * @param keepSynced True to keep it synced, false to stop
+     */
+    void keepSynced(String path, boolean keepSynced);
+
+    /**
+     * Follow the connection to the database
+     *
+     * @param listener Receives the state now and after every change
+     * @return Handle to detach the listener
+     */
+    Registration addConnectionListener(ConnectionListener listener);
+}
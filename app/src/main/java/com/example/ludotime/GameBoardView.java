@@ -0,0 +1,46 @@
+/**
+ * GameBoardView.java
+ *
+ * Common interface of the board views used by the game activity.
+ * Implemented by BoardCanvas (drawn on the main thread) and
+ * BoardSurfaceView (drawn on a dedicated render thread).
+ */
+package com.example.ludotime;
+
+public interface GameBoardView {
+
+    /**
+     * Get a reference to the logic class
+     * @return the logic class
+     */
+    GameLogic getLogic();
+
+    /**
+     * Set the game logic instance for this board
+     * @param gameLogic The GameLogic instance to use for game state management
+     */
+    void setLogic(GameLogic gameLogic);
+
+    /**
+     * Tell the board that the game state changed and it should be redrawn
+     */
+    void refreshBoard();
+
+    /**
+     * Enable or disable the render statistics overlay
+     * @param enabled true to collect statistics and draw the overlay
+     */
+    void setRenderStatsEnabled(boolean enabled);
+
+    /**
+     * Check if the render statistics overlay is enabled
+     * @return true if statistics are being collected
+     */
+    boolean isRenderStatsEnabled();
+
+    /**
+     * Get the render statistics collector
+     * @return The statistics, or null if the overlay is disabled
+     */
+    BoardRenderStats getRenderStats();
+}
@@ -0,0 +1,168 @@
+/**
+ * GameEvent.java
+ *
+ * A single typed change emitted by GameLogic, such as a dice roll, a pawn move
+ * or a turn change. Lets rendering, sound, statistics and network sync react to
+ * exactly what changed instead of re-reading the whole game state.
+ *
+ * Event objects are pooled and reused by GameLogic. A listener must read what it
+ * needs during onGameEvent() and never keep a reference to the event.
+ */
+package com.example.ludotime;
+
+public final class GameEvent {
+    /**
+     * Kinds of events and the meaning of their fields
+     */
+    public enum Type {
+        /** player rolled value */
+        DICE_ROLLED,
+        /** player's pawn left home onto track position to, value is the dice roll */
+        PAWN_EXITED,
+        /** player's pawn moved from -> to (track 0-51, or final path 0-4 if onFinalPath), value is the dice roll */
+        PAWN_MOVED,
+        /** player's pawn was sent home from track position from, value is the capturing player */
+        PAWN_CAPTURED,
+        /** player's pawn left track position from onto final path position to, value is the dice roll */
+        PAWN_ENTERED_FINAL_PATH,
+        /** player's pawn reached the end of the final path from final path position from, value is the dice roll */
+        PAWN_FINISHED,
+        /** player finished all pawns, value is the finishing place (1-4) */
+        PLAYER_FINISHED,
+        /** turn passed to player, value is the previous player */
+        TURN_CHANGED
+    }
+
+    /**
+     * Interface for receiving game events
+     */
+    public interface Listener {
+        /**
+         * Called synchronously while GameLogic changes state
+         *
+         * @param event The event, only valid during this call
+         */
+        void onGameEvent(GameEvent event);
+    }
+
+    // ===== Event Data =====
+    private Type type;
+    private int player;
+    private int pawn;
+    private int from;
+    private int to;
+    private int value;
+    private boolean onFinalPath;
+
+    /**
+     * Package-private constructor, events are obtained from GameLogic's pool
+     */
+    GameEvent() {
+    }
+
+    /**
+     * Fill this event with new data
+     *
+     * @param type   Event type
+     * @param player Player index (0-3)
+     * @param pawn   Pawn index (0-3), or -1 if not about a pawn
+     * @param from   Position before the change, or -1
+     * @param to     Position after the change, or -1
+     * @param value  Extra value, see Type
+     * @return This event
+     */
+    GameEvent set(Type type, int player, int pawn, int from, int to, int value) {
+        this.type = type;
+        this.player = player;
+        this.pawn = pawn;
+        this.from = from;
+        this.to = to;
+        this.value = value;
+        this.onFinalPath = false;
+        return this;
+    }
+
+    /**
+     * Mark the positions of a PAWN_MOVED event as final path positions
+     *
+     * @return This event
+     */
+    GameEvent onFinalPath() {
+        this.onFinalPath = true;
+        return this;
+    }
+
+    /**
+     * Gets the event type
+     *
+     * @return The type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the player the event is about
+     *
+     * @return Player index (0-3)
+     */
+    public int getPlayer() {
+        return player;
+    }
+
+    /**
+     * Gets the pawn the event is about
+     *
+     * @return Pawn index (0-3), or -1 if not about a pawn
+     */
+    public int getPawn() {
+        return pawn;
+    }
+
+    /**
+     * Gets the position before the change
+     *
+     * @return Position, or -1 if not applicable
+     */
+    public int getFrom() {
+        return from;
+    }
+
+    /**
+     * Gets the position after the change
+     *
+     * @return Position, or -1 if not applicable
+     */
+    public int getTo() {
+        return to;
+    }
+
+    /**
+     * Gets the extra value (dice value, capturing player, place or previous player)
+     *
+     * @return The value, see Type
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Check if the positions of a PAWN_MOVED event are on the final path
+     *
+     * @return True for final path positions, false for main track positions
+     */
+    public boolean isOnFinalPath() {
+        return onFinalPath;
+    }
+
+    /**
+     * Returns a readable description for logging
+     *
+     * @return Description of the event
+     */
+    @Override
+    public String toString() {
+        return type + "{player=" + player + ", pawn=" + pawn + ", from=" + from
+                + ", to=" + to + ", value=" + value + (onFinalPath ? ", finalPath" : "") + "}";
+    }
+}
@@ -0,0 +1,326 @@
+/**
+ * GameIdAllocator.java
+ *
+ * Hands out 6-character game codes that no other game uses.
+ *
+ * Every code in use has an entry in the ID index, gameIds/{id}, claimed with
+ * a transaction that aborts if the entry exists. A claimed code that was not
+ * used for a game yet carries its reservation time, so the stale game sweeper
+ * can give back codes of clients that quit before creating their game.
+ *
+ * A few codes are reserved ahead of time, so creating a lobby does not wait
+ * for a round trip. Codes of swept games are listed in freeGameIds/{id} and
+ * are claimed before new random codes are tried.
+ */
+package com.example.ludotime;
+
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class GameIdAllocator {
+    // ===== Constants =====
+    /** Firebase database reference path for the ID index */
+    static final String INDEX_REF = "gameIds";
+
+    /** Firebase database reference path for codes of swept games */
+    static final String FREE_REF = "freeGameIds";
+
+    /** Child paths of an index entry */
+    static final String OWNER_PATH = "owner";
+    static final String RESERVED_AT_PATH = "reservedAt";
+
+    /** Child path of a free list entry */
+    static final String FREED_AT_PATH = "freedAt";
+
+    public static final int DEFAULT_POOL_SIZE = 2;
+    private static final int MAX_ATTEMPTS = 10;
+    private static final int FREE_CANDIDATES = 10; // free codes read at a time, one is picked at random
+    private static final String ID_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private static final int ID_LENGTH = 6;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // ===== Allocator =====
+    private final GameBackend backend;
+    private final String userId;
+    private final TransactionMetrics metrics;
+    private final int poolSize;
+
+    /** Codes reserved for this user and not handed out yet */
+    private final ArrayDeque<String> pool = new ArrayDeque<>();
+
+    /** Callers waiting for a code while the pool is empty */
+    private final ArrayDeque<IdListener> waiting = new ArrayDeque<>();
+
+    /** Number of reservations in flight */
+    private int reserving = 0;
+
+    /** Free list codes already tried by this allocator */
+    private final List<String> triedFree = new ArrayList<>();
+
+    /**
+     * Interface for receiving a reserved code
+     */
+    public interface IdListener {
+        /**
+         * Called with a code reserved for the current user
+         *
+         * @param gameId The code
+         */
+        void onIdReserved(String gameId);
+
+        /**
+         * Called if no code could be reserved
+         *
+         * @param message Description of the error
+         */
+        void onError(String message);
+    }
+
+    /**
+     * Constructor for an allocator with the default pool size
+     *
+     * @param backend Database the index is stored in
+     * @param userId  User the codes are reserved for
+     * @param metrics Counters for the reservation transactions
+     */
+    public GameIdAllocator(GameBackend backend, String userId, TransactionMetrics metrics) {
+        this(backend, userId, metrics, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Constructor for an allocator
+     *
+     * @param backend  Database the index is stored in
+     * @param userId   User the codes are reserved for
+     * @param metrics  Counters for the reservation transactions
+     * @param poolSize Number of codes to keep reserved ahead of time
+     */
+    public GameIdAllocator(GameBackend backend, String userId, TransactionMetrics metrics, int poolSize) {
+        this.backend = backend;
+        this.userId = userId;
+        this.metrics = metrics;
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * Generates a random 6-character code
+     *
+     * @return Alphanumeric code, not checked against the index
+     */
+    public static String randomId() {
+        StringBuilder gameId = new StringBuilder(ID_LENGTH);
+        for (int i = 0; i < ID_LENGTH; i++) {
+            gameId.append(ID_CHARS.charAt(RANDOM.nextInt(ID_CHARS.length())));
+        }
+        return gameId.toString();
+    }
+
+    /**
+     * Gets the number of codes reserved ahead of time
+     *
+     * @return Codes in the pool
+     */
+    public int getPoolSize() {
+        return pool.size();
+    }
+
+    // ===== Reserving =====
+
+    /**
+     * Reserve codes in the background until the pool is full
+     */
+    public void prefetch() {
+        while (pool.size() + reserving - waiting.size() < poolSize) {
+            reserveNext();
+        }
+    }
+
+    /**
+     * Get a reserved code, at once if the pool has one
+     * The pool is refilled in the background afterwards
+     *
+     * @param listener Receives the code
+     */
+    public void take(IdListener listener) {
+        String gameId = pool.poll();
+        if (gameId != null) {
+            listener.onIdReserved(gameId);
+            prefetch();
+            return;
+        }
+
+        waiting.add(listener);
+        if (reserving < waiting.size()) {
+            reserveNext();
+        }
+    }
+
+    /**
+     * Reserve one more code
+     */
+    private void reserveNext() {
+        reserving++;
+        reserve(0);
+    }
+
+    /**
+     * Claim one of the oldest free codes of swept games, or a random code if there is none
+     * The free code is picked at random so hosts asking at the same time rarely collide
+     *
+     * @param attempts Codes that were already taken
+     */
+    private void reserve(final int attempts) {
+        GameBackend.ChildQuery query = GameBackend.ChildQuery.orderByChild(FREED_AT_PATH)
+                .limitToFirst(FREE_CANDIDATES + triedFree.size());
+        backend.query(FREE_REF, query, new GameBackend.ReadListener() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void onRead(Object value) {
+                List<String> candidates = new ArrayList<>();
+                for (String gameId : ((Map<String, Object>) value).keySet()) {
+                    if (!triedFree.contains(gameId)) {
+                        candidates.add(gameId);
+                    }
+                }
+
+                if (candidates.isEmpty()) {
+                    claim(randomId(), false, attempts);
+                } else {
+                    String gameId = candidates.get(RANDOM.nextInt(candidates.size()));
+                    triedFree.add(gameId);
+                    claim(gameId, true, attempts);
+                }
+            }
+
+            @Override
+            public void onError(String message) {
+                claim(randomId(), false, attempts);
+            }
+        });
+    }
+
+    /**
+     * Claim a code in the index, trying other codes while it is taken
+     *
+     * @param gameId   The code to claim
+     * @param free     True if the code came from the free list
+     * @param attempts Codes that were already taken
+     */
+    private void claim(final String gameId, final boolean free, final int attempts) {
+        final TransactionMetrics.Operation operation = metrics.begin("reserveGameId");
+        backend.transaction(INDEX_REF + "/" + gameId, new GameBackend.TransactionHandler() {
+            @Override
+            public Object apply(Object current) {
+                if (current != null) {
+                    return operation.abort(TransactionMetrics.ID_TAKEN);
+                }
+
+                Map<String, Object> entry = new HashMap<>();
+                entry.put(OWNER_PATH, userId);
+                entry.put(RESERVED_AT_PATH, System.currentTimeMillis());
+                return operation.commit(entry);
+            }
+
+            @Override
+            public void onComplete(String error, boolean committed, Object value) {
+                operation.complete(error, committed);
+
+                if (free) {
+                    // Taken or claimed, the code is no longer free
+                    backend.set(FREE_REF + "/" + gameId, null, null);
+                    triedFree.remove(gameId);
+                }
+
+                if (committed) {
+                    reserved(gameId);
+                } else if (error == null && attempts + 1 < MAX_ATTEMPTS) {
+                    if (free) {
+                        reserve(attempts + 1); // Another host got it, try the next free code
+                    } else {
+                        claim(randomId(), false, attempts + 1);
+                    }
+                } else {
+                    failed(error != null ? error : "No free game code found");
+                }
+            }
+        });
+    }
+
+    /**
+     * Hand a freshly reserved code to a waiting caller or put it in the pool
+     *
+     * @param gameId The code
+     */
+    private void reserved(String gameId) {
+        reserving--;
+        IdListener listener = waiting.poll();
+        if (listener != null) {
+            listener.onIdReserved(gameId);
+        } else {
+            pool.add(gameId);
+        }
+    }
+
+    /**
+     * Report a failed reservation to a waiting caller
+     *
+     * @param message Description of the error
+     */
+    private void failed(String message) {
+        reserving--;
+        IdListener listener = waiting.poll();
+        if (listener != null) {
+            listener.onError(message);
+        }
+    }
+
+    // ===== Using and Releasing =====
+
+    /**
+     * Mark a code as used by a created game
+     * Removes the reservation time, so the sweeper leaves the entry alone
+     *
+     * @param gameId The code
+     */
+    public void markUsed(String gameId) {
+        backend.set(INDEX_REF + "/" + gameId + "/" + RESERVED_AT_PATH, null, null);
+    }
+
+    /**
+     * Give back a reserved code that was not used for a game
+     *
+     * @param gameId The code
+     */
+    public void release(String gameId) {
+        backend.update("", freeUpdates(gameId, System.currentTimeMillis()), null);
+    }
+
+    /**
+     * Give back every code in the pool
+     */
+    public void releasePool() {
+        String gameId;
+        while ((gameId = pool.poll()) != null) {
+            release(gameId);
+        }
+    }
+
+    /**
+     * Gets the writes that move a code from the index to the free list
+     * Used by the sweeper in the same write that deletes the game
+     *
+     * @param gameId   The code
+     * @param freedAt  Time the code was freed
+     * @return Values by path from the root
+     */
+    static Map<String, Object> freeUpdates(String gameId, long freedAt) {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(INDEX_REF + "/" + gameId, null);
+        updates.put(FREE_REF + "/" + gameId + "/" + FREED_AT_PATH, freedAt);
+        return updates;
+    }
+}
@@ -7,10 +7,17 @@
  * - Pawn movement
  * - Path tracking
  * - Collision detection
+ *
+ * Getters that compute values instead of returning state are marked @Exclude
+ * so Firebase never writes them.
  */
 package com.example.ludotime;
 
 import android.graphics.Point;
+
+import com.google.firebase.database.Exclude;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -42,17 +49,21 @@ public class GameLogic {
     private ArrayList<ArrayList<Integer>> pawnPositions;
     private ArrayList<ArrayList<Integer>> finalPathPositions;
 
-    // Home coordinates for each player's pawns
-    private ArrayList<ArrayList<Point>> homeCoordinates;
+    // Home coordinates for each player's pawns (same for every game)
+    private static final ArrayList<ArrayList<Point>> homeCoordinates = new ArrayList<>();
 
     // Start positions on the main track for each player
-    private ArrayList<Integer> startPositions;
+    private static final ArrayList<Integer> startPositions = new ArrayList<>(Arrays.asList(0, 13, 26, 39));
 
     // Entry points to final path for each player
-    private ArrayList<Integer> finalPathEntries;
+    private static final ArrayList<Integer> finalPathEntries = new ArrayList<>(Arrays.asList(50, 11, 24, 37));
+
+    // Final path coordinates for each player (same for every game)
+    private static final ArrayList<ArrayList<Point>> finalPathCoordinates = new ArrayList<>();
 
-    // Final path coordinates for each player
-    private ArrayList<ArrayList<Point>> finalPathCoordinates;
+    static {
+        initializeCoordinates();
+    }
 
     // Pawn selection and it's flag, used to wait for a choice
     private boolean waitingForPawnSelection;
@@ -62,6 +73,26 @@ public class GameLogic {
     private ArrayList<Integer> winnerOrder;
     private int winnersCount;
 
+    // Notified when a selected pawn has moved (not part of the game state)
+    private OnMoveCompleteListener moveCompleteListener;
+
+    // Game event stream with reusable event objects (not part of the game state)
+    private final ArrayList<GameEvent.Listener> eventListeners = new ArrayList<>();
+    private final ArrayDeque<GameEvent> eventPool = new ArrayDeque<>();
+
+    /**
+     * Interface for reacting to a move completed through setPawnSelection()
+     */
+    public interface OnMoveCompleteListener {
+        /**
+         * Called after the selected pawn moved and the turn passed on
+         *
+         * @param player    Player index who moved (0-3)
+         * @param pawnIndex Pawn index that moved (0-3)
+         */
+        void onMoveComplete(int player, int pawnIndex);
+    }
+
     /**
      * Default constructor for Firebase
      */
@@ -78,9 +109,6 @@ public class GameLogic {
         selectedPawn = -1;
         winnersCount = 0;
 
-        // Initialize coordinates and positions
-        initializeCoordinates();
-
         // Set all pawns to be in home initially
         for (int player = 0; player < 4; player++) {
             for (int pawn = 0; pawn < 4; pawn++) {
@@ -119,6 +147,17 @@ public class GameLogic {
         }
     }
 
+    /**
+     * Constructor restoring a game saved with GameStateCodec
+     * Skips the default initialization, every state field comes from the saved bytes
+     *
+     * @param savedState Bytes from GameStateCodec.encode()
+     * @throws IllegalArgumentException if the bytes are not a valid saved game
+     */
+    GameLogic(byte[] savedState) {
+        GameStateCodec.decodeInto(this, savedState);
+    }
+
     /**
      * Initialize all ArrayLists with proper size
      */
@@ -129,8 +168,6 @@ public class GameLogic {
         pawnOnFinishLine = new ArrayList<>();
         pawnPositions = new ArrayList<>();
         finalPathPositions = new ArrayList<>();
-        homeCoordinates = new ArrayList<>();
-        finalPathCoordinates = new ArrayList<>();
 
         for (int i = 0; i < 4; i++) {
             pawnInHome.add(new ArrayList<>(Arrays.asList(false, false, false, false)));
@@ -138,7 +175,18 @@ public class GameLogic {
             pawnOnFinishLine.add(new ArrayList<>(Arrays.asList(false, false, false, false)));
             pawnPositions.add(new ArrayList<>(Arrays.asList(-1, -1, -1, -1)));
             finalPathPositions.add(new ArrayList<>(Arrays.asList(-1, -1, -1, -1)));
+        }
+
+        // Initialize other ArrayLists
+        winnerOrder = new ArrayList<>(Arrays.asList(-1, -1, -1, -1));
+    }
 
+    /**
+     * Initialize coordinates for homes and final paths
+     * Runs once for the class, the tables are shared by all games
+     */
+    private static void initializeCoordinates() {
+        for (int i = 0; i < 4; i++) {
             // Initialize Point ArrayLists
             homeCoordinates.add(new ArrayList<>());
             for (int j = 0; j < 4; j++) {
@@ -152,16 +200,6 @@ public class GameLogic {
             }
         }
 
-        // Initialize other ArrayLists
-        startPositions = new ArrayList<>(Arrays.asList(0, 13, 26, 39));
-        finalPathEntries = new ArrayList<>(Arrays.asList(50, 11, 24, 37));
-        winnerOrder = new ArrayList<>(Arrays.asList(-1, -1, -1, -1));
-    }
-
-    /**
-     * Initialize coordinates for homes and final paths
-     */
-    private void initializeCoordinates() {
         // RED home coordinates
         homeCoordinates.get(RED_PLAYER).set(0, new Point(2, 2));
         homeCoordinates.get(RED_PLAYER).set(1, new Point(3, 2));
@@ -542,17 +580,32 @@ public class GameLogic {
 
         // Now that we have a selection, complete the move
         if (selectedPawn != -1) {
-            movePawn(currentPlayerTurn, selectedPawn);
+            int player = currentPlayerTurn;
+            movePawn(player, selectedPawn);
 
-            // Only check for captures if pawn is not on final path
-            if (!pawnOnFinishLine.get(currentPlayerTurn).get(selectedPawn)) {
-                checkForCaptures(currentPlayerTurn, pawnPositions.get(currentPlayerTurn).get(selectedPawn));
+            // Only check for captures if pawn is still on the main track
+            if (!pawnOnFinishLine.get(player).get(selectedPawn) && !pawnFinished.get(player).get(selectedPawn)) {
+                checkForCaptures(player, pawnPositions.get(player).get(selectedPawn));
             }
 
             nextTurn();
+
+            if (moveCompleteListener != null) {
+                moveCompleteListener.onMoveComplete(player, selectedPawn);
+            }
         }
     }
 
+    /**
+     * Set the listener notified when setPawnSelection() completes a move
+     * No getter on purpose so Firebase never serializes the listener
+     *
+     * @param listener The listener, or null to remove it
+     */
+    public void setOnMoveCompleteListener(OnMoveCompleteListener listener) {
+        this.moveCompleteListener = listener;
+    }
+
     /**
      * Set the dice roll value for the current turn
      *
@@ -566,16 +619,81 @@ public class GameLogic {
         lastDiceRoll = value;
         diceRolled = true;
         moveMade = false;
+
+        emit(GameEvent.Type.DICE_ROLLED, currentPlayerTurn, -1, -1, -1, value);
     }
 
     /**
      * Move to the next player's turn
      */
     public void nextTurn() {
+        int previousPlayer = currentPlayerTurn;
         currentPlayerTurn = (currentPlayerTurn + 1) % 4;
         diceRolled = false;
         moveMade = false;
         lastDiceRoll = 0;
+
+        emit(GameEvent.Type.TURN_CHANGED, currentPlayerTurn, -1, -1, -1, previousPlayer);
+    }
+
+    // ===== Game Events =====
+
+    /**
+     * Register a listener for game events
+     *
+     * @param listener The listener to add
+     */
+    public void addGameEventListener(GameEvent.Listener listener) {
+        if (!eventListeners.contains(listener)) {
+            eventListeners.add(listener);
+        }
+    }
+
+    /**
+     * Unregister a listener for game events
+     *
+     * @param listener The listener to remove
+     */
+    public void removeGameEventListener(GameEvent.Listener listener) {
+        eventListeners.remove(listener);
+    }
+
+    /**
+     * Send an event to all listeners using a pooled event object
+     * Does nothing (and allocates nothing) when no one is listening
+     *
+     * @param type   Event type
+     * @param player Player index (0-3)
+     * @param pawn   Pawn index (0-3), or -1
+     * @param from   Position before the change, or -1
+     * @param to     Position after the change, or -1
+     * @param value  Extra value, see GameEvent.Type
+     */
+    private void emit(GameEvent.Type type, int player, int pawn, int from, int to, int value) {
+        if (eventListeners.isEmpty()) return;
+        dispatch(obtainEvent().set(type, player, pawn, from, to, value));
+    }
+
+    /**
+     * Take an event object from the pool
+     *
+     * @return A reusable event
+     */
+    private GameEvent obtainEvent() {
+        GameEvent event = eventPool.poll();
+        return event != null ? event : new GameEvent();
+    }
+
+    /**
+     * Deliver an event to all listeners, then return it to the pool
+     *
+     * @param event The filled event
+     */
+    private void dispatch(GameEvent event) {
+        for (int i = 0; i < eventListeners.size(); i++) {
+            eventListeners.get(i).onGameEvent(event);
+        }
+        eventPool.push(event);
     }
 
     /**
@@ -621,7 +739,7 @@ public class GameLogic {
     public Point getPawnBoardPosition(int player, int pawnIndex) {
         // If pawn is in home, return its home coordinates
         if (pawnInHome.get(player).get(pawnIndex)) {
-            return homeCoordinates.get(player).get(pawnIndex);
+            return new Point(homeCoordinates.get(player).get(pawnIndex));
         }
 
         // If pawn has finished, return the center position
@@ -632,7 +750,7 @@ public class GameLogic {
         // If pawn is on finish line, return its position in the final path
         if (pawnOnFinishLine.get(player).get(pawnIndex)) {
             int finalPathIndex = finalPathPositions.get(player).get(pawnIndex);
-            return finalPathCoordinates.get(player).get(finalPathIndex);
+            return new Point(finalPathCoordinates.get(player).get(finalPathIndex));
         }
 
         // Otherwise, pawn is on the main track
@@ -751,9 +869,16 @@ public class GameLogic {
                 pawnFinished.get(player).set(pawnIndex, true);
                 pawnOnFinishLine.get(player).set(pawnIndex, false);
                 finalPathPositions.get(player).set(pawnIndex, -1);
+
+                emit(GameEvent.Type.PAWN_FINISHED, player, pawnIndex, currentFinalPathPosition, -1, lastDiceRoll);
             } else {
                 // Pawn advances on final path
                 finalPathPositions.get(player).set(pawnIndex, newFinalPathPosition);
+
+                if (!eventListeners.isEmpty()) {
+                    dispatch(obtainEvent().set(GameEvent.Type.PAWN_MOVED, player, pawnIndex,
+                            currentFinalPathPosition, newFinalPathPosition, lastDiceRoll).onFinalPath());
+                }
             }
 
             moveMade = true;
@@ -817,11 +942,15 @@ public class GameLogic {
             // Enter final path
             pawnOnFinishLine.get(player).set(pawnIndex, true);
             finalPathPositions.get(player).set(pawnIndex, stepsIntoFinalPath);
+
+            emit(GameEvent.Type.PAWN_ENTERED_FINAL_PATH, player, pawnIndex, currentPosition, stepsIntoFinalPath, lastDiceRoll);
         } else {
             // Regular move on the main track
             int newPosition = (currentPosition + lastDiceRoll) % BOARD_SQUARES;
             pawnPositions.get(player).set(pawnIndex, newPosition);
 
+            emit(GameEvent.Type.PAWN_MOVED, player, pawnIndex, currentPosition, newPosition, lastDiceRoll);
+
             // Check if pawn landed on another pawn
             checkForCaptures(player, pawnPositions.get(player).get(pawnIndex));
         }
@@ -840,6 +969,8 @@ public class GameLogic {
         pawnInHome.get(player).set(pawnIndex, false);
         pawnPositions.get(player).set(pawnIndex, startPositions.get(player));
 
+        emit(GameEvent.Type.PAWN_EXITED, player, pawnIndex, -1, startPositions.get(player), lastDiceRoll);
+
         // Check if pawn landed on another pawn
         checkForCaptures(player, startPositions.get(player));
     }
@@ -870,6 +1001,8 @@ public class GameLogic {
                     // Send the pawn back home
                     pawnInHome.get(player).set(pawn, true);
                     pawnPositions.get(player).set(pawn, -1);
+
+                    emit(GameEvent.Type.PAWN_CAPTURED, player, pawn, currentPos, -1, movingPlayer);
                 }
             }
         }
@@ -880,6 +1013,7 @@ public class GameLogic {
      *
      * @return True if the game is over with 3 winners
      */
+    @Exclude
     public boolean isGameOver() {
         return winnersCount >= 3; // Exactly 3 winners
     }
@@ -889,6 +1023,7 @@ public class GameLogic {
      *
      * @return ArrayList with player indices in order of winning (-1 for not finished)
      */
+    @Exclude
     public ArrayList<Integer> getWinnerOrderList() {
         return new ArrayList<>(winnerOrder);
     }
@@ -943,6 +1078,7 @@ public class GameLogic {
      *
      * @return Player index of the latest winner, or -1 if no new winner
      */
+    @Exclude
     public int getWinner() {
         for (int player = 0; player < 4; player++) {
             // Check if player has won and isn't already in winners list
@@ -951,6 +1087,8 @@ public class GameLogic {
                 winnerOrder.set(winnersCount, player);
                 winnersCount++;
 
+                emit(GameEvent.Type.PLAYER_FINISHED, player, -1, -1, -1, winnersCount);
+
                 // Debug message
                 System.out.println("Player " + player + " won! Total winners: " + winnersCount);
 
@@ -1013,11 +1151,72 @@ public class GameLogic {
         return false;
     }
 
+    /**
+     * Check if a pawn of the current player can be moved with the last dice roll
+     * Uses the same rules as hasValidMoves()
+     *
+     * @param pawn Pawn index (0-3)
+     * @return True if the pawn can be selected
+     */
+    private boolean canMovePawn(int pawn) {
+        if (pawnInHome.get(currentPlayerTurn).get(pawn)) {
+            return lastDiceRoll == EXIT_ROLL;
+        }
+        return !pawnFinished.get(currentPlayerTurn).get(pawn);
+    }
+
+    /**
+     * Find the only legal move of the current player, if there is just one
+     * Pawns that share the same spot (for example all pawns still in home)
+     * lead to the same result and count as a single move
+     *
+     * @return Pawn index to move, or -1 if there are no moves or a real choice
+     */
+    public int findSingleLegalMove() {
+        if (!diceRolled || moveMade) {
+            return -1;
+        }
+
+        int choice = -1;
+        for (int pawn = 0; pawn < 4; pawn++) {
+            if (!canMovePawn(pawn)) continue;
+
+            if (choice == -1) {
+                choice = pawn;
+            } else if (!isSameSpot(currentPlayerTurn, choice, pawn)) {
+                return -1; // At least two different moves
+            }
+        }
+        return choice;
+    }
+
+    /**
+     * Check if two pawns of a player are on the same spot
+     *
+     * @param player Player index (0-3)
+     * @param first  First pawn index (0-3)
+     * @param second Second pawn index (0-3)
+     * @return True if both pawns are in the same state and position
+     */
+    private boolean isSameSpot(int player, int first, int second) {
+        if (pawnInHome.get(player).get(first) || pawnInHome.get(player).get(second)) {
+            return pawnInHome.get(player).get(first) && pawnInHome.get(player).get(second);
+        }
+        if (pawnOnFinishLine.get(player).get(first) != pawnOnFinishLine.get(player).get(second)) {
+            return false;
+        }
+        if (pawnOnFinishLine.get(player).get(first)) {
+            return finalPathPositions.get(player).get(first).equals(finalPathPositions.get(player).get(second));
+        }
+        return pawnPositions.get(player).get(first).equals(pawnPositions.get(player).get(second));
+    }
+
     /**
      * Get debug information about winners
      *
      * @return String containing winners debug info
      */
+    @Exclude
     public String getWinnersDebugInfo() {
         StringBuilder info = new StringBuilder("Winners: ");
         for (int i = 0; i < winnersCount; i++) {
@@ -1032,6 +1231,7 @@ public class GameLogic {
      *
      * @return ArrayList of pawn indices that can be moved
      */
+    @Exclude
     public ArrayList<Integer> getMovablePawns() {
         ArrayList<Integer> movablePawns = new ArrayList<>();
 
@@ -1109,7 +1309,7 @@ public class GameLogic {
      * @return ArrayList of Points representing home positions
      */
     public ArrayList<Point> getPlayerHomeCoordinates(int player) {
-        return new ArrayList<>(homeCoordinates.get(player));
+        return copyPoints(homeCoordinates.get(player));
     }
 
     /**
@@ -1119,7 +1319,21 @@ public class GameLogic {
      * @return ArrayList of Points representing final path positions
      */
     public ArrayList<Point> getPlayerFinalPathCoordinates(int player) {
-        return new ArrayList<>(finalPathCoordinates.get(player));
+        return copyPoints(finalPathCoordinates.get(player));
+    }
+
+    /**
+     * Copy a list of the shared coordinate tables, Point is mutable
+     *
+     * @param points Points of a table
+     * @return New list of new Points
+     */
+    private static ArrayList<Point> copyPoints(ArrayList<Point> points) {
+        ArrayList<Point> copy = new ArrayList<>(points.size());
+        for (Point point : points) {
+            copy.add(new Point(point));
+        }
+        return copy;
     }
 
     /**
@@ -1152,6 +1366,7 @@ public class GameLogic {
      *
      * @return String with current game state information
      */
+    @Exclude
     public String getGameStateSummary() {
         StringBuilder summary = new StringBuilder();
         summary.append("Current Player: ").append(currentPlayerTurn).append("\n");
@@ -0,0 +1,595 @@
+/**
+ * GameReferee.java
+ *
+ * Headless referee that owns the turns of many multiplayer games at once.
+ * Clients of a refereed game no longer roll dice or change the board in
+ * transactions, they write a small intent into their seat's slot,
+ * intents/{gameId}/{seat}: the action (roll, play or select), the pawn for a
+ * selection and the time it was sent.
+ *
+ * The referee keeps each game's board in memory, checks the intent against
+ * it (the seat's turn, the turn phase, a movable pawn), rolls the dice itself
+ * and applies the action with GameLogic. The new state, the move log entry
+ * of a completed turn and the removal of the intent go out in one update,
+ * so clients follow the game exactly as before through the turn node and the
+ * move log. A rejected intent is replaced by its reason under "error", which
+ * the client reports and clears. Since the referee is the only writer of the
+ * state, no transaction ever retries.
+ *
+ * A game is refereed when it is created with the refereed flag, see
+ * MultiplayerGameLogic. Instead of starting it, the host writes
+ * refereeRequests/{gameId} (MatchMaker writes it with the full games it
+ * creates), and the referee starts the game in a transaction with the same
+ * checks as FirebaseGameManager.startGame(). The referee follows the oldest
+ * requests up to its capacity and drops a game when its request is removed
+ * or the game ends.
+ * It reads the board from the state node when it takes a game, so a
+ * restarted referee continues where the last one stopped.
+ *
+ * database.rules.json keys everything on the game's own refereed flag, which
+ * players can only set when they create the game. In a refereed game only a
+ * client signed in with the custom claim referee=true may write the start
+ * flag, the board or the move log, so the referee runs on a trusted host
+ * under such an account. The checks are .write rules, so they also cover
+ * deletes. Players may only fill their own intent slot, restore the log
+ * entry the state names, and delete the game as its host, before it starts
+ * or after it ends. Only the host creates a request, and only the referee
+ * removes one while its game exists.
+ *
+ * Works on any GameBackend and needs no activity or UI thread, but it is not
+ * a standalone program: there is no entry point, and it uses android classes
+ * through GameLogic (Point) and TransactionMetrics (Handler, Log). It runs
+ * inside an Android process, or in unit tests where those classes are
+ * stubbed. Callbacks arrive on the backend's callback thread, which also
+ * serializes the intents of one game. Until such a host is deployed the app
+ * offers no refereed games, FirebaseGameManager.setRefereed() and
+ * MatchMaker.setRefereed() are only called from tests.
+ */
+package com.example.ludotime;
+
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class GameReferee {
+    // ===== Wire Schema =====
+    /** Firebase database reference path for games waiting for or hosted by a referee */
+    public static final String REQUESTS_REF = "refereeRequests";
+
+    /** Firebase database reference path for the intents of the players, one slot per seat */
+    public static final String INTENTS_REF = "intents";
+
+    /** Requests are taken by this child, oldest first, see database.rules.json */
+    public static final String REQUESTED_AT = "requestedAt";
+
+    /** Children of an intent */
+    public static final String ACTION = "action";
+    public static final String PAWN = "pawn";
+    /** Intents of a game are read by this child, see database.rules.json */
+    public static final String SENT_AT = "sentAt";
+    /** Written by the referee in place of a rejected intent */
+    public static final String ERROR = "error";
+
+    /** Actions, one per turn method of FirebaseGameManager */
+    public static final String ROLL = "roll";
+    public static final String PLAY = "play";
+    public static final String SELECT = "select";
+
+    // ===== Constants =====
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    // ===== Referee =====
+    private final GameBackend backend;
+    private final Random dice;
+    private final int capacity;
+    private final TransactionMetrics metrics = new TransactionMetrics();
+
+    /** Games taken by this referee, by ID, including those still loading */
+    private final Map<String, RefereedGame> games = new HashMap<>();
+
+    private GameBackend.Registration requestListener;
+
+    /**
+     * Constructor for a referee with secure dice and the default capacity
+     *
+     * @param backend Database the games are stored in
+     */
+    public GameReferee(GameBackend backend) {
+        this(backend, new SecureRandom(), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for a referee
+     *
+     * @param backend  Database the games are stored in
+     * @param dice     Source of the dice rolls, seeded to replay a run
+     * @param capacity Number of games hosted at the same time
+     */
+    public GameReferee(GameBackend backend, Random dice, int capacity) {
+        this.backend = backend;
+        this.dice = dice;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Gets the counters of the handled intents, by action, with the reasons of rejected ones
+     *
+     * @return The metrics
+     */
+    public TransactionMetrics getTransactionMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the number of games this referee hosts
+     *
+     * @return Games, including those still loading
+     */
+    public int getGameCount() {
+        return games.size();
+    }
+
+    // ===== Requests and Intents =====
+
+    /**
+     * Gets the path of a game's referee request
+     *
+     * @param gameId ID of the game
+     * @return Path of refereeRequests/{id}
+     */
+    public static String requestPath(String gameId) {
+        return REQUESTS_REF + "/" + gameId;
+    }
+
+    /**
+     * Builds the value of a referee request
+     *
+     * @param requestedAt Time the host asked to start the game
+     * @return Map of the request's children
+     */
+    public static Map<String, Object> request(long requestedAt) {
+        Map<String, Object> request = new HashMap<>();
+        request.put(REQUESTED_AT, requestedAt);
+        return request;
+    }
+
+    /**
+     * Gets the path of the intent slot of a seat
+     *
+     * @param gameId ID of the game
+     * @param seat   Seat index (0-3)
+     * @return Path of intents/{id}/{seat}
+     */
+    public static String intentPath(String gameId, int seat) {
+        return INTENTS_REF + "/" + gameId + "/" + seat;
+    }
+
+    /**
+     * Builds the value of an intent
+     *
+     * @param action ROLL, PLAY or SELECT
+     * @param pawn   Pawn index (0-3) for SELECT, ignored otherwise
+     * @param sentAt Time the intent was sent
+     * @return Map of the intent's children
+     */
+    public static Map<String, Object> intent(String action, int pawn, long sentAt) {
+        Map<String, Object> intent = new HashMap<>();
+        intent.put(ACTION, action);
+        if (SELECT.equals(action)) {
+            intent.put(PAWN, pawn);
+        }
+        intent.put(SENT_AT, sentAt);
+        return intent;
+    }
+
+    /**
+     * Adds the removal of a game's request and intents to an update from the root
+     * Used wherever a game is deleted
+     *
+     * @param updates Values by path from the root
+     * @param gameId  ID of the game
+     */
+    static void putRemoval(Map<String, Object> updates, String gameId) {
+        updates.put(requestPath(gameId), null);
+        updates.put(INTENTS_REF + "/" + gameId, null);
+    }
+
+    // ===== Hosting =====
+
+    /**
+     * Start taking games from the referee requests
+     */
+    public void start() {
+        if (requestListener != null) return;
+
+        GameBackend.ChildQuery query = GameBackend.ChildQuery.orderByChild(REQUESTED_AT).limitToFirst(capacity);
+        requestListener = backend.addQueryListener(REQUESTS_REF, query, new GameBackend.QueryListener() {
+            @Override
+            public void onChildAdded(String key, Object value) {
+                host(key);
+            }
+
+            @Override
+            public void onChildChanged(String key, Object value) {
+                // Nothing but the request time, the game is already hosted
+            }
+
+            @Override
+            public void onChildRemoved(String key) {
+                drop(key);
+            }
+
+            @Override
+            public void onError(String message) {
+                // The listener is gone, start() can try again
+                requestListener = null;
+            }
+        });
+    }
+
+    /**
+     * Stop taking games and release every hosted game
+     * Their requests stay, so another referee takes them over
+     */
+    public void stop() {
+        if (requestListener != null) {
+            requestListener.remove();
+            requestListener = null;
+        }
+        for (RefereedGame game : games.values()) {
+            game.detach();
+        }
+        games.clear();
+    }
+
+    /**
+     * Load a game's board and follow its intents
+     * A game without a board is waiting for its start, the referee starts it
+     *
+     * @param gameId ID of the game
+     */
+    void host(final String gameId) {
+        if (games.containsKey(gameId)) return;
+
+        final RefereedGame game = new RefereedGame(gameId);
+        games.put(gameId, game);
+        backend.get(statePath(gameId), new GameBackend.ReadListener() {
+            @Override
+            public void onRead(Object state) {
+                // Dropped while loading
+                if (games.get(gameId) != game) return;
+
+                if (state == null) {
+                    startGame(game);
+                    return;
+                }
+
+                GameLogic board;
+                try {
+                    board = GameStateNodes.read(state);
+                } catch (IllegalArgumentException e) {
+                    board = null;
+                }
+                if (board == null || board.isGameOver()) {
+                    // Deleted or already over, nothing to referee
+                    games.remove(gameId);
+                    backend.set(requestPath(gameId), null, null);
+                    return;
+                }
+
+                game.board = board;
+                game.seq = GameStateNodes.getSeq(state);
+                game.lastMove = GameStateNodes.getLastMove(state);
+                game.attach();
+            }
+
+            @Override
+            public void onError(String message) {
+                games.remove(gameId);
+            }
+        });
+    }
+
+    /**
+     * Start a refereed game whose host asked for it, with the same checks as
+     * FirebaseGameManager.startGame(). A request the game does not allow is
+     * removed, the host can ask again
+     *
+     * @param game The game, still loading
+     */
+    private void startGame(final RefereedGame game) {
+        final TransactionMetrics.Operation operation = metrics.begin("referee start");
+        backend.transaction(FirebaseGameManager.GAMES_REF + "/" + game.gameId, new GameBackend.TransactionHandler() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object apply(Object current) {
+                MultiplayerGameLogic node = GameSnapshotCodec.decode(current, null);
+
+                // Nothing cached locally yet, Firebase retries with the server value
+                if (node == null) {
+                    return operation.skip(current, TransactionMetrics.GAME_MISSING);
+                }
+
+                if (!node.isRefereed()) {
+                    return operation.abort(TransactionMetrics.NOT_REFEREED);
+                }
+                if (node.isGameStarted()) {
+                    return operation.abort(TransactionMetrics.GAME_STARTED);
+                }
+                if (!FirebaseGameManager.canStart(node)) {
+                    return operation.abort(TransactionMetrics.NOT_READY);
+                }
+
+                Map<String, Object> value = (Map<String, Object>) current;
+                value.put(FirebaseGameManager.STARTED_PATH, true);
+                value.put(FirebaseGameManager.STATE_PATH, FirebaseGameManager.initialState());
+                value.put(FirebaseGameManager.TIMESTAMP_PATH, System.currentTimeMillis());
+                return operation.commit(value);
+            }
+
+            @Override
+            public void onComplete(String error, boolean committed, Object value) {
+                operation.complete(error, committed);
+                if (games.get(game.gameId) != game) return;
+
+                if (error != null) {
+                    // Another referee may take it, or this one after a restart
+                    games.remove(game.gameId);
+                    return;
+                }
+                if (!committed || value == null) {
+                    games.remove(game.gameId);
+                    backend.set(requestPath(game.gameId), null, null);
+                    return;
+                }
+
+                game.board = new GameLogic();
+                game.seq = 0;
+                game.lastMove = -1;
+                game.attach();
+            }
+        });
+    }
+
+    /**
+     * Stop hosting a game
+     *
+     * @param gameId ID of the game
+     */
+    private void drop(String gameId) {
+        RefereedGame game = games.remove(gameId);
+        if (game != null) {
+            game.detach();
+        }
+    }
+
+    /**
+     * Reload a game from the database after its board here may have gone out of date
+     *
+     * @param gameId ID of the game
+     */
+    private void reload(String gameId) {
+        drop(gameId);
+        host(gameId);
+    }
+
+    // ===== Refereeing =====
+
+    /**
+     * Check an intent against the board and publish its result
+     *
+     * @param game   The game
+     * @param key    Seat of the intent slot
+     * @param intent Raw intent
+     */
+    private void onIntent(final RefereedGame game, String key, Object intent) {
+        // A rejection waiting for its client
+        if (GameStateNodes.child(intent, ERROR) != null) return;
+
+        int seat;
+        try {
+            seat = Integer.parseInt(key);
+        } catch (NumberFormatException e) {
+            backend.set(INTENTS_REF + "/" + game.gameId + "/" + key, null, null);
+            return;
+        }
+
+        Object action = GameStateNodes.child(intent, ACTION);
+        int pawn = GameStateNodes.getInt(intent, PAWN, -1);
+        final TransactionMetrics.Operation operation = metrics.begin("referee " + action);
+
+        String problem = checkTurn(game.board, seat, action, pawn);
+        if (problem != null) {
+            operation.abort(problem);
+            operation.complete(null, false);
+            Map<String, Object> rejection = new HashMap<>();
+            rejection.put(ERROR, problem);
+            backend.set(intentPath(game.gameId, seat), rejection, null);
+            return;
+        }
+
+        Map<String, Object> updates = new HashMap<>();
+        apply(game, seat, (String) action, pawn, updates);
+        updates.put(intentPath(game.gameId, seat), null);
+        updates.put(FirebaseGameManager.GAMES_REF + "/" + game.gameId + "/" + FirebaseGameManager.TIMESTAMP_PATH,
+                System.currentTimeMillis());
+
+        final boolean over = game.board.isGameOver();
+        if (over) {
+            // Last turn, the game no longer needs a referee
+            updates.put(requestPath(game.gameId), null);
+            drop(game.gameId);
+        }
+
+        operation.commit(updates);
+        backend.update("", updates, error -> {
+            operation.complete(error, error == null);
+            if (error != null && !over) {
+                reload(game.gameId);
+            }
+        });
+    }
+
+    /**
+     * Check whether a turn action is allowed on a board
+     * Shared by the referee's intents and the turn transactions of
+     * FirebaseGameManager, so both reject the same actions
+     *
+     * @param board  The game's board
+     * @param seat   Seat that sent the action
+     * @param action ROLL, PLAY or SELECT
+     * @param pawn   The pawn for a selection
+     * @return Reason to reject it, or null if it is allowed
+     */
+    static String checkTurn(GameLogic board, int seat, Object action, int pawn) {
+        if (seat != board.getCurrentPlayerTurn()) {
+            return TransactionMetrics.NOT_YOUR_TURN;
+        }
+
+        if (ROLL.equals(action)) {
+            return board.isDiceRolled() ? TransactionMetrics.ALREADY_ROLLED : null;
+        }
+        if (!PLAY.equals(action) && !SELECT.equals(action)) {
+            return TransactionMetrics.UNKNOWN_ACTION;
+        }
+        if (!board.isDiceRolled() || board.isMoveMade()) {
+            return TransactionMetrics.NOT_ROLLED;
+        }
+        if (PLAY.equals(action)) {
+            return null;
+        }
+
+        if (!board.isWaitingForPawnSelection()) {
+            return TransactionMetrics.NOT_WAITING;
+        }
+        if (pawn < 0 || pawn > 3) {
+            return TransactionMetrics.INVALID_PAWN;
+        }
+        // Without a movable pawn the client picks the pawn that overshoots, see hasValidMoves()
+        if (!board.getMovablePawns().isEmpty() && !board.getMovablePawns().contains(pawn)) {
+            return TransactionMetrics.INVALID_PAWN;
+        }
+        return null;
+    }
+
+    /**
+     * Apply an allowed intent to the board and add the changed nodes to an update
+     *
+     * @param game    The game
+     * @param seat    Seat that sent the intent
+     * @param action  The action
+     * @param pawn    The pawn for a selection
+     * @param updates Values by path from the root
+     */
+    private void apply(RefereedGame game, int seat, String action, int pawn, Map<String, Object> updates) {
+        GameLogic board = game.board;
+        String statePath = statePath(game.gameId);
+
+        if (ROLL.equals(action)) {
+            // Only the turn node changes, like the rollDice() transaction
+            board.setDiceRoll(dice.nextInt(6) + 1);
+            String turnPath = statePath + "/" + GameStateNodes.TURN;
+            updates.put(turnPath + "/" + GameStateNodes.TURN_DICE, board.getLastDiceRoll());
+            updates.put(turnPath + "/" + GameStateNodes.TURN_ROLLED, true);
+            updates.put(turnPath + "/" + GameStateNodes.TURN_MOVE_MADE, false);
+            return;
+        }
+
+        int rolled = board.getLastDiceRoll();
+        boolean completed;
+        if (PLAY.equals(action)) {
+            // A round without any legal move completes the turn
+            completed = board.playRound();
+            pawn = MoveLog.NO_PAWN;
+        } else {
+            board.setPawnSelection(pawn);
+            board.getWinner();
+            completed = true;
+        }
+
+        if (completed) {
+            game.seq++;
+            game.lastMove = MoveLog.pack(seat, rolled, pawn) & 0xFF;
+            updates.put(FirebaseGameManager.MOVES_REF + "/" + game.gameId + "/" + game.seq, game.lastMove);
+        }
+        Map<String, Object> state = GameStateNodes.toMap(board);
+        GameStateNodes.putMove(state, game.seq, game.lastMove);
+        updates.put(statePath, state);
+    }
+
+    /**
+     * Gets the path of the board state of a game
+     *
+     * @param gameId ID of the game
+     * @return Path of games/{id}/state
+     */
+    private static String statePath(String gameId) {
+        return FirebaseGameManager.GAMES_REF + "/" + gameId + "/" + FirebaseGameManager.STATE_PATH;
+    }
+
+    /**
+     * A game hosted by this referee
+     */
+    private class RefereedGame {
+        final String gameId;
+
+        /** Board as published, null while loading */
+        GameLogic board;
+
+        /** Sequence number and MoveLog entry of the last completed turn */
+        int seq;
+        int lastMove;
+
+        GameBackend.Registration intentListener;
+
+        /**
+         * Constructor for a game that is still loading
+         *
+         * @param gameId ID of the game
+         */
+        RefereedGame(String gameId) {
+            this.gameId = gameId;
+        }
+
+        /**
+         * Follow the intent slots of the game
+         */
+        void attach() {
+            GameBackend.ChildQuery query = GameBackend.ChildQuery.orderByChild(SENT_AT);
+            intentListener = backend.addQueryListener(INTENTS_REF + "/" + gameId, query,
+                    new GameBackend.QueryListener() {
+                        @Override
+                        public void onChildAdded(String key, Object value) {
+                            onIntent(RefereedGame.this, key, value);
+                        }
+
+                        @Override
+                        public void onChildChanged(String key, Object value) {
+                            // A new intent written over a rejection
+                            onIntent(RefereedGame.this, key, value);
+                        }
+
+                        @Override
+                        public void onChildRemoved(String key) {
+                            // Handled intents are removed by the referee itself
+                        }
+
+                        @Override
+                        public void onError(String message) {
+                            drop(gameId);
+                        }
+                    });
+        }
+
+        /**
+         * Stop following the intents
+         */
+        void detach() {
+            if (intentListener != null) {
+                intentListener.remove();
+                intentListener = null;
+            }
+        }
+    }
+}
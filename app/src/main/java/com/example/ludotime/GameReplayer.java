@@ -0,0 +1,183 @@
+/**
+ * GameReplayer.java
+ *
+ * Re-drives a GameLogic from a MoveLog recording, turn by turn.
+ * Replays use exactly the same calls as ActivityGameLocal, so a log
+ * reproduces the original game deterministically.
+ */
+package com.example.ludotime;
+
+import android.os.Handler;
+
+public class GameReplayer {
+    // ===== Speeds =====
+    public static final int SPEED_INSTANT = 0;
+    public static final int SPEED_NORMAL = 1;
+    public static final int SPEED_FAST = 10;
+
+    // Time per turn at normal speed
+    private static final long TURN_MILLIS = 800;
+
+    /**
+     * Interface for following the replay progress
+     */
+    public interface ReplayListener {
+        /**
+         * Called after each replayed turn (once at the end for instant replays)
+         *
+         * @param turnsPlayed Number of turns replayed so far
+         * @param totalTurns  Number of turns in the recording
+         */
+        void onReplayProgress(int turnsPlayed, int totalTurns);
+
+        /**
+         * Called when all turns were replayed or the game ended
+         */
+        void onReplayFinished();
+    }
+
+    // ===== Replay State =====
+    private final MoveLog.Recording recording;
+    private final GameLogic gameLogic;
+    private final Handler handler = new Handler();
+    private ReplayListener listener;
+    private int nextTurn = 0;
+    private int speed = SPEED_NORMAL;
+    private boolean running = false;
+
+    // Plays one turn and schedules the next while running
+    private final Runnable stepRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!running) return;
+
+            if (step()) {
+                notifyProgress();
+                handler.postDelayed(this, TURN_MILLIS / speed);
+            } else {
+                finish();
+            }
+        }
+    };
+
+    /**
+     * Constructor restores the starting state of the recording
+     *
+     * @param recording The recorded game
+     * @throws IllegalArgumentException if the starting state is invalid
+     */
+    public GameReplayer(MoveLog.Recording recording) {
+        this.recording = recording;
+        this.gameLogic = GameStateCodec.decode(recording.getInitialState());
+    }
+
+    /**
+     * Gets the game being replayed, to attach it to a board
+     *
+     * @return The replayed game
+     */
+    public GameLogic getLogic() {
+        return gameLogic;
+    }
+
+    /**
+     * Set the listener for replay progress
+     *
+     * @param listener The listener, or null
+     */
+    public void setReplayListener(ReplayListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Change the replay speed, takes effect from the next turn
+     * SPEED_INSTANT plays all remaining turns right away
+     *
+     * @param speed SPEED_INSTANT, SPEED_NORMAL or SPEED_FAST
+     */
+    public void setSpeed(int speed) {
+        this.speed = speed;
+        if (running) {
+            handler.removeCallbacks(stepRunnable);
+            start();
+        }
+    }
+
+    /**
+     * Start or continue the replay at the current speed
+     */
+    public void start() {
+        running = true;
+
+        if (speed == SPEED_INSTANT) {
+            while (step()) {
+                // Keep going until the end
+            }
+            notifyProgress();
+            finish();
+        } else {
+            handler.post(stepRunnable);
+        }
+    }
+
+    /**
+     * Pause the replay
+     */
+    public void pause() {
+        running = false;
+        handler.removeCallbacks(stepRunnable);
+    }
+
+    /**
+     * Replay the next turn
+     *
+     * @return false if there are no more turns or the game is over
+     */
+    public boolean step() {
+        if (nextTurn >= recording.getTurnCount() || gameLogic.isGameOver()) {
+            return false;
+        }
+        applyTurn(gameLogic, recording.getEntry(nextTurn));
+        nextTurn++;
+        return true;
+    }
+
+    /**
+     * Apply one logged turn to a game the same way ActivityGameLocal plays it
+     *
+     * @param gameLogic The game to change
+     * @param entry     Packed entry from MoveLog
+     */
+    public static void applyTurn(GameLogic gameLogic, byte entry) {
+        gameLogic.setCurrentPlayerTurn(MoveLog.getSeat(entry));
+        gameLogic.setDiceRoll(MoveLog.getDice(entry));
+
+        boolean roundComplete = gameLogic.playRound();
+        int pawn = MoveLog.getPawn(entry);
+        if (!roundComplete && pawn != MoveLog.NO_PAWN) {
+            gameLogic.setPawnSelection(pawn);
+        }
+
+        // Record any new winner in the same order as during the game
+        gameLogic.getWinner();
+    }
+
+    /**
+     * Stop running and tell the listener the replay ended
+     */
+    private void finish() {
+        running = false;
+        if (listener != null) {
+            listener.onReplayFinished();
+        }
+    }
+
+    /**
+     * Tell the listener how far the replay is
+     */
+    private void notifyProgress() {
+        if (listener != null) {
+            listener.onReplayProgress(nextTurn, recording.getTurnCount());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * GameSnapshotCodec.java
+ *
+ * Hand-written decoder for multiplayer game nodes.
+ * Reads the raw value of a DataSnapshot or MutableData (maps, lists, Longs,
+ * Booleans and Strings) field by field instead of going through Firebase's
+ * reflective class mapper, and can fill an existing game instead of
+ * allocating a new one.
+ *
+ * Field names follow MultiplayerGameLogic.toMap(), the board state follows
+ * GameStateNodes.
+ */
+package com.example.ludotime;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+public final class GameSnapshotCodec {
+    // ===== Node Names =====
+    public static final String STATE = "state";
+
+    /**
+     * Private constructor, static helpers only
+     */
+    private GameSnapshotCodec() {
+    }
+
+    /**
+     * Decode a game node
+     *
+     * @param value Raw value of games/{id}
+     * @param reuse Game to fill, or null to create a new one
+     * @return The decoded game (reuse if it was given), or null if the node is empty.
+     *         Its board is null if the game has not started or the state node is invalid
+     */
+    public static MultiplayerGameLogic decode(Object value, MultiplayerGameLogic reuse) {
+        if (!(value instanceof Map)) return null;
+
+        MultiplayerGameLogic game = reuse != null ? reuse : new MultiplayerGameLogic();
+
+        game.setSchemaVersion(GameStateNodes.getInt(value, "schemaVersion", 0));
+        game.setGameId(getString(value, "gameId"));
+        game.setHostUserId(getString(value, "hostUserId"));
+        game.setMaxPlayers(GameStateNodes.getInt(value, "maxPlayers", 4));
+        game.setCurrentPlayersNumber(GameStateNodes.getInt(value, "currentPlayersNumber", 0));
+        game.setGameStarted(GameStateNodes.getBoolean(value, "gameStarted"));
+        game.setRefereed(GameStateNodes.getBoolean(value, "refereed"));
+        game.setLastUpdateTimestamp(getLong(value, "lastUpdateTimestamp"));
+
+        // Player lists always hold 4 seats, a missing seat is read as empty:
+        // not ready, no ID and named "Unknown"
+        Object ready = GameStateNodes.child(value, "isReady");
+        Object ids = GameStateNodes.child(value, "playerID");
+        Object names = GameStateNodes.child(value, "playerName");
+        ArrayList<Boolean> isReady = seats(game.getIsReady());
+        ArrayList<String> playerID = seats(game.getPlayerID());
+        ArrayList<String> playerName = seats(game.getPlayerName());
+        for (int i = 0; i < 4; i++) {
+            String seat = String.valueOf(i);
+            isReady.set(i, GameStateNodes.getBoolean(ready, seat));
+            playerID.set(i, getString(ids, seat));
+            String name = getString(names, seat);
+            playerName.set(i, name != null ? name : "Unknown");
+        }
+        game.setIsReady(isReady);
+        game.setPlayerID(playerID);
+        game.setPlayerName(playerName);
+
+        // A lobby has no state yet and a partial one is left for the next snapshot
+        Object state = GameStateNodes.child(value, STATE);
+        game.setGameLogic(GameStateNodes.isComplete(state) ? GameStateNodes.read(state) : null);
+        return game;
+    }
+
+    /**
+     * Make sure a seat list exists and holds 4 entries
+     *
+     * @param list The current list, or null
+     * @return A list of size 4
+     */
+    private static <T> ArrayList<T> seats(ArrayList<T> list) {
+        if (list == null) {
+            list = new ArrayList<>(4);
+        }
+        while (list.size() < 4) {
+            list.add(null);
+        }
+        return list;
+    }
+
+    /**
+     * Gets a String child of a raw Firebase value
+     *
+     * @param node Raw Map or List value
+     * @param key  Child key
+     * @return The child, or null if missing
+     */
+    private static String getString(Object node, String key) {
+        Object value = GameStateNodes.child(node, key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    /**
+     * Gets a long child of a raw Firebase value
+     *
+     * @param node Raw Map or List value
+     * @param key  Child key
+     * @return The child, 0 if missing
+     */
+    private static long getLong(Object node, String key) {
+        Object value = GameStateNodes.child(node, key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * GameStateCodec.java
+ *
+ * Compact binary encoding of a GameLogic state, used to save and resume games.
+ *
+ * Layout (25 bytes):
+ * - byte 0:      format version
+ * - bytes 1-16:  one byte per pawn (player * 4 + pawn): state << 6 | index
+ *                state 0 = home, 1 = main track (index 0-51),
+ *                2 = final path (index 0-4), 3 = finished
+ * - byte 17:     current player (bits 0-1), diceRolled (bit 2), moveMade (bit 3),
+ *                waitingForPawnSelection (bit 4)
+ * - byte 18:     last dice roll (0-6)
+ * - byte 19:     selected pawn + 1 (0 = none)
+ * - byte 20:     winners count
+ * - bytes 21-24: winner order, player + 1 (0 = none)
+ *
+ * The 16 pawn bytes alone also have a string form (32 hex digits) used to
+ * sync the board in multiplayer games as a single field.
+ */
+package com.example.ludotime;
+
+import java.util.ArrayList;
+
+public final class GameStateCodec {
+    // ===== Format =====
+    public static final int VERSION = 1;
+    public static final int ENCODED_SIZE = 25;
+
+    // Pawn states
+    private static final int PAWN_HOME = 0;
+    private static final int PAWN_TRACK = 1;
+    private static final int PAWN_FINAL_PATH = 2;
+    private static final int PAWN_FINISHED = 3;
+
+    // Byte offsets, shared with GameStateNodes which fills the same layout from nodes
+    static final int OFFSET_PAWNS = 1;
+    static final int OFFSET_FLAGS = 17;
+    static final int OFFSET_DICE = 18;
+    static final int OFFSET_SELECTED = 19;
+    static final int OFFSET_WINNERS_COUNT = 20;
+    static final int OFFSET_WINNER_ORDER = 21;
+
+    // Board string
+    public static final int BOARD_LENGTH = 32;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // Flag bits
+    static final int FLAG_DICE_ROLLED = 1 << 2;
+    static final int FLAG_MOVE_MADE = 1 << 3;
+    static final int FLAG_WAITING = 1 << 4;
+
+    /**
+     * Private constructor, static helpers only
+     */
+    private GameStateCodec() {
+    }
+
+    /**
+     * Gets where a pawn is stored in the encoded bytes
+     *
+     * @param player Player index (0-3)
+     * @param pawn   Pawn index (0-3)
+     * @return Byte offset of the pawn
+     */
+    static int pawnOffset(int player, int pawn) {
+        return OFFSET_PAWNS + player * 4 + pawn;
+    }
+
+    /**
+     * Encode the state of a game
+     *
+     * @param gameLogic The game to encode
+     * @return The encoded bytes (ENCODED_SIZE long)
+     */
+    public static byte[] encode(GameLogic gameLogic) {
+        byte[] data = new byte[ENCODED_SIZE];
+        data[0] = (byte) VERSION;
+
+        ArrayList<ArrayList<Boolean>> inHome = gameLogic.getPawnInHome();
+        ArrayList<ArrayList<Boolean>> finished = gameLogic.getPawnFinished();
+        ArrayList<ArrayList<Boolean>> onFinishLine = gameLogic.getPawnOnFinishLine();
+        ArrayList<ArrayList<Integer>> positions = gameLogic.getPawnPositions();
+        ArrayList<ArrayList<Integer>> finalPositions = gameLogic.getFinalPathPositions();
+
+        for (int player = 0; player < 4; player++) {
+            for (int pawn = 0; pawn < 4; pawn++) {
+                int state;
+                int index = 0;
+                if (inHome.get(player).get(pawn)) {
+                    state = PAWN_HOME;
+                } else if (finished.get(player).get(pawn)) {
+                    state = PAWN_FINISHED;
+                } else if (onFinishLine.get(player).get(pawn)) {
+                    state = PAWN_FINAL_PATH;
+                    index = finalPositions.get(player).get(pawn);
+                } else {
+                    state = PAWN_TRACK;
+                    index = positions.get(player).get(pawn);
+                }
+                data[pawnOffset(player, pawn)] = (byte) (state << 6 | index);
+            }
+        }
+
+        int flags = gameLogic.getCurrentPlayerTurn() & 0x3;
+        if (gameLogic.isDiceRolled()) flags |= FLAG_DICE_ROLLED;
+        if (gameLogic.isMoveMade()) flags |= FLAG_MOVE_MADE;
+        if (gameLogic.isWaitingForPawnSelection()) flags |= FLAG_WAITING;
+        data[OFFSET_FLAGS] = (byte) flags;
+
+        data[OFFSET_DICE] = (byte) gameLogic.getLastDiceRoll();
+        data[OFFSET_SELECTED] = (byte) (gameLogic.getSelectedPawn() + 1);
+        data[OFFSET_WINNERS_COUNT] = (byte) gameLogic.getWinnersCount();
+
+        ArrayList<Integer> winnerOrder = gameLogic.getWinnerOrder();
+        for (int i = 0; i < 4; i++) {
+            data[OFFSET_WINNER_ORDER + i] = (byte) (winnerOrder.get(i) + 1);
+        }
+        return data;
+    }
+
+    /**
+     * Decode a saved game into a new GameLogic
+     *
+     * @param data Bytes from encode()
+     * @return The restored game
+     * @throws IllegalArgumentException if the bytes are not a valid saved game
+     */
+    public static GameLogic decode(byte[] data) {
+        return new GameLogic(data);
+    }
+
+    /**
+     * Fill a GameLogic created with the restore constructor
+     *
+     * @param gameLogic The game to fill
+     * @param data      Bytes from encode()
+     * @throws IllegalArgumentException if the bytes are not a valid saved game
+     */
+    static void decodeInto(GameLogic gameLogic, byte[] data) {
+        if (data == null || data.length != ENCODED_SIZE) {
+            throw new IllegalArgumentException("Saved game must be " + ENCODED_SIZE + " bytes");
+        }
+        if (data[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported saved game version " + data[0]);
+        }
+
+        ArrayList<ArrayList<Boolean>> inHome = new ArrayList<>(4);
+        ArrayList<ArrayList<Boolean>> finished = new ArrayList<>(4);
+        ArrayList<ArrayList<Boolean>> onFinishLine = new ArrayList<>(4);
+        ArrayList<ArrayList<Integer>> positions = new ArrayList<>(4);
+        ArrayList<ArrayList<Integer>> finalPositions = new ArrayList<>(4);
+
+        for (int player = 0; player < 4; player++) {
+            ArrayList<Boolean> playerInHome = new ArrayList<>(4);
+            ArrayList<Boolean> playerFinished = new ArrayList<>(4);
+            ArrayList<Boolean> playerOnFinishLine = new ArrayList<>(4);
+            ArrayList<Integer> playerPositions = new ArrayList<>(4);
+            ArrayList<Integer> playerFinalPositions = new ArrayList<>(4);
+
+            for (int pawn = 0; pawn < 4; pawn++) {
+                int value = data[pawnOffset(player, pawn)] & 0xFF;
+                int state = value >> 6;
+                int index = value & 0x3F;
+
+                if (state == PAWN_TRACK && index >= 52 || state == PAWN_FINAL_PATH && index >= 5) {
+                    throw new IllegalArgumentException("Invalid position for player " + player + " pawn " + pawn);
+                }
+
+                playerInHome.add(state == PAWN_HOME);
+                playerFinished.add(state == PAWN_FINISHED);
+                playerOnFinishLine.add(state == PAWN_FINAL_PATH);
+                playerPositions.add(state == PAWN_TRACK ? index : -1);
+                playerFinalPositions.add(state == PAWN_FINAL_PATH ? index : -1);
+            }
+
+            inHome.add(playerInHome);
+            finished.add(playerFinished);
+            onFinishLine.add(playerOnFinishLine);
+            positions.add(playerPositions);
+            finalPositions.add(playerFinalPositions);
+        }
+
+        int flags = data[OFFSET_FLAGS];
+        int dice = data[OFFSET_DICE];
+        int selected = data[OFFSET_SELECTED] - 1;
+        int winnersCount = data[OFFSET_WINNERS_COUNT];
+        if (dice < 0 || dice > 6 || selected < -1 || selected > 3 || winnersCount < 0 || winnersCount > 4) {
+            throw new IllegalArgumentException("Invalid turn state in saved game");
+        }
+
+        ArrayList<Integer> winnerOrder = new ArrayList<>(4);
+        for (int i = 0; i < 4; i++) {
+            int winner = data[OFFSET_WINNER_ORDER + i] - 1;
+            if (winner < -1 || winner > 3) {
+                throw new IllegalArgumentException("Invalid winner order in saved game");
+            }
+            winnerOrder.add(winner);
+        }
+
+        gameLogic.setPawnInHome(inHome);
+        gameLogic.setPawnFinished(finished);
+        gameLogic.setPawnOnFinishLine(onFinishLine);
+        gameLogic.setPawnPositions(positions);
+        gameLogic.setFinalPathPositions(finalPositions);
+        gameLogic.setCurrentPlayerTurn(flags & 0x3);
+        gameLogic.setDiceRolled((flags & FLAG_DICE_ROLLED) != 0);
+        gameLogic.setMoveMade((flags & FLAG_MOVE_MADE) != 0);
+        gameLogic.setWaitingForPawnSelection((flags & FLAG_WAITING) != 0);
+        gameLogic.setLastDiceRoll(dice);
+        gameLogic.setSelectedPawn(selected);
+        gameLogic.setWinnersCount(winnersCount);
+        gameLogic.setWinnerOrder(winnerOrder);
+    }
+
+    // ===== Board String =====
+
+    /**
+     * Build the board string from encoded bytes
+     * Two hex digits per pawn, in the order player * 4 + pawn
+     *
+     * @param data Bytes from encode()
+     * @return The board string (BOARD_LENGTH characters)
+     */
+    public static String boardToString(byte[] data) {
+        char[] board = new char[BOARD_LENGTH];
+        for (int i = 0; i < 16; i++) {
+            int value = data[OFFSET_PAWNS + i] & 0xFF;
+            board[i * 2] = HEX_DIGITS[value >> 4];
+            board[i * 2 + 1] = HEX_DIGITS[value & 0xF];
+        }
+        return new String(board);
+    }
+
+    /**
+     * Copy a board string into the pawn bytes of an encoded state
+     * The positions are checked when the state is decoded
+     *
+     * @param board Board string from boardToString()
+     * @param data  Encoded state to fill (ENCODED_SIZE long)
+     * @throws IllegalArgumentException if the string is not a board string
+     */
+    public static void boardFromString(String board, byte[] data) {
+        if (board == null || board.length() != BOARD_LENGTH) {
+            throw new IllegalArgumentException("Board must be " + BOARD_LENGTH + " hex digits");
+        }
+        for (int i = 0; i < 16; i++) {
+            int high = Character.digit(board.charAt(i * 2), 16);
+            int low = Character.digit(board.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Invalid board digit at pawn " + i);
+            }
+            data[OFFSET_PAWNS + i] = (byte) (high << 4 | low);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * GameStateNodes.java
+ *
+ * Board state of a multiplayer game split into small Firebase child nodes,
+ * so turn operations only read and write the paths they change instead of
+ * the whole games/{id} node.
+ *
+ * Layout under games/{id}/state:
+ * - turn/player, turn/dice, turn/rolled, turn/moveMade, turn/waiting, turn/selected
+ * - board: the 16 pawns as one string (GameStateCodec.boardToString()),
+ *   so a board change is a single field change
+ * - winners/count, winners/order/{0-3}: player + 1 (0 = none)
+ * - seq: sequence number of the last completed turn in the move log
+ * - lastMove: MoveLog entry of that turn, so a missing log entry can be restored
+ *
+ * Values are converted through GameStateCodec so there is one definition
+ * of the packed state.
+ */
+package com.example.ludotime;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class GameStateNodes {
+    // ===== Node Names =====
+    public static final String TURN = "turn";
+    public static final String BOARD = "board";
+    public static final String WINNERS = "winners";
+    public static final String SEQ = "seq";
+    public static final String LAST_MOVE = "lastMove";
+
+    // Turn fields
+    public static final String TURN_PLAYER = "player";
+    public static final String TURN_DICE = "dice";
+    public static final String TURN_ROLLED = "rolled";
+    public static final String TURN_MOVE_MADE = "moveMade";
+    public static final String TURN_WAITING = "waiting";
+    public static final String TURN_SELECTED = "selected";
+
+    // Winner fields
+    public static final String WINNERS_COUNT = "count";
+    public static final String WINNERS_ORDER = "order";
+
+    /**
+     * Private constructor, static helpers only
+     */
+    private GameStateNodes() {
+    }
+
+    // ===== Writing =====
+
+    /**
+     * Build the full state node of a game
+     *
+     * @param gameLogic The game
+     * @return Map with the turn, board and winners nodes
+     */
+    public static Map<String, Object> toMap(GameLogic gameLogic) {
+        byte[] data = GameStateCodec.encode(gameLogic);
+
+        Map<String, Object> order = new HashMap<>();
+        for (int i = 0; i < 4; i++) {
+            order.put(String.valueOf(i), (int) data[GameStateCodec.OFFSET_WINNER_ORDER + i]);
+        }
+        Map<String, Object> winners = new HashMap<>();
+        winners.put(WINNERS_COUNT, (int) data[GameStateCodec.OFFSET_WINNERS_COUNT]);
+        winners.put(WINNERS_ORDER, order);
+
+        Map<String, Object> state = new HashMap<>();
+        state.put(TURN, turnToMap(gameLogic));
+        state.put(BOARD, GameStateCodec.boardToString(data));
+        state.put(WINNERS, winners);
+        return state;
+    }
+
+    /**
+     * Build the turn node of a game
+     *
+     * @param gameLogic The game
+     * @return Map with the turn fields
+     */
+    public static Map<String, Object> turnToMap(GameLogic gameLogic) {
+        Map<String, Object> turn = new HashMap<>();
+        turn.put(TURN_PLAYER, gameLogic.getCurrentPlayerTurn());
+        turn.put(TURN_DICE, gameLogic.getLastDiceRoll());
+        turn.put(TURN_ROLLED, gameLogic.isDiceRolled());
+        turn.put(TURN_MOVE_MADE, gameLogic.isMoveMade());
+        turn.put(TURN_WAITING, gameLogic.isWaitingForPawnSelection());
+        turn.put(TURN_SELECTED, gameLogic.getSelectedPawn());
+        return turn;
+    }
+
+    // ===== Reading =====
+
+    /**
+     * Check that a state node holds both the turn and the board, a game being
+     * created or started may show up with only part of its state written
+     *
+     * @param state Raw value of the state node
+     * @return True if read() can rebuild the game from it
+     */
+    public static boolean isComplete(Object state) {
+        return child(state, TURN) != null && child(state, BOARD) instanceof String;
+    }
+
+    /**
+     * Rebuild a game from a state node
+     *
+     * @param state Raw value of the state node (DataSnapshot or MutableData getValue())
+     * @return The game, or null if the node is empty
+     * @throws IllegalArgumentException if the node does not hold a valid state
+     */
+    public static GameLogic read(Object state) {
+        if (state == null) return null;
+
+        if (!isComplete(state)) {
+            throw new IllegalArgumentException("Incomplete game state");
+        }
+        Object turn = child(state, TURN);
+        Object board = child(state, BOARD);
+        Object winners = child(state, WINNERS);
+
+        byte[] data = new byte[GameStateCodec.ENCODED_SIZE];
+        data[0] = (byte) GameStateCodec.VERSION;
+        GameStateCodec.boardFromString((String) board, data);
+
+        int flags = getInt(turn, TURN_PLAYER, 0) & 0x3;
+        if (getBoolean(turn, TURN_ROLLED)) flags |= GameStateCodec.FLAG_DICE_ROLLED;
+        if (getBoolean(turn, TURN_MOVE_MADE)) flags |= GameStateCodec.FLAG_MOVE_MADE;
+        if (getBoolean(turn, TURN_WAITING)) flags |= GameStateCodec.FLAG_WAITING;
+        data[GameStateCodec.OFFSET_FLAGS] = (byte) flags;
+        data[GameStateCodec.OFFSET_DICE] = (byte) getInt(turn, TURN_DICE, 0);
+        data[GameStateCodec.OFFSET_SELECTED] = (byte) (getInt(turn, TURN_SELECTED, -1) + 1);
+
+        if (winners != null) {
+            data[GameStateCodec.OFFSET_WINNERS_COUNT] = (byte) getInt(winners, WINNERS_COUNT, 0);
+            Object order = child(winners, WINNERS_ORDER);
+            for (int i = 0; i < 4; i++) {
+                data[GameStateCodec.OFFSET_WINNER_ORDER + i] = (byte) getInt(order, String.valueOf(i), 0);
+            }
+        }
+
+        return GameStateCodec.decode(data);
+    }
+
+    /**
+     * Gets the board string of a state node
+     * Two states with the same board string have every pawn in the same place
+     *
+     * @param state Raw value of the state node
+     * @return The board string, or null if missing
+     */
+    public static String getBoard(Object state) {
+        Object board = child(state, BOARD);
+        return board instanceof String ? (String) board : null;
+    }
+
+    /**
+     * Gets the sequence number of the last completed turn
+     *
+     * @param state Raw value of the state node
+     * @return The sequence number, 0 before the first turn
+     */
+    public static int getSeq(Object state) {
+        return getInt(state, SEQ, 0);
+    }
+
+    /**
+     * Gets the MoveLog entry of the last completed turn
+     *
+     * @param state Raw value of the state node
+     * @return The packed entry, or -1 before the first turn
+     */
+    public static int getLastMove(Object state) {
+        return getInt(state, LAST_MOVE, -1);
+    }
+
+    /**
+     * Store the move log position in a state node being written
+     *
+     * @param state    The state map from toMap()
+     * @param seq      Sequence number of the last completed turn
+     * @param lastMove MoveLog entry of that turn, or -1 if none
+     */
+    public static void putMove(Map<String, Object> state, int seq, int lastMove) {
+        state.put(SEQ, seq);
+        if (lastMove >= 0) {
+            state.put(LAST_MOVE, lastMove);
+        }
+    }
+
+    // ===== Raw Value Helpers =====
+
+    /**
+     * Gets a child of a raw Firebase value
+     * Firebase returns nodes with keys 0..n as lists, so both forms are handled
+     *
+     * @param node Raw Map or List value
+     * @param key  Child key
+     * @return The child value, or null if missing
+     */
+    @SuppressWarnings("unchecked")
+    public static Object child(Object node, String key) {
+        if (node instanceof Map) {
+            return ((Map<String, Object>) node).get(key);
+        }
+        if (node instanceof List) {
+            List<Object> list = (List<Object>) node;
+            try {
+                int index = Integer.parseInt(key);
+                return index >= 0 && index < list.size() ? list.get(index) : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets a numeric child of a raw Firebase value
+     *
+     * @param node         Raw Map or List value
+     * @param key          Child key
+     * @param defaultValue Value used if the child is missing
+     * @return The child as an int
+     */
+    public static int getInt(Object node, String key, int defaultValue) {
+        Object value = child(node, key);
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+
+    /**
+     * Gets a boolean child of a raw Firebase value
+     *
+     * @param node Raw Map or List value
+     * @param key  Child key
+     * @return The child, false if missing
+     */
+    public static boolean getBoolean(Object node, String key) {
+        return Boolean.TRUE.equals(child(node, key));
+    }
+}
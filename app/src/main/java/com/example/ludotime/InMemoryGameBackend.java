@@ -0,0 +1,966 @@
+/**
+ * InMemoryGameBackend.java
+ *
+ * GameBackend that keeps the database in memory, for running multiplayer
+ * games without a network or a Firebase project.
+ *
+ * It behaves like the Realtime Database client where it matters for games:
+ * - values are stored the way Firebase stores them (numbers as Long, lists as
+ *   maps keyed by index, empty nodes removed) and lists come back as Lists
+ * - writes are applied at once and listeners hear about them afterwards,
+ *   including the client that wrote
+ * - transactions are optimistic: the handler runs on the current value, and
+ *   if the path changed before the commit it runs again on the new value.
+ *   With setColdCache() the first run gets null instead, like a client that
+ *   has nothing cached under the path yet
+ *
+ * Queries sort all children of the path on every call instead of keeping
+ * an index, which is fine for the sizes a simulation uses.
+ *
+ * There is no real connection. keepSynced() does nothing and the connection
+ * state only changes through setConnected(), to test reconnect handling.
+ *
+ * All callbacks go through one event queue. By default the queue is drained
+ * on the calling thread, like callbacks arriving on the main thread. An
+ * Executor can be given instead, for example one that adds latency.
+ */
+package com.example.ludotime;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+public class InMemoryGameBackend implements GameBackend {
+    // ===== Constants =====
+    private static final int MAX_TRANSACTION_RETRIES = 25; // same limit as Firebase
+    private static final int BUCKET_DEPTH = 2; // listeners are grouped by "games/{id}"
+
+    /** Orders keys the way Firebase does: integer keys first, numerically, then strings */
+    public static final Comparator<String> KEY_ORDER = (first, second) -> {
+        Long firstNumber = parseIndex(first);
+        Long secondNumber = parseIndex(second);
+        if (firstNumber != null && secondNumber != null) return firstNumber.compareTo(secondNumber);
+        if (firstNumber != null) return -1;
+        if (secondNumber != null) return 1;
+        return first.compareTo(second);
+    };
+
+    // ===== Database =====
+    private final Map<String, Object> root = new HashMap<>();
+    private final Map<String, List<ValueWatch>> valueWatches = new HashMap<>();
+    private final Map<String, List<ChildWatch>> childWatches = new HashMap<>();
+    private final Map<String, List<QueryWatch>> queryWatches = new HashMap<>();
+    private final List<ConnectionListener> connectionListeners = new ArrayList<>();
+    private boolean connected = true;
+    private boolean coldCache = false;
+
+    // ===== Events =====
+    private final Executor executor;
+    private final ArrayDeque<Runnable> events = new ArrayDeque<>();
+    private boolean draining = false;
+
+    /**
+     * Constructor for a backend whose callbacks run on the calling thread
+     */
+    public InMemoryGameBackend() {
+        this(null);
+    }
+
+    /**
+     * Constructor for a backend whose callbacks run on an executor
+     *
+     * @param executor Runs every callback, in order; null to run them on the calling thread
+     */
+    public InMemoryGameBackend(Executor executor) {
+        this.executor = executor;
+    }
+
+    // ===== GameBackend =====
+
+    /**
+     * Read the value at a path once
+     *
+     * @param path     The path
+     * @param listener Receives the value
+     */
+    @Override
+    public void get(String path, ReadListener listener) {
+        Object value;
+        synchronized (this) {
+            value = toExternal(getNode(split(path)));
+        }
+        post(() -> listener.onRead(value));
+        drain();
+    }
+
+    /**
+     * Read the children of a path selected by a query once
+     *
+     * @param path     The parent path
+     * @param query    Order, bounds and limit
+     * @param listener Receives a Map of the selected children in query order
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void query(String path, ChildQuery query, ReadListener listener) {
+        Map<String, Object> selected = new LinkedHashMap<>();
+        synchronized (this) {
+            Object node = getNode(split(path));
+            if (node instanceof Map) {
+                selectChildren((Map<String, Object>) node, query, selected);
+            }
+            for (Map.Entry<String, Object> entry : selected.entrySet()) {
+                entry.setValue(toExternal(entry.getValue()));
+            }
+        }
+        post(() -> listener.onRead(selected));
+        drain();
+    }
+
+    /**
+     * Replace the value at a path
+     *
+     * @param path     The path
+     * @param value    The new value, null deletes the path
+     * @param listener Receives the result, or null
+     */
+    @Override
+    public void set(String path, Object value, CompletionListener listener) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("", value);
+        update(path, values, listener);
+    }
+
+    /**
+     * Write several children of a path in one atomic update
+     *
+     * @param path     The parent path
+     * @param values   Values by relative child path, null deletes
+     * @param listener Receives the result, or null
+     */
+    @Override
+    public void update(String path, Map<String, Object> values, CompletionListener listener) {
+        List<String[]> written = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                String[] target = split(path + "/" + entry.getKey());
+                setNode(target, normalize(entry.getValue()));
+                written.add(target);
+            }
+            queueListenerEvents(written);
+        }
+        if (listener != null) {
+            post(() -> listener.onComplete(null));
+        }
+        drain();
+    }
+
+    /**
+     * Change the value at a path based on its current value
+     * The commit is queued behind pending events, so other clients can write
+     * in between and force a retry, as with a real round trip
+     *
+     * @param path    The path
+     * @param handler Computes the new value and receives the result
+     */
+    @Override
+    public void transaction(String path, TransactionHandler handler) {
+        attemptTransaction(split(path), handler, 0);
+        drain();
+    }
+
+    /**
+     * Follow the value at a path
+     *
+     * @param path     The path
+     * @param listener Receives the value now and after every change
+     * @return Handle to detach the listener
+     */
+    @Override
+    public Registration addValueListener(String path, ValueListener listener) {
+        final ValueWatch watch = new ValueWatch(split(path), listener);
+        synchronized (this) {
+            watch.lastValue = copy(getNode(watch.path));
+            addWatch(valueWatches, watch.path, watch);
+            Object value = toExternal(watch.lastValue);
+            post(() -> {
+                if (watch.active) listener.onValue(value);
+            });
+        }
+        drain();
+        return () -> {
+            synchronized (InMemoryGameBackend.this) {
+                watch.active = false;
+                removeWatch(valueWatches, watch.path, watch);
+            }
+        };
+    }
+
+    /**
+     * Follow the children of a path, ordered by key
+     *
+     * @param path     The parent path
+     * @param startAt  First key to report, or null for all children
+     * @param listener Receives existing and new children
+     * @return Handle to detach the listener
+     */
+    @Override
+    public Registration addChildListener(String path, String startAt, ChildListener listener) {
+        final ChildWatch watch = new ChildWatch(split(path), startAt, listener);
+        synchronized (this) {
+            addWatch(childWatches, watch.path, watch);
+            queueChildEvents(watch);
+        }
+        drain();
+        return () -> {
+            synchronized (InMemoryGameBackend.this) {
+                watch.active = false;
+                removeWatch(childWatches, watch.path, watch);
+            }
+        };
+    }
+
+    /**
+     * Follow the children of a path selected by a query
+     * The selection is computed again after every write below the path
+     * and compared to the previous one
+     *
+     * @param path     The parent path
+     * @param query    Order, bounds and limit
+     * @param listener Receives the selected children and later changes of the selection
+     * @return Handle to detach the listener
+     */
+    @Override
+    public Registration addQueryListener(String path, ChildQuery query, QueryListener listener) {
+        final QueryWatch watch = new QueryWatch(split(path), query, listener);
+        synchronized (this) {
+            addWatch(queryWatches, watch.path, watch);
+            queueQueryEvents(watch);
+        }
+        drain();
+        return () -> {
+            synchronized (InMemoryGameBackend.this) {
+                watch.active = false;
+                removeWatch(queryWatches, watch.path, watch);
+            }
+        };
+    }
+
+    /**
+     * Everything is in memory, nothing to keep synced
+     *
+     * @param path       The path
+     * @param keepSynced Ignored
+     */
+    @Override
+    public void keepSynced(String path, boolean keepSynced) {
+    }
+
+    /**
+     * Follow the simulated connection state
+     *
+     * @param listener Receives the state now and after every setConnected()
+     * @return Handle to detach the listener
+     */
+    @Override
+    public Registration addConnectionListener(ConnectionListener listener) {
+        synchronized (this) {
+            connectionListeners.add(listener);
+            final boolean state = connected;
+            post(() -> listener.onConnectionChanged(state));
+        }
+        drain();
+        return () -> {
+            synchronized (InMemoryGameBackend.this) {
+                connectionListeners.remove(listener);
+            }
+        };
+    }
+
+    /**
+     * Simulate losing or regaining the connection
+     * Only the connection listeners are told, data keeps flowing
+     *
+     * @param connected The new state
+     */
+    public void setConnected(boolean connected) {
+        synchronized (this) {
+            if (this.connected == connected) return;
+
+            this.connected = connected;
+            for (ConnectionListener listener : new ArrayList<>(connectionListeners)) {
+                post(() -> listener.onConnectionChanged(connected));
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Simulate clients without a local cache: the first run of every
+     * transaction handler gets null, the commit then fails against the stored
+     * value and the handler runs again on it, as the Firebase client does
+     *
+     * @param coldCache True to start transactions on null
+     */
+    public synchronized void setColdCache(boolean coldCache) {
+        this.coldCache = coldCache;
+    }
+
+    // ===== Transactions =====
+
+    /**
+     * Run the handler on the current value and queue the commit
+     *
+     * @param path    Split path
+     * @param handler The transaction handler
+     * @param retries Number of attempts that already failed
+     */
+    private void attemptTransaction(String[] path, TransactionHandler handler, int retries) {
+        final Object seen;
+        synchronized (this) {
+            seen = coldCache && retries == 0 ? null : copy(getNode(path));
+        }
+
+        final Object result = handler.apply(toExternal(seen));
+        if (result == ABORT) {
+            post(() -> handler.onComplete(null, false, toExternalLocked(path)));
+            return;
+        }
+
+        final Object next = normalize(result);
+        post(() -> {
+            boolean committed = false;
+            Object committedValue = null;
+            synchronized (this) {
+                if (Objects.equals(getNode(path), seen)) {
+                    setNode(path, next);
+                    committedValue = toExternal(next);
+                    List<String[]> written = new ArrayList<>();
+                    written.add(path);
+                    queueListenerEvents(written);
+                    committed = true;
+                }
+            }
+
+            if (committed) {
+                final Object value = committedValue;
+                post(() -> handler.onComplete(null, true, value));
+            } else if (retries + 1 >= MAX_TRANSACTION_RETRIES) {
+                post(() -> handler.onComplete("maxretries", false, toExternalLocked(path)));
+            } else {
+                // The new value has to travel back before the handler can run again
+                onTransactionRetry();
+                post(() -> attemptTransaction(path, handler, retries + 1));
+            }
+        });
+    }
+
+    /**
+     * Called each time a transaction has to run again because its path changed
+     * Subclasses can count retries
+     */
+    protected void onTransactionRetry() {
+    }
+
+    // ===== Queries =====
+
+    /**
+     * Sort the children of a node the way the query orders them and pick the selected ones
+     * Must hold the lock
+     *
+     * @param children Stored children of the queried node
+     * @param query    Order, bounds and limit
+     * @param selected Receives the stored selected children, in order
+     */
+    private static void selectChildren(Map<String, Object> children, ChildQuery query, Map<String, Object> selected) {
+        final String[] orderBy = split(query.getOrderByChild());
+        List<String> keys = new ArrayList<>(children.keySet());
+        Collections.sort(keys, (first, second) -> {
+            int order = compareQueryValues(childValue(children.get(first), orderBy),
+                    childValue(children.get(second), orderBy));
+            return order != 0 ? order : KEY_ORDER.compare(first, second);
+        });
+
+        for (String key : keys) {
+            Object value = childValue(children.get(key), orderBy);
+            if (query.hasStart()) {
+                int order = compareQueryValues(value, query.getStartAfterValue());
+                if (order < 0) continue;
+                if (order == 0 && (query.getStartAfterKey() == null
+                        || KEY_ORDER.compare(key, query.getStartAfterKey()) <= 0)) continue;
+            }
+            if (query.hasEnd() && compareQueryValues(value, query.getEndAtValue()) > 0) break;
+
+            selected.put(key, children.get(key));
+            if (query.getLimitToFirst() > 0 && selected.size() >= query.getLimitToFirst()) break;
+        }
+    }
+
+    /**
+     * Gets the value a child is ordered by
+     *
+     * @param child   Stored child
+     * @param orderBy Split path below the child
+     * @return The stored value, or null
+     */
+    @SuppressWarnings("unchecked")
+    private static Object childValue(Object child, String[] orderBy) {
+        Object node = child;
+        for (String key : orderBy) {
+            if (!(node instanceof Map)) return null;
+            node = ((Map<String, Object>) node).get(key);
+        }
+        return node;
+    }
+
+    /**
+     * Compare two ordering values like Firebase:
+     * null, then false, true, then numbers, then strings, then objects
+     *
+     * @param first  First value
+     * @param second Second value
+     * @return Negative, zero or positive like a Comparator
+     */
+    private static int compareQueryValues(Object first, Object second) {
+        int firstRank = queryRank(first);
+        int secondRank = queryRank(second);
+        if (firstRank != secondRank) return Integer.compare(firstRank, secondRank);
+
+        if (first instanceof Boolean) return Boolean.compare((Boolean) first, (Boolean) second);
+        if (first instanceof Number) {
+            return Double.compare(((Number) first).doubleValue(), ((Number) second).doubleValue());
+        }
+        if (first instanceof String) return ((String) first).compareTo((String) second);
+        return 0; // null or objects, ordered by key
+    }
+
+    /**
+     * Gets the type rank of an ordering value
+     *
+     * @param value The value
+     * @return 0 for null, 1 boolean, 2 number, 3 string, 4 object
+     */
+    private static int queryRank(Object value) {
+        if (value == null) return 0;
+        if (value instanceof Boolean) return 1;
+        if (value instanceof Number) return 2;
+        if (value instanceof String) return 3;
+        return 4;
+    }
+
+    // ===== Listener Events =====
+
+    /**
+     * Queue events for all listeners affected by written paths
+     * Must hold the lock
+     *
+     * @param written Split paths that were written
+     */
+    private void queueListenerEvents(List<String[]> written) {
+        for (ValueWatch watch : candidates(valueWatches, written)) {
+            if (!isAffected(watch.path, written)) continue;
+
+            Object current = getNode(watch.path);
+            if (Objects.equals(current, watch.lastValue)) continue;
+
+            watch.lastValue = copy(current);
+            final Object value = toExternal(current);
+            post(() -> {
+                if (watch.active) watch.listener.onValue(value);
+            });
+        }
+
+        for (ChildWatch watch : candidates(childWatches, written)) {
+            if (isAffected(watch.path, written)) {
+                queueChildEvents(watch);
+            }
+        }
+
+        for (QueryWatch watch : candidates(queryWatches, written)) {
+            if (isAffected(watch.path, written)) {
+                queueQueryEvents(watch);
+            }
+        }
+    }
+
+    /**
+     * Queue onChildAdded for children a child listener has not seen yet
+     * Must hold the lock
+     *
+     * @param watch The child listener
+     */
+    @SuppressWarnings("unchecked")
+    private void queueChildEvents(ChildWatch watch) {
+        Object node = getNode(watch.path);
+        Map<String, Object> children = node instanceof Map ? (Map<String, Object>) node : Collections.emptyMap();
+
+        // Forget removed children so they are reported again if re-added
+        watch.seen.retainAll(children.keySet());
+
+        List<String> added = new ArrayList<>();
+        for (String key : children.keySet()) {
+            if (!watch.seen.contains(key) && (watch.startAt == null || KEY_ORDER.compare(key, watch.startAt) >= 0)) {
+                added.add(key);
+            }
+        }
+        Collections.sort(added, KEY_ORDER);
+
+        for (String key : added) {
+            watch.seen.add(key);
+            final Object value = toExternal(children.get(key));
+            post(() -> {
+                if (watch.active) watch.listener.onChildAdded(key, value);
+            });
+        }
+    }
+
+    /**
+     * Queue the differences between a query listener's last selection and the current one
+     * Removals come first, then additions and changes in query order
+     * Must hold the lock
+     *
+     * @param watch The query listener
+     */
+    @SuppressWarnings("unchecked")
+    private void queueQueryEvents(QueryWatch watch) {
+        Object node = getNode(watch.path);
+        Map<String, Object> selected = new LinkedHashMap<>();
+        if (node instanceof Map) {
+            selectChildren((Map<String, Object>) node, watch.query, selected);
+        }
+
+        for (String key : watch.selection.keySet()) {
+            if (!selected.containsKey(key)) {
+                post(() -> {
+                    if (watch.active) watch.listener.onChildRemoved(key);
+                });
+            }
+        }
+
+        for (Map.Entry<String, Object> entry : selected.entrySet()) {
+            final String key = entry.getKey();
+            final Object value = toExternal(entry.getValue());
+            if (!watch.selection.containsKey(key)) {
+                post(() -> {
+                    if (watch.active) watch.listener.onChildAdded(key, value);
+                });
+            } else if (!Objects.equals(watch.selection.get(key), entry.getValue())) {
+                post(() -> {
+                    if (watch.active) watch.listener.onChildChanged(key, value);
+                });
+            }
+            entry.setValue(copy(entry.getValue()));
+        }
+        watch.selection = selected;
+    }
+
+    /**
+     * Gets the bucket of a path: its first BUCKET_DEPTH keys,
+     * or "" for shorter paths
+     *
+     * @param path Split path
+     * @return The bucket key
+     */
+    private static String bucketOf(String[] path) {
+        if (path.length < BUCKET_DEPTH) return "";
+
+        StringBuilder bucket = new StringBuilder();
+        for (int i = 0; i < BUCKET_DEPTH; i++) {
+            bucket.append('/').append(path[i]);
+        }
+        return bucket.toString();
+    }
+
+    /**
+     * Add a listener to its bucket
+     * Must hold the lock
+     *
+     * @param watches Listeners by bucket
+     * @param path    Split listener path
+     * @param watch   The listener
+     * @param <T>     Listener type
+     */
+    private static <T> void addWatch(Map<String, List<T>> watches, String[] path, T watch) {
+        String bucket = bucketOf(path);
+        List<T> list = watches.get(bucket);
+        if (list == null) {
+            list = new ArrayList<>();
+            watches.put(bucket, list);
+        }
+        list.add(watch);
+    }
+
+    /**
+     * Remove a listener from its bucket
+     * Must hold the lock
+     *
+     * @param watches Listeners by bucket
+     * @param path    Split listener path
+     * @param watch   The listener
+     * @param <T>     Listener type
+     */
+    private static <T> void removeWatch(Map<String, List<T>> watches, String[] path, T watch) {
+        String bucket = bucketOf(path);
+        List<T> list = watches.get(bucket);
+        if (list == null) return;
+
+        list.remove(watch);
+        if (list.isEmpty()) {
+            watches.remove(bucket);
+        }
+    }
+
+    /**
+     * Gets the listeners that written paths might affect
+     * A write below a bucket can only affect that bucket and the short paths,
+     * so a game's writes do not visit the listeners of every other game
+     * Must hold the lock
+     *
+     * @param watches Listeners by bucket
+     * @param written Split written paths
+     * @param <T>     Listener type
+     * @return The candidate listeners, each once
+     */
+    private static <T> List<T> candidates(Map<String, List<T>> watches, List<String[]> written) {
+        Set<String> buckets = new HashSet<>();
+        for (String[] target : written) {
+            if (target.length < BUCKET_DEPTH) {
+                buckets = watches.keySet(); // Above the buckets, everything may change
+                break;
+            }
+            buckets.add(bucketOf(target));
+            buckets.add("");
+        }
+
+        List<T> result = new ArrayList<>();
+        for (String bucket : buckets) {
+            List<T> list = watches.get(bucket);
+            if (list != null) result.addAll(list);
+        }
+        return result;
+    }
+
+    /**
+     * Checks if a listener path is affected by written paths
+     * A write affects its own path, its ancestors and its descendants
+     *
+     * @param path    Split listener path
+     * @param written Split written paths
+     * @return True if any write overlaps the listener path
+     */
+    private static boolean isAffected(String[] path, List<String[]> written) {
+        for (String[] target : written) {
+            int common = Math.min(path.length, target.length);
+            boolean overlaps = true;
+            for (int i = 0; i < common && overlaps; i++) {
+                overlaps = path[i].equals(target[i]);
+            }
+            if (overlaps) return true;
+        }
+        return false;
+    }
+
+    // ===== Event Queue =====
+
+    /**
+     * Queue a callback
+     *
+     * @param event The callback
+     */
+    private void post(Runnable event) {
+        if (executor != null) {
+            executor.execute(event);
+            return;
+        }
+        synchronized (events) {
+            events.add(event);
+        }
+    }
+
+    /**
+     * Run queued callbacks on the calling thread until none are left
+     * Callbacks that write queue their own events behind the current ones
+     */
+    private void drain() {
+        if (executor != null) return;
+
+        synchronized (events) {
+            if (draining) return;
+            draining = true;
+        }
+        try {
+            while (true) {
+                Runnable event;
+                synchronized (events) {
+                    event = events.poll();
+                    if (event == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                event.run();
+            }
+        } catch (RuntimeException e) {
+            synchronized (events) {
+                draining = false;
+            }
+            throw e;
+        }
+    }
+
+    // ===== Tree =====
+
+    /**
+     * Split a path into its keys, ignoring empty segments
+     *
+     * @param path Slash separated path
+     * @return The keys
+     */
+    private static String[] split(String path) {
+        List<String> keys = new ArrayList<>();
+        for (String key : path.split("/")) {
+            if (!key.isEmpty()) keys.add(key);
+        }
+        return keys.toArray(new String[0]);
+    }
+
+    /**
+     * Gets the stored node at a path
+     * Must hold the lock
+     *
+     * @param path Split path
+     * @return The stored node, or null
+     */
+    @SuppressWarnings("unchecked")
+    private Object getNode(String[] path) {
+        Object node = root;
+        for (String key : path) {
+            if (!(node instanceof Map)) return null;
+            node = ((Map<String, Object>) node).get(key);
+        }
+        return node;
+    }
+
+    /**
+     * Gets the value at a path as a caller would see it
+     *
+     * @param path Split path
+     * @return Copy of the value
+     */
+    private synchronized Object toExternalLocked(String[] path) {
+        return toExternal(getNode(path));
+    }
+
+    /**
+     * Store a normalized value at a path, removing parents left empty
+     * Must hold the lock
+     *
+     * @param path  Split path
+     * @param value Normalized value, null to delete
+     */
+    @SuppressWarnings("unchecked")
+    private void setNode(String[] path, Object value) {
+        if (path.length == 0) {
+            root.clear();
+            if (value instanceof Map) {
+                root.putAll((Map<String, Object>) value);
+            }
+            return;
+        }
+
+        // Walk down, creating parents when writing
+        List<Map<String, Object>> parents = new ArrayList<>();
+        Map<String, Object> node = root;
+        for (int i = 0; i < path.length - 1; i++) {
+            parents.add(node);
+            Object child = node.get(path[i]);
+            if (!(child instanceof Map)) {
+                if (value == null) return; // Nothing to delete
+                child = new HashMap<String, Object>();
+                node.put(path[i], child);
+            }
+            node = (Map<String, Object>) child;
+        }
+
+        if (value != null) {
+            node.put(path[path.length - 1], value);
+            return;
+        }
+
+        node.remove(path[path.length - 1]);
+        for (int i = path.length - 2; i >= 0 && node.isEmpty(); i--) {
+            Map<String, Object> parent = parents.get(i);
+            parent.remove(path[i]);
+            node = parent;
+        }
+    }
+
+    /**
+     * Convert a written value to the stored form:
+     * Long and Double numbers, maps for lists, no empty nodes
+     *
+     * @param value The written value
+     * @return The stored value, or null if it is empty
+     */
+    private static Object normalize(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean
+                || value instanceof Long || value instanceof Double) {
+            return value;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        if (value instanceof Map) {
+            Map<String, Object> map = new HashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                Object child = normalize(entry.getValue());
+                if (child != null) map.put(String.valueOf(entry.getKey()), child);
+            }
+            return map.isEmpty() ? null : map;
+        }
+        if (value instanceof List) {
+            Map<String, Object> map = new HashMap<>();
+            List<?> list = (List<?>) value;
+            for (int i = 0; i < list.size(); i++) {
+                Object child = normalize(list.get(i));
+                if (child != null) map.put(String.valueOf(i), child);
+            }
+            return map.isEmpty() ? null : map;
+        }
+        throw new IllegalArgumentException("Unsupported value type " + value.getClass().getName());
+    }
+
+    /**
+     * Deep copy of a stored value, so later writes do not change it
+     *
+     * @param value Stored value
+     * @return The copy
+     */
+    @SuppressWarnings("unchecked")
+    private static Object copy(Object value) {
+        if (!(value instanceof Map)) return value;
+
+        Map<String, Object> copy = new HashMap<>();
+        for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+            copy.put(entry.getKey(), copy(entry.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * Copy a stored value into the form Firebase hands out
+     * Maps whose keys are mostly the indexes 0..n come back as Lists
+     *
+     * @param value Stored value
+     * @return Copy safe to change
+     */
+    @SuppressWarnings("unchecked")
+    private static Object toExternal(Object value) {
+        if (!(value instanceof Map)) return value;
+
+        Map<String, Object> map = (Map<String, Object>) value;
+        long maxIndex = -1;
+        boolean indexed = true;
+        for (String key : map.keySet()) {
+            Long index = parseIndex(key);
+            if (index == null) {
+                indexed = false;
+                break;
+            }
+            maxIndex = Math.max(maxIndex, index);
+        }
+
+        // Same rule as Firebase: more than half of the indexes are present
+        if (indexed && maxIndex < map.size() * 2L) {
+            List<Object> list = new ArrayList<>();
+            for (int i = 0; i <= maxIndex; i++) {
+                list.add(toExternal(map.get(String.valueOf(i))));
+            }
+            return list;
+        }
+
+        Map<String, Object> copy = new HashMap<>();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            copy.put(entry.getKey(), toExternal(entry.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * Parse a key that is a non-negative 32-bit integer
+     *
+     * @param key The key
+     * @return The number, or null if the key is not one
+     */
+    private static Long parseIndex(String key) {
+        if (key.isEmpty() || key.length() > 10 || (key.length() > 1 && key.charAt(0) == '0')) return null;
+        for (int i = 0; i < key.length(); i++) {
+            if (!Character.isDigit(key.charAt(i))) return null;
+        }
+        long value = Long.parseLong(key);
+        return value <= Integer.MAX_VALUE ? value : null;
+    }
+
+    // ===== Watches =====
+
+    /**
+     * An attached value listener
+     */
+    private static class ValueWatch {
+        final String[] path;
+        final ValueListener listener;
+        Object lastValue;
+        volatile boolean active = true;
+
+        ValueWatch(String[] path, ValueListener listener) {
+            this.path = path;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * An attached query listener
+     */
+    private static class QueryWatch {
+        final String[] path;
+        final ChildQuery query;
+        final QueryListener listener;
+        Map<String, Object> selection = new LinkedHashMap<>();
+        volatile boolean active = true;
+
+        QueryWatch(String[] path, ChildQuery query, QueryListener listener) {
+            this.path = path;
+            this.query = query;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * An attached child listener
+     */
+    private static class ChildWatch {
+        final String[] path;
+        final String startAt;
+        final ChildListener listener;
+        final Set<String> seen = new HashSet<>();
+        volatile boolean active = true;
+
+        ChildWatch(String[] path, String startAt, ChildListener listener) {
+            this.path = path;
+            this.startAt = startAt;
+            this.listener = listener;
+        }
+    }
+}
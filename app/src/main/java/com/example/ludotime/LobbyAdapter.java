@@ -0,0 +1,98 @@
+package com.example.ludotime;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.List;
+
+/**
+ * Adapter for displaying open public lobbies in a RecyclerView
+ * The list is owned by a LobbyBrowser, which reports changes by position
+ */
+public class LobbyAdapter extends RecyclerView.Adapter<LobbyAdapter.LobbyViewHolder> {
+
+    private final List<LobbySummary> lobbies;
+    private final OnLobbyClickListener clickListener;
+
+    /**
+     * Interface for choosing a lobby
+     */
+    public interface OnLobbyClickListener {
+        /**
+         * Called when a lobby is tapped
+         * @param lobby The tapped lobby
+         */
+        void onLobbyClicked(LobbySummary lobby);
+    }
+
+    /**
+     * Constructor for LobbyAdapter
+     * @param lobbies List of lobbies to display
+     * @param clickListener Called when a lobby is tapped
+     */
+    public LobbyAdapter(List<LobbySummary> lobbies, OnLobbyClickListener clickListener) {
+        this.lobbies = lobbies;
+        this.clickListener = clickListener;
+    }
+
+    /**
+     * Creates a new ViewHolder for lobby items
+     * @param parent The parent ViewGroup
+     * @param viewType The view type of the new View
+     * @return A new LobbyViewHolder instance
+     */
+    @NonNull
+    @Override
+    public LobbyViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View lobbyView = LayoutInflater.from(parent.getContext()).inflate(R.layout.recycleritem_lobby, parent, false);
+        return new LobbyViewHolder(lobbyView);
+    }
+
+    /**
+     * Binds lobby data to the ViewHolder
+     * @param holder The ViewHolder to bind data to
+     * @param position The position of the item in the dataset
+     */
+    @Override
+    public void onBindViewHolder(@NonNull LobbyViewHolder holder, int position) {
+        LobbySummary lobby = lobbies.get(position);
+        holder.hostTextView.setText(lobby.getHostName() + "'s game");
+        holder.codeTextView.setText(lobby.getGameId());
+        holder.seatsTextView.setText(lobby.getSeatsTaken() + "/" + lobby.getMaxPlayers());
+        holder.itemView.setOnClickListener(v -> clickListener.onLobbyClicked(lobby));
+    }
+
+    /**
+     * Returns the total number of items in the dataset
+     * @return The size of the lobby list
+     */
+    @Override
+    public int getItemCount() {
+        return lobbies.size();
+    }
+
+    /**
+     * ViewHolder for lobby items in the RecyclerView
+     */
+    public static class LobbyViewHolder extends RecyclerView.ViewHolder {
+        public TextView hostTextView;
+        public TextView codeTextView;
+        public TextView seatsTextView;
+
+        /**
+         * Constructor for LobbyViewHolder
+         * @param itemView The view of the item
+         */
+        public LobbyViewHolder(@NonNull View itemView) {
+            super(itemView);
+            hostTextView = itemView.findViewById(R.id.textview_lobby_host);
+            codeTextView = itemView.findViewById(R.id.textview_lobby_code);
+            seatsTextView = itemView.findViewById(R.id.textview_lobby_seats);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * LobbyBrowser.java
+ *
+ * Keeps the list of open public lobbies, read from the lobby summaries with
+ * a query ordered by creation time and limited to the pages loaded so far.
+ * Only summaries are downloaded, never the games behind them.
+ *
+ * A single query listener covers all loaded pages, so a lobby that fills up
+ * on the first page is replaced by the next one instead of leaving a gap.
+ * Loading another page attaches the listener again with a higher limit,
+ * the summaries that were already loaded come from the local cache.
+ */
+package com.example.ludotime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LobbyBrowser {
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    private final GameBackend backend;
+    private final int pageSize;
+    private final BrowserListener listener;
+
+    /** Loaded lobbies, oldest first */
+    private final List<LobbySummary> lobbies = new ArrayList<>();
+
+    private GameBackend.Registration registration;
+    private int limit = 0;
+
+    /**
+     * Interface for changes of the lobby list, by position,
+     * the way a RecyclerView adapter is notified
+     */
+    public interface BrowserListener {
+        /**
+         * Called when all loaded lobbies were dropped before loading again
+         */
+        void onLobbiesReset();
+
+        /**
+         * Called when a lobby was added to the list
+         *
+         * @param position Position of the new lobby
+         */
+        void onLobbyAdded(int position);
+
+        /**
+         * Called when a listed lobby changed
+         *
+         * @param position Position of the lobby
+         */
+        void onLobbyChanged(int position);
+
+        /**
+         * Called when a lobby left the list
+         *
+         * @param position Position the lobby had
+         */
+        void onLobbyRemoved(int position);
+
+        /**
+         * Called if the lobbies could not be read
+         *
+         * @param message Description of the error
+         */
+        void onBrowserError(String message);
+    }
+
+    /**
+     * Constructor for a browser with the default page size
+     *
+     * @param backend  Database the summaries are stored in
+     * @param listener Receives changes of the list
+     */
+    public LobbyBrowser(GameBackend backend, BrowserListener listener) {
+        this(backend, DEFAULT_PAGE_SIZE, listener);
+    }
+
+    /**
+     * Constructor for a browser
+     *
+     * @param backend  Database the summaries are stored in
+     * @param pageSize Number of lobbies loaded at a time
+     * @param listener Receives changes of the list
+     */
+    public LobbyBrowser(GameBackend backend, int pageSize, BrowserListener listener) {
+        this.backend = backend;
+        this.pageSize = pageSize;
+        this.listener = listener;
+    }
+
+    /**
+     * Gets the loaded lobbies
+     *
+     * @return Lobbies oldest first, updated in place
+     */
+    public List<LobbySummary> getLobbies() {
+        return lobbies;
+    }
+
+    /**
+     * Checks if another page may have lobbies
+     *
+     * @return True if the loaded pages are full
+     */
+    public boolean hasMore() {
+        return limit > 0 && lobbies.size() >= limit;
+    }
+
+    // ===== Loading =====
+
+    /**
+     * Start following the first page of lobbies
+     */
+    public void start() {
+        if (registration == null) {
+            attach(Math.max(limit, pageSize));
+        }
+    }
+
+    /**
+     * Load one more page of lobbies
+     */
+    public void loadMore() {
+        attach(limit + pageSize);
+    }
+
+    /**
+     * Stop following the lobbies, the list is kept until start() is called again
+     */
+    public void stop() {
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+    }
+
+    /**
+     * Follow the first lobbies up to a limit, dropping the current list
+     *
+     * @param newLimit Number of lobbies to follow
+     */
+    private void attach(int newLimit) {
+        stop();
+        limit = newLimit;
+        if (!lobbies.isEmpty()) {
+            lobbies.clear();
+            listener.onLobbiesReset();
+        }
+
+        GameBackend.ChildQuery query = GameBackend.ChildQuery.orderByChild(LobbySummary.CREATED_AT)
+                .limitToFirst(limit);
+        registration = backend.addQueryListener(LobbySummary.LOBBIES_REF, query, new GameBackend.QueryListener() {
+            @Override
+            public void onChildAdded(String key, Object value) {
+                LobbySummary lobby = LobbySummary.fromValue(key, value);
+                int position = insertionPoint(lobby);
+                lobbies.add(position, lobby);
+                listener.onLobbyAdded(position);
+            }
+
+            @Override
+            public void onChildChanged(String key, Object value) {
+                int position = indexOf(key);
+                if (position < 0) {
+                    onChildAdded(key, value);
+                    return;
+                }
+
+                LobbySummary lobby = LobbySummary.fromValue(key, value);
+                if (lobby.getCreatedAt() == lobbies.get(position).getCreatedAt()) {
+                    lobbies.set(position, lobby);
+                    listener.onLobbyChanged(position);
+                } else {
+                    // Moved, remove and insert at its new place
+                    onChildRemoved(key);
+                    onChildAdded(key, value);
+                }
+            }
+
+            @Override
+            public void onChildRemoved(String key) {
+                int position = indexOf(key);
+                if (position >= 0) {
+                    lobbies.remove(position);
+                    listener.onLobbyRemoved(position);
+                }
+            }
+
+            @Override
+            public void onError(String message) {
+                listener.onBrowserError(message);
+            }
+        });
+    }
+
+    // ===== Helpers =====
+
+    /**
+     * Find a lobby in the list
+     *
+     * @param gameId ID of the game
+     * @return Its position, or -1
+     */
+    private int indexOf(String gameId) {
+        for (int i = 0; i < lobbies.size(); i++) {
+            if (lobbies.get(i).getGameId().equals(gameId)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Find where a lobby belongs in the list, by creation time and then ID like the query
+     *
+     * @param lobby The lobby
+     * @return Position to insert at
+     */
+    private int insertionPoint(LobbySummary lobby) {
+        int low = 0;
+        int high = lobbies.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            LobbySummary other = lobbies.get(middle);
+            int order = Long.compare(other.getCreatedAt(), lobby.getCreatedAt());
+            if (order == 0) order = InMemoryGameBackend.KEY_ORDER.compare(other.getGameId(), lobby.getGameId());
+            if (order < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * LobbySummary.java
+ *
+ * The few fields of an open game the public lobby list shows, stored in
+ * lobbies/{id} next to the full game so browsing never downloads games.
+ * The host writes the summary while the game has free seats and removes it
+ * once the game is full or started.
+ */
+package com.example.ludotime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class LobbySummary {
+    // ===== Wire Schema =====
+    /** Firebase database reference path for lobby summaries */
+    public static final String LOBBIES_REF = "lobbies";
+
+    public static final String HOST_NAME = "hostName";
+    public static final String SEATS_TAKEN = "seatsTaken";
+    public static final String MAX_PLAYERS = "maxPlayers";
+    /** Lobbies are listed by this child, oldest first, see database.rules.json */
+    public static final String CREATED_AT = "createdAt";
+
+    private final String gameId;
+    private final String hostName;
+    private final int seatsTaken;
+    private final int maxPlayers;
+    private final long createdAt;
+
+    /**
+     * Constructor for a summary
+     *
+     * @param gameId     ID of the game
+     * @param hostName   Display name of the host
+     * @param seatsTaken Number of players in the game
+     * @param maxPlayers Number of seats
+     * @param createdAt  Time the game was created
+     */
+    public LobbySummary(String gameId, String hostName, int seatsTaken, int maxPlayers, long createdAt) {
+        this.gameId = gameId;
+        this.hostName = hostName;
+        this.seatsTaken = seatsTaken;
+        this.maxPlayers = maxPlayers;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Read a summary from its raw database value
+     *
+     * @param gameId Key of the summary
+     * @param value  Raw summary node
+     * @return The summary, with defaults for missing children
+     */
+    public static LobbySummary fromValue(String gameId, Object value) {
+        Map<?, ?> node = value instanceof Map ? (Map<?, ?>) value : new HashMap<>();
+        Object hostName = node.get(HOST_NAME);
+        return new LobbySummary(gameId,
+                hostName instanceof String ? (String) hostName : "Unknown",
+                (int) getLong(node, SEATS_TAKEN),
+                (int) getLong(node, MAX_PLAYERS),
+                getLong(node, CREATED_AT));
+    }
+
+    /**
+     * Gets a number child of a raw node
+     *
+     * @param node Raw node
+     * @param key  Key of the child
+     * @return The number, 0 if missing
+     */
+    private static long getLong(Map<?, ?> node, String key) {
+        Object value = node.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    /**
+     * Convert the summary to the value written to lobbies/{id}
+     *
+     * @return Map of the wire schema fields
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put(HOST_NAME, hostName);
+        map.put(SEATS_TAKEN, seatsTaken);
+        map.put(MAX_PLAYERS, maxPlayers);
+        map.put(CREATED_AT, createdAt);
+        return map;
+    }
+
+    /**
+     * Gets the game ID
+     *
+     * @return The 6-character code
+     */
+    public String getGameId() {
+        return gameId;
+    }
+
+    /**
+     * Gets the host's display name
+     *
+     * @return The name
+     */
+    public String getHostName() {
+        return hostName;
+    }
+
+    /**
+     * Gets the number of players in the game
+     *
+     * @return Seats taken
+     */
+    public int getSeatsTaken() {
+        return seatsTaken;
+    }
+
+    /**
+     * Gets the number of seats
+     *
+     * @return Maximum players
+     */
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    /**
+     * Gets the time the game was created
+     *
+     * @return Milliseconds since the epoch
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,669 @@
+/**
+ * MatchMaker.java
+ *
+ * Quick match: players enqueue under matchQueue/{userId} with their score,
+ * and a matcher seats them in new games in batches instead of every player
+ * racing the join transaction of one game.
+ *
+ * A round reads the oldest queue entries (".indexOn" queuedAt), sorts them by
+ * score and groups neighbours whose scores are close. The accepted score gap
+ * grows the longer a player waits. Groups of 4 start right away, smaller
+ * groups of 2 or 3 are only formed once a player waited PARTIAL_AFTER_MILLIS
+ * and open as public lobbies, since a game needs 4 players to start.
+ *
+ * All games of a round are written in one multi-path update: the games with
+ * their seats (colors in score order), their codes marked used in the ID
+ * index, the queue entries removed and matches/{userId} set to the game ID,
+ * which is what the queued clients listen to. The rule on matches/ in
+ * database.rules.json only accepts a match for a player who is still queued,
+ * so a player who left the queue fails the whole update and the next round
+ * matches the others again.
+ *
+ * Only one matcher should run at a time. Any queued client can be the
+ * matcher: runIfLeader() takes a short lease under matchmakerLease first.
+ * Works on any GameBackend, so a referee process on the JVM can run it too.
+ */
+package com.example.ludotime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MatchMaker {
+    // ===== Wire Schema =====
+    /** Firebase database reference path for queued players */
+    public static final String QUEUE_REF = "matchQueue";
+
+    /** Firebase database reference path for the game each matched player was seated in */
+    public static final String MATCHES_REF = "matches";
+
+    /** Firebase database reference path for the matcher lease */
+    static final String LEASE_REF = "matchmakerLease";
+
+    /** Children of a queue entry */
+    public static final String NAME = "name";
+    public static final String SCORE = "score";
+    /** Queue entries are read by this child, oldest first, see database.rules.json */
+    public static final String QUEUED_AT = "queuedAt";
+
+    /** Children of the lease */
+    private static final String LEASE_OWNER = "owner";
+    private static final String LEASE_EXPIRES_AT = "expiresAt";
+
+    /** Written to matches/{userId} instead of a game ID when the entry timed out */
+    public static final String TIMED_OUT = "";
+
+    // ===== Constants =====
+    public static final int MIN_GROUP_SIZE = 2;
+    public static final int MAX_GROUP_SIZE = 4;
+
+    /** How often queued clients should call runIfLeader() */
+    public static final long ROUND_INTERVAL_MILLIS = 5000;
+
+    /** Score gap accepted right away, and how much it grows per second of waiting */
+    static final int SCORE_WINDOW = 200;
+    static final int SCORE_WINDOW_PER_SECOND = 20;
+
+    /** Wait after which groups smaller than 4 are formed */
+    static final long PARTIAL_AFTER_MILLIS = 30 * 1000L;
+
+    /** Entries older than this are dropped, their client is told with TIMED_OUT */
+    static final long QUEUE_TIMEOUT_MILLIS = 5 * 60 * 1000L;
+
+    private static final long LEASE_MILLIS = 3 * ROUND_INTERVAL_MILLIS;
+    private static final int DEFAULT_BATCH_SIZE = 200;
+    private static final int CODE_POOL_SIZE = 4;
+
+    /** Lowest score first, the longest waiting first among equal scores */
+    private static final Comparator<QueuedPlayer> BY_SCORE = (a, b) -> {
+        int order = Integer.compare(a.score, b.score);
+        return order != 0 ? order : Long.compare(a.queuedAt, b.queuedAt);
+    };
+
+    // ===== Matcher =====
+    private final GameBackend backend;
+    private final String matcherId;
+    private final int batchSize;
+    private final TransactionMetrics metrics = new TransactionMetrics();
+    private final GameIdAllocator idAllocator;
+    private boolean running = false;
+    private boolean refereed = false;
+
+    /**
+     * Interface for the end of a round
+     */
+    public interface RoundListener {
+        /**
+         * Called once the round's games were written, or it failed
+         *
+         * @param report What the round found and matched
+         */
+        void onRoundFinished(Report report);
+    }
+
+    /**
+     * Interface for the result of taking the lease
+     */
+    public interface LeaseListener {
+        /**
+         * Called when the lease transaction completed
+         *
+         * @param leader True if this matcher holds the lease now
+         */
+        void onLease(boolean leader);
+    }
+
+    /**
+     * Constructor for a matcher reading the default number of queue entries a round
+     *
+     * @param backend   Database the queue and games are stored in
+     * @param matcherId ID of this matcher, the user ID when a client matches
+     */
+    public MatchMaker(GameBackend backend, String matcherId) {
+        this(backend, matcherId, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor for a matcher
+     *
+     * @param backend   Database the queue and games are stored in
+     * @param matcherId ID of this matcher, the user ID when a client matches
+     * @param batchSize Number of queue entries read a round
+     */
+    public MatchMaker(GameBackend backend, String matcherId, int batchSize) {
+        this.backend = backend;
+        this.matcherId = matcherId;
+        this.batchSize = batchSize;
+        this.idAllocator = new GameIdAllocator(backend, matcherId, metrics, CODE_POOL_SIZE);
+    }
+
+    /**
+     * Gets the transaction counters of this matcher
+     *
+     * @return The metrics
+     */
+    public TransactionMetrics getTransactionMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Creates refereed games and hands the full ones to a GameReferee, which
+     * starts them. The players' clients follow the flag stored with the game
+     *
+     * @param refereed True to create refereed games
+     */
+    public void setRefereed(boolean refereed) {
+        this.refereed = refereed;
+    }
+
+    /**
+     * Checks if a round is in progress
+     *
+     * @return True between runRound() and its listener
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    // ===== Queue Entries =====
+
+    /**
+     * Gets the path of a player's queue entry
+     *
+     * @param userId The player
+     * @return Path of matchQueue/{userId}
+     */
+    public static String queuePath(String userId) {
+        return QUEUE_REF + "/" + userId;
+    }
+
+    /**
+     * Gets the path a player's match is written to
+     *
+     * @param userId The player
+     * @return Path of matches/{userId}
+     */
+    public static String matchPath(String userId) {
+        return MATCHES_REF + "/" + userId;
+    }
+
+    /**
+     * Builds the value of a queue entry
+     *
+     * @param name     Display name of the player
+     * @param score    User.score of the player
+     * @param queuedAt Time the player joined the queue
+     * @return Map of the entry's children
+     */
+    public static Map<String, Object> queueEntry(String name, int score, long queuedAt) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put(NAME, name);
+        entry.put(SCORE, score);
+        entry.put(QUEUED_AT, queuedAt);
+        return entry;
+    }
+
+    // ===== Leader =====
+
+    /**
+     * Take or renew the matcher lease, it is free if nobody renewed it in time
+     *
+     * @param now      Current time
+     * @param listener Told whether this matcher leads
+     */
+    public void acquireLease(final long now, final LeaseListener listener) {
+        final TransactionMetrics.Operation operation = metrics.begin("matchLease");
+        backend.transaction(LEASE_REF, new GameBackend.TransactionHandler() {
+            @Override
+            public Object apply(Object current) {
+                Object owner = GameStateNodes.child(current, LEASE_OWNER);
+                Object expiresAt = GameStateNodes.child(current, LEASE_EXPIRES_AT);
+                if (owner != null && !matcherId.equals(owner)
+                        && expiresAt instanceof Number && ((Number) expiresAt).longValue() > now) {
+                    return operation.abort(TransactionMetrics.LEASE_HELD);
+                }
+
+                Map<String, Object> lease = new HashMap<>();
+                lease.put(LEASE_OWNER, matcherId);
+                lease.put(LEASE_EXPIRES_AT, now + LEASE_MILLIS);
+                return operation.commit(lease);
+            }
+
+            @Override
+            public void onComplete(String error, boolean committed, Object value) {
+                operation.complete(error, committed);
+                listener.onLease(error == null && committed);
+            }
+        });
+    }
+
+    /**
+     * Give up the lease if this matcher holds it, for example when its player was matched
+     * Also gives back the codes reserved for future games
+     */
+    public void releaseLease() {
+        idAllocator.releasePool();
+        backend.transaction(LEASE_REF, new GameBackend.TransactionHandler() {
+            @Override
+            public Object apply(Object current) {
+                return matcherId.equals(GameStateNodes.child(current, LEASE_OWNER)) ? null : GameBackend.ABORT;
+            }
+
+            @Override
+            public void onComplete(String error, boolean committed, Object value) {
+                // Nothing to report, an expired lease is free anyway
+            }
+        });
+    }
+
+    /**
+     * Run a round if this matcher holds the lease or can take it
+     * Meant to be called every ROUND_INTERVAL_MILLIS by each queued client
+     *
+     * @param now      Current time
+     * @param listener Receives the report, not called if another matcher leads
+     */
+    public void runIfLeader(final long now, final RoundListener listener) {
+        if (running) return;
+
+        acquireLease(now, leader -> {
+            if (leader && !running) {
+                runRound(now, listener);
+            }
+        });
+    }
+
+    // ===== Matching =====
+
+    /**
+     * Seat the oldest queued players in new games
+     *
+     * @param now      Current time, waiting times are measured against it
+     * @param listener Receives the report
+     * @throws IllegalStateException if a round is already running
+     */
+    public void runRound(final long now, final RoundListener listener) {
+        if (running) {
+            throw new IllegalStateException("Round already running");
+        }
+
+        running = true;
+        final Report report = new Report();
+        GameBackend.ChildQuery query = GameBackend.ChildQuery.orderByChild(QUEUED_AT).limitToFirst(batchSize);
+        backend.query(QUEUE_REF, query, new GameBackend.ReadListener() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void onRead(Object value) {
+                List<QueuedPlayer> waiting = new ArrayList<>();
+                List<QueuedPlayer> expired = new ArrayList<>();
+                for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                    QueuedPlayer player = QueuedPlayer.fromValue(entry.getKey(), entry.getValue());
+                    if (now - player.queuedAt > QUEUE_TIMEOUT_MILLIS) {
+                        expired.add(player);
+                    } else {
+                        waiting.add(player);
+                    }
+                }
+                report.queued = waiting.size() + expired.size();
+
+                List<List<QueuedPlayer>> groups = group(waiting, now);
+                if (groups.isEmpty() && expired.isEmpty()) {
+                    finish(report, listener);
+                } else {
+                    takeCodes(report, groups, expired, now, listener);
+                }
+            }
+
+            @Override
+            public void onError(String message) {
+                report.errors++;
+                finish(report, listener);
+            }
+        });
+    }
+
+    /**
+     * Group queued players with close scores
+     * Full groups are preferred, smaller ones are only formed for players who waited long enough
+     *
+     * @param players Queued players, in any order
+     * @param now     Current time
+     * @return Groups of MIN_GROUP_SIZE to MAX_GROUP_SIZE players, each in seat order
+     */
+    static List<List<QueuedPlayer>> group(List<QueuedPlayer> players, long now) {
+        List<QueuedPlayer> sorted = new ArrayList<>(players);
+        Collections.sort(sorted, BY_SCORE);
+
+        List<List<QueuedPlayer>> groups = new ArrayList<>();
+        int start = 0;
+        while (start < sorted.size()) {
+            List<QueuedPlayer> group = new ArrayList<>();
+            QueuedPlayer first = sorted.get(start);
+            group.add(first);
+            long window = scoreWindow(first, now);
+            long longestWait = now - first.queuedAt;
+
+            int next = start + 1;
+            while (next < sorted.size() && group.size() < MAX_GROUP_SIZE) {
+                QueuedPlayer candidate = sorted.get(next);
+                // The most patient player in the group decides how far apart scores may be
+                long candidateWindow = Math.max(window, scoreWindow(candidate, now));
+                if (candidate.score - first.score > candidateWindow) break;
+
+                group.add(candidate);
+                window = candidateWindow;
+                longestWait = Math.max(longestWait, now - candidate.queuedAt);
+                next++;
+            }
+
+            if (group.size() == MAX_GROUP_SIZE
+                    || (group.size() >= MIN_GROUP_SIZE && longestWait >= PARTIAL_AFTER_MILLIS)) {
+                groups.add(group);
+                start = next;
+            } else {
+                start++;
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Gets the score gap a player accepts after waiting
+     *
+     * @param player The player
+     * @param now    Current time
+     * @return Largest accepted difference of scores
+     */
+    private static long scoreWindow(QueuedPlayer player, long now) {
+        return SCORE_WINDOW + Math.max(0, now - player.queuedAt) / 1000 * SCORE_WINDOW_PER_SECOND;
+    }
+
+    /**
+     * Reserve a game code for every group, then write the round
+     *
+     * @param report   Report of the round
+     * @param groups   Groups to seat
+     * @param expired  Timed out queue entries
+     * @param now      Current time
+     * @param listener Receives the report
+     */
+    private void takeCodes(final Report report, final List<List<QueuedPlayer>> groups,
+                           final List<QueuedPlayer> expired, final long now, final RoundListener listener) {
+        final List<String> codes = new ArrayList<>();
+        if (groups.isEmpty()) {
+            writeRound(report, groups, codes, expired, now, listener);
+            return;
+        }
+
+        final int[] pending = {groups.size()};
+        final String[] failure = {null};
+        for (int i = 0; i < groups.size(); i++) {
+            idAllocator.take(new GameIdAllocator.IdListener() {
+                @Override
+                public void onIdReserved(String gameId) {
+                    codes.add(gameId);
+                    onCode();
+                }
+
+                @Override
+                public void onError(String message) {
+                    failure[0] = message;
+                    onCode();
+                }
+
+                /**
+                 * Write the round once every code arrived
+                 */
+                private void onCode() {
+                    if (--pending[0] > 0) return;
+
+                    if (failure[0] == null) {
+                        writeRound(report, groups, codes, expired, now, listener);
+                        return;
+                    }
+                    for (String code : codes) {
+                        idAllocator.release(code);
+                    }
+                    report.errors++;
+                    finish(report, listener);
+                }
+            });
+        }
+    }
+
+    /**
+     * Write all games of the round, the seats and the removed queue entries in one update
+     *
+     * @param report   Report of the round
+     * @param groups   Groups to seat
+     * @param codes    One reserved code per group
+     * @param expired  Timed out queue entries
+     * @param now      Current time
+     * @param listener Receives the report
+     */
+    private void writeRound(final Report report, final List<List<QueuedPlayer>> groups, final List<String> codes,
+                            final List<QueuedPlayer> expired, long now, final RoundListener listener) {
+        Map<String, Object> updates = new HashMap<>();
+        for (int i = 0; i < groups.size(); i++) {
+            List<QueuedPlayer> group = groups.get(i);
+            String gameId = codes.get(i);
+            MultiplayerGameLogic game = newGame(gameId, group, now);
+            boolean full = game.isGameStarted();
+            game.setRefereed(refereed);
+            if (refereed) {
+                // Only the referee writes the board of a refereed game, it starts the game itself
+                game.setGameStarted(false);
+            }
+            Map<String, Object> value = game.toMap();
+            if (full && refereed) {
+                updates.put(GameReferee.requestPath(gameId), GameReferee.request(now));
+            } else if (full) {
+                value.put(FirebaseGameManager.STATE_PATH, FirebaseGameManager.initialState());
+            } else {
+                // Open the free seats to everyone until the host's client takes over the summary
+                updates.put(LobbySummary.LOBBIES_REF + "/" + gameId, new LobbySummary(gameId, group.get(0).name,
+                        group.size(), game.getMaxPlayers(), now).toMap());
+            }
+            updates.put(FirebaseGameManager.GAMES_REF + "/" + gameId, value);
+            updates.put(GameIdAllocator.INDEX_REF + "/" + gameId + "/" + GameIdAllocator.RESERVED_AT_PATH, null);
+
+            for (QueuedPlayer player : group) {
+                updates.put(queuePath(player.userId), null);
+                updates.put(matchPath(player.userId), gameId);
+            }
+        }
+        for (QueuedPlayer player : expired) {
+            updates.put(queuePath(player.userId), null);
+            updates.put(matchPath(player.userId), TIMED_OUT);
+        }
+
+        final TransactionMetrics.Operation operation = metrics.begin("matchRound");
+        operation.commit(updates);
+        backend.update("", updates, error -> {
+            operation.complete(error, error == null);
+            if (error != null) {
+                // Someone left the queue in the meantime, nothing was written
+                for (String code : codes) {
+                    idAllocator.release(code);
+                }
+                report.errors++;
+            } else {
+                for (List<QueuedPlayer> group : groups) {
+                    report.games++;
+                    report.matched += group.size();
+                    if (group.size() == MAX_GROUP_SIZE) {
+                        report.started++;
+                    }
+                }
+                report.timedOut = expired.size();
+            }
+            finish(report, listener);
+        });
+    }
+
+    /**
+     * Build the game of a group, seated in score order with the first player as host
+     * A full game is started, everyone queued for it agreed to play
+     *
+     * @param gameId Reserved code of the game
+     * @param group  Players of the game
+     * @param now    Current time
+     * @return The game
+     */
+    static MultiplayerGameLogic newGame(String gameId, List<QueuedPlayer> group, long now) {
+        QueuedPlayer host = group.get(0);
+        MultiplayerGameLogic game = new MultiplayerGameLogic(host.userId, host.name, MAX_GROUP_SIZE, 0);
+        game.setGameId(gameId);
+        for (int seat = 1; seat < group.size(); seat++) {
+            QueuedPlayer player = group.get(seat);
+            game.getPlayerID().set(seat, player.userId);
+            game.getPlayerName().set(seat, player.name);
+            game.getIsReady().set(seat, true);
+        }
+        game.setCurrentPlayersNumber(group.size());
+        game.setGameStarted(group.size() == game.getMaxPlayers());
+        game.setLastUpdateTimestamp(now);
+        return game;
+    }
+
+    /**
+     * End the round and report it
+     *
+     * @param report   Report of the round
+     * @param listener Receives the report
+     */
+    private void finish(Report report, RoundListener listener) {
+        running = false;
+        if (listener != null) {
+            listener.onRoundFinished(report);
+        }
+    }
+
+    /**
+     * A player read from the queue
+     */
+    static class QueuedPlayer {
+        final String userId;
+        final String name;
+        final int score;
+        final long queuedAt;
+
+        /**
+         * Constructor for a queued player
+         *
+         * @param userId   The player
+         * @param name     Display name
+         * @param score    User.score
+         * @param queuedAt Time the player joined the queue
+         */
+        QueuedPlayer(String userId, String name, int score, long queuedAt) {
+            this.userId = userId;
+            this.name = name;
+            this.score = score;
+            this.queuedAt = queuedAt;
+        }
+
+        /**
+         * Read a queue entry from its raw database value
+         *
+         * @param userId Key of the entry
+         * @param value  Raw entry node
+         * @return The player, with defaults for missing children
+         */
+        static QueuedPlayer fromValue(String userId, Object value) {
+            Object name = GameStateNodes.child(value, NAME);
+            Object score = GameStateNodes.child(value, SCORE);
+            Object queuedAt = GameStateNodes.child(value, QUEUED_AT);
+            return new QueuedPlayer(userId,
+                    name instanceof String ? (String) name : "Unknown",
+                    score instanceof Number ? ((Number) score).intValue() : 0,
+                    queuedAt instanceof Number ? ((Number) queuedAt).longValue() : 0);
+        }
+    }
+
+    /**
+     * Counts of one round
+     */
+    public static class Report {
+        private int queued;
+        private int matched;
+        private int games;
+        private int started;
+        private int timedOut;
+        private int errors;
+
+        /**
+         * Constructor for an empty report
+         */
+        private Report() {
+        }
+
+        /**
+         * Gets the number of queue entries the round read
+         *
+         * @return Entries
+         */
+        public int getQueued() {
+            return queued;
+        }
+
+        /**
+         * Gets the number of players seated in new games
+         *
+         * @return Players
+         */
+        public int getMatched() {
+            return matched;
+        }
+
+        /**
+         * Gets the number of games created
+         *
+         * @return Games
+         */
+        public int getGames() {
+            return games;
+        }
+
+        /**
+         * Gets the number of created games that started with 4 players
+         *
+         * @return Games
+         */
+        public int getStarted() {
+            return started;
+        }
+
+        /**
+         * Gets the number of queue entries dropped after QUEUE_TIMEOUT_MILLIS
+         *
+         * @return Entries
+         */
+        public int getTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * Gets the number of failed reads and writes
+         *
+         * @return Errors
+         */
+        public int getErrors() {
+            return errors;
+        }
+
+        /**
+         * Gets a one line summary
+         *
+         * @return The summary
+         */
+        @Override
+        public String toString() {
+            return "Match round: " + queued + " queued, " + matched + " matched into " + games + " games ("
+                    + started + " started), " + timedOut + " timed out, " + errors + " errors";
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * MoveLog.java
+ *
+ * Append-only log of the turns of one local game, used for replays.
+ *
+ * File layout:
+ * - byte 0:     magic ('L')
+ * - byte 1:     format version
+ * - bytes 2-26: starting state, encoded with GameStateCodec
+ * - then one byte per turn: seat (bits 6-7), dice - 1 (bits 3-5), pawn (bits 0-2)
+ *   where pawn NO_PAWN means the turn ended without a pawn being chosen
+ *
+ * A game of a few hundred turns takes a few hundred bytes, so thousands of
+ * games fit on the device.
+ */
+package com.example.ludotime;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class MoveLog {
+    // ===== Constants =====
+    public static final int NO_PAWN = 7;
+    private static final byte MAGIC = 'L';
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 2 + GameStateCodec.ENCODED_SIZE;
+    private static final String LOG_DIR = "movelogs";
+    private static final String LOG_SUFFIX = ".log";
+    private static final int MAX_LOGS = 2000; // oldest logs are deleted beyond this
+
+    // ===== Recording =====
+    private final File file;
+    private FileOutputStream out;
+
+    /**
+     * Private constructor, use start() to begin a new log
+     *
+     * @param file The log file
+     * @param out  Stream appending to the file
+     */
+    private MoveLog(File file, FileOutputStream out) {
+        this.file = file;
+        this.out = out;
+    }
+
+    /**
+     * Begin a new log for a game
+     *
+     * @param context      Context used to find the app's files directory
+     * @param initialState The game before the first logged turn
+     * @return The new log
+     * @throws IOException if the log file cannot be created
+     */
+    public static MoveLog start(Context context, GameLogic initialState) throws IOException {
+        File dir = getLogDirectory(context);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        pruneOldLogs(dir);
+
+        File file = new File(dir, "game_" + System.currentTimeMillis() + LOG_SUFFIX);
+        FileOutputStream out = new FileOutputStream(file, true);
+
+        byte[] header = new byte[HEADER_SIZE];
+        header[0] = MAGIC;
+        header[1] = VERSION;
+        System.arraycopy(GameStateCodec.encode(initialState), 0, header, 2, GameStateCodec.ENCODED_SIZE);
+        out.write(header);
+
+        return new MoveLog(file, out);
+    }
+
+    /**
+     * Append one turn to the log
+     *
+     * @param seat Player who rolled (0-3)
+     * @param dice Dice value (1-6)
+     * @param pawn Chosen pawn (0-3), or NO_PAWN
+     * @throws IOException if writing fails
+     */
+    public void append(int seat, int dice, int pawn) throws IOException {
+        if (out == null) {
+            throw new IOException("Move log is closed");
+        }
+        out.write(pack(seat, dice, pawn));
+    }
+
+    /**
+     * Close the log, no more turns can be appended
+     */
+    public void close() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            // Every turn was already written, nothing to recover
+        }
+        out = null;
+    }
+
+    /**
+     * Gets the log file
+     *
+     * @return The file this log is written to
+     */
+    public File getFile() {
+        return file;
+    }
+
+    // ===== Entry Packing =====
+
+    /**
+     * Pack one turn into a byte
+     *
+     * @param seat Player who rolled (0-3)
+     * @param dice Dice value (1-6)
+     * @param pawn Chosen pawn (0-3), or NO_PAWN
+     * @return The packed entry
+     */
+    public static byte pack(int seat, int dice, int pawn) {
+        return (byte) ((seat & 0x3) << 6 | ((dice - 1) & 0x7) << 3 | (pawn & 0x7));
+    }
+
+    /**
+     * Gets the seat of a packed entry
+     *
+     * @param entry The packed entry
+     * @return Player index (0-3)
+     */
+    public static int getSeat(byte entry) {
+        return (entry >> 6) & 0x3;
+    }
+
+    /**
+     * Gets the dice value of a packed entry
+     *
+     * @param entry The packed entry
+     * @return Dice value (1-6)
+     */
+    public static int getDice(byte entry) {
+        return ((entry >> 3) & 0x7) + 1;
+    }
+
+    /**
+     * Gets the chosen pawn of a packed entry
+     *
+     * @param entry The packed entry
+     * @return Pawn index (0-3), or NO_PAWN
+     */
+    public static int getPawn(byte entry) {
+        return entry & 0x7;
+    }
+
+    // ===== Reading =====
+
+    /**
+     * Read a log file
+     *
+     * @param file The log file
+     * @return The recorded game
+     * @throws IOException if the file cannot be read or is not a move log
+     */
+    public static Recording read(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < data.length) {
+                int count = in.read(data, read, data.length - read);
+                if (count < 0) break;
+                read += count;
+            }
+            if (read < data.length) {
+                data = Arrays.copyOf(data, read);
+            }
+        }
+
+        if (data.length < HEADER_SIZE || data[0] != MAGIC || data[1] != VERSION) {
+            throw new IOException("Not a move log: " + file.getName());
+        }
+
+        return new Recording(
+                Arrays.copyOfRange(data, 2, HEADER_SIZE),
+                Arrays.copyOfRange(data, HEADER_SIZE, data.length));
+    }
+
+    /**
+     * Gets the directory holding all move logs
+     *
+     * @param context Context used to find the app's files directory
+     * @return The log directory
+     */
+    public static File getLogDirectory(Context context) {
+        return new File(context.getFilesDir(), LOG_DIR);
+    }
+
+    /**
+     * Delete the oldest logs so at most MAX_LOGS - 1 remain before a new one is added
+     *
+     * @param dir The log directory
+     */
+    private static void pruneOldLogs(File dir) {
+        File[] logs = dir.listFiles();
+        if (logs == null || logs.length < MAX_LOGS) return;
+
+        // Names contain the start time, so name order is age order
+        Arrays.sort(logs);
+        for (int i = 0; i <= logs.length - MAX_LOGS; i++) {
+            logs[i].delete();
+        }
+    }
+
+    /**
+     * A recorded game read back from a log file
+     */
+    public static class Recording {
+        private final byte[] initialState;
+        private final byte[] entries;
+
+        /**
+         * @param initialState Starting state encoded with GameStateCodec
+         * @param entries      One packed entry per turn
+         */
+        Recording(byte[] initialState, byte[] entries) {
+            this.initialState = initialState;
+            this.entries = entries;
+        }
+
+        /**
+         * Gets the starting state of the game
+         *
+         * @return Bytes for GameStateCodec.decode()
+         */
+        public byte[] getInitialState() {
+            return initialState;
+        }
+
+        /**
+         * Gets the number of recorded turns
+         *
+         * @return Turn count
+         */
+        public int getTurnCount() {
+            return entries.length;
+        }
+
+        /**
+         * Gets a packed turn entry
+         *
+         * @param turn Turn index (0 to getTurnCount() - 1)
+         * @return The packed entry
+         */
+        public byte getEntry(int turn) {
+            return entries[turn];
+        }
+    }
+}
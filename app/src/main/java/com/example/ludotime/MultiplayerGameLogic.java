@@ -1,23 +1,39 @@
 package com.example.ludotime;
 
+import com.google.firebase.database.Exclude;
+import com.google.firebase.database.IgnoreExtraProperties;
+
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Random;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * MultiplayerGameLogic.java
  *
  * Similar to GameLogic, but handles multiplayer game state management.
  * Uses ArrayLists for better Firebase compatibility and dynamic player management.
+ * The board state is not mapped by Firebase, it lives in the separate state
+ * node (see GameStateNodes) and is attached by FirebaseGameManager.
+ *
+ * Wire schema (written by toMap()): schemaVersion, gameId, hostUserId, maxPlayers,
+ * currentPlayersNumber, gameStarted, refereed, lastUpdateTimestamp, isReady, playerID,
+ * playerName
  */
+@IgnoreExtraProperties
+public class MultiplayerGameLogic {
+    /** Version of the wire schema written by toMap() */
+    public static final int SCHEMA_VERSION = 4;
 
-public class MultiplayerGameLogic extends GameLogic {
     //game state and rules
     private GameLogic gameLogic;
 
+    private int schemaVersion = SCHEMA_VERSION;
+
     private int maxPlayers;
     private int currentPlayersNumber;
     private boolean gameStarted;
+    private boolean refereed;          // Turns are applied by a GameReferee
     private long lastUpdateTimestamp;
     private String gameId;             // 6-character unique code
     private String hostUserId;         // ID of the player who created the game
@@ -61,27 +77,42 @@ public class MultiplayerGameLogic extends GameLogic {
         this.playerName = new ArrayList<>(Collections.nCopies(4, "Unknown"));
     }
 
+    /**
+     * Copy constructor, the copy gets its own seat lists so they can be edited
+     * without touching the original. The board is not copied
+     *
+     * @param other The game to copy
+     */
+    public MultiplayerGameLogic(MultiplayerGameLogic other) {
+        this.gameLogic = other.gameLogic;
+        this.schemaVersion = other.schemaVersion;
+        this.maxPlayers = other.maxPlayers;
+        this.currentPlayersNumber = other.currentPlayersNumber;
+        this.gameStarted = other.gameStarted;
+        this.refereed = other.refereed;
+        this.lastUpdateTimestamp = other.lastUpdateTimestamp;
+        this.gameId = other.gameId;
+        this.hostUserId = other.hostUserId;
+        this.isReady = new ArrayList<>(other.isReady);
+        this.playerID = new ArrayList<>(other.playerID);
+        this.playerName = new ArrayList<>(other.playerName);
+    }
+
     /**
      * Generates a random 6-character game ID for room identification
+     * Not reserved, games stored in Firebase get their ID from GameIdAllocator
      *
      * @return Alphanumeric 6-character game code
      */
     private String generateGameId() {
-        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
-        StringBuilder gameId = new StringBuilder();
-        Random random = new Random();
-
-        for (int i = 0; i < 6; i++) {
-            gameId.append(chars.charAt(random.nextInt(chars.length())));
-        }
-
-        return gameId.toString();
+        return GameIdAllocator.randomId();
     }
 
     /**
      * Gets the game logic instance
-     * @return GameLogic instance
+     * @return GameLogic instance, null before the game starts
      */
+    @Exclude
     public GameLogic getGameLogic() {
         return gameLogic;
     }
@@ -90,10 +121,27 @@ public class MultiplayerGameLogic extends GameLogic {
      * Sets the game logic instance
      * @param gameLogic GameLogic instance to set
      */
+    @Exclude
     public void setGameLogic(GameLogic gameLogic) {
         this.gameLogic = gameLogic;
     }
 
+    /**
+     * Gets the wire schema version the game was written with
+     * @return Schema version, 0 for games written before versioning
+     */
+    public int getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    /**
+     * Sets the wire schema version
+     * @param schemaVersion Schema version read from Firebase
+     */
+    public void setSchemaVersion(int schemaVersion) {
+        this.schemaVersion = schemaVersion;
+    }
+
     /**
      * Gets the maximum number of players
      * @return Maximum players allowed
@@ -142,6 +190,22 @@ public class MultiplayerGameLogic extends GameLogic {
         this.gameStarted = gameStarted;
     }
 
+    /**
+     * Checks if the game's turns are applied by a GameReferee
+     * @return True if players send intents instead of running transactions
+     */
+    public boolean isRefereed() {
+        return refereed;
+    }
+
+    /**
+     * Sets whether the game's turns are applied by a GameReferee
+     * @param refereed Refereed status, fixed when the game is created
+     */
+    public void setRefereed(boolean refereed) {
+        this.refereed = refereed;
+    }
+
     /**
      * Gets the last update timestamp
      * @return Last update timestamp in milliseconds
@@ -237,4 +301,27 @@ public class MultiplayerGameLogic extends GameLogic {
     public void setPlayerName(ArrayList<String> playerName) {
         this.playerName = playerName;
     }
-}
\ No newline at end of file
+
+    /**
+     * Builds the Firebase value of the game node
+     * Only the fields of the wire schema are written, the board state is
+     * written separately under the state node
+     *
+     * @return Map of the game fields
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("schemaVersion", SCHEMA_VERSION);
+        map.put("gameId", gameId);
+        map.put("hostUserId", hostUserId);
+        map.put("maxPlayers", maxPlayers);
+        map.put("currentPlayersNumber", currentPlayersNumber);
+        map.put("gameStarted", gameStarted);
+        map.put("refereed", refereed);
+        map.put("lastUpdateTimestamp", lastUpdateTimestamp);
+        map.put("isReady", isReady);
+        map.put("playerID", playerID);
+        map.put("playerName", playerName);
+        return map;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * SoundEffects.java
+ *
+ * Low-latency sound effects for the game using a SoundPool.
+ * All effects are decoded once when the engine is created and then played
+ * directly from memory, with a cap on how many can play at the same time.
+ * Listens to GameLogic events to play capture, finish and turn sounds.
+ */
+package com.example.ludotime;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.AudioAttributes;
+import android.media.SoundPool;
+
+public class SoundEffects implements GameEvent.Listener {
+    // ===== Constants =====
+    private static final int MAX_STREAMS = 4;
+
+    // Sound indices
+    public static final int SOUND_DICE_ROLL = 0;
+    public static final int SOUND_CAPTURE = 1;
+    public static final int SOUND_FINISH = 2;
+    public static final int SOUND_TURN = 3;
+    private static final int SOUND_COUNT = 4;
+
+    // ===== Sound Pool =====
+    private SoundPool soundPool;
+    private final int[] soundIds = new int[SOUND_COUNT];
+    private final boolean[] loaded = new boolean[SOUND_COUNT];
+
+    // ===== Settings =====
+    private float volume = 1.0f;
+
+    /**
+     * Constructor creates the sound pool and starts preloading all effects
+     *
+     * @param context Context used to load the sound resources and preferences
+     */
+    public SoundEffects(Context context) {
+        AudioAttributes attributes = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_GAME)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .build();
+
+        soundPool = new SoundPool.Builder()
+                .setMaxStreams(MAX_STREAMS)
+                .setAudioAttributes(attributes)
+                .build();
+
+        // Mark each effect as playable once it has been decoded
+        soundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+            @Override
+            public void onLoadComplete(SoundPool pool, int sampleId, int status) {
+                if (status != 0) return;
+                for (int i = 0; i < SOUND_COUNT; i++) {
+                    if (soundIds[i] == sampleId) {
+                        loaded[i] = true;
+                    }
+                }
+            }
+        });
+
+        soundIds[SOUND_DICE_ROLL] = soundPool.load(context, R.raw.diceroll, 1);
+        soundIds[SOUND_CAPTURE] = soundPool.load(context, R.raw.capture, 1);
+        soundIds[SOUND_FINISH] = soundPool.load(context, R.raw.pawn_finish, 1);
+        soundIds[SOUND_TURN] = soundPool.load(context, R.raw.turn_change, 1);
+
+        reloadVolume(context);
+    }
+
+    /**
+     * Read the sound effect volume from the saved preferences
+     *
+     * @param context Context used to read the preferences
+     */
+    public void reloadVolume(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(BGMusicService.PREFS_NAME, Context.MODE_PRIVATE);
+        volume = prefs.getFloat(BGMusicService.SFX_VOLUME_KEY, 1.0f);
+    }
+
+    /**
+     * Play a preloaded effect, skipped if it is still loading or muted
+     *
+     * @param sound One of the SOUND_ constants
+     */
+    public void play(int sound) {
+        if (soundPool == null || !loaded[sound] || volume <= 0) return;
+        soundPool.play(soundIds[sound], volume, volume, 1, 0, 1.0f);
+    }
+
+    /**
+     * Play sounds for game events
+     *
+     * @param event The game event
+     */
+    @Override
+    public void onGameEvent(GameEvent event) {
+        switch (event.getType()) {
+            case PAWN_CAPTURED:
+                play(SOUND_CAPTURE);
+                break;
+            case PAWN_FINISHED:
+                play(SOUND_FINISH);
+                break;
+            case TURN_CHANGED:
+                play(SOUND_TURN);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Release the sound pool and its decoded sounds
+     */
+    public void release() {
+        if (soundPool != null) {
+            soundPool.release();
+            soundPool = null;
+        }
+    }
+}
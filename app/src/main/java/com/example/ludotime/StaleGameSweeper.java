@@ -0,0 +1,574 @@
+/**
+ * StaleGameSweeper.java
+ *
+ * Removes abandoned multiplayer games. Games are found with a query on
+ * lastUpdateTimestamp, which needs the ".indexOn" rule in database.rules.json,
+ * and handled in batches so a sweep never loads the whole games node.
+ *
+ * Each game is deleted with a transaction that checks the timestamp again,
+ * so a game that was played between the query and the delete is kept.
+ * Its move log, lobby summary and referee request are deleted with it and
+ * its code moves from the ID index to the free list, see GameIdAllocator.
+ * In archive mode the game and its move log are first copied to
+ * archive/{id}, and the copy is dropped again if the delete finds the game
+ * played since.
+ *
+ * After the games, codes reserved before the cutoff and never used for a game
+ * are given back to the free list the same way.
+ *
+ * Works on any GameBackend: against InMemoryGameBackend to try it locally,
+ * or against FirebaseGameBackend from an admin build. A refereed game that is
+ * still running can only be deleted under the referee claim, see GameReferee.
+ * Callbacks arrive on the backend's callback thread.
+ */
+package com.example.ludotime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class StaleGameSweeper {
+    // ===== Constants =====
+    /** Games untouched for this long are stale by default */
+    public static final long DEFAULT_MAX_AGE_MILLIS = 24 * 60 * 60 * 1000L;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /** Firebase database reference path for archived games */
+    static final String ARCHIVE_REF = "archive";
+
+    /** Child paths of an archived game */
+    private static final String ARCHIVE_GAME_PATH = "game";
+    private static final String ARCHIVE_MOVES_PATH = "moves";
+    private static final String ARCHIVED_AT_PATH = "archivedAt";
+
+    // ===== Sweep =====
+    private final GameBackend backend;
+    private final int batchSize;
+    private final boolean archive;
+    private boolean running = false;
+
+    /**
+     * Interface for the end of a sweep
+     */
+    public interface SweepListener {
+        /**
+         * Called once all stale games were handled
+         *
+         * @param report What the sweep found and removed
+         */
+        void onSweepFinished(Report report);
+    }
+
+    /**
+     * Constructor for a sweeper that deletes stale games in default batches
+     *
+     * @param backend Database the games are stored in
+     */
+    public StaleGameSweeper(GameBackend backend) {
+        this(backend, DEFAULT_BATCH_SIZE, false);
+    }
+
+    /**
+     * Constructor for a sweeper
+     *
+     * @param backend   Database the games are stored in
+     * @param batchSize Number of games read and removed at a time
+     * @param archive   True to copy games to archive/ before deleting them
+     */
+    public StaleGameSweeper(GameBackend backend, int batchSize, boolean archive) {
+        this.backend = backend;
+        this.batchSize = batchSize;
+        this.archive = archive;
+    }
+
+    /**
+     * Checks if a sweep is in progress
+     *
+     * @return True between sweep() and its listener
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Remove games that were not updated for a while
+     *
+     * @param maxAgeMillis Games untouched for longer are removed
+     * @param listener     Receives the report
+     */
+    public void sweepOlderThan(long maxAgeMillis, SweepListener listener) {
+        sweep(System.currentTimeMillis() - maxAgeMillis, listener);
+    }
+
+    /**
+     * Remove games last updated at or before a time
+     * Games without a timestamp are removed too
+     *
+     * @param cutoffMillis Newest lastUpdateTimestamp to remove
+     * @param listener     Receives the report
+     * @throws IllegalStateException if a sweep is already running
+     */
+    public void sweep(long cutoffMillis, SweepListener listener) {
+        if (running) {
+            throw new IllegalStateException("Sweep already running");
+        }
+
+        running = true;
+        Report report = new Report(cutoffMillis);
+        sweepBatch(report, null, null, listener);
+    }
+
+    /**
+     * Read the next batch of stale games and remove them
+     *
+     * @param report   Report of the sweep so far
+     * @param lastTime Timestamp of the last game of the previous batch
+     * @param lastId   ID of the last game of the previous batch, null for the first batch
+     * @param listener Receives the report at the end
+     */
+    private void sweepBatch(final Report report, Object lastTime, String lastId, final SweepListener listener) {
+        GameBackend.ChildQuery query = GameBackend.ChildQuery.orderByChild(FirebaseGameManager.TIMESTAMP_PATH)
+                .endAt(report.cutoffMillis)
+                .limitToFirst(batchSize);
+        if (lastId != null) {
+            query.startAfter(lastTime, lastId);
+        }
+
+        backend.query(FirebaseGameManager.GAMES_REF, query, new GameBackend.ReadListener() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void onRead(Object value) {
+                Map<String, Object> games = (Map<String, Object>) value;
+                if (games.isEmpty()) {
+                    sweepReservations(report, null, null, listener);
+                    return;
+                }
+
+                report.batches++;
+                final int[] pending = {games.size()};
+                for (String gameId : games.keySet()) {
+                    report.scanned++;
+                    sweepGame(report, gameId, () -> {
+                        if (--pending[0] > 0) return;
+
+                        if (games.size() < batchSize) {
+                            sweepReservations(report, null, null, listener);
+                        } else {
+                            sweepBatch(report, childOf(games.get(lastKey(games)), FirebaseGameManager.TIMESTAMP_PATH),
+                                    lastKey(games), listener);
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public void onError(String message) {
+                report.errors++;
+                sweepReservations(report, null, null, listener);
+            }
+        });
+    }
+
+    /**
+     * Read the next batch of expired code reservations and free them
+     *
+     * @param report   Report of the sweep so far
+     * @param lastTime Reservation time of the last code of the previous batch
+     * @param lastId   Last code of the previous batch, null for the first batch
+     * @param listener Receives the report at the end
+     */
+    private void sweepReservations(final Report report, Object lastTime, String lastId,
+                                   final SweepListener listener) {
+        // Starting after 0 skips used codes, which have no reservation time and sort first
+        GameBackend.ChildQuery query = GameBackend.ChildQuery.orderByChild(GameIdAllocator.RESERVED_AT_PATH)
+                .startAfter(lastId != null ? lastTime : 0L, lastId)
+                .endAt(report.cutoffMillis)
+                .limitToFirst(batchSize);
+
+        backend.query(GameIdAllocator.INDEX_REF, query, new GameBackend.ReadListener() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void onRead(Object value) {
+                Map<String, Object> codes = (Map<String, Object>) value;
+                if (codes.isEmpty()) {
+                    finish(report, listener);
+                    return;
+                }
+
+                report.batches++;
+                final int[] pending = {codes.size()};
+                for (String gameId : codes.keySet()) {
+                    releaseReservation(report, gameId, () -> {
+                        if (--pending[0] > 0) return;
+
+                        if (codes.size() < batchSize) {
+                            finish(report, listener);
+                        } else {
+                            sweepReservations(report,
+                                    childOf(codes.get(lastKey(codes)), GameIdAllocator.RESERVED_AT_PATH),
+                                    lastKey(codes), listener);
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public void onError(String message) {
+                report.errors++;
+                finish(report, listener);
+            }
+        });
+    }
+
+    /**
+     * Free a reserved code if it is still unused and expired
+     *
+     * @param report Report of the sweep
+     * @param gameId The code
+     * @param done   Called once the code was handled
+     */
+    private void releaseReservation(final Report report, final String gameId, final Runnable done) {
+        backend.transaction(GameIdAllocator.INDEX_REF + "/" + gameId, new GameBackend.TransactionHandler() {
+            @Override
+            public Object apply(Object current) {
+                Object reservedAt = childOf(current, GameIdAllocator.RESERVED_AT_PATH);
+                if (current != null && !(reservedAt instanceof Number
+                        && ((Number) reservedAt).longValue() <= report.cutoffMillis)) {
+                    return GameBackend.ABORT; // Used for a game since the query
+                }
+                return null;
+            }
+
+            @Override
+            public void onComplete(String error, boolean committed, Object value) {
+                if (error != null) {
+                    report.errors++;
+                    done.run();
+                } else if (!committed) {
+                    done.run();
+                } else {
+                    report.releasedIds++;
+                    backend.update("", GameIdAllocator.freeUpdates(gameId, System.currentTimeMillis()), releaseError -> {
+                        if (releaseError != null) report.errors++;
+                        done.run();
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Delete one stale game if it is still stale, then remove its move log
+     *
+     * @param report Report of the sweep
+     * @param gameId ID of the game
+     * @param done   Called once the game was handled
+     */
+    private void sweepGame(final Report report, final String gameId, final Runnable done) {
+        if (archive) {
+            archiveGame(report, gameId, done);
+        } else {
+            deleteGame(report, gameId, false, null, done);
+        }
+    }
+
+    /**
+     * Copy a stale game and its move log to the archive, then delete them
+     * The copy is written first, so a game is never deleted without it
+     *
+     * @param report Report of the sweep
+     * @param gameId ID of the game
+     * @param done   Called once the game was handled
+     */
+    private void archiveGame(final Report report, final String gameId, final Runnable done) {
+        backend.get(FirebaseGameManager.GAMES_REF + "/" + gameId, new GameBackend.ReadListener() {
+            @Override
+            public void onRead(final Object game) {
+                if (game == null || playedSince(game, report.cutoffMillis)) {
+                    report.skipped++;
+                    done.run();
+                    return;
+                }
+
+                backend.get(FirebaseGameManager.MOVES_REF + "/" + gameId, new GameBackend.ReadListener() {
+                    @Override
+                    public void onRead(final Object moves) {
+                        Map<String, Object> copy = new HashMap<>();
+                        copy.put(ARCHIVE_GAME_PATH, game);
+                        copy.put(ARCHIVE_MOVES_PATH, moves);
+                        copy.put(ARCHIVED_AT_PATH, System.currentTimeMillis());
+                        backend.set(ARCHIVE_REF + "/" + gameId, copy, error -> {
+                            if (error != null) {
+                                report.errors++;
+                                done.run();
+                            } else {
+                                deleteGame(report, gameId, true, moves, done);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onError(String message) {
+                        report.errors++;
+                        done.run();
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String message) {
+                report.errors++;
+                done.run();
+            }
+        });
+    }
+
+    /**
+     * Delete a game with a transaction that checks it is still stale
+     *
+     * @param report   Report of the sweep
+     * @param gameId   ID of the game
+     * @param archived True if the game was copied to the archive
+     * @param moves    Archived move log, null if none
+     * @param done     Called once the game was handled
+     */
+    private void deleteGame(final Report report, final String gameId, final boolean archived, final Object moves,
+                            final Runnable done) {
+        final Object[] removed = {null};
+        backend.transaction(FirebaseGameManager.GAMES_REF + "/" + gameId, new GameBackend.TransactionHandler() {
+            @Override
+            public Object apply(Object current) {
+                removed[0] = current;
+                if (current == null) {
+                    return null; // Gone already, or not cached yet: let the server decide
+                }
+                if (playedSince(current, report.cutoffMillis)) {
+                    return GameBackend.ABORT; // Played since the query
+                }
+                return null;
+            }
+
+            @Override
+            public void onComplete(String error, boolean committed, Object value) {
+                if (error != null) {
+                    // The copy stays, the next sweep writes it again
+                    report.errors++;
+                    done.run();
+                } else if (!committed || removed[0] == null) {
+                    report.skipped++;
+                    if (archived) {
+                        backend.set(ARCHIVE_REF + "/" + gameId, null, dropError -> {
+                            if (dropError != null) report.errors++;
+                            done.run();
+                        });
+                    } else {
+                        done.run();
+                    }
+                } else {
+                    report.deleted++;
+                    report.reclaimedBytes += WirePayload.estimateBytes(removed[0]);
+                    removeMoves(report, gameId, archived, moves, done);
+                }
+            }
+        });
+    }
+
+    /**
+     * Delete the move log, lobby summary and referee request of a deleted
+     * game and free its code
+     *
+     * @param report   Report of the sweep
+     * @param gameId   ID of the game
+     * @param archived True if the game was copied to the archive
+     * @param moves    Archived move log, null if none
+     * @param done     Called once the log was handled
+     */
+    private void removeMoves(final Report report, final String gameId, final boolean archived, final Object moves,
+                             final Runnable done) {
+        Map<String, Object> updates = GameIdAllocator.freeUpdates(gameId, System.currentTimeMillis());
+        updates.put(FirebaseGameManager.MOVES_REF + "/" + gameId, null);
+        updates.put(LobbySummary.LOBBIES_REF + "/" + gameId, null);
+        GameReferee.putRemoval(updates, gameId);
+        backend.update("", updates, error -> {
+            if (error != null) {
+                report.errors++;
+            } else if (archived) {
+                report.archived++;
+                if (moves != null) {
+                    report.reclaimedBytes += WirePayload.estimateBytes(moves);
+                }
+            }
+            done.run();
+        });
+    }
+
+    /**
+     * End the sweep and hand out the report
+     *
+     * @param report   Report of the sweep
+     * @param listener Receives the report
+     */
+    private void finish(Report report, SweepListener listener) {
+        running = false;
+        if (listener != null) {
+            listener.onSweepFinished(report);
+        }
+    }
+
+    // ===== Helpers =====
+
+    /**
+     * Checks if a game was updated after the cutoff
+     *
+     * @param game         Raw game node
+     * @param cutoffMillis Newest timestamp the sweep removes
+     * @return True if the game must be kept
+     */
+    private static boolean playedSince(Object game, long cutoffMillis) {
+        Object timestamp = childOf(game, FirebaseGameManager.TIMESTAMP_PATH);
+        return timestamp instanceof Number && ((Number) timestamp).longValue() > cutoffMillis;
+    }
+
+    /**
+     * Gets a child value of a raw node
+     *
+     * @param node  Raw node
+     * @param child Key of the child
+     * @return The child value, or null if the node has none
+     */
+    private static Object childOf(Object node, String child) {
+        return node instanceof Map ? ((Map<?, ?>) node).get(child) : null;
+    }
+
+    /**
+     * Gets the key of the last child of a batch, where the next batch starts
+     *
+     * @param children Children in query order
+     * @return The last key
+     */
+    private static String lastKey(Map<String, Object> children) {
+        String last = null;
+        for (String key : children.keySet()) {
+            last = key;
+        }
+        return last;
+    }
+
+    /**
+     * What one sweep found and removed
+     */
+    public static class Report {
+        private final long cutoffMillis;
+        private int batches;
+        private int scanned;
+        private int deleted;
+        private int archived;
+        private int skipped;
+        private int releasedIds;
+        private int errors;
+        private long reclaimedBytes;
+
+        /**
+         * Constructor for an empty report
+         *
+         * @param cutoffMillis Newest timestamp the sweep removes
+         */
+        private Report(long cutoffMillis) {
+            this.cutoffMillis = cutoffMillis;
+        }
+
+        /**
+         * Gets the newest timestamp the sweep removed
+         *
+         * @return Milliseconds since the epoch
+         */
+        public long getCutoffMillis() {
+            return cutoffMillis;
+        }
+
+        /**
+         * Gets the number of queried batches that had games or codes
+         *
+         * @return Batches
+         */
+        public int getBatches() {
+            return batches;
+        }
+
+        /**
+         * Gets the number of stale games the query returned
+         *
+         * @return Games
+         */
+        public int getScanned() {
+            return scanned;
+        }
+
+        /**
+         * Gets the number of deleted games
+         *
+         * @return Games, archived ones included
+         */
+        public int getDeleted() {
+            return deleted;
+        }
+
+        /**
+         * Gets the number of games copied to the archive
+         *
+         * @return Games
+         */
+        public int getArchived() {
+            return archived;
+        }
+
+        /**
+         * Gets the number of games left alone because they were played
+         * or deleted by someone else since the query
+         *
+         * @return Games
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Gets the number of expired code reservations given back to the free list
+         *
+         * @return Codes
+         */
+        public int getReleasedIds() {
+            return releasedIds;
+        }
+
+        /**
+         * Gets the number of failed reads and writes
+         *
+         * @return Errors
+         */
+        public int getErrors() {
+            return errors;
+        }
+
+        /**
+         * Gets the estimated size of the removed game nodes,
+         * plus their move logs in archive mode
+         *
+         * @return Estimated bytes
+         */
+        public long getReclaimedBytes() {
+            return reclaimedBytes;
+        }
+
+        /**
+         * Gets a one line summary
+         *
+         * @return The summary
+         */
+        @Override
+        public String toString() {
+            return "Swept games up to " + cutoffMillis + ": " + scanned + " stale in " + batches + " batches, "
+                    + deleted + " deleted, " + archived + " archived, " + skipped + " skipped, "
+                    + releasedIds + " codes released, " + errors + " errors, " + reclaimedBytes + " bytes reclaimed";
+        }
+    }
+}
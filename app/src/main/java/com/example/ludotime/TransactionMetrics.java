@@ -0,0 +1,367 @@
+/**
+ * TransactionMetrics.java
+ *
+ * Counters for the database operations of FirebaseGameManager: how often a
+ * transaction handler ran before it committed, why transactions aborted,
+ * how long each operation took until its completion callback and how many
+ * bytes it wrote. A snapshot can be read at any time and a summary can be
+ * logged periodically.
+ *
+ * Transaction handlers run on the Firebase thread and completions on the
+ * main thread, so all counters are guarded by this object.
+ */
+package com.example.ludotime;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class TransactionMetrics {
+    private static final String TAG = "TransactionMetrics";
+
+    // ===== Abort Reasons =====
+    public static final String NOT_STARTED = "not started";
+    public static final String NOT_YOUR_TURN = "not your turn";
+    public static final String ALREADY_ROLLED = "already rolled";
+    public static final String NOT_ROLLED = "not rolled";
+    public static final String NOT_WAITING = "not waiting for pawn";
+    public static final String GAME_FULL = "game full";
+    public static final String GAME_STARTED = "game started";
+    public static final String ALREADY_JOINED = "already joined";
+    public static final String GAME_MISSING = "game missing";
+    public static final String NOT_HOST = "not host";
+    public static final String NOT_READY = "players not ready";
+    public static final String NO_SEAT = "no seat";
+    public static final String ID_TAKEN = "game code taken";
+    public static final String LEASE_HELD = "lease held by another matcher";
+    public static final String INVALID_PAWN = "pawn cannot move";
+    public static final String UNKNOWN_ACTION = "unknown action";
+    public static final String NOT_REFEREED = "not refereed";
+
+    // ===== Metrics =====
+    private final Map<String, Counters> operations = new TreeMap<>();
+    private Handler handler;
+    private Runnable logRunnable;
+
+    // ===== Recording =====
+
+    /**
+     * Start measuring one operation
+     *
+     * @param operation Name of the operation, for example "rollDice"
+     * @return Tracker to report the steps of the operation to
+     */
+    public Operation begin(String operation) {
+        return new Operation(operation);
+    }
+
+    /**
+     * Tracks one transaction or write from start to completion
+     */
+    public class Operation {
+        private final String name;
+        private final long startNanos = System.nanoTime();
+        private int invocations = 0;
+        private int payloadBytes = 0;
+        private String abortReason = null;
+        private boolean skipped = false;
+
+        /**
+         * Constructor for a new operation
+         *
+         * @param name Name of the operation
+         */
+        private Operation(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Record that the transaction handler ran and wants to write a value
+         *
+         * @param value The value to write
+         * @return The same value, to be returned from the handler
+         */
+        public synchronized Object commit(Object value) {
+            invocations++;
+            abortReason = null;
+            skipped = false;
+            payloadBytes = WirePayload.estimateBytes(value);
+            return value;
+        }
+
+        /**
+         * Record that the transaction handler ran on a value it cannot act on,
+         * like an empty local cache, and hands it back unchanged. Firebase
+         * retries with the server value if that differs, if not the unchanged
+         * value is written back and the operation counts as aborted
+         *
+         * @param value  The value the handler ran on
+         * @param reason Abort reason if the server holds the same value
+         * @return The same value, to be returned from the handler
+         */
+        public synchronized Object skip(Object value, String reason) {
+            invocations++;
+            abortReason = reason;
+            skipped = true;
+            payloadBytes = 0;
+            return value;
+        }
+
+        /**
+         * Record that the transaction handler ran and gave up
+         *
+         * @param reason Why, one of the abort reason constants
+         * @return GameBackend.ABORT, to be returned from the handler
+         */
+        public synchronized Object abort(String reason) {
+            invocations++;
+            abortReason = reason;
+            return GameBackend.ABORT;
+        }
+
+        /**
+         * Record the end of the operation
+         *
+         * @param error     Description of the error, or null
+         * @param committed True if the transaction committed, a skipped value
+         *                  written back unchanged is still counted as aborted
+         */
+        public void complete(String error, boolean committed) {
+            long elapsed = (System.nanoTime() - startNanos) / 1_000_000;
+            int runs;
+            int bytes;
+            String reason;
+            boolean written;
+            synchronized (this) {
+                runs = invocations;
+                bytes = payloadBytes;
+                reason = abortReason;
+                written = committed && !skipped;
+            }
+            record(name, elapsed, runs, bytes, error, written, reason);
+        }
+    }
+
+    /**
+     * Add a completed operation to the counters
+     *
+     * @param name          Name of the operation
+     * @param elapsedMillis Time from start to completion
+     * @param invocations   Number of handler runs
+     * @param payloadBytes  Size of the last value written
+     * @param error         Description of the error, or null
+     * @param committed     True if the value was written
+     * @param abortReason   Reason of the last abort, or null
+     */
+    private synchronized void record(String name, long elapsedMillis, int invocations, int payloadBytes,
+                                     String error, boolean committed, String abortReason) {
+        Counters counters = operations.get(name);
+        if (counters == null) {
+            counters = new Counters();
+            operations.put(name, counters);
+        }
+
+        counters.count++;
+        counters.invocations += invocations;
+        counters.totalMillis += elapsedMillis;
+        counters.maxMillis = Math.max(counters.maxMillis, elapsedMillis);
+
+        if (committed) {
+            counters.commits++;
+            counters.payloadBytes += payloadBytes;
+            counters.maxPayloadBytes = Math.max(counters.maxPayloadBytes, payloadBytes);
+        } else {
+            String reason = error != null ? "error: " + error : abortReason != null ? abortReason : "unknown";
+            Integer aborts = counters.aborts.get(reason);
+            counters.aborts.put(reason, aborts == null ? 1 : aborts + 1);
+        }
+    }
+
+    // ===== Reading =====
+
+    /**
+     * Gets a copy of the counters of every operation seen so far
+     *
+     * @return Counters by operation name, sorted
+     */
+    public synchronized Map<String, Counters> snapshot() {
+        Map<String, Counters> copy = new TreeMap<>();
+        for (Map.Entry<String, Counters> entry : operations.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+
+    /**
+     * Forget all counters
+     */
+    public synchronized void reset() {
+        operations.clear();
+    }
+
+    /**
+     * Gets a readable summary, one line per operation
+     *
+     * @return The summary
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, Counters> entry : snapshot().entrySet()) {
+            Counters counters = entry.getValue();
+            summary.append(entry.getKey())
+                    .append(": ").append(counters.count).append(" ops, ")
+                    .append(counters.commits).append(" committed, ")
+                    .append(String.format("%.2f", counters.getInvocationsPerCommit())).append(" runs/commit, ")
+                    .append(counters.getAverageMillis()).append(" ms avg, ")
+                    .append(counters.maxMillis).append(" ms max, ")
+                    .append(counters.getAveragePayloadBytes()).append(" bytes avg");
+            if (!counters.aborts.isEmpty()) {
+                summary.append(", aborts ").append(counters.aborts);
+            }
+            summary.append('\n');
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Log the summary every interval until stopPeriodicLog() is called
+     * The summaries are logged on the main thread
+     *
+     * @param intervalMillis Time between summaries
+     */
+    public void startPeriodicLog(final long intervalMillis) {
+        stopPeriodicLog();
+        if (handler == null) {
+            handler = new Handler(Looper.getMainLooper());
+        }
+
+        logRunnable = new Runnable() {
+            @Override
+            public void run() {
+                Log.d(TAG, "Transaction metrics:\n" + summary());
+                handler.postDelayed(this, intervalMillis);
+            }
+        };
+        handler.postDelayed(logRunnable, intervalMillis);
+    }
+
+    /**
+     * Stop the periodic summary
+     */
+    public void stopPeriodicLog() {
+        if (handler != null && logRunnable != null) {
+            handler.removeCallbacks(logRunnable);
+        }
+        logRunnable = null;
+    }
+
+    /**
+     * Counters of one kind of operation
+     */
+    public static class Counters {
+        private int count;
+        private int commits;
+        private long invocations;
+        private long totalMillis;
+        private long maxMillis;
+        private long payloadBytes;
+        private int maxPayloadBytes;
+        private Map<String, Integer> aborts = new HashMap<>();
+
+        /**
+         * Copy of the counters
+         *
+         * @return The copy
+         */
+        private Counters copy() {
+            Counters copy = new Counters();
+            copy.count = count;
+            copy.commits = commits;
+            copy.invocations = invocations;
+            copy.totalMillis = totalMillis;
+            copy.maxMillis = maxMillis;
+            copy.payloadBytes = payloadBytes;
+            copy.maxPayloadBytes = maxPayloadBytes;
+            copy.aborts = new HashMap<>(aborts);
+            return copy;
+        }
+
+        /**
+         * Gets the number of completed operations
+         *
+         * @return Operations that reached their completion callback
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the number of committed operations
+         *
+         * @return Operations that wrote their value
+         */
+        public int getCommits() {
+            return commits;
+        }
+
+        /**
+         * Gets the number of handler runs per committed operation
+         * 1.0 means no transaction had to run again
+         *
+         * @return Handler runs of all operations divided by commits
+         */
+        public double getInvocationsPerCommit() {
+            return commits > 0 ? (double) invocations / commits : 0;
+        }
+
+        /**
+         * Gets the average time until the completion callback
+         *
+         * @return Milliseconds
+         */
+        public long getAverageMillis() {
+            return count > 0 ? totalMillis / count : 0;
+        }
+
+        /**
+         * Gets the longest time until the completion callback
+         *
+         * @return Milliseconds
+         */
+        public long getMaxMillis() {
+            return maxMillis;
+        }
+
+        /**
+         * Gets the average size of committed values
+         *
+         * @return Estimated bytes
+         */
+        public long getAveragePayloadBytes() {
+            return commits > 0 ? payloadBytes / commits : 0;
+        }
+
+        /**
+         * Gets the largest committed value
+         *
+         * @return Estimated bytes
+         */
+        public int getMaxPayloadBytes() {
+            return maxPayloadBytes;
+        }
+
+        /**
+         * Gets the operations that did not commit, by reason
+         *
+         * @return Count by abort reason, errors as "error: ..."
+         */
+        public Map<String, Integer> getAborts() {
+            return Collections.unmodifiableMap(aborts);
+        }
+    }
+}
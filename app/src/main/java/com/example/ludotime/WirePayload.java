@@ -0,0 +1,54 @@
+/**
+ * WirePayload.java
+ *
+ * Estimates how many bytes a Firebase value takes on the wire, so the size
+ * of multiplayer writes can be logged and compared.
+ * The estimate is the length of the value as compact JSON.
+ */
+package com.example.ludotime;
+
+import java.util.List;
+import java.util.Map;
+
+public final class WirePayload {
+
+    /**
+     * Private constructor, static helpers only
+     */
+    private WirePayload() {
+    }
+
+    /**
+     * Estimate the JSON size of a Firebase value
+     *
+     * @param value Map, List, String, Number, Boolean or null
+     * @return Approximate size in bytes
+     */
+    public static int estimateBytes(Object value) {
+        if (value == null) {
+            return 4; // null
+        }
+        if (value instanceof String) {
+            return ((String) value).length() + 2;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return String.valueOf(value).length();
+        }
+        if (value instanceof Map) {
+            int size = 2;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                // "key": value,
+                size += String.valueOf(entry.getKey()).length() + 4 + estimateBytes(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof List) {
+            int size = 2;
+            for (Object item : (List<?>) value) {
+                size += estimateBytes(item) + 1;
+            }
+            return size;
+        }
+        return String.valueOf(value).length() + 2;
+    }
+}
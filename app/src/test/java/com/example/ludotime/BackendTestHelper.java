@@ -0,0 +1,74 @@
+package com.example.ludotime;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads and cleanup shared by the tests that run managers, matchers and
+ * referees against an InMemoryGameBackend.
+ */
+class BackendTestHelper {
+
+    /**
+     * Read a value
+     *
+     * @param backend The backend
+     * @param path    The path
+     * @return The value
+     */
+    static Object read(GameBackend backend, String path) {
+        return read(null, backend, path);
+    }
+
+    /**
+     * Read a value from a backend behind a simulated network
+     *
+     * @param network The network to run until the value arrived, or null
+     * @param backend The backend
+     * @param path    The path
+     * @return The value
+     */
+    static Object read(SimulatedNetwork network, GameBackend backend, String path) {
+        final Object[] result = {null};
+        backend.get(path, new GameBackend.ReadListener() {
+            @Override
+            public void onRead(Object value) {
+                result[0] = value;
+            }
+
+            @Override
+            public void onError(String message) {
+                fail(message);
+            }
+        });
+        if (network != null) {
+            network.runUntilIdle(Long.MAX_VALUE);
+        }
+        return result[0];
+    }
+
+    /**
+     * Gets the only game in the database
+     *
+     * @param backend The backend
+     * @return Its ID
+     */
+    static String onlyGameId(GameBackend backend) {
+        Map<?, ?> games = (Map<?, ?>) read(backend, FirebaseGameManager.GAMES_REF);
+        assertEquals(1, games.size());
+        return (String) games.keySet().iterator().next();
+    }
+
+    /**
+     * Release the managers' listeners
+     *
+     * @param managers The managers
+     */
+    static void cleanup(List<FirebaseGameManager> managers) {
+        for (FirebaseGameManager manager : managers) {
+            manager.cleanup();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.ludotime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.ludotime.BackendTestHelper.cleanup;
+import static com.example.ludotime.BackendTestHelper.onlyGameId;
+import static com.example.ludotime.BackendTestHelper.read;
+import static org.junit.Assert.*;
+
+/**
+ * Runs FirebaseGameManager against an InMemoryGameBackend: the lobby and
+ * start writes are checked on the stored game, not on a cached copy.
+ */
+public class FirebaseGameManagerTest {
+    /** True to lose every move log append, as if its writer died after the state committed */
+    private boolean dropMoveLog = false;
+
+    private final InMemoryGameBackend backend = new InMemoryGameBackend() {
+        @Override
+        public void update(String path, Map<String, Object> values, CompletionListener listener) {
+            if (dropMoveLog && values.keySet().iterator().next().startsWith(FirebaseGameManager.MOVES_REF + "/")) {
+                return;
+            }
+            super.update(path, values, listener);
+        }
+    };
+    private final List<String> errors = new ArrayList<>();
+    private final List<String> left = new ArrayList<>();
+    private int boardEvents = 0;
+
+    @Test
+    public void startGame_secondStartKeepsRunningBoard() {
+        List<FirebaseGameManager> players = fillGame();
+        FirebaseGameManager host = players.get(0);
+        String gameId = onlyGameId(backend);
+
+        host.startGame();
+        assertEquals(true, read(backend, "games/" + gameId + "/gameStarted"));
+        host.rollDice();
+        assertTrue(GameStateNodes.read(read(backend, "games/" + gameId + "/state")).isDiceRolled());
+
+        host.startGame();
+        assertEquals(1, errors.size());
+        assertTrue("Board not reset", GameStateNodes.read(read(backend, "games/" + gameId + "/state")).isDiceRolled());
+        assertEquals(Integer.valueOf(1), host.getTransactionMetrics().snapshot().get("startGame")
+                .getAborts().get(TransactionMetrics.GAME_STARTED));
+        cleanup(players);
+    }
+
+    @Test
+    public void leaveGame_freesSeatInOneTransaction() {
+        List<FirebaseGameManager> players = fillGame();
+        String gameId = onlyGameId(backend);
+
+        players.get(2).leaveGame();
+
+        assertEquals(3L, ((Number) read(backend, "games/" + gameId + "/currentPlayersNumber")).longValue());
+        assertNull(read(backend, "games/" + gameId + "/playerID/2"));
+        assertEquals(false, read(backend, "games/" + gameId + "/isReady/2"));
+        TransactionMetrics.Counters leave = players.get(2).getTransactionMetrics().snapshot().get("leaveGame");
+        assertEquals(1, leave.getCount());
+        assertEquals(1, leave.getCommits());
+        assertTrue(errors.isEmpty());
+        cleanup(players);
+    }
+
+    @Test
+    public void leaveGame_midGameReachesOtherPlayers() {
+        List<FirebaseGameManager> players = fillGame();
+        players.get(0).startGame();
+        players.get(0).rollDice();
+
+        players.get(2).leaveGame();
+
+        // Every client hears it once, the leaving one from its own write
+        assertEquals(Arrays.asList("user2", "user2", "user2", "user2"), left);
+        assertTrue(errors.isEmpty());
+        cleanup(players);
+    }
+
+    @Test
+    public void rollDice_beforeStartAbortsOnServerValue() {
+        List<FirebaseGameManager> players = fillGame();
+        players.get(0).rollDice();
+
+        assertEquals(1, errors.size());
+        TransactionMetrics.Counters roll = players.get(0).getTransactionMetrics().snapshot().get("rollDice");
+        assertEquals(0, roll.getCommits());
+        assertEquals(Integer.valueOf(1), roll.getAborts().get(TransactionMetrics.NOT_STARTED));
+        assertNull("Nothing written", read(backend, "games/" + onlyGameId(backend) + "/state"));
+        cleanup(players);
+    }
+
+    @Test
+    public void selectPawn_rejectsPawnTheRefereeWouldReject() {
+        List<FirebaseGameManager> players = fillGame();
+        FirebaseGameManager host = players.get(0);
+        String gameId = onlyGameId(backend);
+        host.startGame();
+
+        // Only the host's first pawn is out, so it is the only one a 3 can move
+        byte[] data = GameStateCodec.encode(new GameLogic());
+        data[GameStateCodec.pawnOffset(0, 0)] = (byte) (1 << 6 | 5);
+        GameLogic board = GameStateCodec.decode(data);
+        board.setDiceRoll(3);
+        board.playRound();
+        assertEquals(Arrays.asList(0), board.getMovablePawns());
+        Map<String, Object> state = GameStateNodes.toMap(board);
+        GameStateNodes.putMove(state, 0, -1);
+        backend.set("games/" + gameId + "/state", state, null);
+
+        host.selectPawn(1);
+
+        assertEquals(1, errors.size());
+        TransactionMetrics.Counters select = host.getTransactionMetrics().snapshot().get("selectPawn");
+        assertEquals(Integer.valueOf(1), select.getAborts().get(TransactionMetrics.INVALID_PAWN));
+        assertEquals(0, GameStateNodes.getSeq(read(backend, "games/" + gameId + "/state")));
+        cleanup(players);
+    }
+
+    @Test
+    public void transactions_retryFromColdCache() {
+        backend.setColdCache(true);
+        List<FirebaseGameManager> players = fillGame();
+        FirebaseGameManager host = players.get(0);
+        String gameId = onlyGameId(backend);
+
+        host.startGame();
+        host.rollDice();
+
+        assertTrue(errors.isEmpty());
+        assertTrue(GameStateNodes.read(read(backend, "games/" + gameId + "/state")).isDiceRolled());
+        TransactionMetrics.Counters roll = host.getTransactionMetrics().snapshot().get("rollDice");
+        assertEquals(1, roll.getCommits());
+        assertEquals("First run on null, second on the stored turn", 2.0, roll.getInvocationsPerCommit(), 0.0);
+        cleanup(players);
+    }
+
+    @Test
+    public void reconnect_catchesUpOnMissedMoves() {
+        List<FirebaseGameManager> players = fillGame();
+        FirebaseGameManager host = players.get(0);
+        String gameId = onlyGameId(backend);
+        host.startGame();
+
+        backend.setConnected(false);
+        boardEvents = 0;
+        host.rollDice();
+        host.playRound();
+        GameLogic state = GameStateNodes.read(read(backend, "games/" + gameId + "/state"));
+        if (state.isWaitingForPawnSelection()) {
+            ArrayList<Integer> movable = state.getMovablePawns();
+            host.selectPawn(movable.isEmpty() ? state.findSingleLegalMove() : movable.get(0));
+        }
+        assertNotNull("Turn logged while offline", read(backend, "moves/" + gameId + "/1"));
+        assertEquals("Move log paused", 0, boardEvents);
+
+        backend.setConnected(true);
+        assertTrue("Every client applied the missed turn", boardEvents >= 4);
+        assertTrue(errors.isEmpty());
+        cleanup(players);
+    }
+
+    @Test
+    public void lostMoveLogEntry_turnStillReachesOtherPlayers() {
+        List<FirebaseGameManager> players = fillGame();
+        FirebaseGameManager host = players.get(0);
+        String gameId = onlyGameId(backend);
+        host.startGame();
+
+        dropMoveLog = true;
+        boardEvents = 0;
+        host.rollDice();
+        host.playRound();
+        GameLogic state = GameStateNodes.read(read(backend, "games/" + gameId + "/state"));
+        if (state.isWaitingForPawnSelection()) {
+            host.selectPawn(state.getMovablePawns().isEmpty() ? 0 : state.getMovablePawns().get(0));
+        }
+        dropMoveLog = false;
+
+        assertEquals(1, GameStateNodes.getSeq(read(backend, "games/" + gameId + "/state")));
+        assertEquals("Restored by the next player", GameStateNodes.getLastMove(read(backend, "games/" + gameId + "/state")),
+                ((Number) read(backend, "moves/" + gameId + "/1")).intValue());
+        assertTrue("Other clients moved on without the entry", boardEvents >= 3);
+        assertTrue(errors.isEmpty());
+        cleanup(players);
+    }
+
+    @Test
+    public void boardPosition_tellsEveryPawnStateApart() {
+        byte[] data = GameStateCodec.encode(new GameLogic());
+        data[GameStateCodec.pawnOffset(0, 0)] = (byte) (1 << 6 | 10);
+        data[GameStateCodec.pawnOffset(0, 1)] = (byte) (2 << 6 | 3);
+        data[GameStateCodec.pawnOffset(0, 2)] = (byte) (3 << 6);
+        GameLogic board = GameStateCodec.decode(data);
+
+        assertEquals(10, FirebaseGameManager.boardPosition(board, 0, 0));
+        assertEquals(FirebaseGameManager.POSITION_FINAL_PATH + 3, FirebaseGameManager.boardPosition(board, 0, 1));
+        assertEquals(FirebaseGameManager.POSITION_FINISHED, FirebaseGameManager.boardPosition(board, 0, 2));
+        assertEquals(FirebaseGameManager.POSITION_HOME, FirebaseGameManager.boardPosition(board, 0, 3));
+    }
+
+    // ===== Helpers =====
+
+    /**
+     * Host a game and seat three more players, all of them ready
+     *
+     * @return Managers by seat, the host first
+     */
+    private List<FirebaseGameManager> fillGame() {
+        List<FirebaseGameManager> players = new ArrayList<>();
+        FirebaseGameManager host = new FirebaseGameManager("host", new ErrorListener(), backend);
+        host.createGame("Host");
+        players.add(host);
+        for (int i = 1; i < 4; i++) {
+            FirebaseGameManager player = new FirebaseGameManager("user" + i, new ErrorListener(), backend);
+            player.joinGame(onlyGameId(backend), "Player " + i);
+            players.add(player);
+        }
+        for (FirebaseGameManager player : players) {
+            player.setPlayerReady(true);
+        }
+        assertTrue(errors.isEmpty());
+        return players;
+    }
+
+    /**
+     * Game listener that collects errors and leaving players and counts
+     * the board changes dispatched from the move log
+     */
+    private class ErrorListener extends GameIdAllocatorTest.RecordingListener {
+        @Override
+        public void onGameError(String message) {
+            errors.add(message);
+        }
+
+        @Override
+        public void onPlayerLeft(String playerId) {
+            left.add(playerId);
+        }
+
+        @Override
+        public void onTurnChange(int playerTurn) {
+            boardEvents++;
+        }
+
+        @Override
+        public void onPawnMoved(int playerIndex, int pawnIndex, int position) {
+            boardEvents++;
+        }
+    }
+}
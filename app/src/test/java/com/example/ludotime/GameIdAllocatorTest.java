@@ -0,0 +1,199 @@
+package com.example.ludotime;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static com.example.ludotime.BackendTestHelper.read;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that GameIdAllocator hands out codes only once, serves prefetched
+ * codes without a round trip and reuses codes the sweeper gave back.
+ */
+public class GameIdAllocatorTest {
+    private final InMemoryGameBackend backend = new InMemoryGameBackend();
+
+    @Test
+    public void take_reservesDistinctCodes() {
+        SimulatedNetwork network = new SimulatedNetwork(new Random(7), 30, 150);
+        InMemoryGameBackend slowBackend = new InMemoryGameBackend(network);
+
+        // Many hosts ask at once, all of them racing for the same free codes
+        slowBackend.set(GameIdAllocator.FREE_REF + "/AAAAAA/" + GameIdAllocator.FREED_AT_PATH, 1L, null);
+        slowBackend.set(GameIdAllocator.FREE_REF + "/BBBBBB/" + GameIdAllocator.FREED_AT_PATH, 2L, null);
+        final Set<String> codes = new HashSet<>();
+        final int[] errors = {0};
+        for (int i = 0; i < 200; i++) {
+            new GameIdAllocator(slowBackend, "user-" + i, new TransactionMetrics()).take(new GameIdAllocator.IdListener() {
+                @Override
+                public void onIdReserved(String gameId) {
+                    assertTrue("Code handed out twice: " + gameId, codes.add(gameId));
+                }
+
+                @Override
+                public void onError(String message) {
+                    errors[0]++;
+                }
+            });
+        }
+        network.runUntilIdle(Long.MAX_VALUE);
+
+        assertEquals(0, errors[0]);
+        assertEquals(200, codes.size());
+        assertTrue(codes.contains("AAAAAA"));
+        assertTrue(codes.contains("BBBBBB"));
+        assertNull(read(network, slowBackend, GameIdAllocator.FREE_REF));
+        assertEquals(200, ((Map<?, ?>) read(network, slowBackend, GameIdAllocator.INDEX_REF)).size());
+    }
+
+    @Test
+    public void take_servesPrefetchedCodeAtOnce() {
+        SimulatedNetwork network = new SimulatedNetwork(new Random(7), 30, 150);
+        GameIdAllocator allocator = new GameIdAllocator(new InMemoryGameBackend(network), "host",
+                new TransactionMetrics());
+        allocator.prefetch();
+        network.runUntilIdle(Long.MAX_VALUE);
+        assertEquals(GameIdAllocator.DEFAULT_POOL_SIZE, allocator.getPoolSize());
+
+        final String[] code = {null};
+        allocator.take(new GameIdAllocator.IdListener() {
+            @Override
+            public void onIdReserved(String gameId) {
+                code[0] = gameId;
+            }
+
+            @Override
+            public void onError(String message) {
+                fail(message);
+            }
+        });
+        assertNotNull("Code handed out without waiting for the network", code[0]);
+    }
+
+    @Test
+    public void createGame_skipsCodeOfOlderGame() {
+        // A game written before codes were reserved, its code is on the free list by mistake
+        backend.set("games/OLD123/hostUserId", "someone", null);
+        backend.set(GameIdAllocator.FREE_REF + "/OLD123/" + GameIdAllocator.FREED_AT_PATH, 1L, null);
+
+        final String[] created = {null};
+        FirebaseGameManager manager = new FirebaseGameManager("host", new RecordingListener() {
+            @Override
+            public void onGameCreated(String gameId) {
+                created[0] = gameId;
+            }
+        }, backend);
+        manager.createGame("Host");
+
+        assertNotNull(created[0]);
+        assertNotEquals("OLD123", created[0]);
+        assertEquals("someone", read(backend, "games/OLD123/hostUserId"));
+        assertEquals("host", read(backend, "games/" + created[0] + "/hostUserId"));
+        assertNull("Used code has no reservation time",
+                read(backend, GameIdAllocator.INDEX_REF + "/" + created[0] + "/" + GameIdAllocator.RESERVED_AT_PATH));
+        manager.cleanup();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void sweep_recyclesCodes() {
+        final String[] created = {null};
+        FirebaseGameManager manager = new FirebaseGameManager("host", new RecordingListener() {
+            @Override
+            public void onGameCreated(String gameId) {
+                created[0] = gameId;
+            }
+        }, backend);
+        manager.createGame("Host");
+        manager.cleanup();
+
+        // A host that reserved a code and never created a game
+        GameIdAllocator quitter = new GameIdAllocator(backend, "quitter", new TransactionMetrics(), 1);
+        quitter.prefetch();
+        assertEquals(1, quitter.getPoolSize());
+
+        final StaleGameSweeper.Report[] report = {null};
+        new StaleGameSweeper(backend).sweep(Long.MAX_VALUE, result -> report[0] = result);
+        assertEquals(1, report[0].getDeleted());
+        assertEquals(1, report[0].getReleasedIds());
+        assertNull(read(backend, GameIdAllocator.INDEX_REF));
+        Set<String> free = new HashSet<>(((Map<String, ?>) read(backend, GameIdAllocator.FREE_REF)).keySet());
+        assertEquals(2, free.size());
+        assertTrue(free.contains(created[0]));
+
+        final String[] reused = {null};
+        new GameIdAllocator(backend, "next", new TransactionMetrics()).take(new GameIdAllocator.IdListener() {
+            @Override
+            public void onIdReserved(String gameId) {
+                reused[0] = gameId;
+            }
+
+            @Override
+            public void onError(String message) {
+                fail(message);
+            }
+        });
+        assertTrue(free.contains(reused[0]));
+        assertEquals(1, ((Map<?, ?>) read(backend, GameIdAllocator.FREE_REF)).size());
+    }
+
+    // ===== Helpers =====
+
+    /**
+     * Game listener that ignores everything and fails on errors
+     */
+    static class RecordingListener implements FirebaseGameManager.GameUpdateListener {
+        @Override
+        public void onGameCreated(String gameId) {
+        }
+
+        @Override
+        public void onGameJoined(MultiplayerGameLogic game) {
+        }
+
+        @Override
+        public void onGameUpdated(MultiplayerGameLogic game) {
+        }
+
+        @Override
+        public void onSeatChanged(int seat, String playerId, String playerName) {
+        }
+
+        @Override
+        public void onPlayerReadyChanged(int seat, boolean ready) {
+        }
+
+        @Override
+        public void onPlayerJoined(String playerId, String playerName) {
+        }
+
+        @Override
+        public void onPlayerLeft(String playerId) {
+        }
+
+        @Override
+        public void onGameError(String message) {
+            fail(message);
+        }
+
+        @Override
+        public void onTurnChange(int playerTurn) {
+        }
+
+        @Override
+        public void onDiceRolled(int playerIndex, int diceValue) {
+        }
+
+        @Override
+        public void onPawnMoved(int playerIndex, int pawnIndex, int position) {
+        }
+
+        @Override
+        public void onGameEnded(int[] winnerOrder) {
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.ludotime;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks GameLogic's move-complete callback and compares the turn latency
+ * it gives with the 500 ms selection poll ActivityGameLocal used before.
+ */
+public class GameLogicTest {
+    private static final int TURNS = 20;
+    private static final long POLL_MILLIS = 500; // Period of the old selectionCheck loop
+
+    @Test
+    public void setPawnSelection_notifiesOnceMoveIsDone() {
+        GameLogic game = waitingForSelection();
+        final int[] calls = {0};
+        game.setOnMoveCompleteListener((player, pawnIndex) -> {
+            calls[0]++;
+            assertEquals(0, player);
+            assertEquals(2, pawnIndex);
+            assertFalse("Called after the selection finished", game.isWaitingForPawnSelection());
+        });
+
+        game.setPawnSelection(2);
+
+        assertEquals(1, calls[0]);
+    }
+
+    @Test
+    public void benchmark_turnLatency() throws InterruptedException {
+        assumeTrue("Run with -Dbenchmarks=true", Boolean.getBoolean("benchmarks"));
+        // One thread stands in for the main looper, like the activity both paths run on it
+        ScheduledExecutorService looper = Executors.newSingleThreadScheduledExecutor();
+        Random random = new Random(29);
+        long[] polled = new long[TURNS];
+        long[] callback = new long[TURNS];
+
+        try {
+            for (int turn = 0; turn < TURNS; turn++) {
+                long thinkMillis = 50 + random.nextInt(400);
+                polled[turn] = pollingLatency(looper, thinkMillis);
+                callback[turn] = callbackLatency(looper, thinkMillis);
+            }
+        } finally {
+            looper.shutdownNow();
+        }
+
+        Arrays.sort(polled);
+        Arrays.sort(callback);
+        System.out.println("Selection to next turn, " + TURNS + " turns:");
+        System.out.println("  500 ms poll: p50 " + polled[TURNS / 2] / 1_000_000 + " ms, max "
+                + polled[TURNS - 1] / 1_000_000 + " ms");
+        System.out.println("  callback:    p50 " + callback[TURNS / 2] / 1000 + " us, max "
+                + callback[TURNS - 1] / 1000 + " us");
+        assertTrue("Callback not faster than polling", callback[TURNS - 1] < polled[TURNS / 2]);
+    }
+
+    // ===== Helpers =====
+
+    /**
+     * Build a game waiting for red to pick one of its pawns after a 6
+     *
+     * @return The game
+     */
+    private static GameLogic waitingForSelection() {
+        GameLogic game = new GameLogic();
+        game.setDiceRoll(6);
+        assertFalse(game.playRound());
+        assertTrue(game.isWaitingForPawnSelection());
+        return game;
+    }
+
+    /**
+     * Time one turn the way the old activity found out about a selection,
+     * with a check every POLL_MILLIS started when the dice were rolled
+     *
+     * @param looper      The thread the activity runs on
+     * @param thinkMillis Time the player takes to pick a pawn
+     * @return Nanoseconds from the selection until the poll noticed it
+     */
+    private static long pollingLatency(final ScheduledExecutorService looper, long thinkMillis)
+            throws InterruptedException {
+        final GameLogic game = waitingForSelection();
+        final long[] selectedAt = {0};
+        final long[] latency = {0};
+        final CountDownLatch done = new CountDownLatch(1);
+
+        looper.schedule(() -> {
+            game.setPawnSelection(0);
+            selectedAt[0] = System.nanoTime();
+        }, thinkMillis, TimeUnit.MILLISECONDS);
+        looper.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (game.isWaitingForPawnSelection()) {
+                    looper.schedule(this, POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                latency[0] = System.nanoTime() - selectedAt[0];
+                done.countDown();
+            }
+        }, POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        return latency[0];
+    }
+
+    /**
+     * Time one turn continued from the move-complete callback
+     *
+     * @param looper      The thread the activity runs on
+     * @param thinkMillis Time the player takes to pick a pawn
+     * @return Nanoseconds from the selection until the callback ran
+     */
+    private static long callbackLatency(ScheduledExecutorService looper, long thinkMillis)
+            throws InterruptedException {
+        final GameLogic game = waitingForSelection();
+        final long[] selectedAt = {0};
+        final long[] latency = {0};
+        final CountDownLatch done = new CountDownLatch(1);
+        game.setOnMoveCompleteListener((player, pawnIndex) -> {
+            latency[0] = System.nanoTime() - selectedAt[0];
+            done.countDown();
+        });
+
+        looper.schedule(() -> {
+            selectedAt[0] = System.nanoTime();
+            game.setPawnSelection(0);
+        }, thinkMillis, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        return latency[0];
+    }
+}
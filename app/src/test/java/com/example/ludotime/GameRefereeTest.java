@@ -0,0 +1,286 @@
+package com.example.ludotime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.example.ludotime.BackendTestHelper.cleanup;
+import static com.example.ludotime.BackendTestHelper.onlyGameId;
+import static com.example.ludotime.BackendTestHelper.read;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs GameReferee against an InMemoryGameBackend: refereed managers only
+ * write intents, the referee rolls and moves for them, rejects what the
+ * turn does not allow and follows the requests it is handed.
+ */
+public class GameRefereeTest {
+    private final InMemoryGameBackend backend = new InMemoryGameBackend();
+    private final GameReferee referee = new GameReferee(backend, new Random(11), GameReferee.DEFAULT_CAPACITY);
+
+    @Test
+    public void intents_playRefereedGame() {
+        referee.start();
+        final int[] otherRolls = {0};
+        List<FirebaseGameManager> managers = startMatch(new GameIdAllocatorTest.RecordingListener() {
+            @Override
+            public void onDiceRolled(int playerIndex, int diceValue) {
+                otherRolls[0]++;
+            }
+        });
+        String gameId = onlyGameId(backend);
+        assertEquals(1, referee.getGameCount());
+
+        Random picks = new Random(5);
+        int steps = 0;
+        Object value = read(backend, statePath(gameId));
+        while (!GameStateNodes.read(value).isGameOver() && GameStateNodes.getSeq(value) < 60) {
+            GameLogic state = GameStateNodes.read(value);
+            FirebaseGameManager player = managers.get(state.getCurrentPlayerTurn());
+            if (!state.isDiceRolled()) {
+                player.rollDice();
+            } else if (state.isWaitingForPawnSelection()) {
+                player.selectPawn(pickPawn(state, picks));
+            } else {
+                player.playRound();
+            }
+
+            Object next = read(backend, statePath(gameId));
+            assertFalse("Intent applied", next.equals(value));
+            assertNull("Intent consumed", read(backend, GameReferee.INTENTS_REF + "/" + gameId));
+            value = next;
+            steps++;
+        }
+
+        int seq = GameStateNodes.getSeq(value);
+        assertTrue(seq >= 60 || GameStateNodes.read(value).isGameOver());
+        assertNotNull("Last turn logged", read(backend, FirebaseGameManager.MOVES_REF + "/" + gameId + "/" + seq));
+        assertTrue("Every client heard the referee's rolls", otherRolls[0] >= 4 * (seq / 2));
+
+        Map<String, TransactionMetrics.Counters> counters = referee.getTransactionMetrics().snapshot();
+        assertEquals("Started by the referee", 1, counters.remove("referee start").getCommits());
+        int commits = 0;
+        for (TransactionMetrics.Counters counter : counters.values()) {
+            assertTrue("No rejection", counter.getAborts().isEmpty());
+            commits += counter.getCommits();
+        }
+        assertEquals("One write per intent", steps, commits);
+        cleanup(managers);
+    }
+
+    @Test
+    public void intent_outOfTurnRejected() {
+        referee.start();
+        final List<String> errors = new ArrayList<>();
+        List<FirebaseGameManager> managers = startMatch(new GameIdAllocatorTest.RecordingListener() {
+            @Override
+            public void onGameError(String message) {
+                errors.add(message);
+            }
+        });
+        String gameId = onlyGameId(backend);
+
+        managers.get(2).rollDice();
+
+        assertEquals(1, errors.size());
+        assertEquals("Turn rejected: " + TransactionMetrics.NOT_YOUR_TURN, errors.get(0));
+        assertNull("Rejection cleared", read(backend, GameReferee.intentPath(gameId, 2)));
+        assertFalse(GameStateNodes.read(read(backend, statePath(gameId))).isDiceRolled());
+        assertEquals(Integer.valueOf(1), referee.getTransactionMetrics().snapshot()
+                .get("referee " + GameReferee.ROLL).getAborts().get(TransactionMetrics.NOT_YOUR_TURN));
+
+        // The rejection does not block the player whose turn it is
+        managers.get(0).rollDice();
+        assertTrue(GameStateNodes.read(read(backend, statePath(gameId))).isDiceRolled());
+        assertEquals(1, errors.size());
+        cleanup(managers);
+    }
+
+    @Test
+    public void startGame_refereeStartsHostedGame() {
+        referee.start();
+        final List<String> errors = new ArrayList<>();
+        List<FirebaseGameManager> managers = hostGame(new GameIdAllocatorTest.RecordingListener() {
+            @Override
+            public void onGameError(String message) {
+                errors.add(message);
+            }
+        });
+        String gameId = onlyGameId(backend);
+        FirebaseGameManager host = managers.get(0);
+
+        // The last player is not ready yet, nothing reaches the referee
+        host.startGame();
+        assertEquals(1, errors.size());
+        assertNull(read(backend, GameReferee.requestPath(gameId)));
+
+        managers.get(3).setPlayerReady(true);
+        host.startGame();
+        assertEquals(1, errors.size());
+        assertEquals(Boolean.TRUE, read(backend, FirebaseGameManager.GAMES_REF + "/" + gameId + "/"
+                + FirebaseGameManager.STARTED_PATH));
+        assertNotNull("Request kept while refereed", read(backend, GameReferee.requestPath(gameId)));
+        assertEquals(1, referee.getGameCount());
+
+        host.rollDice();
+        assertTrue(GameStateNodes.read(read(backend, statePath(gameId))).isDiceRolled());
+        assertEquals(1, errors.size());
+        cleanup(managers);
+    }
+
+    @Test
+    public void request_removedWhenGameCannotStart() {
+        List<FirebaseGameManager> managers = hostGame(new GameIdAllocatorTest.RecordingListener());
+        String gameId = onlyGameId(backend);
+
+        // A request the host's client did not check, the referee checks again
+        backend.set(GameReferee.requestPath(gameId), GameReferee.request(System.currentTimeMillis()), null);
+        referee.start();
+
+        assertNull(read(backend, GameReferee.requestPath(gameId)));
+        assertNull("Board never written", read(backend, statePath(gameId)));
+        assertEquals(0, referee.getGameCount());
+        assertEquals(Integer.valueOf(1), referee.getTransactionMetrics().snapshot()
+                .get("referee start").getAborts().get(TransactionMetrics.NOT_READY));
+        cleanup(managers);
+    }
+
+    @Test
+    public void requests_followedUpToCapacity() {
+        GameReferee small = new GameReferee(backend, new Random(11), 2);
+        long now = 1_000_000L;
+        for (int i = 0; i < 3; i++) {
+            backend.set(statePath("GAME0" + i), FirebaseGameManager.initialState(), null);
+            backend.set(GameReferee.requestPath("GAME0" + i), GameReferee.request(now + i), null);
+        }
+        small.start();
+        assertEquals(2, small.getGameCount());
+
+        // Not hosted yet, the intent waits
+        backend.set(GameReferee.intentPath("GAME02", 0), GameReferee.intent(GameReferee.ROLL, -1, now), null);
+        assertNotNull(read(backend, GameReferee.intentPath("GAME02", 0)));
+
+        // Removing the oldest request hands the next one to the referee
+        backend.set(GameReferee.requestPath("GAME00"), null, null);
+        assertEquals(2, small.getGameCount());
+        assertNull("Waiting intent handled", read(backend, GameReferee.intentPath("GAME02", 0)));
+        assertTrue(GameStateNodes.read(read(backend, statePath("GAME02"))).isDiceRolled());
+
+        backend.set(GameReferee.intentPath("GAME00", 0), GameReferee.intent(GameReferee.ROLL, -1, now), null);
+        assertNotNull("Dropped game no longer refereed", read(backend, GameReferee.intentPath("GAME00", 0)));
+
+        small.stop();
+        assertEquals(0, small.getGameCount());
+        assertNotNull("Requests kept for another referee", read(backend, GameReferee.REQUESTS_REF));
+    }
+
+    @Test
+    public void benchmark_refereeManyGames() {
+        assumeTrue("Run with -Dbenchmarks=true", Boolean.getBoolean("benchmarks"));
+        int games = 2000;
+        GameReferee busy = new GameReferee(backend, new Random(11), games);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < games; i++) {
+            backend.set(statePath("G" + i), FirebaseGameManager.initialState(), null);
+            backend.set(GameReferee.requestPath("G" + i), GameReferee.request(now), null);
+        }
+        busy.start();
+        assertEquals(games, busy.getGameCount());
+
+        long start = System.nanoTime();
+        for (int i = 0; i < games; i++) {
+            backend.set(GameReferee.intentPath("G" + i, 0), GameReferee.intent(GameReferee.ROLL, -1, now), null);
+            backend.set(GameReferee.intentPath("G" + i, 0), GameReferee.intent(GameReferee.PLAY, -1, now), null);
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        TransactionMetrics.Counters rolls = busy.getTransactionMetrics().snapshot().get("referee " + GameReferee.ROLL);
+        System.out.println(2 * games + " intents over " + games + " games in " + millis + " ms, average roll payload "
+                + rolls.getAveragePayloadBytes() + " bytes");
+        assertEquals(games, rolls.getCommits());
+        assertNull("All intents handled", read(backend, GameReferee.INTENTS_REF));
+    }
+
+    // ===== Helpers =====
+
+    /**
+     * Seat four managers in a game filled by a refereed matcher and started
+     * by the referee, they take the refereed mode from the game
+     *
+     * @param listener Listener of every manager
+     * @return Managers by seat
+     */
+    private List<FirebaseGameManager> startMatch(FirebaseGameManager.GameUpdateListener listener) {
+        List<FirebaseGameManager> managers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            FirebaseGameManager manager = new FirebaseGameManager("user" + i, listener, backend);
+            manager.enqueueQuickMatch("Player " + i, 100 + i);
+            managers.add(manager);
+        }
+
+        MatchMaker matchMaker = new MatchMaker(backend, "matcher");
+        matchMaker.setRefereed(true);
+        final MatchMaker.Report[] report = {null};
+        matchMaker.runRound(System.currentTimeMillis(), result -> report[0] = result);
+        assertEquals(1, report[0].getStarted());
+        String gameId = onlyGameId(backend);
+        assertEquals("user0", read(backend, FirebaseGameManager.GAMES_REF + "/" + gameId + "/hostUserId"));
+        assertNotNull("Referee requested", read(backend, GameReferee.requestPath(gameId)));
+
+        // Players are seated in score order, see MatchMakerTest
+        return managers;
+    }
+
+    /**
+     * Host a refereed game and seat three more players, all but the last one ready
+     *
+     * @param listener Listener of every manager
+     * @return Managers by seat, the host first
+     */
+    private List<FirebaseGameManager> hostGame(FirebaseGameManager.GameUpdateListener listener) {
+        List<FirebaseGameManager> managers = new ArrayList<>();
+        FirebaseGameManager host = new FirebaseGameManager("user0", listener, backend);
+        host.setRefereed(true);
+        host.createGame("Host");
+        managers.add(host);
+        String gameId = onlyGameId(backend);
+        for (int i = 1; i < 4; i++) {
+            FirebaseGameManager player = new FirebaseGameManager("user" + i, listener, backend);
+            player.joinGame(gameId, "Player " + i);
+            managers.add(player);
+        }
+        for (int i = 0; i < 3; i++) {
+            managers.get(i).setPlayerReady(true);
+        }
+        return managers;
+    }
+
+    /**
+     * Choose a movable pawn
+     *
+     * @param state Board waiting for a selection
+     * @param picks Random choices
+     * @return Pawn index
+     */
+    private static int pickPawn(GameLogic state, Random picks) {
+        ArrayList<Integer> movable = state.getMovablePawns();
+        if (movable.isEmpty()) {
+            return state.findSingleLegalMove() >= 0 ? state.findSingleLegalMove() : picks.nextInt(4);
+        }
+        return movable.get(picks.nextInt(movable.size()));
+    }
+
+    /**
+     * Gets the path of a game's state node
+     *
+     * @param gameId ID of the game
+     * @return The path
+     */
+    private static String statePath(String gameId) {
+        return FirebaseGameManager.GAMES_REF + "/" + gameId + "/" + FirebaseGameManager.STATE_PATH;
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.ludotime;
+
+import com.google.firebase.database.core.utilities.encoding.CustomClassMapper;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks GameSnapshotCodec against Firebase's reflective class mapper and
+ * compares how long both take to decode a started game.
+ */
+public class GameSnapshotCodecTest {
+    private static final int WARMUP_ROUNDS = 20000;
+    private static final int MEASURED_ROUNDS = 100000;
+
+    @Test
+    public void decode_matchesReflectiveMapper() {
+        Object value = startedGameValue();
+
+        MultiplayerGameLogic expected = decodeReflective(value);
+        MultiplayerGameLogic actual = GameSnapshotCodec.decode(value, null);
+
+        assertEquals(expected.getSchemaVersion(), actual.getSchemaVersion());
+        assertEquals(expected.getGameId(), actual.getGameId());
+        assertEquals(expected.getHostUserId(), actual.getHostUserId());
+        assertEquals(expected.getMaxPlayers(), actual.getMaxPlayers());
+        assertEquals(expected.getCurrentPlayersNumber(), actual.getCurrentPlayersNumber());
+        assertEquals(expected.isGameStarted(), actual.isGameStarted());
+        assertEquals(expected.getLastUpdateTimestamp(), actual.getLastUpdateTimestamp());
+        assertEquals(expected.getIsReady(), actual.getIsReady());
+        assertEquals(expected.getPlayerID(), actual.getPlayerID());
+        assertEquals(expected.getPlayerName(), actual.getPlayerName());
+        assertArrayEquals(GameStateCodec.encode(expected.getGameLogic()),
+                GameStateCodec.encode(actual.getGameLogic()));
+    }
+
+    @Test
+    public void decode_reusesInstance() {
+        MultiplayerGameLogic reuse = new MultiplayerGameLogic();
+        ArrayList<String> ids = reuse.getPlayerID();
+
+        assertSame(reuse, GameSnapshotCodec.decode(startedGameValue(), reuse));
+        assertSame(ids, reuse.getPlayerID());
+        assertEquals("host", reuse.getPlayerID().get(0));
+    }
+
+    @Test
+    public void decode_emptyNode() {
+        assertNull(GameSnapshotCodec.decode(null, null));
+    }
+
+    @Test
+    public void benchmark_decode() {
+        assumeTrue("Run with -Dbenchmarks=true", Boolean.getBoolean("benchmarks"));
+        Object value = startedGameValue();
+        MultiplayerGameLogic reuse = new MultiplayerGameLogic();
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            decodeReflective(value);
+            GameSnapshotCodec.decode(value, reuse);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            decodeReflective(value);
+        }
+        long reflective = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            GameSnapshotCodec.decode(value, reuse);
+        }
+        long handWritten = System.nanoTime() - start;
+
+        System.out.println("Reflective mapper: " + reflective / MEASURED_ROUNDS + " ns/decode");
+        System.out.println("GameSnapshotCodec: " + handWritten / MEASURED_ROUNDS + " ns/decode");
+        assertNotNull(reuse.getGameLogic());
+        assertTrue("GameSnapshotCodec slower than the reflective mapper", handWritten < reflective);
+    }
+
+    /**
+     * Decode the way FirebaseGameManager did before GameSnapshotCodec
+     *
+     * @param value Raw game node
+     * @return The decoded game
+     */
+    private static MultiplayerGameLogic decodeReflective(Object value) {
+        MultiplayerGameLogic game = CustomClassMapper.convertToCustomClass(value, MultiplayerGameLogic.class);
+        game.setGameLogic(GameStateNodes.read(GameStateNodes.child(value, GameSnapshotCodec.STATE)));
+        return game;
+    }
+
+    /**
+     * Build the raw value Firebase hands out for a started game with 4 players
+     *
+     * @return Raw game node
+     */
+    private static Object startedGameValue() {
+        MultiplayerGameLogic game = new MultiplayerGameLogic("host", "Host", 4, 0);
+        for (int seat = 1; seat < 4; seat++) {
+            game.getPlayerID().set(seat, "player" + seat);
+            game.getPlayerName().set(seat, "Player " + seat);
+            game.getIsReady().set(seat, true);
+        }
+        game.setCurrentPlayersNumber(4);
+        game.setGameStarted(true);
+
+        // Play a few turns so the board is not in its starting position
+        GameLogic gameLogic = new GameLogic();
+        for (int turn = 0; turn < 40; turn++) {
+            gameLogic.setDiceRoll(turn % 6 + 1);
+            if (!gameLogic.playRound()) {
+                gameLogic.setPawnSelection(turn % 4);
+            }
+        }
+
+        Map<String, Object> value = game.toMap();
+        value.put(GameSnapshotCodec.STATE, GameStateNodes.toMap(gameLogic));
+        return asFirebaseValue(value);
+    }
+
+    /**
+     * Convert a written value the way Firebase returns it:
+     * numbers as Long and maps with keys 0..n as lists
+     *
+     * @param value Written value
+     * @return Value as read back
+     */
+    @SuppressWarnings("unchecked")
+    private static Object asFirebaseValue(Object value) {
+        if (value instanceof Integer) {
+            return ((Integer) value).longValue();
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (List<Object>) value) {
+                list.add(asFirebaseValue(item));
+            }
+            return list;
+        }
+        if (value instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) value;
+            boolean indexed = true;
+            for (int i = 0; i < map.size(); i++) {
+                indexed &= map.containsKey(String.valueOf(i));
+            }
+            if (indexed) {
+                List<Object> list = new ArrayList<>();
+                for (int i = 0; i < map.size(); i++) {
+                    list.add(asFirebaseValue(map.get(String.valueOf(i))));
+                }
+                return list;
+            }
+            Map<String, Object> converted = new TreeMap<>();
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                converted.put(entry.getKey(), asFirebaseValue(entry.getValue()));
+            }
+            return converted;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.ludotime;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips saved local games through GameStateCodec and checks that
+ * damaged saves are rejected instead of restored.
+ */
+public class GameStateCodecTest {
+
+    @Test
+    public void roundTrip_keepsEveryPawnStateAndTheTurn() {
+        byte[] data = savedGame();
+
+        GameLogic game = GameStateCodec.decode(data);
+
+        assertEquals(Integer.valueOf(10), game.getPawnPositions().get(0).get(0));
+        assertTrue(game.getPawnOnFinishLine().get(0).get(1));
+        assertEquals(Integer.valueOf(3), game.getFinalPathPositions().get(0).get(1));
+        assertTrue(game.getPawnFinished().get(0).get(2));
+        assertTrue(game.getPawnInHome().get(0).get(3));
+        assertEquals(Integer.valueOf(51), game.getPawnPositions().get(1).get(0));
+        assertEquals(2, game.getCurrentPlayerTurn());
+        assertTrue(game.isDiceRolled());
+        assertFalse(game.isMoveMade());
+        assertTrue(game.isWaitingForPawnSelection());
+        assertEquals(4, game.getLastDiceRoll());
+        assertEquals(-1, game.getSelectedPawn());
+        assertEquals(1, game.getWinnersCount());
+        assertEquals(Arrays.asList(0, -1, -1, -1), game.getWinnerOrder());
+        assertArrayEquals(data, GameStateCodec.encode(game));
+    }
+
+    @Test
+    public void roundTrip_playedGame() {
+        GameLogic game = new GameLogic();
+        game.setDiceRoll(6);
+        game.playRound();
+        game.setPawnSelection(1);
+
+        byte[] data = GameStateCodec.encode(game);
+        GameLogic restored = GameStateCodec.decode(data);
+
+        assertEquals(GameStateCodec.ENCODED_SIZE, data.length);
+        assertFalse(restored.getPawnInHome().get(0).get(1));
+        assertEquals(game.getPawnPositions(), restored.getPawnPositions());
+        assertEquals(game.getCurrentPlayerTurn(), restored.getCurrentPlayerTurn());
+        assertArrayEquals(data, GameStateCodec.encode(restored));
+    }
+
+    @Test
+    public void boardString_roundTrip() {
+        byte[] data = savedGame();
+        byte[] copy = new byte[GameStateCodec.ENCODED_SIZE];
+
+        String board = GameStateCodec.boardToString(data);
+        GameStateCodec.boardFromString(board, copy);
+
+        assertEquals(GameStateCodec.BOARD_LENGTH, board.length());
+        for (int i = 0; i < 16; i++) {
+            assertEquals(data[GameStateCodec.OFFSET_PAWNS + i], copy[GameStateCodec.OFFSET_PAWNS + i]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsMissingData() {
+        GameStateCodec.decode(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsWrongLength() {
+        GameStateCodec.decode(Arrays.copyOf(savedGame(), GameStateCodec.ENCODED_SIZE - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsOtherVersion() {
+        byte[] data = savedGame();
+        data[0] = (byte) (GameStateCodec.VERSION + 1);
+        GameStateCodec.decode(data);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsTrackIndexOffTheBoard() {
+        byte[] data = savedGame();
+        data[GameStateCodec.pawnOffset(3, 3)] = (byte) (1 << 6 | 52);
+        GameStateCodec.decode(data);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsImpossibleDice() {
+        byte[] data = savedGame();
+        data[GameStateCodec.OFFSET_DICE] = 7;
+        GameStateCodec.decode(data);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void boardFromString_rejectsNonHexDigits() {
+        char[] board = new char[GameStateCodec.BOARD_LENGTH];
+        Arrays.fill(board, 'z');
+        GameStateCodec.boardFromString(new String(board), new byte[GameStateCodec.ENCODED_SIZE]);
+    }
+
+    // ===== Helpers =====
+
+    /**
+     * Build a save with a pawn in each state: red has one on the track, one on
+     * the final path, one finished and one at home, green one on the last
+     * track cell. Yellow is waiting to pick a pawn after a 4, red finished first
+     *
+     * @return Encoded state
+     */
+    private static byte[] savedGame() {
+        byte[] data = new byte[GameStateCodec.ENCODED_SIZE];
+        data[0] = (byte) GameStateCodec.VERSION;
+        data[GameStateCodec.pawnOffset(0, 0)] = (byte) (1 << 6 | 10);
+        data[GameStateCodec.pawnOffset(0, 1)] = (byte) (2 << 6 | 3);
+        data[GameStateCodec.pawnOffset(0, 2)] = (byte) (3 << 6);
+        data[GameStateCodec.pawnOffset(1, 0)] = (byte) (1 << 6 | 51);
+        data[GameStateCodec.OFFSET_FLAGS] = (byte) (2 | GameStateCodec.FLAG_DICE_ROLLED | GameStateCodec.FLAG_WAITING);
+        data[GameStateCodec.OFFSET_DICE] = 4;
+        data[GameStateCodec.OFFSET_SELECTED] = 0;
+        data[GameStateCodec.OFFSET_WINNERS_COUNT] = 1;
+        data[GameStateCodec.OFFSET_WINNER_ORDER] = 1;
+        return data;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.ludotime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs LobbyBrowser against an InMemoryGameBackend: summaries written by
+ * hosting managers show up, leave the list when the game fills, pages load
+ * on demand, and a page of a large lobby list stays small.
+ */
+public class LobbyBrowserTest {
+    private final InMemoryGameBackend backend = new InMemoryGameBackend();
+    private final RecordingBrowser events = new RecordingBrowser();
+
+    @Test
+    public void browser_followsHostedGames() {
+        LobbyBrowser browser = new LobbyBrowser(backend, 10, events);
+        browser.start();
+        assertTrue(browser.getLobbies().isEmpty());
+
+        FirebaseGameManager host = new FirebaseGameManager("host", new GameIdAllocatorTest.RecordingListener(), backend);
+        host.createGame("Alice");
+        assertEquals(1, browser.getLobbies().size());
+        LobbySummary lobby = browser.getLobbies().get(0);
+        assertEquals("Alice", lobby.getHostName());
+        assertEquals(1, lobby.getSeatsTaken());
+
+        List<FirebaseGameManager> joiners = new ArrayList<>();
+        for (int i = 1; i < 4; i++) {
+            FirebaseGameManager joiner = new FirebaseGameManager("user" + i,
+                    new GameIdAllocatorTest.RecordingListener(), backend);
+            joiner.joinGame(lobby.getGameId(), "Player " + i);
+            joiners.add(joiner);
+            if (i < 3) {
+                assertEquals(i + 1, browser.getLobbies().get(0).getSeatsTaken());
+            }
+        }
+        assertTrue("Full game is no longer listed", browser.getLobbies().isEmpty());
+
+        joiners.get(0).leaveGame();
+        assertEquals("Listed again once a seat is free", 1, browser.getLobbies().size());
+
+        // Stop listening first, everyone would be told the game is gone
+        for (FirebaseGameManager joiner : joiners) {
+            joiner.cleanup();
+        }
+        host.cleanup();
+        host.leaveGame();
+        assertTrue(browser.getLobbies().isEmpty());
+        assertEquals(0, events.errors);
+    }
+
+    @Test
+    public void browser_pagesOldestFirst() {
+        for (int i = 0; i < 25; i++) {
+            putLobby(String.format("G%05d", i), 1000 + i, 1);
+        }
+
+        LobbyBrowser browser = new LobbyBrowser(backend, 10, events);
+        browser.start();
+        assertEquals(10, browser.getLobbies().size());
+        assertEquals("G00000", browser.getLobbies().get(0).getGameId());
+        assertTrue(browser.hasMore());
+
+        browser.loadMore();
+        browser.loadMore();
+        assertEquals(25, browser.getLobbies().size());
+        assertEquals("G00024", browser.getLobbies().get(24).getGameId());
+        assertFalse(browser.hasMore());
+
+        // Removing a listed lobby pulls the next one into a limited window
+        browser.stop();
+        LobbyBrowser firstPage = new LobbyBrowser(backend, 10, events);
+        firstPage.start();
+        backend.set(LobbySummary.LOBBIES_REF + "/G00003", null, null);
+        assertEquals(10, firstPage.getLobbies().size());
+        assertEquals("G00010", firstPage.getLobbies().get(9).getGameId());
+
+        // A seat change updates the row in place
+        putLobby("G00005", 1005, 3);
+        assertEquals(3, firstPage.getLobbies().get(4).getSeatsTaken());
+    }
+
+    @Test
+    public void benchmark_browseManyLobbies() {
+        assumeTrue("Run with -Dbenchmarks=true", Boolean.getBoolean("benchmarks"));
+        int count = 20000;
+        Random random = new Random(3);
+        long gameBytes = 0;
+        for (int i = 0; i < count; i++) {
+            String gameId = GameIdAllocator.randomId();
+            putLobby(gameId, random.nextInt(1_000_000), 1 + random.nextInt(3));
+            gameBytes += WirePayload.estimateBytes(new MultiplayerGameLogic("host" + i, "Host " + i, 4, 0).toMap());
+        }
+
+        long start = System.nanoTime();
+        LobbyBrowser browser = new LobbyBrowser(backend, events);
+        browser.start();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        long pageBytes = 0;
+        for (LobbySummary lobby : browser.getLobbies()) {
+            pageBytes += WirePayload.estimateBytes(lobby.toMap());
+        }
+        System.out.println("First page of " + count + " lobbies: " + browser.getLobbies().size() + " rows, "
+                + pageBytes + " bytes (all games would be " + gameBytes + " bytes), " + millis + " ms in memory");
+
+        assertEquals(LobbyBrowser.DEFAULT_PAGE_SIZE, browser.getLobbies().size());
+        for (int i = 1; i < browser.getLobbies().size(); i++) {
+            assertTrue(browser.getLobbies().get(i - 1).getCreatedAt() <= browser.getLobbies().get(i).getCreatedAt());
+        }
+    }
+
+    // ===== Helpers =====
+
+    /**
+     * Store a lobby summary
+     *
+     * @param gameId     ID of the game
+     * @param createdAt  Creation time
+     * @param seatsTaken Players in the game
+     */
+    private void putLobby(String gameId, long createdAt, int seatsTaken) {
+        backend.set(LobbySummary.LOBBIES_REF + "/" + gameId,
+                new LobbySummary(gameId, "Host " + gameId, seatsTaken, 4, createdAt).toMap(), null);
+    }
+
+    /**
+     * Browser listener that counts errors
+     */
+    private static class RecordingBrowser implements LobbyBrowser.BrowserListener {
+        int errors;
+
+        @Override
+        public void onLobbiesReset() {
+        }
+
+        @Override
+        public void onLobbyAdded(int position) {
+        }
+
+        @Override
+        public void onLobbyChanged(int position) {
+        }
+
+        @Override
+        public void onLobbyRemoved(int position) {
+        }
+
+        @Override
+        public void onBrowserError(String message) {
+            errors++;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.ludotime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.ludotime.BackendTestHelper.read;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs MatchMaker against an InMemoryGameBackend: queued managers are seated
+ * in games by score with one write a round, small groups only form after a
+ * wait, and only one matcher holds the lease.
+ */
+public class MatchMakerTest {
+    private final InMemoryGameBackend backend = new InMemoryGameBackend();
+
+    @Test
+    public void group_prefersCloseFullGroups() {
+        long now = 1_000_000L;
+        List<MatchMaker.QueuedPlayer> players = new ArrayList<>();
+        players.add(new MatchMaker.QueuedPlayer("a", "A", 160, now));
+        players.add(new MatchMaker.QueuedPlayer("b", "B", 100, now));
+        players.add(new MatchMaker.QueuedPlayer("c", "C", 150, now));
+        players.add(new MatchMaker.QueuedPlayer("d", "D", 120, now));
+        players.add(new MatchMaker.QueuedPlayer("e", "E", 1000, now));
+        players.add(new MatchMaker.QueuedPlayer("f", "F", 1010, now));
+        players.add(new MatchMaker.QueuedPlayer("g", "G", 5000, now - 40_000));
+        players.add(new MatchMaker.QueuedPlayer("h", "H", 5050, now - 40_000));
+
+        List<List<MatchMaker.QueuedPlayer>> groups = MatchMaker.group(players, now);
+
+        assertEquals(2, groups.size());
+        assertEquals("Full group in score order", "bdca", userIds(groups.get(0)));
+        assertEquals("Pair formed after waiting", "gh", userIds(groups.get(1)));
+    }
+
+    @Test
+    public void group_widensScoreGapWhileWaiting() {
+        long now = 1_000_000L;
+        List<MatchMaker.QueuedPlayer> players = new ArrayList<>();
+        players.add(new MatchMaker.QueuedPlayer("a", "A", 0, now));
+        players.add(new MatchMaker.QueuedPlayer("b", "B", 400, now));
+        players.add(new MatchMaker.QueuedPlayer("c", "C", 450, now));
+        players.add(new MatchMaker.QueuedPlayer("d", "D", 500, now));
+        assertTrue(MatchMaker.group(players, now).isEmpty());
+
+        // 20 seconds later the gap of 500 is accepted
+        assertEquals("abcd", userIds(MatchMaker.group(players, now + 20_000).get(0)));
+    }
+
+    @Test
+    public void runRound_seatsQueuedPlayersInOneWrite() {
+        List<MultiplayerGameLogic> joined = new ArrayList<>();
+        List<FirebaseGameManager> managers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            FirebaseGameManager manager = new FirebaseGameManager("user" + i, new GameIdAllocatorTest.RecordingListener() {
+                @Override
+                public void onGameJoined(MultiplayerGameLogic game) {
+                    joined.add(game);
+                }
+            }, backend);
+            manager.enqueueQuickMatch("Player " + i, i < 4 ? 100 + i : 2000 + i);
+            assertTrue(manager.isQueued());
+            managers.add(manager);
+        }
+
+        MatchMaker matchMaker = new MatchMaker(backend, "matcher");
+        MatchMaker.Report report = runRound(matchMaker, System.currentTimeMillis());
+
+        assertEquals(8, report.getQueued());
+        assertEquals(8, report.getMatched());
+        assertEquals(2, report.getStarted());
+        assertEquals(1, matchMaker.getTransactionMetrics().snapshot().get("matchRound").getCommits());
+        assertNull("Queue emptied", read(backend, MatchMaker.QUEUE_REF));
+        assertNull("Matches consumed", read(backend, MatchMaker.MATCHES_REF));
+
+        assertEquals(8, joined.size());
+        for (FirebaseGameManager manager : managers) {
+            assertFalse(manager.isQueued());
+        }
+        MultiplayerGameLogic low = joinedBy(joined, "user1");
+        MultiplayerGameLogic high = joinedBy(joined, "user5");
+        assertTrue(low.isGameStarted());
+        assertEquals("user0", low.getHostUserId());
+        assertEquals("user3", low.getPlayerID().get(3));
+        assertNotNull("Board written with the game", read(backend, "games/" + low.getGameId() + "/state"));
+        assertNull("Code marked used",
+                read(backend, GameIdAllocator.INDEX_REF + "/" + low.getGameId() + "/" + GameIdAllocator.RESERVED_AT_PATH));
+        assertNotEquals(low.getGameId(), high.getGameId());
+        assertEquals("user4", high.getHostUserId());
+    }
+
+    @Test
+    public void runRound_opensSmallGroupsAsLobbies() {
+        long now = System.currentTimeMillis();
+        backend.set(MatchMaker.queuePath("a"), MatchMaker.queueEntry("A", 100, now - 40_000), null);
+        backend.set(MatchMaker.queuePath("b"), MatchMaker.queueEntry("B", 150, now - 10_000), null);
+        backend.set(MatchMaker.queuePath("c"), MatchMaker.queueEntry("C", 3000, now - 10_000), null);
+        backend.set(MatchMaker.queuePath("old"), MatchMaker.queueEntry("Old", 9000,
+                now - MatchMaker.QUEUE_TIMEOUT_MILLIS - 1), null);
+
+        MatchMaker.Report report = runRound(new MatchMaker(backend, "matcher"), now);
+
+        assertEquals(1, report.getGames());
+        assertEquals(0, report.getStarted());
+        assertEquals(1, report.getTimedOut());
+        String gameId = (String) read(backend, MatchMaker.matchPath("a"));
+        assertEquals(gameId, read(backend, MatchMaker.matchPath("b")));
+        assertEquals(MatchMaker.TIMED_OUT, read(backend, MatchMaker.matchPath("old")));
+        assertNotNull("Still queued", read(backend, MatchMaker.queuePath("c")));
+
+        LobbySummary lobby = LobbySummary.fromValue(gameId, read(backend, LobbySummary.LOBBIES_REF + "/" + gameId));
+        assertEquals("A", lobby.getHostName());
+        assertEquals(2, lobby.getSeatsTaken());
+        assertEquals(false, read(backend, "games/" + gameId + "/gameStarted"));
+    }
+
+    @Test
+    public void lease_heldByOneMatcher() {
+        MatchMaker first = new MatchMaker(backend, "first");
+        MatchMaker second = new MatchMaker(backend, "second");
+        long now = 1_000_000L;
+
+        assertTrue(lease(first, now));
+        assertFalse(lease(second, now + 1000));
+        assertTrue("Renewed by its holder", lease(first, now + 5000));
+        assertTrue("Taken over once expired", lease(second, now + 5000 + 3 * MatchMaker.ROUND_INTERVAL_MILLIS + 1));
+
+        second.releaseLease();
+        assertNull(read(backend, MatchMaker.LEASE_REF));
+    }
+
+    @Test
+    public void benchmark_matchRound() {
+        assumeTrue("Run with -Dbenchmarks=true", Boolean.getBoolean("benchmarks"));
+        int players = 2000;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < players; i++) {
+            backend.set(MatchMaker.queuePath("user" + i),
+                    MatchMaker.queueEntry("Player " + i, (i * 7919) % 3000, now - (i % 60) * 1000), null);
+        }
+
+        MatchMaker matchMaker = new MatchMaker(backend, "matcher", players);
+        long start = System.nanoTime();
+        MatchMaker.Report report = runRound(matchMaker, now);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println(report + " in " + millis + " ms with "
+                + matchMaker.getTransactionMetrics().snapshot().get("matchRound").getCount() + " write");
+        assertEquals(0, report.getErrors());
+        assertTrue(report.getMatched() > players * 9 / 10);
+    }
+
+    // ===== Helpers =====
+
+    /**
+     * Run a round, the in-memory backend finishes it before returning
+     *
+     * @param matchMaker The matcher
+     * @param now        Current time
+     * @return Its report
+     */
+    private static MatchMaker.Report runRound(MatchMaker matchMaker, long now) {
+        final MatchMaker.Report[] result = {null};
+        matchMaker.runRound(now, report -> result[0] = report);
+        assertNotNull("Round finished", result[0]);
+        assertFalse(matchMaker.isRunning());
+        return result[0];
+    }
+
+    /**
+     * Try to take the lease
+     *
+     * @param matchMaker The matcher
+     * @param now        Current time
+     * @return True if it leads
+     */
+    private static boolean lease(MatchMaker matchMaker, long now) {
+        final Boolean[] result = {null};
+        matchMaker.acquireLease(now, leader -> result[0] = leader);
+        return result[0];
+    }
+
+    /**
+     * Find the game a player was told about
+     *
+     * @param joined Games reported through onGameJoined()
+     * @param userId The player
+     * @return The game with the player in a seat
+     */
+    private static MultiplayerGameLogic joinedBy(List<MultiplayerGameLogic> joined, String userId) {
+        for (MultiplayerGameLogic game : joined) {
+            if (game.getPlayerID().contains(userId)) return game;
+        }
+        fail("No game for " + userId);
+        return null;
+    }
+
+    /**
+     * Join the user IDs of a group
+     *
+     * @param group The group
+     * @return IDs in seat order
+     */
+    private static String userIds(List<MatchMaker.QueuedPlayer> group) {
+        StringBuilder ids = new StringBuilder();
+        for (MatchMaker.QueuedPlayer player : group) {
+            ids.append(player.userId);
+        }
+        return ids.toString();
+    }
+}
@@ -0,0 +1,337 @@
+package com.example.ludotime;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * GameBackend wrapper for load tests that measures every operation a
+ * FirebaseGameManager performs.
+ *
+ * Operations are grouped by the manager action that started them
+ * ("rollDice", "joinGame", ...) and the kind of operation, so the join
+ * transaction and the move log write of selectPawn show up on their own rows.
+ * Work started from a callback inherits the action of that callback.
+ * Bytes are WirePayload estimates: writes and transaction results count as
+ * sent, read values, listener events and the values a transaction retry has
+ * to fetch again count as received.
+ */
+class MeteredGameBackend implements GameBackend {
+    static final String LISTENER = "listener";
+
+    private final GameBackend delegate;
+    private final SimulatedNetwork network;
+    private final Map<String, OperationStats> stats = new TreeMap<>();
+    private String action = LISTENER;
+
+    /**
+     * Constructor wrapping a backend
+     *
+     * @param delegate The backend doing the work
+     * @param network  Clock for latencies
+     */
+    MeteredGameBackend(GameBackend delegate, SimulatedNetwork network) {
+        this.delegate = delegate;
+        this.network = network;
+    }
+
+    /**
+     * Run a manager action so its operations are grouped under its name
+     *
+     * @param name   Name of the action
+     * @param action The call into the manager
+     */
+    void run(String name, Runnable action) {
+        String previous = this.action;
+        this.action = name;
+        try {
+            action.run();
+        } finally {
+            this.action = previous;
+        }
+    }
+
+    /**
+     * Gets the collected statistics
+     *
+     * @return Statistics by "action operation", sorted
+     */
+    Map<String, OperationStats> getStats() {
+        return stats;
+    }
+
+    // ===== GameBackend =====
+
+    @Override
+    public void get(String path, ReadListener listener) {
+        final OperationStats op = stats("get");
+        final String label = action;
+        final long start = network.now();
+        delegate.get(path, new ReadListener() {
+            @Override
+            public void onRead(Object value) {
+                op.finish(network.now() - start);
+                op.bytesReceived += WirePayload.estimateBytes(value);
+                run(label, () -> listener.onRead(value));
+            }
+
+            @Override
+            public void onError(String message) {
+                op.finish(network.now() - start);
+                op.errors++;
+                run(label, () -> listener.onError(message));
+            }
+        });
+    }
+
+    @Override
+    public void query(String path, ChildQuery query, ReadListener listener) {
+        final OperationStats op = stats("query");
+        final String label = action;
+        final long start = network.now();
+        delegate.query(path, query, new ReadListener() {
+            @Override
+            public void onRead(Object value) {
+                op.finish(network.now() - start);
+                op.bytesReceived += WirePayload.estimateBytes(value);
+                run(label, () -> listener.onRead(value));
+            }
+
+            @Override
+            public void onError(String message) {
+                op.finish(network.now() - start);
+                op.errors++;
+                run(label, () -> listener.onError(message));
+            }
+        });
+    }
+
+    @Override
+    public void set(String path, Object value, CompletionListener listener) {
+        OperationStats op = stats("set");
+        op.bytesSent += path.length() + WirePayload.estimateBytes(value);
+        delegate.set(path, value, completion(op, listener));
+    }
+
+    @Override
+    public void update(String path, Map<String, Object> values, CompletionListener listener) {
+        OperationStats op = stats("update");
+        op.bytesSent += path.length() + WirePayload.estimateBytes(values);
+        delegate.update(path, values, completion(op, listener));
+    }
+
+    @Override
+    public void transaction(String path, TransactionHandler handler) {
+        final OperationStats op = stats("transaction");
+        final String label = action;
+        final long start = network.now();
+        final int[] attempts = {0};
+        delegate.transaction(path, new TransactionHandler() {
+            @Override
+            public Object apply(Object current) {
+                attempts[0]++;
+                if (attempts[0] > 1) {
+                    op.bytesReceived += WirePayload.estimateBytes(current);
+                }
+
+                Object result = handler.apply(current);
+                if (result != ABORT) {
+                    op.bytesSent += path.length() + WirePayload.estimateBytes(result);
+                }
+                return result;
+            }
+
+            @Override
+            public void onComplete(String error, boolean committed, Object value) {
+                op.finish(network.now() - start);
+                op.attempts += attempts[0];
+                if (error != null) {
+                    op.errors++;
+                } else if (!committed) {
+                    op.aborts++;
+                }
+                run(label, () -> handler.onComplete(error, committed, value));
+            }
+        });
+    }
+
+    @Override
+    public Registration addValueListener(String path, ValueListener listener) {
+        final OperationStats op = listenerStats(path);
+        return delegate.addValueListener(path, new ValueListener() {
+            @Override
+            public void onValue(Object value) {
+                op.events++;
+                op.bytesReceived += WirePayload.estimateBytes(value);
+                run(LISTENER, () -> listener.onValue(value));
+            }
+
+            @Override
+            public void onError(String message) {
+                op.errors++;
+                run(LISTENER, () -> listener.onError(message));
+            }
+        });
+    }
+
+    @Override
+    public Registration addChildListener(String path, String startAt, ChildListener listener) {
+        final OperationStats op = listenerStats(path);
+        return delegate.addChildListener(path, startAt, new ChildListener() {
+            @Override
+            public void onChildAdded(String key, Object value) {
+                op.events++;
+                op.bytesReceived += key.length() + WirePayload.estimateBytes(value);
+                run(LISTENER, () -> listener.onChildAdded(key, value));
+            }
+
+            @Override
+            public void onError(String message) {
+                op.errors++;
+                run(LISTENER, () -> listener.onError(message));
+            }
+        });
+    }
+
+    @Override
+    public Registration addQueryListener(String path, ChildQuery query, QueryListener listener) {
+        final OperationStats op = listenerStats(path);
+        return delegate.addQueryListener(path, query, new QueryListener() {
+            @Override
+            public void onChildAdded(String key, Object value) {
+                op.events++;
+                op.bytesReceived += key.length() + WirePayload.estimateBytes(value);
+                run(LISTENER, () -> listener.onChildAdded(key, value));
+            }
+
+            @Override
+            public void onChildChanged(String key, Object value) {
+                op.events++;
+                op.bytesReceived += key.length() + WirePayload.estimateBytes(value);
+                run(LISTENER, () -> listener.onChildChanged(key, value));
+            }
+
+            @Override
+            public void onChildRemoved(String key) {
+                op.events++;
+                op.bytesReceived += key.length();
+                run(LISTENER, () -> listener.onChildRemoved(key));
+            }
+
+            @Override
+            public void onError(String message) {
+                op.errors++;
+                run(LISTENER, () -> listener.onError(message));
+            }
+        });
+    }
+
+    @Override
+    public void keepSynced(String path, boolean keepSynced) {
+        delegate.keepSynced(path, keepSynced);
+    }
+
+    @Override
+    public Registration addConnectionListener(ConnectionListener listener) {
+        return delegate.addConnectionListener(connected -> run(LISTENER, () -> listener.onConnectionChanged(connected)));
+    }
+
+    // ===== Helpers =====
+
+    /**
+     * Wraps a write listener to time the write
+     *
+     * @param op       Statistics of the write
+     * @param listener The manager's listener, or null
+     * @return Listener to pass to the delegate
+     */
+    private CompletionListener completion(OperationStats op, CompletionListener listener) {
+        final String label = action;
+        final long start = network.now();
+        return error -> {
+            op.finish(network.now() - start);
+            if (error != null) op.errors++;
+            if (listener != null) {
+                run(label, () -> listener.onComplete(error));
+            }
+        };
+    }
+
+    /**
+     * Gets the statistics of an operation of the current action
+     *
+     * @param operation Kind of operation
+     * @return The statistics
+     */
+    private OperationStats stats(String operation) {
+        return statsFor(action + " " + operation);
+    }
+
+    /**
+     * Gets the statistics of a listener, by path with the game ID left out
+     *
+     * @param path The listened path
+     * @return The statistics
+     */
+    private OperationStats listenerStats(String path) {
+        String[] keys = path.split("/");
+        if (keys.length > 1) keys[1] = "{id}";
+        return statsFor(LISTENER + " " + String.join("/", keys));
+    }
+
+    /**
+     * Gets or creates statistics by key
+     *
+     * @param key Row name
+     * @return The statistics
+     */
+    private OperationStats statsFor(String key) {
+        OperationStats op = stats.get(key);
+        if (op == null) {
+            op = new OperationStats();
+            stats.put(key, op);
+        }
+        return op;
+    }
+
+    /**
+     * Counters and latencies of one kind of operation
+     */
+    static class OperationStats {
+        long[] latencies = new long[64];
+        int count;
+        long attempts;
+        long aborts;
+        long errors;
+        long events;
+        long bytesSent;
+        long bytesReceived;
+
+        /**
+         * Record a completed operation
+         *
+         * @param latencyMillis Time from the call to its callback
+         */
+        void finish(long latencyMillis) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyMillis;
+        }
+
+        /**
+         * Gets a latency percentile
+         *
+         * @param percentile Percentile between 0 and 100
+         * @return The latency in milliseconds, 0 without operations
+         */
+        long percentile(double percentile) {
+            if (count == 0) return 0;
+
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.ludotime;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Packs turns into MoveLog entries and replays a scripted game through
+ * GameReplayer, the way ActivityReplay and the multiplayer move log use them.
+ */
+public class MoveLogTest {
+    private static final int MAX_TURNS = 2000;
+
+    @Test
+    public void pack_roundTripsEveryTurn() {
+        for (int seat = 0; seat < 4; seat++) {
+            for (int dice = 1; dice <= 6; dice++) {
+                for (int pawn : new int[]{0, 1, 2, 3, MoveLog.NO_PAWN}) {
+                    byte entry = MoveLog.pack(seat, dice, pawn);
+                    assertEquals(seat, MoveLog.getSeat(entry));
+                    assertEquals(dice, MoveLog.getDice(entry));
+                    assertEquals(pawn, MoveLog.getPawn(entry));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void replay_reproducesEveryTurnOfARecordedGame() {
+        GameLogic game = new GameLogic();
+        byte[] initialState = GameStateCodec.encode(game);
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        ArrayList<byte[]> states = new ArrayList<>();
+        Random random = new Random(34);
+        int noMoveTurns = 0;
+
+        while (!game.isGameOver() && states.size() < MAX_TURNS) {
+            byte entry = playTurn(game, random);
+            entries.write(entry);
+            states.add(GameStateCodec.encode(game));
+            if (MoveLog.getPawn(entry) == MoveLog.NO_PAWN) noMoveTurns++;
+        }
+        assertTrue("Scripted game never ended", game.isGameOver());
+        assertTrue("No turn without a move", noMoveTurns > 0);
+
+        MoveLog.Recording recording = new MoveLog.Recording(initialState, entries.toByteArray());
+        GameReplayer replayer = new GameReplayer(recording);
+        for (int turn = 0; turn < states.size(); turn++) {
+            assertTrue(replayer.step());
+            assertArrayEquals("Board differs after turn " + turn, states.get(turn),
+                    GameStateCodec.encode(replayer.getLogic()));
+        }
+        assertFalse("Replay goes past the end", replayer.step());
+        assertEquals(game.getWinnerOrder(), replayer.getLogic().getWinnerOrder());
+    }
+
+    @Test
+    public void applyTurn_finishesPawnFromTheFinalPath() {
+        // Red's first pawn needs exactly a 2 to finish
+        byte[] data = GameStateCodec.encode(new GameLogic());
+        data[GameStateCodec.pawnOffset(0, 0)] = (byte) (2 << 6 | 3);
+        GameLogic game = GameStateCodec.decode(data);
+
+        GameReplayer.applyTurn(game, MoveLog.pack(0, 2, 0));
+
+        assertTrue(game.getPawnFinished().get(0).get(0));
+        assertFalse(game.getPawnOnFinishLine().get(0).get(0));
+    }
+
+    // ===== Helpers =====
+
+    /**
+     * Play one turn like ActivityGameLocal: the next player who has not won
+     * rolls and picks a random movable pawn when there is a choice
+     *
+     * @param game   The game
+     * @param random Source of rolls and choices
+     * @return The turn's entry, as ActivityGameLocal records it
+     */
+    private static byte playTurn(GameLogic game, Random random) {
+        int seat = game.getCurrentPlayerTurn();
+        while (game.hasPlayerWon(seat)) {
+            seat = (seat + 1) % 4;
+        }
+        game.setCurrentPlayerTurn(seat);
+
+        int dice = random.nextInt(6) + 1;
+        game.setDiceRoll(dice);
+        int pawn = MoveLog.NO_PAWN;
+        if (!game.playRound()) {
+            ArrayList<Integer> movable = game.getMovablePawns();
+            if (movable.isEmpty()) {
+                // Only pawns that would overshoot the finish, the player still has to tap one
+                for (int i = 0; i < 4; i++) {
+                    if (!game.getPawnInHome().get(seat).get(i) && !game.getPawnFinished().get(seat).get(i)) {
+                        movable.add(i);
+                    }
+                }
+            }
+            pawn = movable.get(random.nextInt(movable.size()));
+            game.setPawnSelection(pawn);
+        }
+        game.getWinner();
+        return MoveLog.pack(seat, dice, pawn);
+    }
+}
@@ -0,0 +1,407 @@
+package com.example.ludotime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Load test of the multiplayer flow: many games run at the same time on one
+ * InMemoryGameBackend behind a simulated network, each with four scripted
+ * FirebaseGameManager clients going through create, join, ready, start and
+ * roll / play / select turns.
+ *
+ * Prints action latency percentiles, transaction attempts, aborts and bytes
+ * moved per operation. Time is virtual, so latencies are in network hops
+ * and the run is repeatable. It only runs when loadtest.games is set, for
+ * example -Dloadtest.games=1000. Other sizes can be changed with system
+ * properties: loadtest.turns, loadtest.seed, loadtest.minLatency,
+ * loadtest.maxLatency, loadtest.minThink, loadtest.maxThink. With
+ * loadtest.referee=true the clients play refereed and one GameReferee on the
+ * database applies every turn. With loadtest.coldCache=true every transaction
+ * first runs on null, like a Firebase client with nothing cached.
+ */
+public class MultiplayerLoadTest {
+    private static final int PLAYERS = 4; // startGame() needs exactly 4 players
+    private static final long RAMP_UP_MILLIS = 60_000;
+    private static final long TIME_LIMIT_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final int gameCount = Integer.getInteger("loadtest.games", 0);
+    private final int maxTurns = Integer.getInteger("loadtest.turns", 40);
+    private final long minThink = Long.getLong("loadtest.minThink", 100);
+    private final long maxThink = Long.getLong("loadtest.maxThink", 600);
+    private final boolean refereed = Boolean.getBoolean("loadtest.referee");
+    private final boolean coldCache = Boolean.getBoolean("loadtest.coldCache");
+
+    private final Random random = new Random(Long.getLong("loadtest.seed", 42));
+    private final SimulatedNetwork network = new SimulatedNetwork(random,
+            Long.getLong("loadtest.minLatency", 30), Long.getLong("loadtest.maxLatency", 150));
+    private final Map<String, Integer> errors = new TreeMap<>();
+    private long retries = 0;
+
+    private final InMemoryGameBackend database = new InMemoryGameBackend(network) {
+        @Override
+        protected void onTransactionRetry() {
+            retries++;
+        }
+    };
+    private final MeteredGameBackend backend = new MeteredGameBackend(database, network);
+    private final GameReferee referee = new GameReferee(database, random, gameCount);
+
+    @Test
+    public void concurrentGames() {
+        assumeTrue("Run with -Dloadtest.games=N", gameCount > 0);
+        database.setColdCache(coldCache);
+        if (refereed) {
+            referee.start();
+        }
+        List<ScriptedGame> games = new ArrayList<>();
+        for (int i = 0; i < gameCount; i++) {
+            ScriptedGame game = new ScriptedGame(i);
+            games.add(game);
+            network.schedule((long) (random.nextDouble() * RAMP_UP_MILLIS), game::create);
+        }
+
+        long wallStart = System.nanoTime();
+        long events = network.runUntilIdle(TIME_LIMIT_MILLIS);
+        long wallMillis = (System.nanoTime() - wallStart) / 1_000_000;
+
+        int started = 0;
+        int finished = 0;
+        long turns = 0;
+        for (ScriptedGame game : games) {
+            if (game.started) started++;
+            if (game.finished) finished++;
+            turns += game.turns;
+        }
+
+        referee.stop();
+        printReport(events, wallMillis, started, finished, turns);
+
+        assertEquals("Games that started", gameCount, started);
+        assertEquals("Games that finished", gameCount, finished);
+    }
+
+    // ===== Report =====
+
+    /**
+     * Print the collected statistics
+     *
+     * @param events     Number of simulated events
+     * @param wallMillis Real time the run took
+     * @param started    Games that started
+     * @param finished   Games that reached the turn limit or ended
+     * @param turns      Completed turns over all games
+     */
+    private void printReport(long events, long wallMillis, int started, int finished, long turns) {
+        System.out.println("Games: " + gameCount + " x " + PLAYERS + " clients, started " + started
+                + ", finished " + finished + ", turns " + turns);
+        System.out.println("Virtual time: " + network.now() / 1000 + " s, events " + events
+                + ", wall time " + wallMillis + " ms");
+        System.out.println("Transaction retries: " + retries);
+        if (refereed) {
+            System.out.println("Referee: " + referee.getTransactionMetrics().summary());
+        }
+        System.out.println(String.format("%-34s %8s %6s %6s %6s %9s %7s %7s %12s %12s",
+                "operation", "count", "p50", "p95", "p99", "attempts", "aborts", "errors", "sent", "received"));
+
+        long sent = 0;
+        long received = 0;
+        for (Map.Entry<String, MeteredGameBackend.OperationStats> entry : backend.getStats().entrySet()) {
+            MeteredGameBackend.OperationStats op = entry.getValue();
+            long count = op.count > 0 ? op.count : op.events;
+            String attempts = op.attempts > 0 ? String.format("%.3f", (double) op.attempts / op.count) : "-";
+            System.out.println(String.format("%-34s %8d %6d %6d %6d %9s %7d %7d %12d %12d",
+                    entry.getKey(), count, op.percentile(50), op.percentile(95), op.percentile(99),
+                    attempts, op.aborts, op.errors, op.bytesSent, op.bytesReceived));
+            sent += op.bytesSent;
+            received += op.bytesReceived;
+        }
+        System.out.println("Bytes sent " + sent + ", received " + received
+                + ", per turn " + (turns > 0 ? (sent + received) / turns : 0));
+
+        for (Map.Entry<String, Integer> entry : errors.entrySet()) {
+            System.out.println("onGameError x" + entry.getValue() + ": " + entry.getKey());
+        }
+    }
+
+    /**
+     * Gets a random think time of a scripted player
+     *
+     * @return Delay in milliseconds
+     */
+    private long think() {
+        return minThink + (long) (random.nextDouble() * (maxThink - minThink));
+    }
+
+    // ===== Scripted Game =====
+
+    /**
+     * One game and its four clients. A script watches the game's state node
+     * directly on the database, outside the metered backend, and tells the
+     * client whose turn it is what to do next.
+     */
+    private class ScriptedGame {
+        final FirebaseGameManager[] clients = new FirebaseGameManager[PLAYERS];
+        final FirebaseGameManager[] clientBySeat = new FirebaseGameManager[PLAYERS];
+        final int index;
+        String gameId;
+        boolean startRequested;
+        boolean started;
+        boolean finished;
+        int turns;
+        int stateVersion;
+        GameLogic latestState;
+        MultiplayerGameLogic lobby;
+        GameBackend.Registration stateWatch;
+
+        ScriptedGame(int index) {
+            this.index = index;
+            for (int seat = 0; seat < PLAYERS; seat++) {
+                clients[seat] = new FirebaseGameManager("user-" + index + "-" + seat,
+                        new ScriptedClient(this, seat), backend);
+                clients[seat].setRefereed(refereed);
+            }
+        }
+
+        /**
+         * The host creates the game
+         */
+        void create() {
+            backend.run("createGame", () -> clients[0].createGame("Host " + index));
+        }
+
+        /**
+         * Called on the host once the game exists, the other clients join
+         *
+         * @param id ID of the new game
+         */
+        void onCreated(String id) {
+            gameId = id;
+            stateWatch = database.addValueListener("games/" + id + "/state", new GameBackend.ValueListener() {
+                @Override
+                public void onValue(Object value) {
+                    onState(value);
+                }
+
+                @Override
+                public void onError(String message) {
+                    countError(message);
+                }
+            });
+
+            for (int seat = 1; seat < PLAYERS; seat++) {
+                final FirebaseGameManager client = clients[seat];
+                final String name = "Player " + index + "-" + seat;
+                network.schedule(think(), () -> backend.run("joinGame", () -> client.joinGame(id, name)));
+            }
+        }
+
+        /**
+         * Called on the host after every lobby change, starts once everyone is ready
+         * The host's copy of the game is kept current from the seat and ready callbacks
+         */
+        void onLobbyChanged() {
+            MultiplayerGameLogic game = lobby;
+            if (game == null || startRequested || game.isGameStarted()) return;
+
+            for (int seat = 0; seat < PLAYERS; seat++) {
+                if (game.getPlayerID().get(seat) == null || !game.getIsReady().get(seat)) return;
+            }
+
+            // Joiners get whichever seat was free when their transaction committed
+            for (int seat = 0; seat < PLAYERS; seat++) {
+                String userId = game.getPlayerID().get(seat);
+                for (int client = 0; client < PLAYERS; client++) {
+                    if (userId.equals("user-" + index + "-" + client)) {
+                        clientBySeat[seat] = clients[client];
+                    }
+                }
+            }
+            startRequested = true;
+            network.schedule(think(), () -> backend.run("startGame", clients[0]::startGame));
+        }
+
+        /**
+         * Called with every change of the state node, plans the next action
+         *
+         * @param value Raw state node
+         */
+        void onState(Object value) {
+            if (value == null || finished) return;
+
+            started = true;
+            GameLogic state = GameStateNodes.read(value);
+            turns = GameStateNodes.getSeq(value);
+            if (state.isGameOver() || turns >= maxTurns) {
+                finish();
+                return;
+            }
+
+            latestState = state;
+            planAction();
+        }
+
+        /**
+         * Schedule the next step on the latest board after a think time
+         * A newer board replaces the plan, like a player reacting to the screen
+         */
+        void planAction() {
+            final int version = ++stateVersion;
+            final GameLogic state = latestState;
+            network.schedule(think(), () -> {
+                if (version == stateVersion && !finished) act(state);
+            });
+        }
+
+        /**
+         * Called when an action of a client failed, the player tries again
+         */
+        void onActionFailed() {
+            if (started && !finished && latestState != null) {
+                planAction();
+            }
+        }
+
+        /**
+         * Let the player whose turn it is take the next step
+         *
+         * @param state The latest board
+         */
+        void act(GameLogic state) {
+            final FirebaseGameManager client = clientBySeat[state.getCurrentPlayerTurn()];
+            if (!state.isDiceRolled()) {
+                backend.run("rollDice", client::rollDice);
+            } else if (state.isWaitingForPawnSelection()) {
+                final int pawn = pickPawn(state);
+                backend.run("selectPawn", () -> client.selectPawn(pawn));
+            } else if (!state.isMoveMade()) {
+                backend.run("playRound", client::playRound);
+            }
+        }
+
+        /**
+         * Choose a pawn like a player tapping a random movable one
+         *
+         * @param state Board waiting for a selection
+         * @return Pawn index
+         */
+        int pickPawn(GameLogic state) {
+            ArrayList<Integer> movable = state.getMovablePawns();
+            if (movable.isEmpty()) {
+                // hasValidMoves() also accepts pawns that would overshoot the finish line
+                return state.findSingleLegalMove() >= 0 ? state.findSingleLegalMove() : random.nextInt(4);
+            }
+            return movable.get(random.nextInt(movable.size()));
+        }
+
+        /**
+         * Stop playing and release the clients' listeners
+         */
+        void finish() {
+            finished = true;
+            if (stateWatch != null) {
+                stateWatch.remove();
+            }
+            for (FirebaseGameManager client : clients) {
+                client.cleanup();
+            }
+        }
+    }
+
+    /**
+     * Records an error reported to a client
+     *
+     * @param message The error
+     */
+    private void countError(String message) {
+        Integer count = errors.get(message);
+        errors.put(message, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Listener of one scripted client
+     */
+    private class ScriptedClient implements FirebaseGameManager.GameUpdateListener {
+        private final ScriptedGame game;
+        private final int seat;
+
+        ScriptedClient(ScriptedGame game, int seat) {
+            this.game = game;
+            this.seat = seat;
+        }
+
+        @Override
+        public void onGameCreated(String gameId) {
+            game.onCreated(gameId);
+        }
+
+        @Override
+        public void onGameJoined(MultiplayerGameLogic joined) {
+            if (joined == null) return;
+
+            final FirebaseGameManager client = game.clients[seat];
+            network.schedule(think(), () -> backend.run("setPlayerReady", () -> client.setPlayerReady(true)));
+        }
+
+        @Override
+        public void onGameUpdated(MultiplayerGameLogic updated) {
+            if (seat == 0) {
+                game.lobby = updated;
+                game.onLobbyChanged();
+            }
+        }
+
+        @Override
+        public void onSeatChanged(int changedSeat, String playerId, String playerName) {
+            if (seat == 0 && game.lobby != null) {
+                game.lobby.getPlayerID().set(changedSeat, playerId);
+                game.onLobbyChanged();
+            }
+        }
+
+        @Override
+        public void onPlayerReadyChanged(int changedSeat, boolean ready) {
+            if (seat == 0 && game.lobby != null) {
+                game.lobby.getIsReady().set(changedSeat, ready);
+                game.onLobbyChanged();
+            }
+        }
+
+        @Override
+        public void onPlayerJoined(String playerId, String playerName) {
+        }
+
+        @Override
+        public void onPlayerLeft(String playerId) {
+        }
+
+        @Override
+        public void onGameError(String message) {
+            countError(message);
+            game.onActionFailed();
+        }
+
+        @Override
+        public void onTurnChange(int playerTurn) {
+        }
+
+        @Override
+        public void onDiceRolled(int playerIndex, int diceValue) {
+        }
+
+        @Override
+        public void onPawnMoved(int playerIndex, int pawnIndex, int position) {
+        }
+
+        @Override
+        public void onGameEnded(int[] winnerOrder) {
+        }
+    }
+}
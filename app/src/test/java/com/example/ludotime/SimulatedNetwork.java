@@ -0,0 +1,107 @@
+package com.example.ludotime;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+/**
+ * Virtual clock for load tests. Used as the executor of an InMemoryGameBackend,
+ * every backend callback is delivered one network hop after it was posted.
+ *
+ * Callbacks keep the order they were posted in, like the messages of a single
+ * Firebase connection, so a slow hop delays everything behind it. Timers for
+ * scripted clients are not part of that order and fire at their own time.
+ * Everything runs on the test thread, so runs are repeatable for a given seed.
+ */
+class SimulatedNetwork implements Executor {
+    private final PriorityQueue<Event> queue = new PriorityQueue<>();
+    private final Random random;
+    private final long minLatencyMillis;
+    private final long maxLatencyMillis;
+
+    private long now = 0;
+    private long lastDelivery = 0;
+    private long sequence = 0;
+
+    /**
+     * Constructor for a network with a latency range per hop
+     *
+     * @param random           Source of latency jitter
+     * @param minLatencyMillis Shortest hop
+     * @param maxLatencyMillis Longest hop
+     */
+    SimulatedNetwork(Random random, long minLatencyMillis, long maxLatencyMillis) {
+        this.random = random;
+        this.minLatencyMillis = minLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    /**
+     * Deliver a backend callback after one hop, behind earlier callbacks
+     *
+     * @param command The callback
+     */
+    @Override
+    public void execute(Runnable command) {
+        long latency = minLatencyMillis + (long) (random.nextDouble() * (maxLatencyMillis - minLatencyMillis));
+        lastDelivery = Math.max(now + latency, lastDelivery);
+        queue.add(new Event(lastDelivery, sequence++, command));
+    }
+
+    /**
+     * Run a task after a delay, independent of the network order
+     *
+     * @param delayMillis Delay from now
+     * @param task        The task
+     */
+    void schedule(long delayMillis, Runnable task) {
+        queue.add(new Event(now + delayMillis, sequence++, task));
+    }
+
+    /**
+     * Gets the virtual time
+     *
+     * @return Milliseconds since the start of the run
+     */
+    long now() {
+        return now;
+    }
+
+    /**
+     * Run events in time order until none are left or the time limit is reached
+     *
+     * @param limitMillis Virtual time to stop at
+     * @return Number of events run
+     */
+    long runUntilIdle(long limitMillis) {
+        long count = 0;
+        while (!queue.isEmpty() && queue.peek().time <= limitMillis) {
+            Event event = queue.poll();
+            now = event.time;
+            event.task.run();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * A queued callback or timer
+     */
+    private static class Event implements Comparable<Event> {
+        final long time;
+        final long sequence;
+        final Runnable task;
+
+        Event(long time, long sequence, Runnable task) {
+            this.time = time;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (time != other.time) return Long.compare(time, other.time);
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
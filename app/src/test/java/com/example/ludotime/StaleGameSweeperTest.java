@@ -0,0 +1,194 @@
+package com.example.ludotime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.ludotime.BackendTestHelper.read;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs StaleGameSweeper against an InMemoryGameBackend holding fresh, stale
+ * and legacy games. The sweep benchmark only runs with -Dbenchmarks=true.
+ */
+public class StaleGameSweeperTest {
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long CUTOFF = NOW - StaleGameSweeper.DEFAULT_MAX_AGE_MILLIS;
+
+    /** Runs right before the sweeper writes an archive copy */
+    private Runnable beforeArchiveWrite = null;
+
+    private final InMemoryGameBackend backend = new InMemoryGameBackend() {
+        @Override
+        public void set(String path, Object value, CompletionListener listener) {
+            if (beforeArchiveWrite != null && value != null && path.startsWith(StaleGameSweeper.ARCHIVE_REF + "/")) {
+                beforeArchiveWrite.run();
+            }
+            super.set(path, value, listener);
+        }
+    };
+
+    @Test
+    public void query_ordersByChildAndPages() {
+        putGame("B", 30L);
+        putGame("A", 30L);
+        putGame("C", 10L);
+        putGame("D", 50L);
+        putGame("E", null);
+
+        GameBackend.ChildQuery firstPage = GameBackend.ChildQuery.orderByChild(FirebaseGameManager.TIMESTAMP_PATH)
+                .endAt(40L).limitToFirst(3);
+        assertEquals(listOf("E", "C", "A"), queryKeys(firstPage));
+
+        GameBackend.ChildQuery nextPage = GameBackend.ChildQuery.orderByChild(FirebaseGameManager.TIMESTAMP_PATH)
+                .endAt(40L).limitToFirst(3).startAfter(30L, "A");
+        assertEquals(listOf("B"), queryKeys(nextPage));
+    }
+
+    @Test
+    public void sweep_deletesOnlyStaleGames() {
+        for (int i = 0; i < 10; i++) {
+            putGame("OLD" + i, CUTOFF - 1000 * i);
+            backend.set("moves/OLD" + i + "/0", 42L, null);
+        }
+        putGame("LEGACY", null);
+        putGame("EDGE", CUTOFF);
+        putGame("FRESH", NOW);
+        backend.set("moves/FRESH/0", 42L, null);
+
+        StaleGameSweeper.Report report = sweep(new StaleGameSweeper(backend, 3, false));
+
+        assertEquals(12, report.getScanned());
+        assertEquals(12, report.getDeleted());
+        assertEquals(0, report.getArchived());
+        assertEquals(0, report.getErrors());
+        assertEquals(4, report.getBatches());
+        assertTrue(report.getReclaimedBytes() > 0);
+
+        assertNull(read(backend, "games/OLD0"));
+        assertNull(read(backend, "moves/OLD0"));
+        assertNull(read(backend, "games/LEGACY"));
+        assertNull(read(backend, "games/EDGE"));
+        assertNotNull(read(backend, "games/FRESH"));
+        assertNotNull(read(backend, "moves/FRESH"));
+    }
+
+    @Test
+    public void sweep_archivesGameAndMoves() {
+        putGame("OLD", CUTOFF - 1);
+        backend.set("moves/OLD/0", 42L, null);
+
+        StaleGameSweeper.Report report = sweep(new StaleGameSweeper(backend, 10, true));
+
+        assertEquals(1, report.getArchived());
+        assertNull(read(backend, "games/OLD"));
+        assertNull(read(backend, "moves/OLD"));
+        assertEquals(CUTOFF - 1, read(backend, "archive/OLD/game/" + FirebaseGameManager.TIMESTAMP_PATH));
+        assertNotNull(read(backend, "archive/OLD/moves"));
+    }
+
+    @Test
+    public void sweep_archiveDroppedIfPlayedMeanwhile() {
+        putGame("OLD", CUTOFF - 1);
+        backend.set("moves/OLD/0", 42L, null);
+        beforeArchiveWrite = () -> backend.set("games/OLD/" + FirebaseGameManager.TIMESTAMP_PATH, NOW, null);
+
+        StaleGameSweeper.Report report = sweep(new StaleGameSweeper(backend, 10, true));
+
+        assertEquals(1, report.getSkipped());
+        assertEquals(0, report.getDeleted());
+        assertEquals(0, report.getArchived());
+        assertNotNull(read(backend, "games/OLD"));
+        assertNotNull(read(backend, "moves/OLD"));
+        assertNull("Copy dropped", read(backend, StaleGameSweeper.ARCHIVE_REF));
+    }
+
+    @Test
+    public void benchmark_sweep() {
+        assumeTrue("Run with -Dbenchmarks=true", Boolean.getBoolean("benchmarks"));
+        int stale = 5000;
+        for (int i = 0; i < stale; i++) {
+            putGame("S" + i, CUTOFF - i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            putGame("F" + i, NOW + i);
+        }
+
+        long start = System.nanoTime();
+        StaleGameSweeper.Report report = sweep(new StaleGameSweeper(backend));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println(report + " in " + millis + " ms");
+        assertEquals(stale, report.getDeleted());
+        assertEquals(1000, ((Map<?, ?>) read(backend, "games")).size());
+    }
+
+    // ===== Helpers =====
+
+    /**
+     * Store a lobby game with a timestamp
+     *
+     * @param gameId    ID of the game
+     * @param timestamp lastUpdateTimestamp, null for a game written without one
+     */
+    private void putGame(String gameId, Long timestamp) {
+        MultiplayerGameLogic game = new MultiplayerGameLogic("host-" + gameId, "Host", 4, 0);
+        Map<String, Object> value = game.toMap();
+        value.put(FirebaseGameManager.TIMESTAMP_PATH, timestamp);
+        backend.set("games/" + gameId, value, null);
+    }
+
+    /**
+     * Run a sweep up to CUTOFF, the in-memory backend finishes it before returning
+     *
+     * @param sweeper The sweeper
+     * @return Its report
+     */
+    private StaleGameSweeper.Report sweep(StaleGameSweeper sweeper) {
+        final StaleGameSweeper.Report[] result = {null};
+        sweeper.sweep(CUTOFF, report -> result[0] = report);
+        assertNotNull("Sweep finished", result[0]);
+        assertFalse(sweeper.isRunning());
+        return result[0];
+    }
+
+    /**
+     * Run a query and collect the keys
+     *
+     * @param query The query
+     * @return Keys in query order
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> queryKeys(GameBackend.ChildQuery query) {
+        final List<String> keys = new ArrayList<>();
+        backend.query("games", query, new GameBackend.ReadListener() {
+            @Override
+            public void onRead(Object value) {
+                keys.addAll(((Map<String, Object>) value).keySet());
+            }
+
+            @Override
+            public void onError(String message) {
+                fail(message);
+            }
+        });
+        return keys;
+    }
+
+    /**
+     * List of keys
+     *
+     * @param keys The keys
+     * @return The list
+     */
+    private static List<String> listOf(String... keys) {
+        List<String> list = new ArrayList<>();
+        for (String key : keys) {
+            list.add(key);
+        }
+        return list;
+    }
+}